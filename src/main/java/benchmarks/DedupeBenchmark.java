@@ -0,0 +1,100 @@
+package benchmarks;
+
+import matching.indexing.FingerprintSet;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Set;
+
+import static matching.FuzzyIndex.LARGE_JOB_FILE;
+
+/**
+ * Compare the heap retained by tracking distinct values
+ * of each column in hash sets of strings, the way the
+ * indexer did before, with sets of 64-bit fingerprints.
+ * Both structures see all rows of the CSV file and the
+ * number of distinct values they report is compared.
+ *
+ * Usage: DedupeBenchmark [CSV file] [off-heap]
+ */
+public class DedupeBenchmark {
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int gcCtr = 0; gcCtr < 3; gcCtr++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static CSVParser parser(String inputFilePath) throws IOException {
+        return CSVParser.parse(new File(inputFilePath), Charset.defaultCharset(),
+                CSVFormat.newFormat(',').withQuote('|').withHeader());
+    }
+
+    public static void main(String[] args) throws IOException {
+        String inputFilePath = args.length > 0 ? args[0] : LARGE_JOB_FILE;
+        boolean offHeap = args.length > 1 && Boolean.parseBoolean(args[1]);
+        long baseline = usedHeap();
+        long nrStrings = 0;
+        long timer1 = System.currentTimeMillis();
+        Set<String>[] strings;
+        try (CSVParser input = parser(inputFilePath)) {
+            int nrFields = input.getHeaderMap().size();
+            strings = new HashSet[nrFields];
+            for (int fieldCtr = 0; fieldCtr < nrFields; fieldCtr++) {
+                strings[fieldCtr] = new HashSet<>();
+            }
+            for (CSVRecord row: input) {
+                for (int fieldCtr = 0; fieldCtr < nrFields; fieldCtr++) {
+                    if (strings[fieldCtr].add(row.get(fieldCtr))) {
+                        nrStrings++;
+                    }
+                }
+            }
+        }
+        long timer2 = System.currentTimeMillis();
+        long stringBytes = usedHeap() - baseline;
+        strings = null;
+        baseline = usedHeap();
+        long nrFingerprints = 0;
+        long offHeapBytes = 0;
+        long timer3 = System.currentTimeMillis();
+        FingerprintSet[] fingerprints;
+        try (CSVParser input = parser(inputFilePath)) {
+            int nrFields = input.getHeaderMap().size();
+            fingerprints = new FingerprintSet[nrFields];
+            for (int fieldCtr = 0; fieldCtr < nrFields; fieldCtr++) {
+                fingerprints[fieldCtr] = new FingerprintSet(1024, offHeap);
+            }
+            for (CSVRecord row: input) {
+                for (int fieldCtr = 0; fieldCtr < nrFields; fieldCtr++) {
+                    if (fingerprints[fieldCtr].add(row.get(fieldCtr))) {
+                        nrFingerprints++;
+                    }
+                }
+            }
+        }
+        long timer4 = System.currentTimeMillis();
+        long fingerprintBytes = usedHeap() - baseline;
+        if (offHeap) {
+            for (FingerprintSet set: fingerprints) {
+                offHeapBytes += set.memoryBytes();
+            }
+        }
+        System.out.println("File: " + inputFilePath + ", columns: " + fingerprints.length);
+        System.out.println("Structure\tDistinct\tHeapMB\tOffHeapMB\tMillis");
+        System.out.println("HashSet<String>\t" + nrStrings + "\t"
+                + String.format("%.1f", stringBytes / 1048576.0) + "\t0.0\t" + (timer2 - timer1));
+        System.out.println("FingerprintSet\t" + nrFingerprints + "\t"
+                + String.format("%.1f", fingerprintBytes / 1048576.0) + "\t"
+                + String.format("%.1f", offHeapBytes / 1048576.0) + "\t" + (timer4 - timer3));
+        System.out.println("Heap saved: " + String.format("%.1f", (stringBytes - fingerprintBytes) / 1048576.0)
+                + " MB, collisions: " + (nrStrings - nrFingerprints));
+    }
+}
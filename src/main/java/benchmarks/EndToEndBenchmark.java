@@ -1,7 +1,7 @@
 package benchmarks;
 
-import config.HostConfig;
 import config.PlanConfig;
+import config.PlanContext;
 import connector.PSQLConnector;
 import net.sf.jsqlparser.JSQLParserException;
 import org.apache.lucene.queryparser.classic.ParseException;
@@ -27,7 +27,6 @@ import static benchmarks.PlannerBenchmark.readDatasetQueries;
 
 public class EndToEndBenchmark {
     public final static String DATASET = "delayed_flight";
-    private static Connection connection;
     public static long matchMillis = 0;
     public static long optimizeMillis = 0;
     public static long processMillis = 0;
@@ -37,21 +36,27 @@ public class EndToEndBenchmark {
     public static double utility = 0;
     public static List<Long> timestamps = new ArrayList<>();
     public static List<Double> distances = new ArrayList<>();
+    public static PlanStats planStats = new PlanStats();
+    /**
+     * Planning parameters of the benchmark, sampled per query.
+     */
+    public static PlanContext baseContext = PlanContext.fromConfig();
     public static final boolean DYNAMIC = false;
     public static boolean runEndToEndQuery(String query, int sizeRatio) {
-        try {
+        try (Connection connection = PSQLConnector.getConnector().getConnection()) {
             long matchStart = System.currentTimeMillis();
-            QueryFactory queryFactory = new QueryFactory(query);
+            PlanContext context = baseContext.withSamplingRate(sizeRatio);
+            planStats = context.stats;
+            QueryFactory queryFactory = new QueryFactory(query, context);
             long optimizeStart = System.currentTimeMillis();
             matchMillis = optimizeStart - matchStart;
 //            List<Map<Plot, List<DataPoint>>> optimalPlan = PlotGreedyPlanner.plan(queryFactory.queries,
-//                    queryFactory.nrDistinctValues, PlanConfig.NR_ROWS, PlanConfig.R, queryFactory, false);
+//                    queryFactory.nrDistinctValues, context.nrRows, context.R, queryFactory, false);
             List<Map<Plot, List<DataPoint>>> optimalPlan = WaitTimeGurobiPlanner.plan(queryFactory.queries,
-                    queryFactory.nrDistinctValues, PlanConfig.NR_ROWS, PlanConfig.R, queryFactory);
+                    queryFactory.nrDistinctValues, context.nrRows, context.R, queryFactory);
             JSONArray resultRows = new JSONArray();
             long processStart = System.currentTimeMillis();
             optimizeMillis = processStart - optimizeStart;
-            PlanConfig.SAMPLING_RATE = sizeRatio;
             for (Map<Plot, List<DataPoint>> plotListMap: optimalPlan) {
                 JSONArray resultArray = new JSONArray();
                 int sumPixels = plotListMap.values().stream().mapToInt(points ->
@@ -142,13 +147,15 @@ public class EndToEndBenchmark {
     public static boolean runIncrementally(String query, int sizeRatio) {
         distances.clear();
         timestamps.clear();
-        try {
+        try (Connection connection = PSQLConnector.getConnector().getConnection()) {
             long matchStart = System.currentTimeMillis();
-            QueryFactory queryFactory = new QueryFactory(query);
+            PlanContext context = baseContext.withSamplingRate(sizeRatio);
+            planStats = context.stats;
+            QueryFactory queryFactory = new QueryFactory(query, context);
             long optimizeStart = System.currentTimeMillis();
             matchMillis = optimizeStart - matchStart;
             List<Map<Plot, List<DataPoint>>> optimalPlan = PlotGreedyPlanner.plan(queryFactory.queries,
-                    queryFactory.nrDistinctValues, PlanConfig.NR_ROWS, PlanConfig.R, queryFactory, false);
+                    queryFactory.nrDistinctValues, context.nrRows, context.R, queryFactory, false);
             long processStart = System.currentTimeMillis();
             optimizeMillis = processStart - optimizeStart;
             List<Plot> highlightedPlots = new ArrayList<>();
@@ -185,7 +192,6 @@ public class EndToEndBenchmark {
             divInformation.put("data", divTemplates);
             // Send div specifications
             highlightedPlots.addAll(uncoloredPlots);
-            PlanConfig.SAMPLING_RATE = sizeRatio;
             highlightedPlots.sort(Comparator.comparingInt(o -> o.nrDataPoints));
             double maxProb = 0;
             int correctPlotID = 0;
@@ -284,15 +290,17 @@ public class EndToEndBenchmark {
     }
 
     public static boolean runApproximately(String query, int sizeRatio) {
-        try {
+        try (Connection connection = PSQLConnector.getConnector().getConnection()) {
             distances.clear();
             timestamps.clear();
             long matchStart = System.currentTimeMillis();
-            QueryFactory queryFactory = new QueryFactory(query);
+            PlanContext context = baseContext.withSamplingRate(sizeRatio);
+            planStats = context.stats;
+            QueryFactory queryFactory = new QueryFactory(query, context);
             long optimizeStart = System.currentTimeMillis();
             matchMillis = optimizeStart - matchStart;
             List<Map<Plot, List<DataPoint>>> optimalPlan = PlotGreedyPlanner.plan(queryFactory.queries,
-                    queryFactory.nrDistinctValues, PlanConfig.NR_ROWS, PlanConfig.R, queryFactory, false);
+                    queryFactory.nrDistinctValues, context.nrRows, context.R, queryFactory, false);
             long samplingStart = System.currentTimeMillis();
             optimizeMillis = samplingStart - optimizeStart;
             List<Plot> highlightedPlots = new ArrayList<>();
@@ -303,13 +311,13 @@ public class EndToEndBenchmark {
             Map<Plot, String> plotToName = new HashMap<>();
             List<Map<String, Double>> samplingPlots = new ArrayList<>(optimalPlan.size());
             List<Map<String, Double>> processPlots = new ArrayList<>(optimalPlan.size());
-            PlanConfig.SAMPLING_RATE = sizeRatio * 5.0 / 100;
+            double samplingRate = sizeRatio * 5.0 / 100;
             if (DYNAMIC) {
-                PlanConfig.SAMPLING_RATE = 1;
+                samplingRate = 1;
                 List<String> mergedQueries = new ArrayList<>();
                 for (Map<Plot, List<DataPoint>> plotToPoints: optimalPlan) {
                     for (Plot plot: plotToPoints.keySet()) {
-                        String mergedQuery = queryFactory.plotQuery(plot, query, true);
+                        String mergedQuery = queryFactory.plotQuery(plot, query, true, samplingRate);
                         mergedQueries.add(mergedQuery);
                     }
                 }
@@ -332,8 +340,8 @@ public class EndToEndBenchmark {
                 double time = costs * PlanConfig.PROCESSING_PARAMETER + PlanConfig.BIAS;
                 double empiricalRate = PlanConfig.THRESHOLD / time * 1 * 2;
                 System.out.println(costs + "\t" + time + "\t" + empiricalRate);
-                PlanConfig.SAMPLING_RATE = Math.min(empiricalRate, sizeRatio);
-//                PlanConfig.SAMPLING_RATE = sizeRatio;
+                samplingRate = Math.min(empiricalRate, sizeRatio);
+//                samplingRate = sizeRatio;
 //                return false;
             }
 
@@ -361,7 +369,7 @@ public class EndToEndBenchmark {
                     plotToName.put(plot, name);
 
                     // Sampling data
-                    String mergedQuery = queryFactory.plotQuery(plot, query, true);
+                    String mergedQuery = queryFactory.plotQuery(plot, query, true, samplingRate);
 //                    System.out.println(mergedQuery);
                     Statement statement = connection.createStatement();
                     ResultSet rs = statement.executeQuery(mergedQuery);
@@ -434,7 +442,6 @@ public class EndToEndBenchmark {
             divInformation.put("data", divTemplates);
 
             // Send div specifications
-            PlanConfig.SAMPLING_RATE = sizeRatio;
             long processStart = System.currentTimeMillis();
 //            if (DYNAMIC) {
 //                System.out.println(processStart - matchStart);
@@ -542,17 +549,21 @@ public class EndToEndBenchmark {
     private static boolean runILPBackoff (String query, int sizeRatio) {
         distances.clear();
         timestamps.clear();
-        try {
+        try (Connection connection = PSQLConnector.getConnector().getConnection()) {
             long matchStart = System.currentTimeMillis();
-            QueryFactory queryFactory = new QueryFactory(query);
+            PlanContext context = baseContext.withSamplingRate(sizeRatio);
+            planStats = context.stats;
+            QueryFactory queryFactory = new QueryFactory(query, context);
             double[] timeouts = new double[]{0.05, 0.1, 0.25, 0.5, 1.0};
             long optimizeStart = System.currentTimeMillis();
             matchMillis = optimizeStart - matchStart;
-            PlanConfig.SAMPLING_RATE = sizeRatio;
             for (Double timeout: timeouts) {
-                PlanConfig.TIMEOUT = timeout;
+                PlanContext timeoutContext = context.withTimeout(timeout);
+                timeoutContext.stats.nrPredicates = context.stats.nrPredicates;
+                planStats = timeoutContext.stats;
                 List<Map<Plot, List<DataPoint>>> optimalPlan = WaitTimeGurobiPlanner.plan(queryFactory.queries,
-                        queryFactory.nrDistinctValues, PlanConfig.NR_ROWS, PlanConfig.R, queryFactory);
+                        queryFactory.nrDistinctValues, context.nrRows, context.R, queryFactory,
+                        timeoutContext);
                 JSONArray resultRows = new JSONArray();
                 JSONObject resultObj = new JSONObject();
                 for (Map<Plot, List<DataPoint>> plotListMap: optimalPlan) {
@@ -635,7 +646,7 @@ public class EndToEndBenchmark {
                 }
                 resultObj.put("data", resultRows);
                 timestamps.add(System.currentTimeMillis() - optimizeStart);
-                distances.add(PlanStats.waitTime);
+                distances.add(planStats.waitTime);
             }
             respondMillis = timestamps.get(0);
             endMillis = timestamps.get(timestamps.size() - 1);
@@ -649,10 +660,8 @@ public class EndToEndBenchmark {
 
     public static void benchmarkDataSize(int sys) throws IOException, SQLException, JSQLParserException, ParseException {
         PrintWriter printWriter;
-        PlanConfig.R = 300;
-        PlanConfig.TOPK = 20;
-        PlanConfig.PROCESSING_WEIGHT = 0.1;
-        PlanConfig.NR_ROWS = 1;
+        baseContext = PlanContext.fromConfig().withR(300).withTopK(20)
+                .withProcessingWeight(0.1).withNrRows(1);
         if (sys == 0) {
             printWriter = new PrintWriter("test.csv");
         }
@@ -697,9 +706,9 @@ public class EndToEndBenchmark {
                 if (success) {
                     printWriter.print(queryCtr + "\t");
                     printWriter.print(size + "\t");
-                    printWriter.print(PlanStats.nrPlots + "\t");
-                    printWriter.print(PlanStats.nrPredicates + "\t");
-                    printWriter.print(PlanStats.waitTime + "\t");
+                    printWriter.print(planStats.nrPlots + "\t");
+                    printWriter.print(planStats.nrPredicates + "\t");
+                    printWriter.print(planStats.waitTime + "\t");
                     printWriter.print(matchMillis + "\t");
                     printWriter.print(optimizeMillis + "\t");
                     printWriter.print(processMillis + "\t");
@@ -716,13 +725,8 @@ public class EndToEndBenchmark {
     }
 
     public static void main(String[] args) throws SQLException, IOException, JSQLParserException, ParseException {
-        String url = HostConfig.PG_HOST;
-        Properties props = new Properties();
-        props.setProperty("user", "postgres");
-        props.setProperty("password", "postgres");
-        connection = DriverManager.getConnection(url, props);
-
         benchmarkDataSize(3);
+        System.out.println(PSQLConnector.getConnector().getPool());
 //        List<String> queries = readDatasetQueries(DATASET);
 //        for (String query: queries) {
 //            runIncrementally(query, 1);
@@ -0,0 +1,106 @@
+package benchmarks;
+
+import config.PlanConfig;
+import matching.FuzzySearch;
+import matching.HitMetadata;
+import matching.IndexStorage;
+import matching.indexing.Indexer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.Directory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static matching.FuzzyIndex.INDEX_DIR;
+import static matching.FuzzyIndex.PHONETIC_DIR;
+
+/**
+ * Compare the storages of the fuzzy index. For each storage,
+ * the cold start is the time to open the directory, the
+ * reader and its metadata and to answer a first search.
+ * Afterwards, literals sampled from the index are searched
+ * without the match cache and the median and 99th percentile
+ * latency are reported. The operating system's page cache is
+ * not dropped between storages, run one storage per process
+ * after dropping it to measure cold starts from disk.
+ *
+ * Usage: IndexModeBenchmark [dataset] [number of literals] [storages]
+ */
+public class IndexModeBenchmark {
+    /**
+     * Number of rounds before measuring.
+     */
+    public final static int NR_WARMUPS = 2;
+    /**
+     * Number of measured rounds.
+     */
+    public final static int NR_ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        String dataset = args.length > 0 ? args[0] : "sample_311";
+        int nrLiterals = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        IndexStorage[] storages = args.length > 2 ?
+                Arrays.stream(args[2].split(",")).map(IndexStorage::valueOf).toArray(IndexStorage[]::new) :
+                IndexStorage.values();
+        Path path = Paths.get((Indexer.Phonetic ? PHONETIC_DIR : INDEX_DIR) + "/" + dataset);
+        System.out.println("Storage\tOpenMillis\tFirstSearchMillis\tP50Micros\tP99Micros\tMaxMicros");
+        for (IndexStorage storage: storages) {
+            long timer1 = System.nanoTime();
+            Directory directory = storage.open(path);
+            IndexReader reader = DirectoryReader.open(directory);
+            IndexSearcher searcher = new IndexSearcher(reader);
+            HitMetadata metadata = new HitMetadata(reader);
+            long timer2 = System.nanoTime();
+            List<String> literals = literals(metadata, nrLiterals);
+            FuzzySearch.search(searcher, metadata, literals.get(0), PlanConfig.TOPK);
+            long timer3 = System.nanoTime();
+            long[] latencies = new long[NR_ROUNDS * literals.size()];
+            int nrLatencies = 0;
+            for (int roundCtr = 0; roundCtr < NR_WARMUPS + NR_ROUNDS; roundCtr++) {
+                for (String literal: literals) {
+                    long timer = System.nanoTime();
+                    FuzzySearch.search(searcher, metadata, literal, PlanConfig.TOPK);
+                    if (roundCtr >= NR_WARMUPS) {
+                        latencies[nrLatencies++] = System.nanoTime() - timer;
+                    }
+                }
+            }
+            Arrays.sort(latencies, 0, nrLatencies);
+            System.out.println(storage
+                    + "\t" + String.format("%.1f", (timer2 - timer1) / 1e6)
+                    + "\t" + String.format("%.1f", (timer3 - timer2) / 1e6)
+                    + "\t" + String.format("%.1f", percentile(latencies, nrLatencies, 0.5) / 1e3)
+                    + "\t" + String.format("%.1f", percentile(latencies, nrLatencies, 0.99) / 1e3)
+                    + "\t" + String.format("%.1f", latencies[nrLatencies - 1] / 1e3));
+            reader.close();
+            directory.close();
+        }
+    }
+
+    /**
+     * Literals sampled from the indexed values.
+     */
+    static List<String> literals(HitMetadata metadata, int nrLiterals) {
+        Random random = new Random(0);
+        List<String> literals = new ArrayList<>(nrLiterals);
+        while (literals.size() < nrLiterals) {
+            String text = metadata.text(random.nextInt(metadata.size()));
+            if (text != null && !text.trim().isEmpty()) {
+                literals.add(text.trim());
+            }
+        }
+        return literals;
+    }
+
+    private static long percentile(long[] sorted, int size, double fraction) {
+        int index = (int) Math.ceil(fraction * size) - 1;
+        return sorted[Math.max(0, Math.min(size - 1, index))];
+    }
+}
@@ -0,0 +1,172 @@
+package benchmarks;
+
+import config.PlanConfig;
+import matching.FuzzySearch;
+import matching.HitMetadata;
+import matching.MatchEngine;
+import matching.indexing.Indexer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static matching.FuzzyIndex.INDEX_DIR;
+import static matching.FuzzyIndex.PHONETIC_DIR;
+
+/**
+ * Compare the engines generating fuzzy search candidates.
+ * Literals are indexed values with up to two random edits.
+ * For each engine, the benchmark reports the mean and 99th
+ * percentile latency of uncached searches, the fraction of
+ * literals whose original value is among the matches and
+ * the overlap of the matches with those of fuzzy queries.
+ * The index has to be built with n-grams, see IndexConfig.
+ *
+ * Usage: MatchEngineBenchmark [dataset] [number of literals]
+ */
+public class MatchEngineBenchmark {
+    /**
+     * Number of rounds before measuring.
+     */
+    public final static int NR_WARMUPS = 2;
+    /**
+     * Number of measured rounds.
+     */
+    public final static int NR_ROUNDS = 5;
+    /**
+     * Largest number of random edits of a literal.
+     */
+    public final static int MAX_EDITS = 2;
+
+    public static void main(String[] args) throws IOException {
+        String dataset = args.length > 0 ? args[0] : "sample_311";
+        int nrLiterals = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        String searchDir = (Indexer.Phonetic ? PHONETIC_DIR : INDEX_DIR) + "/" + dataset;
+        IndexReader reader = DirectoryReader.open(FSDirectory.open(Paths.get(searchDir)));
+        IndexSearcher searcher = new IndexSearcher(reader);
+        HitMetadata metadata = new HitMetadata(reader);
+        if (!metadata.hasGrams()) {
+            System.out.println("Index of " + dataset + " has no n-grams, rebuild it to compare engines");
+            reader.close();
+            return;
+        }
+        // Perturb values sampled from the index
+        Random random = new Random(0);
+        int[] sources = new int[nrLiterals];
+        String[] literals = new String[nrLiterals];
+        for (int literalCtr = 0; literalCtr < nrLiterals; ) {
+            int doc = random.nextInt(metadata.size());
+            String text = metadata.text(doc);
+            if (text != null && !text.trim().isEmpty()) {
+                sources[literalCtr] = doc;
+                literals[literalCtr] = perturb(text.trim().toLowerCase(), random.nextInt(MAX_EDITS + 1), random);
+                literalCtr++;
+            }
+        }
+        int topK = PlanConfig.TOPK;
+        Map<MatchEngine, ScoreDoc[][]> engineHits = new EnumMap<>(MatchEngine.class);
+        System.out.println("Engine\tMeanMicros\tP99Micros\tSourceFound\tOverlapWithFuzzy");
+        for (MatchEngine engine: MatchEngine.values()) {
+            ScoreDoc[][] hits = new ScoreDoc[nrLiterals][];
+            long[] latencies = new long[NR_ROUNDS * nrLiterals];
+            int nrLatencies = 0;
+            long totalNanos = 0;
+            for (int roundCtr = 0; roundCtr < NR_WARMUPS + NR_ROUNDS; roundCtr++) {
+                for (int literalCtr = 0; literalCtr < nrLiterals; literalCtr++) {
+                    long timer = System.nanoTime();
+                    hits[literalCtr] = FuzzySearch.search(searcher, metadata, literals[literalCtr], topK, engine);
+                    long nanos = System.nanoTime() - timer;
+                    if (roundCtr >= NR_WARMUPS) {
+                        latencies[nrLatencies++] = nanos;
+                        totalNanos += nanos;
+                    }
+                }
+            }
+            engineHits.put(engine, hits);
+            Arrays.sort(latencies, 0, nrLatencies);
+            int nrFound = 0;
+            for (int literalCtr = 0; literalCtr < nrLiterals; literalCtr++) {
+                for (ScoreDoc hit: hits[literalCtr]) {
+                    if (sameValue(metadata, hit.doc, sources[literalCtr])) {
+                        nrFound++;
+                        break;
+                    }
+                }
+            }
+            System.out.println(engine
+                    + "\t" + String.format("%.1f", totalNanos / 1e3 / nrLatencies)
+                    + "\t" + String.format("%.1f", latencies[(int) Math.ceil(0.99 * nrLatencies) - 1] / 1e3)
+                    + "\t" + String.format("%.3f", (nrFound + 0.0) / nrLiterals)
+                    + "\t" + String.format("%.3f", overlap(engineHits.get(MatchEngine.FUZZY), hits)));
+        }
+        reader.close();
+    }
+
+    /**
+     * Apply random substitutions, insertions, deletions and
+     * transpositions of lower case letters to the value.
+     */
+    static String perturb(String value, int nrEdits, Random random) {
+        StringBuilder builder = new StringBuilder(value);
+        for (int editCtr = 0; editCtr < nrEdits && builder.length() > 1; editCtr++) {
+            int position = random.nextInt(builder.length());
+            char letter = (char) ('a' + random.nextInt(26));
+            switch (random.nextInt(4)) {
+                case 0:
+                    builder.setCharAt(position, letter);
+                    break;
+                case 1:
+                    builder.insert(position, letter);
+                    break;
+                case 2:
+                    builder.deleteCharAt(position);
+                    break;
+                default:
+                    if (position + 1 < builder.length()) {
+                        char next = builder.charAt(position + 1);
+                        builder.setCharAt(position + 1, builder.charAt(position));
+                        builder.setCharAt(position, next);
+                    }
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Whether two documents hold the same value of the same column.
+     */
+    private static boolean sameValue(HitMetadata metadata, int doc1, int doc2) {
+        return doc1 == doc2 || (Objects.equals(metadata.column(doc1), metadata.column(doc2))
+                && Objects.equals(metadata.text(doc1), metadata.text(doc2)));
+    }
+
+    /**
+     * Mean fraction of the reference matches of a literal that are also returned.
+     */
+    private static double overlap(ScoreDoc[][] reference, ScoreDoc[][] hits) {
+        double total = 0;
+        for (int literalCtr = 0; literalCtr < hits.length; literalCtr++) {
+            Set<Integer> referenceDocs = new HashSet<>();
+            for (ScoreDoc hit: reference[literalCtr]) {
+                referenceDocs.add(hit.doc);
+            }
+            if (referenceDocs.isEmpty()) {
+                total += 1;
+                continue;
+            }
+            int nrShared = 0;
+            for (ScoreDoc hit: hits[literalCtr]) {
+                if (referenceDocs.contains(hit.doc)) {
+                    nrShared++;
+                }
+            }
+            total += (nrShared + 0.0) / referenceDocs.size();
+        }
+        return total / hits.length;
+    }
+}
@@ -0,0 +1,127 @@
+package benchmarks;
+
+import connector.ModelClient;
+import io.javalin.Javalin;
+import server.StubModelServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/**
+ * Compare querying the text-to-SQL model through a curl
+ * process per sentence, the way the servlet did before,
+ * with the pooled model client. Both query the stand-in
+ * model of StubModelServer from the given number of
+ * concurrent sessions, and the throughput and the median
+ * and 99th percentile latency are reported.
+ *
+ * Usage: ModelClientBenchmark [number of requests] [concurrency] [delay ms]
+ */
+public class ModelClientBenchmark {
+    /**
+     * Port of the stand-in model.
+     */
+    public final static int PORT = 5051;
+    /**
+     * Number of requests before measuring.
+     */
+    public final static int NR_WARMUPS = 50;
+
+    /**
+     * Sends one sentence to the model and returns its response.
+     */
+    interface Translator {
+        String translate(String dataset, String sentence) throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int nrRequests = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        long delayMillis = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        Javalin stub = StubModelServer.start(PORT, "city", delayMillis);
+        ModelClient client = new ModelClient("localhost:" + PORT);
+        try {
+            System.out.println("Mode\tRequests\tConcurrency\tRequestsPerSecond\tP50Millis\tP99Millis");
+            run("curl", ModelClientBenchmark::curl, nrRequests, concurrency);
+            run("client", client::translate, nrRequests, concurrency);
+        } finally {
+            client.close();
+            stub.stop();
+        }
+    }
+
+    /**
+     * Send the requests from concurrent sessions and print the measurements.
+     */
+    static void run(String mode, Translator translator, int nrRequests, int concurrency) throws Exception {
+        ExecutorService sessions = Executors.newFixedThreadPool(concurrency);
+        try {
+            send(sessions, translator, NR_WARMUPS);
+            long timer = System.nanoTime();
+            long[] latencies = send(sessions, translator, nrRequests);
+            long totalNanos = System.nanoTime() - timer;
+            Arrays.sort(latencies);
+            System.out.println(mode
+                    + "\t" + nrRequests
+                    + "\t" + concurrency
+                    + "\t" + String.format("%.1f", nrRequests / (totalNanos / 1e9))
+                    + "\t" + String.format("%.2f", percentile(latencies, 0.5) / 1e6)
+                    + "\t" + String.format("%.2f", percentile(latencies, 0.99) / 1e6));
+        } finally {
+            sessions.shutdown();
+        }
+    }
+
+    /**
+     * Send the requests and wait for all responses.
+     *
+     * @return          latency of each request (ns)
+     */
+    static long[] send(ExecutorService sessions, Translator translator, int nrRequests) throws Exception {
+        List<Future<Long>> futures = new ArrayList<>(nrRequests);
+        for (int requestCtr = 0; requestCtr < nrRequests; requestCtr++) {
+            String sentence = "sentence " + requestCtr;
+            futures.add(sessions.submit(() -> {
+                long timer = System.nanoTime();
+                String result = translator.translate("sample_311", sentence);
+                if (!result.contains("sql")) {
+                    throw new IOException("Unexpected response: " + result);
+                }
+                return System.nanoTime() - timer;
+            }));
+        }
+        long[] latencies = new long[nrRequests];
+        for (int requestCtr = 0; requestCtr < nrRequests; requestCtr++) {
+            latencies[requestCtr] = futures.get(requestCtr).get();
+        }
+        return latencies;
+    }
+
+    /**
+     * Query the model by a curl process, the way the servlet did before the model client.
+     */
+    static String curl(String dataset, String sentence) throws IOException {
+        List<String> commands = new ArrayList<>(6);
+        commands.add("curl");
+        commands.add("-F");
+        commands.add("t=" + dataset);
+        commands.add("-F");
+        commands.add("q=" + sentence);
+        commands.add("localhost:" + PORT);
+        Process process = new ProcessBuilder(commands).start();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            return reader.lines().collect(Collectors.joining("\n"));
+        }
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
@@ -0,0 +1,206 @@
+package benchmarks;
+
+import planning.viz.DataPoint;
+import planning.viz.PlanModel;
+import planning.viz.Plot;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Micro benchmark of building the planning problem from
+ * query candidates. Compares the way planners built it
+ * before the planning model (plot objects in a hash map
+ * keyed by boxed plot IDs, followed by the padded query
+ * and plot indexes of the ILP planners) with the model,
+ * with and without materializing plot objects. Reports
+ * the time and allocated bytes per build and whether
+ * the indexes of both agree.
+ *
+ * Usage: PlanModelBenchmark [number of queries] [number of dimensions] [values per dimension]
+ */
+public class PlanModelBenchmark {
+    /**
+     * Number of rounds before measuring.
+     */
+    public final static int NR_WARMUPS = 20;
+    /**
+     * Number of measured rounds.
+     */
+    public final static int NR_ROUNDS = 100;
+
+    /**
+     * Generate distinct data points, skewed towards low indices
+     * as the top candidates of a query.
+     */
+    static DataPoint[] dataPoints(int nrQueries, int[] maxIndices, Random random) {
+        int nrDims = maxIndices.length;
+        Set<List<Integer>> seen = new HashSet<>();
+        DataPoint[] dataPoints = new DataPoint[nrQueries];
+        int nrPoints = 0;
+        while (nrPoints < nrQueries) {
+            int[] vector = new int[nrDims];
+            List<Integer> key = new ArrayList<>(nrDims);
+            for (int dimCtr = 0; dimCtr < nrDims; dimCtr++) {
+                double skewed = Math.pow(random.nextDouble(), 2);
+                vector[dimCtr] = (int) (skewed * maxIndices[dimCtr]);
+                key.add(vector[dimCtr]);
+            }
+            if (seen.add(key)) {
+                dataPoints[nrPoints] = new DataPoint(vector, random.nextDouble() / nrQueries, nrPoints);
+                nrPoints++;
+            }
+        }
+        return dataPoints;
+    }
+
+    /**
+     * Build the plots and indexes as the planners did before the model.
+     */
+    static int[][] legacyBuild(DataPoint[] scorePoints, int[] maxIndices) {
+        int nrQueries = scorePoints.length;
+        Map<Integer, Plot> idToPlots = new HashMap<>(nrQueries);
+        int nrDims = scorePoints[0].vector.length;
+        int[][] plots = new int[nrQueries][nrDims];
+        int[] cardinals = new int[nrDims+1];
+        cardinals[0] = 1;
+        for (int dimCtr = 0; dimCtr < nrDims; dimCtr++) {
+            cardinals[dimCtr + 1] = cardinals[dimCtr] * maxIndices[dimCtr];
+        }
+        int maxQueries = 0;
+        for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
+            DataPoint dataPoint = scorePoints[queryCtr];
+            int[] vector = dataPoint.vector;
+            int dataPointID = 0;
+            for (int valueCtr = 0; valueCtr < nrDims; valueCtr++) {
+                dataPointID += cardinals[valueCtr] * vector[valueCtr];
+            }
+            for (int valueCtr = 0; valueCtr < nrDims; valueCtr++) {
+                int plotID = dataPointID - cardinals[valueCtr] * vector[valueCtr];
+                plots[queryCtr][valueCtr] = plotID;
+                if (!idToPlots.containsKey(plotID)) {
+                    Plot newPlot = new Plot(plotID, valueCtr);
+                    newPlot.addDataPoint(dataPoint);
+                    idToPlots.put(plotID, newPlot);
+                    maxQueries = Math.max(maxQueries, newPlot.nrDataPoints);
+                }
+                else {
+                    Plot curPlot = idToPlots.get(plotID);
+                    curPlot.addDataPoint(dataPoint);
+                    maxQueries = Math.max(maxQueries, curPlot.nrDataPoints);
+                }
+            }
+        }
+        int[] removePlots = new int[nrDims];
+        for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
+            int nrSingles = 0;
+            Arrays.fill(removePlots, -1);
+            int firstPlotID = plots[queryCtr][0];
+            for (int valueCtr = 0; valueCtr < nrDims; valueCtr++) {
+                int plotID = plots[queryCtr][valueCtr];
+                if (idToPlots.get(plotID).nrDataPoints == 1) {
+                    removePlots[valueCtr] = plotID;
+                    plots[queryCtr][valueCtr] = -1;
+                    nrSingles++;
+                }
+            }
+            if (nrSingles == nrDims) {
+                removePlots[0] = -1;
+                plots[queryCtr][0] = firstPlotID;
+            }
+            for (Integer removeID: removePlots) {
+                idToPlots.remove(removeID);
+            }
+        }
+        int nrPlots = idToPlots.size();
+        Map<Integer, Integer> plotIDToVarID = new HashMap<>(nrPlots);
+        int[][] plotsToQueries = new int[nrPlots][maxQueries+1];
+        for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
+            for (int valueCtr = 0; valueCtr < nrDims; valueCtr++) {
+                int plotID = plots[queryCtr][valueCtr];
+                if (plotID >= 0) {
+                    if (!plotIDToVarID.containsKey(plotID)) {
+                        plotIDToVarID.put(plotID, plotIDToVarID.size());
+                    }
+                    int variableID = plotIDToVarID.get(plotID);
+                    int nrQueriesInPlot = plotsToQueries[variableID][0];
+                    plotsToQueries[variableID][nrQueriesInPlot+1] = queryCtr;
+                    plotsToQueries[variableID][0]++;
+                }
+            }
+        }
+        return plotsToQueries;
+    }
+
+    /**
+     * Whether the model indexes the same queries per plot as the legacy build.
+     */
+    static boolean agrees(int[][] plotsToQueries, PlanModel model) {
+        if (plotsToQueries.length != model.nrPlots) {
+            return false;
+        }
+        for (int plotCtr = 0; plotCtr < model.nrPlots; plotCtr++) {
+            int nrQueries = plotsToQueries[plotCtr][0];
+            if (nrQueries != model.plotSize(plotCtr)) {
+                return false;
+            }
+            for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
+                if (plotsToQueries[plotCtr][queryCtr + 1] != model.plotQueries[model.plotOffsets[plotCtr] + queryCtr]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void report(String name, long nanos, long bytes) {
+        System.out.println(name + "\t" + String.format("%.1f", nanos / 1000.0 / NR_ROUNDS)
+                + "\t" + String.format("%.1f", bytes / 1024.0 / NR_ROUNDS));
+    }
+
+    public static void main(String[] args) {
+        int nrQueries = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int nrDims = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int nrValues = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int[] maxIndices = new int[nrDims];
+        Arrays.fill(maxIndices, nrValues);
+        DataPoint[] dataPoints = dataPoints(nrQueries, maxIndices, new Random(0));
+        long[] nanos = new long[3];
+        long[] bytes = new long[3];
+        long checksum = 0;
+        boolean agrees = true;
+        for (int roundCtr = 0; roundCtr < NR_WARMUPS + NR_ROUNDS; roundCtr++) {
+            long bytes1 = allocatedBytes();
+            long timer1 = System.nanoTime();
+            int[][] plotsToQueries = legacyBuild(dataPoints, maxIndices);
+            long timer2 = System.nanoTime();
+            long bytes2 = allocatedBytes();
+            PlanModel model = PlanModel.build(dataPoints, maxIndices);
+            long timer3 = System.nanoTime();
+            long bytes3 = allocatedBytes();
+            List<Plot> plots = PlanModel.build(dataPoints, maxIndices).plots();
+            long timer4 = System.nanoTime();
+            long bytes4 = allocatedBytes();
+            checksum += plotsToQueries.length + model.nrPlots + plots.size();
+            agrees &= agrees(plotsToQueries, model);
+            if (roundCtr >= NR_WARMUPS) {
+                nanos[0] += timer2 - timer1;
+                nanos[1] += timer3 - timer2;
+                nanos[2] += timer4 - timer3;
+                bytes[0] += bytes2 - bytes1;
+                bytes[1] += bytes3 - bytes2;
+                bytes[2] += bytes4 - bytes3;
+            }
+        }
+        System.out.println("Build\tMicros\tKB");
+        report("Legacy", nanos[0], bytes[0]);
+        report("Model", nanos[1], bytes[1]);
+        report("Model+plots", nanos[2], bytes[2]);
+        System.out.println("Indexes agree: " + agrees + "\tChecksum: " + checksum);
+    }
+}
@@ -1,11 +1,10 @@
 package benchmarks;
 
-import config.PlanConfig;
+import config.PlanContext;
 import connector.DBConnector;
 import connector.PSQLConnector;
 import planning.query.QueryFactory;
 import planning.viz.*;
-import stats.PlanStats;
 import stats.ProcessingStats;
 
 import java.io.*;
@@ -15,13 +14,18 @@ public class PlannerBenchmark {
     public static String dataset = "sample_311";
     public static Map<String, String> columnsMap = new HashMap<>();
     public final static int NR_CASES = 1;
+    /**
+     * Untimed and timed rounds of comparing eager and lazy greedy planning.
+     */
+    public final static int NR_WARMUPS = 3;
+    public final static int NR_ROUNDS = 5;
 
 
-    public static boolean runMUVEQuery(String query, boolean isStatic) {
+    public static boolean runMUVEQuery(String query, boolean isStatic, PlanContext context) {
         try {
-            QueryFactory queryFactory = new QueryFactory(query);
+            QueryFactory queryFactory = new QueryFactory(query, context);
             PlotGreedyPlanner.plan(queryFactory.queries, queryFactory.nrDistinctValues,
-                    PlanConfig.NR_ROWS, PlanConfig.R, queryFactory, isStatic);
+                    context.nrRows, context.R, queryFactory, isStatic);
             return true;
 
         } catch (Exception exception) {
@@ -30,12 +34,12 @@ public class PlannerBenchmark {
         }
     }
 
-    public static boolean runMUVEExecuteQuery(String query, boolean isStatic) {
+    public static boolean runMUVEExecuteQuery(String query, boolean isStatic, PlanContext context) {
         try {
-            QueryFactory queryFactory = new QueryFactory(query);
+            QueryFactory queryFactory = new QueryFactory(query, context);
             List<Map<Plot, List<DataPoint>>> optimalPlan =
                     PlotGreedyPlanner.plan(queryFactory.queries, queryFactory.nrDistinctValues,
-                    PlanConfig.NR_ROWS, PlanConfig.R, queryFactory, isStatic);
+                    context.nrRows, context.R, queryFactory, isStatic);
             List<DataPoint> bestDataPoints = new ArrayList<>();
             optimalPlan.forEach(map -> map.values().forEach(bestDataPoints::addAll));
             String mergedQuery = queryFactory.mergeQueries(bestDataPoints, query);
@@ -52,11 +56,102 @@ public class PlannerBenchmark {
         }
     }
 
-    public static boolean runILPQuery(String query) {
+    /**
+     * Plan the query greedily in eager and lazy mode on the same candidates.
+     * Both modes are planned in each round, alternating which runs first,
+     * and the rounds after the warm-up rounds are timed.
+     *
+     * @param isStatic  whether the plots are static
+     * @param nanos     planning nanoseconds of the eager and lazy mode per timed round
+     * @return          whether both modes produce the same plan, null on failure
+     */
+    public static Boolean runLazyGreedyQuery(String query, PlanContext context, boolean isStatic, long[] nanos) {
         try {
-            QueryFactory queryFactory = new QueryFactory(query);
+            QueryFactory queryFactory = new QueryFactory(query, context);
+            boolean identical = true;
+            long[] totalNanos = new long[2];
+            for (int roundCtr = 0; roundCtr < NR_WARMUPS + NR_ROUNDS; roundCtr++) {
+                String[] signatures = new String[2];
+                double[] waitTimes = new double[2];
+                for (int modeCtr = 0; modeCtr < 2; modeCtr++) {
+                    // Eager mode first in even rounds, lazy mode first in odd rounds
+                    int mode = (modeCtr + roundCtr) % 2;
+                    for (DataPoint dataPoint: queryFactory.queries) {
+                        dataPoint.highlighted = false;
+                    }
+                    long timer1 = System.nanoTime();
+                    List<Map<Plot, List<DataPoint>>> plan = PlotGreedyPlanner.plan(queryFactory.queries,
+                            queryFactory.nrDistinctValues, context.nrRows, context.R, queryFactory,
+                            isStatic, mode == 1);
+                    long timer2 = System.nanoTime();
+                    if (roundCtr >= NR_WARMUPS) {
+                        totalNanos[mode] += timer2 - timer1;
+                    }
+                    signatures[mode] = planSignature(plan);
+                    waitTimes[mode] = context.stats.waitTime;
+                }
+                identical &= signatures[0].equals(signatures[1]) && waitTimes[0] == waitTimes[1];
+            }
+            nanos[0] += totalNanos[0] / NR_ROUNDS;
+            nanos[1] += totalNanos[1] / NR_ROUNDS;
+            return identical;
+        } catch (Exception exception) {
+            System.out.println("No similar queries!");
+            return null;
+        }
+    }
+
+    /**
+     * Plots, queries and highlights of each row, independent of map order.
+     */
+    static String planSignature(List<Map<Plot, List<DataPoint>>> plan) {
+        StringBuilder signature = new StringBuilder();
+        for (Map<Plot, List<DataPoint>> resultsPerRow: plan) {
+            List<String> plots = new ArrayList<>(resultsPerRow.size());
+            resultsPerRow.forEach((plot, dataPoints) -> {
+                StringBuilder plotSignature = new StringBuilder().append(plot.plotID).append(':');
+                for (DataPoint dataPoint: dataPoints) {
+                    plotSignature.append(dataPoint.id).append(dataPoint.highlighted ? "*," : ",");
+                }
+                plots.add(plotSignature.toString());
+            });
+            Collections.sort(plots);
+            signature.append(plots).append('\n');
+        }
+        return signature.toString();
+    }
+
+    public static boolean runBranchBoundQuery(String query, PlanContext context) {
+        try {
+            QueryFactory queryFactory = new QueryFactory(query, context);
+            BranchBoundPlanner.plan(queryFactory.queries, queryFactory.nrDistinctValues,
+                    context.nrRows, context.R, queryFactory);
+            return true;
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            System.out.println("Error when running queries!");
+            return false;
+        }
+    }
+
+    public static boolean runKnapsackQuery(String query, PlanContext context) {
+        try {
+            QueryFactory queryFactory = new QueryFactory(query, context);
+            KnapsackPlanner.plan(queryFactory.queries, queryFactory.nrDistinctValues,
+                    context.nrRows, context.R, queryFactory);
+            return true;
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            System.out.println("Error when running queries!");
+            return false;
+        }
+    }
+
+    public static boolean runILPQuery(String query, PlanContext context) {
+        try {
+            QueryFactory queryFactory = new QueryFactory(query, context);
             WaitTimePlanner.plan(queryFactory.queries, queryFactory.nrDistinctValues,
-                    PlanConfig.NR_ROWS, PlanConfig.R, queryFactory);
+                    context.nrRows, context.R, queryFactory);
             return true;
         } catch (Exception exception) {
             exception.printStackTrace();
@@ -65,11 +160,11 @@ public class PlannerBenchmark {
         }
     }
 
-    public static boolean runGUROBIQuery(String query) {
+    public static boolean runGUROBIQuery(String query, PlanContext context) {
         try {
-            QueryFactory queryFactory = new QueryFactory(query);
+            QueryFactory queryFactory = new QueryFactory(query, context);
             WaitTimeGurobiPlanner.plan(queryFactory.queries, queryFactory.nrDistinctValues,
-                    PlanConfig.NR_ROWS, PlanConfig.R, queryFactory);
+                    context.nrRows, context.R, queryFactory);
             return true;
         } catch (Exception exception) {
             exception.printStackTrace();
@@ -78,12 +173,12 @@ public class PlannerBenchmark {
         }
     }
 
-    public static boolean runGUROBIExecuteQuery(String query) {
+    public static boolean runGUROBIExecuteQuery(String query, PlanContext context) {
         try {
-            QueryFactory queryFactory = new QueryFactory(query);
+            QueryFactory queryFactory = new QueryFactory(query, context);
             List<Map<Plot, List<DataPoint>>> optimalPlan =
                     WaitTimeGurobiPlanner.plan(queryFactory.queries, queryFactory.nrDistinctValues,
-                    PlanConfig.NR_ROWS, PlanConfig.R, queryFactory);
+                    context.nrRows, context.R, queryFactory);
             List<DataPoint> bestDataPoints = new ArrayList<>();
             optimalPlan.forEach(map -> map.values().forEach(bestDataPoints::addAll));
             String mergedQuery = queryFactory.mergeQueries(bestDataPoints, query);
@@ -102,7 +197,7 @@ public class PlannerBenchmark {
 
     public static boolean runMergeQuery(String query) {
         try {
-            QueryFactory queryFactory = new QueryFactory(query);
+            QueryFactory queryFactory = new QueryFactory(query, PlanContext.fromConfig());
             String mergedQuery = queryFactory.mergeQueries(Arrays.asList(queryFactory.queries), query);
             long timer1 = System.currentTimeMillis();
             DBConnector connection = PSQLConnector.getConnector();
@@ -120,7 +215,7 @@ public class PlannerBenchmark {
     public static boolean runSplitQuery(String query) {
         String sql = null;
         try {
-            QueryFactory queryFactory = new QueryFactory(query);
+            QueryFactory queryFactory = new QueryFactory(query, PlanContext.fromConfig());
 
             long timer1 = System.currentTimeMillis();
             for (String newSQL: queryFactory.splitQueries(query)) {
@@ -139,9 +234,7 @@ public class PlannerBenchmark {
     }
 
     public static void benchmarkResolution(int sys) throws IOException {
-        PlanConfig.PROCESSING_WEIGHT = 0;
-        PlanConfig.NR_ROWS = 1;
-        PlanConfig.TOPK = 20;
+        PlanContext baseContext = PlanContext.fromConfig().withProcessingWeight(0).withNrRows(1).withTopK(20);
         PrintWriter printWriter;
         if (sys == 0) {
             printWriter = new PrintWriter(dataset + "_varyResolutions_ilp.csv");
@@ -157,22 +250,22 @@ public class PlannerBenchmark {
         printWriter.println("Query\tResolutions\tNrPlots\tNrPredicates\tWaitTime\tInitMillis" +
                 "\tBuildMillis\tOptimizeMillis\tIsTimeout");
         for (int resolutionCtr = 0; resolutionCtr < resolutions.length; resolutionCtr++) {
-            PlanConfig.R = resolutions[resolutionCtr];
             int queryCtr = 0;
             for(String query: readQueries()) {
                 System.out.println(query);
-                boolean success = sys == 0 ? runGUROBIQuery(query) : runMUVEQuery(query, sys == 1);
+                PlanContext context = baseContext.withR(resolutions[resolutionCtr]);
+                boolean success = sys == 0 ? runGUROBIQuery(query, context) : runMUVEQuery(query, sys == 1, context);
                 queryCtr++;
                 if (success) {
                     printWriter.print(queryCtr + "\t");
-                    printWriter.print(PlanConfig.R + "\t");
-                    printWriter.print(PlanStats.nrPlots + "\t");
-                    printWriter.print(PlanStats.nrPredicates + "\t");
-                    printWriter.print(PlanStats.waitTime + "\t");
-                    printWriter.print(PlanStats.initMillis + "\t");
-                    printWriter.print(PlanStats.buildMillis + "\t");
-                    printWriter.print(PlanStats.optimizeMillis + "\t");
-                    printWriter.println(PlanStats.isTimeout);
+                    printWriter.print(context.R + "\t");
+                    printWriter.print(context.stats.nrPlots + "\t");
+                    printWriter.print(context.stats.nrPredicates + "\t");
+                    printWriter.print(context.stats.waitTime + "\t");
+                    printWriter.print(context.stats.initMillis + "\t");
+                    printWriter.print(context.stats.buildMillis + "\t");
+                    printWriter.print(context.stats.optimizeMillis + "\t");
+                    printWriter.println(context.stats.isTimeout);
                 }
             }
         }
@@ -180,9 +273,7 @@ public class PlannerBenchmark {
     }
 
     public static void benchmarkRows(int sys) throws IOException {
-        PlanConfig.PROCESSING_WEIGHT = 0;
-        PlanConfig.TOPK = 20;
-        PlanConfig.R = 300;
+        PlanContext baseContext = PlanContext.fromConfig().withProcessingWeight(0).withTopK(20).withR(300);
         PrintWriter printWriter;
         if (sys == 0) {
             printWriter = new PrintWriter(dataset + "_varyRows_ilp.csv");
@@ -190,6 +281,12 @@ public class PlannerBenchmark {
         else if (sys == 1) {
             printWriter = new PrintWriter(dataset + "_varyRows_greedy.csv");
         }
+        else if (sys == 4) {
+            printWriter = new PrintWriter(dataset + "_varyRows_bnb.csv");
+        }
+        else if (sys == 5) {
+            printWriter = new PrintWriter(dataset + "_varyRows_dp.csv");
+        }
         else {
             printWriter = new PrintWriter(dataset + "_varyRows_opt.csv");
         }
@@ -198,22 +295,24 @@ public class PlannerBenchmark {
         printWriter.println("Query\tRows\tNrPlots\tNrPredicates\tWaitTime\tInitMillis" +
                 "\tBuildMillis\tOptimizeMillis\tIsTimeout");
         for (int rowCtr = 0; rowCtr < rows.length; rowCtr++) {
-            PlanConfig.NR_ROWS = rows[rowCtr];
             int queryCtr = 0;
             for(String query: readQueries()) {
                 System.out.println(query);
-                boolean success = sys == 0 ? runGUROBIQuery(query) : runMUVEQuery(query, sys == 1);
+                PlanContext context = baseContext.withNrRows(rows[rowCtr]);
+                boolean success = sys == 0 ? runGUROBIQuery(query, context) :
+                        sys == 4 ? runBranchBoundQuery(query, context) :
+                        sys == 5 ? runKnapsackQuery(query, context) : runMUVEQuery(query, sys == 1, context);
                 queryCtr++;
                 if (success) {
                     printWriter.print(queryCtr + "\t");
-                    printWriter.print(PlanConfig.NR_ROWS + "\t");
-                    printWriter.print(PlanStats.nrPlots + "\t");
-                    printWriter.print(PlanStats.nrPredicates + "\t");
-                    printWriter.print(PlanStats.waitTime + "\t");
-                    printWriter.print(PlanStats.initMillis + "\t");
-                    printWriter.print(PlanStats.buildMillis + "\t");
-                    printWriter.print(PlanStats.optimizeMillis + "\t");
-                    printWriter.println(PlanStats.isTimeout);
+                    printWriter.print(context.nrRows + "\t");
+                    printWriter.print(context.stats.nrPlots + "\t");
+                    printWriter.print(context.stats.nrPredicates + "\t");
+                    printWriter.print(context.stats.waitTime + "\t");
+                    printWriter.print(context.stats.initMillis + "\t");
+                    printWriter.print(context.stats.buildMillis + "\t");
+                    printWriter.print(context.stats.optimizeMillis + "\t");
+                    printWriter.println(context.stats.isTimeout);
                 }
             }
         }
@@ -221,9 +320,7 @@ public class PlannerBenchmark {
     }
 
     public static void benchmarkWeights(int sys) throws IOException {
-        PlanConfig.TOPK = 20;
-        PlanConfig.R = 300;
-        PlanConfig.NR_ROWS = 1;
+        PlanContext baseContext = PlanContext.fromConfig().withTopK(20).withR(300).withNrRows(1);
         PrintWriter printWriter;
         if (sys == 0) {
             printWriter = new PrintWriter(dataset + "_varyWeights_ilp.csv");
@@ -239,22 +336,22 @@ public class PlannerBenchmark {
         printWriter.println("Query\tRows\tNrPlots\tNrPredicates\tWaitTime\tInitMillis" +
                 "\tBuildMillis\tOptimizeMillis\tIsTimeout");
         for (int weightCtr = 0; weightCtr < weights.length; weightCtr++) {
-            PlanConfig.PROCESSING_WEIGHT = weights[weightCtr];
             int queryCtr = 0;
             for(String query: readQueries()) {
                 System.out.println(query);
-                boolean success = sys == 0 ? runGUROBIQuery(query) : runMUVEQuery(query, sys == 1);
+                PlanContext context = baseContext.withProcessingWeight(weights[weightCtr]);
+                boolean success = sys == 0 ? runGUROBIQuery(query, context) : runMUVEQuery(query, sys == 1, context);
                 queryCtr++;
                 if (success) {
                     printWriter.print(queryCtr + "\t");
-                    printWriter.print(PlanConfig.NR_ROWS + "\t");
-                    printWriter.print(PlanStats.nrPlots + "\t");
-                    printWriter.print(PlanStats.nrPredicates + "\t");
-                    printWriter.print(PlanStats.waitTime + "\t");
-                    printWriter.print(PlanStats.initMillis + "\t");
-                    printWriter.print(PlanStats.buildMillis + "\t");
-                    printWriter.print(PlanStats.optimizeMillis + "\t");
-                    printWriter.println(PlanStats.isTimeout);
+                    printWriter.print(context.nrRows + "\t");
+                    printWriter.print(context.stats.nrPlots + "\t");
+                    printWriter.print(context.stats.nrPredicates + "\t");
+                    printWriter.print(context.stats.waitTime + "\t");
+                    printWriter.print(context.stats.initMillis + "\t");
+                    printWriter.print(context.stats.buildMillis + "\t");
+                    printWriter.print(context.stats.optimizeMillis + "\t");
+                    printWriter.println(context.stats.isTimeout);
                 }
             }
         }
@@ -316,10 +413,8 @@ public class PlannerBenchmark {
     }
 
     public static void benchMarkProcessing(int sys) throws IOException {
-        PlanConfig.PROCESSING_WEIGHT = 0;
-        PlanConfig.TOPK = 20;
-        PlanConfig.R = 900;
-        PlanConfig.NR_ROWS = 1;
+        PlanContext baseContext = PlanContext.fromConfig().withProcessingWeight(0)
+                .withTopK(20).withR(900).withNrRows(1);
         columnsMap.put("applicant_first_name", "Applicant's First Name");
         columnsMap.put("applicant_last_name", "Applicant's Last Name");
         columnsMap.put("street", "Street Name");
@@ -364,31 +459,31 @@ public class PlannerBenchmark {
         printWriter.println("Query\tCost\tNrPlots\tNrPredicates\tWaitTime\tInitMillis" +
                 "\tBuildMillis\tOptimizeMillis\tExecutionMillis\tIsTimeout");
         for (int processingCtr = 0; processingCtr < processing.length; processingCtr++) {
-            PlanConfig.MAX_PROCESSING_COST = processing[processingCtr];
             for (String query: onePredicate) {
                 System.out.println(query);
+                PlanContext context = baseContext.withMaxProcessingCost(processing[processingCtr]);
                 boolean success;
                 if (sys == 0) {
-                    success = runGUROBIExecuteQuery(query);
+                    success = runGUROBIExecuteQuery(query, context);
                 }
                 else if (sys == 1) {
-                    success = runGUROBIExecuteQuery(query);
+                    success = runGUROBIExecuteQuery(query, context);
                 }
                 else {
-                    success = runMUVEExecuteQuery(query, true);
+                    success = runMUVEExecuteQuery(query, true, context);
                 }
                 queryCtr++;
                 if (success) {
                     printWriter.print(queryCtr + "\t");
-                    printWriter.print(PlanConfig.MAX_PROCESSING_COST + "\t");
-                    printWriter.print(PlanStats.nrPlots + "\t");
-                    printWriter.print(PlanStats.nrPredicates + "\t");
-                    printWriter.print(PlanStats.waitTime + "\t");
-                    printWriter.print(PlanStats.initMillis + "\t");
-                    printWriter.print(PlanStats.buildMillis + "\t");
-                    printWriter.print(PlanStats.optimizeMillis + "\t");
+                    printWriter.print(context.maxProcessingCost + "\t");
+                    printWriter.print(context.stats.nrPlots + "\t");
+                    printWriter.print(context.stats.nrPredicates + "\t");
+                    printWriter.print(context.stats.waitTime + "\t");
+                    printWriter.print(context.stats.initMillis + "\t");
+                    printWriter.print(context.stats.buildMillis + "\t");
+                    printWriter.print(context.stats.optimizeMillis + "\t");
                     printWriter.print(ProcessingStats.executeMillis + "\t");
-                    printWriter.println(PlanStats.isTimeout);
+                    printWriter.println(context.stats.isTimeout);
                 }
             }
         }
@@ -397,40 +492,73 @@ public class PlannerBenchmark {
 
     public static void benchmarkTopK(int sys) throws IOException {
         PrintWriter printWriter;
-        PlanConfig.R = 300;
-        PlanConfig.PROCESSING_WEIGHT = 0;
-        PlanConfig.NR_ROWS = 1;
+        PlanContext baseContext = PlanContext.fromConfig().withR(300).withProcessingWeight(0).withNrRows(1);
         if (sys == 0) {
             printWriter = new PrintWriter(dataset + "_varyTopK_ilp.csv");
         }
         else if (sys == 1) {
             printWriter = new PrintWriter(dataset + "_varyTopK_greedy.csv");
         }
+        else if (sys == 3) {
+            printWriter = new PrintWriter(dataset + "_varyTopK_lazy.csv");
+        }
+        else if (sys == 4) {
+            printWriter = new PrintWriter(dataset + "_varyTopK_bnb.csv");
+        }
+        else if (sys == 5) {
+            printWriter = new PrintWriter(dataset + "_varyTopK_dp.csv");
+        }
         else {
             printWriter = new PrintWriter(dataset + "_varyTopK_opt.csv");
         }
-        int[] nrQueriesArray = new int[]{5, 10, 20, 30, 40, 50};
-        printWriter.println("Query\tTopK\tNrPlots\tNrPredicates\tWaitTime\tInitMillis" +
-                "\tBuildMillis\tOptimizeMillis\tIsTimeout");
+        int[] nrQueriesArray = sys == 3 ? new int[]{50, 100, 200, 300, 400, 500} :
+                new int[]{5, 10, 20, 30, 40, 50};
+        if (sys == 3) {
+            // Eager against lazy greedy planning of the same candidates, static and dynamic
+            printWriter.println("Query\tTopK\tIsStatic\tNrPlots\tEagerMillis\tLazyMillis\tIdentical");
+        }
+        else {
+            printWriter.println("Query\tTopK\tNrPlots\tNrPredicates\tWaitTime\tInitMillis" +
+                    "\tBuildMillis\tOptimizeMillis\tIsTimeout");
+        }
         for (int nrQueryCtr = 0; nrQueryCtr < nrQueriesArray.length; nrQueryCtr++) {
-            PlanConfig.TOPK = nrQueriesArray[nrQueryCtr];
-            System.out.println("Evaluating TopK: " + PlanConfig.TOPK);
+            int topK = nrQueriesArray[nrQueryCtr];
+            System.out.println("Evaluating TopK: " + topK);
             int queryCtr = 0;
             for(String query: readQueries()) {
                 System.out.println(query);
-                boolean success = sys == 0 ?
-                        runGUROBIQuery(query) : runMUVEQuery(query, sys == 1);
+                PlanContext context = baseContext.withTopK(topK);
+                if (sys == 3) {
+                    queryCtr++;
+                    for (boolean isStatic: new boolean[]{true, false}) {
+                        long[] nanos = new long[2];
+                        Boolean identical = runLazyGreedyQuery(query, context, isStatic, nanos);
+                        if (identical != null) {
+                            printWriter.print(queryCtr + "\t");
+                            printWriter.print(context.topK + "\t");
+                            printWriter.print(isStatic + "\t");
+                            printWriter.print(context.stats.nrPlots + "\t");
+                            printWriter.print(nanos[0] / 1000000.0 + "\t");
+                            printWriter.print(nanos[1] / 1000000.0 + "\t");
+                            printWriter.println(identical);
+                        }
+                    }
+                    continue;
+                }
+                boolean success = sys == 0 ? runGUROBIQuery(query, context) :
+                        sys == 4 ? runBranchBoundQuery(query, context) :
+                        sys == 5 ? runKnapsackQuery(query, context) : runMUVEQuery(query, sys == 1, context);
                 queryCtr++;
                 if (success) {
                     printWriter.print(queryCtr + "\t");
-                    printWriter.print(PlanConfig.TOPK + "\t");
-                    printWriter.print(PlanStats.nrPlots + "\t");
-                    printWriter.print(PlanStats.nrPredicates + "\t");
-                    printWriter.print(PlanStats.waitTime + "\t");
-                    printWriter.print(PlanStats.initMillis + "\t");
-                    printWriter.print(PlanStats.buildMillis + "\t");
-                    printWriter.print(PlanStats.optimizeMillis + "\t");
-                    printWriter.println(PlanStats.isTimeout);
+                    printWriter.print(context.topK + "\t");
+                    printWriter.print(context.stats.nrPlots + "\t");
+                    printWriter.print(context.stats.nrPredicates + "\t");
+                    printWriter.print(context.stats.waitTime + "\t");
+                    printWriter.print(context.stats.initMillis + "\t");
+                    printWriter.print(context.stats.buildMillis + "\t");
+                    printWriter.print(context.stats.optimizeMillis + "\t");
+                    printWriter.println(context.stats.isTimeout);
                 }
             }
         }
@@ -482,13 +610,10 @@ public class PlannerBenchmark {
                 break;
             default:
                 String query = "SELECT count(*) FROM sample_311 WHERE \"community_board\"='04 QUEENS'";
-                PlanConfig.TOPK = 30;
-                PlanConfig.R = 300;
-                PlanConfig.PROCESSING_WEIGHT = 0;
-
-                PlanConfig.NR_ROWS = 3;
-                runMUVEQuery(query, false);
-                runGUROBIQuery(query);
+                PlanContext context = PlanContext.fromConfig().withTopK(30).withR(300)
+                        .withProcessingWeight(0).withNrRows(3);
+                runMUVEQuery(query, false, context);
+                runGUROBIQuery(query, context);
                 break;
         }
 
@@ -0,0 +1,157 @@
+package benchmarks;
+
+import matching.FuzzySearch;
+import matching.HitMetadata;
+import matching.Reranker;
+import matching.indexing.Indexer;
+import matching.score.ProbabilityScore;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static matching.FuzzyIndex.INDEX_DIR;
+import static matching.FuzzyIndex.PHONETIC_DIR;
+
+/**
+ * Compare re-ranking of fuzzy search candidates inside
+ * the sort comparator with the re-ranking stage that
+ * loads and scores each candidate once. Literals are
+ * sampled from the index of the given dataset and the
+ * candidates of each literal are the union of the text
+ * and phonetic search results.
+ *
+ * Usage: RerankBenchmark [dataset] [number of literals]
+ */
+public class RerankBenchmark {
+    /**
+     * Number of results to compare.
+     */
+    public final static int[] TOPKS = new int[]{5, 30, 100};
+    /**
+     * Number of rounds before measuring.
+     */
+    public final static int NR_WARMUPS = 3;
+    /**
+     * Number of measured rounds.
+     */
+    public final static int NR_ROUNDS = 10;
+
+    /**
+     * Re-rank the candidates in the sort comparator, the
+     * way fuzzy search did before the re-ranking stage.
+     */
+    public static ScoreDoc[] comparatorRerank(IndexSearcher searcher, Collection<ScoreDoc> candidates,
+                                              String normalized, String phonetic, int topK) {
+        int toIndex = Math.min(topK, candidates.size());
+        return candidates.stream().sorted((doc1, doc2) -> {
+            try {
+                Document hitDoc1 = searcher.doc(doc1.doc);
+                String text1 = hitDoc1.get("text");
+                String phonetic1 = hitDoc1.get("phonetic");
+                Document hitDoc2 = searcher.doc(doc2.doc);
+                String text2 = hitDoc2.get("text");
+                String phonetic2 = hitDoc2.get("phonetic");
+                float score1 = (float) ProbabilityScore.score(normalized, text1);
+                float score2 = (float) ProbabilityScore.score(normalized, text2);
+                float phoneticScore1 = (float) ProbabilityScore.score(phonetic, phonetic1);
+                float phoneticScore2 = (float) ProbabilityScore.score(phonetic, phonetic2);
+                doc1.score = 0.5f * score1 + 0.5f * phoneticScore1;
+                doc2.score = 0.5f * score2 + 0.5f * phoneticScore2;
+                if (score1 < score2) return 1;
+                if (score1 > score2) return -1;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return 0;
+        }).collect(Collectors.toList()).subList(0, toIndex).toArray(new ScoreDoc[0]);
+    }
+
+    /**
+     * Collect the candidates of the literal in the same
+     * way as fuzzy search.
+     */
+    public static List<ScoreDoc> candidates(IndexSearcher searcher, String literal, int topK)
+            throws IOException {
+        String normalized = FuzzySearch.preprocessing(literal);
+        Map<Integer, ScoreDoc> idToDocs = new LinkedHashMap<>();
+        for (ScoreDoc doc: searcher.search(FuzzySearch.buildTermsQuery(normalized), topK).scoreDocs) {
+            idToDocs.put(doc.doc, doc);
+        }
+        for (ScoreDoc doc: searcher.search(FuzzySearch.buildPhoneticQuery(normalized), topK).scoreDocs) {
+            idToDocs.putIfAbsent(doc.doc, doc);
+        }
+        return new ArrayList<>(idToDocs.values());
+    }
+
+    public static void main(String[] args) throws IOException {
+        String dataset = args.length > 0 ? args[0] : "sample_311";
+        int nrLiterals = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        String searchDir = (Indexer.Phonetic ? PHONETIC_DIR : INDEX_DIR) + "/" + dataset;
+        IndexReader reader = DirectoryReader.open(FSDirectory.open(Paths.get(searchDir)));
+        IndexSearcher searcher = new IndexSearcher(reader);
+        HitMetadata metadata = new HitMetadata(reader);
+        // Sample literals from the index
+        Random random = new Random(0);
+        List<String> literals = new ArrayList<>(nrLiterals);
+        while (literals.size() < nrLiterals) {
+            String text = reader.document(random.nextInt(reader.maxDoc())).get("text");
+            if (text != null && !text.trim().isEmpty()) {
+                literals.add(text.trim());
+            }
+        }
+        System.out.println("TopK\tCandidates\tComparatorMicros\tStageMicros\tSpeedup\tSameOrder");
+        for (int topK: TOPKS) {
+            List<List<ScoreDoc>> candidateLists = new ArrayList<>(nrLiterals);
+            int nrCandidates = 0;
+            for (String literal: literals) {
+                List<ScoreDoc> candidates = candidates(searcher, literal, topK);
+                candidateLists.add(candidates);
+                nrCandidates += candidates.size();
+            }
+            long comparatorNanos = 0;
+            long stageNanos = 0;
+            boolean sameOrder = true;
+            for (int roundCtr = 0; roundCtr < NR_WARMUPS + NR_ROUNDS; roundCtr++) {
+                for (int literalCtr = 0; literalCtr < nrLiterals; literalCtr++) {
+                    String literal = literals.get(literalCtr);
+                    String normalized = FuzzySearch.preprocessing(literal);
+                    String phonetic = FuzzySearch.phoneticEncoder(literal);
+                    List<ScoreDoc> candidates = candidateLists.get(literalCtr);
+                    long timer1 = System.nanoTime();
+                    ScoreDoc[] oldHits = comparatorRerank(searcher, candidates, normalized, phonetic, topK);
+                    long timer2 = System.nanoTime();
+                    ScoreDoc[] newHits = Reranker.rerank(metadata, candidates, normalized, phonetic, topK);
+                    long timer3 = System.nanoTime();
+                    if (roundCtr >= NR_WARMUPS) {
+                        comparatorNanos += timer2 - timer1;
+                        stageNanos += timer3 - timer2;
+                    }
+                    if (oldHits.length != newHits.length) {
+                        sameOrder = false;
+                        continue;
+                    }
+                    for (int hitCtr = 0; hitCtr < oldHits.length; hitCtr++) {
+                        sameOrder = sameOrder && oldHits[hitCtr].doc == newHits[hitCtr].doc;
+                    }
+                }
+            }
+            double nrCalls = NR_ROUNDS * nrLiterals;
+            double comparatorMicros = comparatorNanos / 1000.0 / nrCalls;
+            double stageMicros = stageNanos / 1000.0 / nrCalls;
+            System.out.println(topK + "\t" + String.format("%.1f", (nrCandidates + 0.0) / nrLiterals)
+                    + "\t" + String.format("%.1f", comparatorMicros)
+                    + "\t" + String.format("%.1f", stageMicros)
+                    + "\t" + String.format("%.2f", comparatorMicros / stageMicros)
+                    + "\t" + sameOrder);
+        }
+        reader.close();
+    }
+}
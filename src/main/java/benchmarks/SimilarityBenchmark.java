@@ -0,0 +1,194 @@
+package benchmarks;
+
+import info.debatty.java.stringsimilarity.JaroWinkler;
+import matching.score.SimilarityKernel;
+import org.apache.commons.codec.language.DoubleMetaphone;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Micro benchmarks of string similarity and phonetic
+ * encoding. Each case compares the way scores were
+ * computed before the similarity kernel (new scorer
+ * and encoder per call, normalized string copies) with
+ * the kernel, and reports the time and the allocated
+ * bytes per call as well as mismatching results.
+ *
+ * Usage: SimilarityBenchmark [number of candidates] [number of queries]
+ */
+public class SimilarityBenchmark {
+    /**
+     * Number of rounds before measuring.
+     */
+    public final static int NR_WARMUPS = 5;
+    /**
+     * Number of measured rounds.
+     */
+    public final static int NR_ROUNDS = 20;
+    /**
+     * Tokens to generate values from.
+     */
+    public final static String[] TOKENS = new String[]{"Brooklyn", "Bronx", "Queens", "Manhattan",
+            "Staten", "Island", "Avenue", "Street", "Broadway", "Noise", "Heating", "Parking",
+            "Residential", "Commercial", "Illegal", "Blocked", "Driveway", "58-55", "5th", "Park"};
+
+    /**
+     * Generate values of one to three tokens with random typos.
+     */
+    public static List<String> values(Random random, int nrValues) {
+        List<String> values = new ArrayList<>(nrValues);
+        for (int valueCtr = 0; valueCtr < nrValues; valueCtr++) {
+            int nrTokens = 1 + random.nextInt(3);
+            StringBuilder value = new StringBuilder();
+            for (int tokenCtr = 0; tokenCtr < nrTokens; tokenCtr++) {
+                StringBuilder token = new StringBuilder(TOKENS[random.nextInt(TOKENS.length)]);
+                if (random.nextBoolean()) {
+                    int position = random.nextInt(token.length());
+                    token.setCharAt(position, (char) ('a' + random.nextInt(26)));
+                }
+                if (tokenCtr > 0) {
+                    value.append(' ');
+                }
+                value.append(token);
+            }
+            values.add(value.toString());
+        }
+        return values;
+    }
+
+    /**
+     * Legacy similarity: new scorer and normalized copies per call.
+     */
+    public static double legacyScore(String inputString, String hitString) {
+        JaroWinkler jaroWinkler = new JaroWinkler();
+        String inputLowCase = inputString.toLowerCase().replace(" ", "");
+        String hitLowCase = hitString.toLowerCase().replace(" ", "");
+        return jaroWinkler.similarity(inputLowCase, hitLowCase);
+    }
+
+    /**
+     * Legacy phonetic encoding: new encoder per call.
+     */
+    public static String legacyEncoder(String query_str) {
+        DoubleMetaphone encoder = new DoubleMetaphone();
+        String[] tokens = query_str.split(" ");
+        List<String> newTokens = new ArrayList<>(tokens.length);
+        for (String token : tokens) {
+            if (!token.equals("")) {
+                String encoding = encoder.encode(token);
+                if (!encoding.equals("")) {
+                    newTokens.add(encoding.toLowerCase());
+                } else {
+                    newTokens.add(token);
+                }
+            }
+        }
+        return String.join(" ",  newTokens);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void report(String name, long nanos, long bytes, double nrCalls, long mismatches) {
+        System.out.println(name + "\t" + String.format("%.1f", nanos / nrCalls)
+                + "\t" + String.format("%.1f", bytes / nrCalls) + "\t" + mismatches);
+    }
+
+    public static void main(String[] args) {
+        int nrCandidates = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int nrQueries = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        Random random = new Random(0);
+        List<String> queries = values(random, nrQueries);
+        String[] candidates = values(random, nrCandidates).toArray(new String[0]);
+        float[] scores = new float[nrCandidates];
+        double nrPairs = (double) NR_ROUNDS * nrQueries * nrCandidates;
+        double nrEncodings = (double) NR_ROUNDS * nrCandidates;
+        // Consume results so that calls are not eliminated
+        double checksum = 0;
+        System.out.println("Case\tNanosPerCall\tBytesPerCall\tMismatches");
+
+        long[] nanos = new long[5];
+        long[] bytes = new long[5];
+        long[] mismatches = new long[5];
+        for (int roundCtr = 0; roundCtr < NR_WARMUPS + NR_ROUNDS; roundCtr++) {
+            boolean measure = roundCtr >= NR_WARMUPS;
+            for (String query: queries) {
+                // Pairwise scoring with the legacy scorer
+                long bytes1 = allocatedBytes();
+                long timer1 = System.nanoTime();
+                for (String candidate: candidates) {
+                    checksum += legacyScore(query, candidate);
+                }
+                long timer2 = System.nanoTime();
+                long bytes2 = allocatedBytes();
+                // Pairwise scoring with the kernel
+                for (String candidate: candidates) {
+                    checksum += SimilarityKernel.similarity(query, candidate);
+                }
+                long timer3 = System.nanoTime();
+                long bytes3 = allocatedBytes();
+                // Batch scoring of a prepared query
+                SimilarityKernel.prepare(query).score(candidates, 0, nrCandidates, scores);
+                long timer4 = System.nanoTime();
+                long bytes4 = allocatedBytes();
+                if (measure) {
+                    nanos[0] += timer2 - timer1;
+                    nanos[1] += timer3 - timer2;
+                    nanos[2] += timer4 - timer3;
+                    bytes[0] += bytes2 - bytes1;
+                    bytes[1] += bytes3 - bytes2;
+                    bytes[2] += bytes4 - bytes3;
+                }
+                else if (roundCtr == 0) {
+                    for (int candidateCtr = 0; candidateCtr < nrCandidates; candidateCtr++) {
+                        String candidate = candidates[candidateCtr];
+                        double expected = legacyScore(query, candidate);
+                        if (SimilarityKernel.similarity(query, candidate) != expected) {
+                            mismatches[1]++;
+                        }
+                        if (scores[candidateCtr] != (float) expected) {
+                            mismatches[2]++;
+                        }
+                    }
+                }
+            }
+            // Phonetic encoding
+            long bytes1 = allocatedBytes();
+            long timer1 = System.nanoTime();
+            for (String candidate: candidates) {
+                checksum += legacyEncoder(candidate).length();
+            }
+            long timer2 = System.nanoTime();
+            long bytes2 = allocatedBytes();
+            for (String candidate: candidates) {
+                checksum += SimilarityKernel.phoneticEncoder(candidate).length();
+            }
+            long timer3 = System.nanoTime();
+            long bytes3 = allocatedBytes();
+            if (measure) {
+                nanos[3] += timer2 - timer1;
+                nanos[4] += timer3 - timer2;
+                bytes[3] += bytes2 - bytes1;
+                bytes[4] += bytes3 - bytes2;
+            }
+            else if (roundCtr == 0) {
+                for (String candidate: candidates) {
+                    if (!legacyEncoder(candidate).equals(SimilarityKernel.phoneticEncoder(candidate))) {
+                        mismatches[4]++;
+                    }
+                }
+            }
+        }
+        report("LegacyScore", nanos[0], bytes[0], nrPairs, mismatches[0]);
+        report("KernelScore", nanos[1], bytes[1], nrPairs, mismatches[1]);
+        report("KernelBatch", nanos[2], bytes[2], nrPairs, mismatches[2]);
+        report("LegacyEncoder", nanos[3], bytes[3], nrEncodings, mismatches[3]);
+        report("KernelEncoder", nanos[4], bytes[4], nrEncodings, mismatches[4]);
+        System.out.println("Checksum: " + checksum);
+    }
+}
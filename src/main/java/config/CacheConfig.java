@@ -0,0 +1,25 @@
+package config;
+
+/**
+ * Configures the caches in front of the database
+ * and the similarity index.
+ *
+ * @author Ziyun Wei
+ */
+public class CacheConfig {
+    /**
+     * Memory bound of cached query results (bytes).
+     * Non-positive values disable the cache.
+     */
+    public static long RESULT_CACHE_BYTES = 64L * 1024 * 1024;
+    /**
+     * Time to live of cached query results (ms).
+     * Non-positive values keep results until evicted.
+     */
+    public static long RESULT_CACHE_TTL = 10 * 60 * 1000;
+    /**
+     * Maximal number of literals whose fuzzy matches are cached.
+     * Non-positive values disable the cache.
+     */
+    public static int MATCH_CACHE_SIZE = 10000;
+}
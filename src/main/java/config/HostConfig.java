@@ -6,4 +6,61 @@ public class HostConfig {
     public static final String MODEL_HOST = "localhost:5050";
     public static final String DB_HOST = "jdbc:monetdb://localhost:50000/nycopen";
     public static final String PG_HOST = "jdbc:postgresql://localhost:5432/nycopen";
+    /**
+     * Token expected in the X-Admin-Token header of administration
+     * requests. Administration requests are rejected if it is not set.
+     */
+    public static final String ADMIN_TOKEN = System.getenv("MUVE_ADMIN_TOKEN");
+    /**
+     * Maximum number of keep-alive connections to the model host.
+     */
+    public static final int MODEL_CONNECTIONS = 8;
+    /**
+     * Maximum number of translation requests in flight at the same time.
+     * Requests beyond the limit wait until a slot is released.
+     */
+    public static final int MODEL_MAX_IN_FLIGHT = 32;
+    /**
+     * Timeout of establishing a connection to the model host (ms).
+     */
+    public static final long MODEL_CONNECT_TIMEOUT = 1000;
+    /**
+     * Timeout of one translation request, including the response (ms).
+     */
+    public static final long MODEL_REQUEST_TIMEOUT = 10000;
+    /**
+     * Idle time before a pooled model connection is closed (ms).
+     */
+    public static final long MODEL_IDLE_TIMEOUT = 60000;
+    /**
+     * Number of retries after a failed translation request.
+     */
+    public static final int MODEL_RETRIES = 2;
+    /**
+     * Delay before retrying a failed translation request (ms).
+     */
+    public static final long MODEL_RETRY_DELAY = 100;
+    /**
+     * Maximum number of pooled connections to the database.
+     */
+    public static final int DB_POOL_SIZE = 16;
+    /**
+     * Maximum waiting time for a pooled database connection (ms).
+     */
+    public static final long DB_CHECKOUT_TIMEOUT = 5000;
+    /**
+     * Maximum number of requests that hold a pooled connection
+     * of their own at the same time.
+     */
+    public static final int MAX_PRESENTERS = 4;
+    /**
+     * Number of threads executing plot queries for all sessions.
+     * Workers use the connections that requests cannot hold, so
+     * they never wait for a connection held by a waiting request.
+     */
+    public static final int PLOT_THREADS = DB_POOL_SIZE - MAX_PRESENTERS;
+    /**
+     * Maximum number of plot queries in flight for one session.
+     */
+    public static final int SESSION_QUERIES = 4;
 }
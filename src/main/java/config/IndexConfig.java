@@ -0,0 +1,41 @@
+package config;
+
+/**
+ * Configures building the similarity index.
+ *
+ * @author Ziyun Wei
+ */
+public class IndexConfig {
+    /**
+     * Number of threads that normalize values and add
+     * documents to the index. One thread reads the input
+     * in addition. Values below two index sequentially.
+     */
+    public static int INDEX_THREADS = Runtime.getRuntime().availableProcessors();
+    /**
+     * Memory buffered by the index writer before flushing a segment (MB).
+     */
+    public static double INDEX_RAM_BUFFER_MB = 256;
+    /**
+     * Number of rows handed to a thread at once.
+     */
+    public static int INDEX_BATCH_ROWS = 1000;
+    /**
+     * Maximal number of batches read ahead of the threads.
+     */
+    public static int INDEX_QUEUE_BATCHES = 64;
+    /**
+     * Whether fingerprints of indexed values, used to skip
+     * duplicates, are kept outside of the heap.
+     */
+    public static boolean INDEX_DEDUPE_OFF_HEAP = false;
+    /**
+     * Whether character n-grams of values are indexed
+     * for the n-gram match engine, see NGrams.
+     */
+    public static boolean INDEX_NGRAMS = true;
+    /**
+     * Number of characters of an indexed n-gram.
+     */
+    public static int NGRAM_SIZE = 3;
+}
@@ -2,7 +2,11 @@ package config;
 
 /**
  * Configures integer linear programming based
- * plan for optimal interface generation.
+ * plan for optimal interface generation. Parameters
+ * carried by PlanContext, including the modes and
+ * limits of the greedy, anytime and branch-and-bound
+ * planners, are fixed defaults here and change per
+ * request only through the context.
  *
  * @author Ziyun Wei
  *
@@ -12,7 +16,7 @@ public class PlanConfig {
      * The total width of interface area where plots are
      * aligned.
      */
-    public static int R = 900;
+    public static final int R = 900;
     /**
      * The width of one data point that represents a query.
      */
@@ -24,11 +28,11 @@ public class PlanConfig {
     /**
      * The number of rows in given area.
      */
-    public static int NR_ROWS = 1;
+    public static final int NR_ROWS = 1;
     /**
      * Select first few queries that have the highest probability.
      */
-    public static int TOPK = 5;
+    public static final int TOPK = 5;
     /**
      * Duration of reading each title.
      */
@@ -40,7 +44,7 @@ public class PlanConfig {
     /**
      * The significance of processing time in objective function.
      */
-    public static double PROCESSING_WEIGHT = 0.0;
+    public static final double PROCESSING_WEIGHT = 0.0;
     /**
      * The penalty time when the query is absent in the screen.
      */
@@ -52,7 +56,7 @@ public class PlanConfig {
     /**
      * The maximum cost of processing queries.
      */
-    public static int MAX_PROCESSING_COST = 5000;
+    public static final int MAX_PROCESSING_COST = 5000;
     /**
      * The cost of one query.
      */
@@ -64,11 +68,11 @@ public class PlanConfig {
     /**
      * The ratio of sampling data.
      */
-    public static double SAMPLING_RATE = 1;
+    public static final double SAMPLING_RATE = 1;
     /**
      * Threshold timeout for ILP algorithm.
      */
-    public static double TIMEOUT = 1.0;
+    public static final double TIMEOUT = 1.0;
     /**
      * The threshold of interactive queries.
      */
@@ -81,4 +85,36 @@ public class PlanConfig {
      * The bias of linear regression.
      */
     public static double BIAS = 735.21122;
+    /**
+     * Whether the greedy planner evaluates plot candidates lazily.
+     */
+    public static final boolean LAZY_GREEDY = true;
+    /**
+     * Number of plot candidates from which the eager greedy planner
+     * evaluates them in parallel, 0 to always evaluate sequentially.
+     */
+    public static final int PARALLEL_CANDIDATES = 4096;
+    /**
+     * Number of plot candidates evaluated by one parallel task.
+     */
+    public static final int PARALLEL_GRAIN = 512;
+    /**
+     * Relative reduction of wait time for the anytime planner
+     * to send a new plan.
+     */
+    public static final double ANYTIME_IMPROVEMENT = 0.01;
+    /**
+     * Relative gap to the bound at which the branch-and-bound
+     * planner stops improving a plan, 0 for the optimal plan.
+     */
+    public static final double BNB_GAP = 0.0;
+    /**
+     * Maximal number of nodes searched by the branch-and-bound planner.
+     */
+    public static final long BNB_MAX_NODES = 50000000;
+    /**
+     * Number of levels whose subtrees the branch-and-bound planner
+     * searches in parallel tasks.
+     */
+    public static final int BNB_SPLIT_DEPTH = 2;
 }
@@ -0,0 +1,209 @@
+package config;
+
+import stats.PlanStats;
+
+/**
+ * Immutable planning parameters of one request. The
+ * context is created from the defaults in PlanConfig
+ * when a request arrives and is handed to the query
+ * factory, the cost estimator and the planners, so that
+ * concurrent sessions never share mutable settings.
+ * Statistics of the request are collected in the
+ * attached stats object.
+ *
+ * @author Ziyun Wei
+ */
+public class PlanContext {
+    /**
+     * Select first few queries that have the highest probability.
+     */
+    public final int topK;
+    /**
+     * The total width of interface area where plots are aligned.
+     */
+    public final int R;
+    /**
+     * The number of rows in given area.
+     */
+    public final int nrRows;
+    /**
+     * The significance of processing time in objective function.
+     */
+    public final double processingWeight;
+    /**
+     * The maximum cost of processing queries.
+     */
+    public final int maxProcessingCost;
+    /**
+     * The ratio of sampling data.
+     */
+    public final double samplingRate;
+    /**
+     * Threshold timeout for ILP algorithm.
+     */
+    public final double timeout;
+    /**
+     * Whether the greedy planner evaluates plot candidates lazily.
+     */
+    public final boolean lazyGreedy;
+    /**
+     * Number of plot candidates from which the eager greedy planner
+     * evaluates them in parallel, 0 to always evaluate sequentially.
+     */
+    public final int parallelCandidates;
+    /**
+     * Number of plot candidates evaluated by one parallel task.
+     */
+    public final int parallelGrain;
+    /**
+     * Relative reduction of wait time for the anytime planner
+     * to send a new plan.
+     */
+    public final double anytimeImprovement;
+    /**
+     * Relative gap to the bound at which the branch-and-bound
+     * planner stops improving a plan, 0 for the optimal plan.
+     */
+    public final double bnbGap;
+    /**
+     * Maximal number of nodes searched by the branch-and-bound planner.
+     */
+    public final long bnbMaxNodes;
+    /**
+     * Number of levels whose subtrees the branch-and-bound planner
+     * searches in parallel tasks.
+     */
+    public final int bnbSplitDepth;
+    /**
+     * The statistics of the plan generated for this request.
+     */
+    public final PlanStats stats = new PlanStats();
+
+    /**
+     * Create a context with the given layout parameters and the
+     * default planner settings of PlanConfig.
+     */
+    public PlanContext(int topK, int R, int nrRows, double processingWeight,
+                       int maxProcessingCost, double samplingRate, double timeout) {
+        this(topK, R, nrRows, processingWeight, maxProcessingCost, samplingRate, timeout,
+                PlanConfig.LAZY_GREEDY, PlanConfig.PARALLEL_CANDIDATES, PlanConfig.PARALLEL_GRAIN,
+                PlanConfig.ANYTIME_IMPROVEMENT, PlanConfig.BNB_GAP, PlanConfig.BNB_MAX_NODES,
+                PlanConfig.BNB_SPLIT_DEPTH);
+    }
+
+    private PlanContext(int topK, int R, int nrRows, double processingWeight,
+                        int maxProcessingCost, double samplingRate, double timeout,
+                        boolean lazyGreedy, int parallelCandidates, int parallelGrain,
+                        double anytimeImprovement, double bnbGap, long bnbMaxNodes,
+                        int bnbSplitDepth) {
+        this.topK = topK;
+        this.R = R;
+        this.nrRows = nrRows;
+        this.processingWeight = processingWeight;
+        this.maxProcessingCost = maxProcessingCost;
+        this.samplingRate = samplingRate;
+        this.timeout = timeout;
+        this.lazyGreedy = lazyGreedy;
+        this.parallelCandidates = parallelCandidates;
+        this.parallelGrain = parallelGrain;
+        this.anytimeImprovement = anytimeImprovement;
+        this.bnbGap = bnbGap;
+        this.bnbMaxNodes = bnbMaxNodes;
+        this.bnbSplitDepth = bnbSplitDepth;
+    }
+
+    /**
+     * Take a snapshot of the current defaults in PlanConfig.
+     *
+     * @return      planning context with default parameters
+     */
+    public static PlanContext fromConfig() {
+        return new PlanContext(PlanConfig.TOPK, PlanConfig.R, PlanConfig.NR_ROWS,
+                PlanConfig.PROCESSING_WEIGHT, PlanConfig.MAX_PROCESSING_COST,
+                PlanConfig.SAMPLING_RATE, PlanConfig.TIMEOUT);
+    }
+
+    public PlanContext withTopK(int topK) {
+        return new PlanContext(topK, R, nrRows, processingWeight, maxProcessingCost, samplingRate, timeout,
+                lazyGreedy, parallelCandidates, parallelGrain, anytimeImprovement, bnbGap, bnbMaxNodes,
+                bnbSplitDepth);
+    }
+
+    public PlanContext withR(int R) {
+        return new PlanContext(topK, R, nrRows, processingWeight, maxProcessingCost, samplingRate, timeout,
+                lazyGreedy, parallelCandidates, parallelGrain, anytimeImprovement, bnbGap, bnbMaxNodes,
+                bnbSplitDepth);
+    }
+
+    public PlanContext withNrRows(int nrRows) {
+        return new PlanContext(topK, R, nrRows, processingWeight, maxProcessingCost, samplingRate, timeout,
+                lazyGreedy, parallelCandidates, parallelGrain, anytimeImprovement, bnbGap, bnbMaxNodes,
+                bnbSplitDepth);
+    }
+
+    public PlanContext withProcessingWeight(double processingWeight) {
+        return new PlanContext(topK, R, nrRows, processingWeight, maxProcessingCost, samplingRate, timeout,
+                lazyGreedy, parallelCandidates, parallelGrain, anytimeImprovement, bnbGap, bnbMaxNodes,
+                bnbSplitDepth);
+    }
+
+    public PlanContext withMaxProcessingCost(int maxProcessingCost) {
+        return new PlanContext(topK, R, nrRows, processingWeight, maxProcessingCost, samplingRate, timeout,
+                lazyGreedy, parallelCandidates, parallelGrain, anytimeImprovement, bnbGap, bnbMaxNodes,
+                bnbSplitDepth);
+    }
+
+    public PlanContext withSamplingRate(double samplingRate) {
+        return new PlanContext(topK, R, nrRows, processingWeight, maxProcessingCost, samplingRate, timeout,
+                lazyGreedy, parallelCandidates, parallelGrain, anytimeImprovement, bnbGap, bnbMaxNodes,
+                bnbSplitDepth);
+    }
+
+    public PlanContext withTimeout(double timeout) {
+        return new PlanContext(topK, R, nrRows, processingWeight, maxProcessingCost, samplingRate, timeout,
+                lazyGreedy, parallelCandidates, parallelGrain, anytimeImprovement, bnbGap, bnbMaxNodes,
+                bnbSplitDepth);
+    }
+
+    public PlanContext withLazyGreedy(boolean lazyGreedy) {
+        return new PlanContext(topK, R, nrRows, processingWeight, maxProcessingCost, samplingRate, timeout,
+                lazyGreedy, parallelCandidates, parallelGrain, anytimeImprovement, bnbGap, bnbMaxNodes,
+                bnbSplitDepth);
+    }
+
+    public PlanContext withParallelCandidates(int parallelCandidates) {
+        return new PlanContext(topK, R, nrRows, processingWeight, maxProcessingCost, samplingRate, timeout,
+                lazyGreedy, parallelCandidates, parallelGrain, anytimeImprovement, bnbGap, bnbMaxNodes,
+                bnbSplitDepth);
+    }
+
+    public PlanContext withParallelGrain(int parallelGrain) {
+        return new PlanContext(topK, R, nrRows, processingWeight, maxProcessingCost, samplingRate, timeout,
+                lazyGreedy, parallelCandidates, parallelGrain, anytimeImprovement, bnbGap, bnbMaxNodes,
+                bnbSplitDepth);
+    }
+
+    public PlanContext withAnytimeImprovement(double anytimeImprovement) {
+        return new PlanContext(topK, R, nrRows, processingWeight, maxProcessingCost, samplingRate, timeout,
+                lazyGreedy, parallelCandidates, parallelGrain, anytimeImprovement, bnbGap, bnbMaxNodes,
+                bnbSplitDepth);
+    }
+
+    public PlanContext withBnbGap(double bnbGap) {
+        return new PlanContext(topK, R, nrRows, processingWeight, maxProcessingCost, samplingRate, timeout,
+                lazyGreedy, parallelCandidates, parallelGrain, anytimeImprovement, bnbGap, bnbMaxNodes,
+                bnbSplitDepth);
+    }
+
+    public PlanContext withBnbMaxNodes(long bnbMaxNodes) {
+        return new PlanContext(topK, R, nrRows, processingWeight, maxProcessingCost, samplingRate, timeout,
+                lazyGreedy, parallelCandidates, parallelGrain, anytimeImprovement, bnbGap, bnbMaxNodes,
+                bnbSplitDepth);
+    }
+
+    public PlanContext withBnbSplitDepth(int bnbSplitDepth) {
+        return new PlanContext(topK, R, nrRows, processingWeight, maxProcessingCost, samplingRate, timeout,
+                lazyGreedy, parallelCandidates, parallelGrain, anytimeImprovement, bnbGap, bnbMaxNodes,
+                bnbSplitDepth);
+    }
+}
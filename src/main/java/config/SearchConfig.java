@@ -0,0 +1,81 @@
+package config;
+
+import matching.FuzzyIndex;
+import matching.IndexStorage;
+import matching.MatchEngine;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Configures the searchers of the similarity indexes.
+ *
+ * @author Ziyun Wei
+ */
+public class SearchConfig {
+    /**
+     * Datasets whose indexes are opened when the server starts.
+     */
+    public static String[] DATASETS = new String[]{"dob_job", "sample_311"};
+    /**
+     * Interval of checking the indexes for changes (ms).
+     * Non-positive values disable background refresh.
+     */
+    public static long REFRESH_INTERVAL = 5000;
+    /**
+     * Number of indexed values searched to warm up a new searcher.
+     */
+    public static int NR_WARMUP_QUERIES = 8;
+    /**
+     * Storage of indexes opened for searching.
+     */
+    public static IndexStorage STORAGE = IndexStorage.MMAP;
+    /**
+     * Storage of the indexes of particular datasets, e.g.,
+     * HEAP for small datasets. Others use STORAGE.
+     */
+    public static final Map<String, IndexStorage> DATASET_STORAGE = new HashMap<>();
+    /**
+     * CSV file of each dataset whose index the server may update.
+     * Update requests name the dataset, never a file.
+     */
+    public static final Map<String, String> DATASET_FILES = new HashMap<>();
+    static {
+        DATASET_FILES.put("sample_311", FuzzyIndex.DATA_FILE);
+        DATASET_FILES.put("sample_au", FuzzyIndex.AU_FILE);
+        DATASET_FILES.put("dob_job", FuzzyIndex.JOB_FILE);
+        DATASET_FILES.put("DOB_Job_Application_Filings", FuzzyIndex.LARGE_JOB_FILE);
+        DATASET_FILES.put("delayed_flight", FuzzyIndex.DELAYED_FLIGHT);
+        DATASET_FILES.put("customer", FuzzyIndex.CUSTOMER);
+    }
+    /**
+     * Engine generating the candidates of fuzzy search.
+     */
+    public static MatchEngine ENGINE = MatchEngine.FUZZY;
+    /**
+     * Number of candidates retrieved by the n-gram engine
+     * before verification, at least the number of matches.
+     */
+    public static int NGRAM_CANDIDATES = 200;
+    /**
+     * Whether fuzzy search matches the text and phonetic
+     * queries without scoring and scores each match once
+     * in the collector, keeping both sub-scores. Otherwise
+     * each matching query scores the match.
+     */
+    public static boolean COMBINED_COLLECTOR = true;
+    /**
+     * Number of threads matching the literals of a batch.
+     */
+    public static int LOOKUP_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Storage of the index of the dataset.
+     *
+     * @param dataset       dataset of the index
+     * @return              configured storage
+     */
+    public static IndexStorage storage(String dataset) {
+        return DATASET_STORAGE.getOrDefault(dataset, STORAGE);
+    }
+}
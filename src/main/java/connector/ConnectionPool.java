@@ -0,0 +1,404 @@
+package connector;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of JDBC connections. A checked out
+ * connection is a proxy whose close() returns the
+ * physical connection to the pool and closes all
+ * open statements created through it, so callers
+ * only need to close the connection they checked out.
+ * Statements are proxies as well, whose connection
+ * is the pooled proxy.
+ *
+ * @author Ziyun Wei
+ */
+public class ConnectionPool {
+    /**
+     * Connections idle for longer than the threshold (ms)
+     * are validated before they are handed out again.
+     */
+    private static final long VALIDATION_IDLE_MILLIS = 30000;
+    /**
+     * Timeout of connection validation in seconds.
+     */
+    private static final int VALIDATION_TIMEOUT = 1;
+    /**
+     * JDBC url of the database.
+     */
+    private final String url;
+    /**
+     * Connection properties (user, password).
+     */
+    private final Properties props;
+    /**
+     * Maximal number of physical connections.
+     */
+    public final int maxSize;
+    /**
+     * Maximal waiting time (ms) for a free connection.
+     */
+    private final long checkoutTimeout;
+    /**
+     * One permit for each connection that can be checked out.
+     */
+    private final Semaphore permits;
+    /**
+     * Idle physical connections, the most recently used first.
+     */
+    private final LinkedBlockingDeque<IdleConnection> idle = new LinkedBlockingDeque<>();
+    /**
+     * Number of successful checkouts.
+     */
+    private final AtomicLong nrCheckouts = new AtomicLong();
+    /**
+     * Number of checkouts that had to wait for a connection.
+     */
+    private final AtomicLong nrWaits = new AtomicLong();
+    /**
+     * Number of checkouts that timed out.
+     */
+    private final AtomicLong nrTimeouts = new AtomicLong();
+    /**
+     * Accumulated waiting time of checkouts in nanoseconds.
+     */
+    private final AtomicLong waitNanos = new AtomicLong();
+    /**
+     * Number of physical connections opened so far.
+     */
+    private final AtomicLong nrCreated = new AtomicLong();
+    /**
+     * Number of connections currently checked out.
+     */
+    private final AtomicInteger nrActive = new AtomicInteger();
+    /**
+     * Maximal number of connections checked out at the same time.
+     */
+    private final AtomicInteger peakActive = new AtomicInteger();
+
+    /**
+     * Initialize a pool of connections to the given database.
+     *
+     * @param url               JDBC url of the database
+     * @param props             connection properties
+     * @param maxSize           maximal number of connections
+     * @param checkoutTimeout   maximal waiting time (ms) of checkout
+     */
+    public ConnectionPool(String url, Properties props, int maxSize, long checkoutTimeout) {
+        this.url = url;
+        this.props = props;
+        this.maxSize = maxSize;
+        this.checkoutTimeout = checkoutTimeout;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Check out a connection. The caller must close
+     * the connection to return it to the pool.
+     *
+     * @return      pooled connection
+     * @throws SQLException
+     */
+    public Connection getConnection() throws SQLException {
+        long waitStart = System.nanoTime();
+        if (!permits.tryAcquire()) {
+            nrWaits.incrementAndGet();
+            try {
+                if (!permits.tryAcquire(checkoutTimeout, TimeUnit.MILLISECONDS)) {
+                    nrTimeouts.incrementAndGet();
+                    throw new SQLException("Timed out waiting for a pooled connection to " + url);
+                }
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a pooled connection.", exception);
+            }
+            waitNanos.addAndGet(System.nanoTime() - waitStart);
+        }
+        Connection connection;
+        try {
+            connection = takeIdle();
+            if (connection == null) {
+                connection = DriverManager.getConnection(url, props);
+                nrCreated.incrementAndGet();
+            }
+        } catch (SQLException exception) {
+            permits.release();
+            throw exception;
+        }
+        nrCheckouts.incrementAndGet();
+        int active = nrActive.incrementAndGet();
+        peakActive.accumulateAndGet(active, Math::max);
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class[]{Connection.class}, new PooledConnection(connection));
+    }
+
+    /**
+     * Take a valid idle connection if there is any.
+     *
+     * @return      idle connection or null
+     */
+    private Connection takeIdle() {
+        IdleConnection idleConnection;
+        while ((idleConnection = idle.pollFirst()) != null) {
+            Connection connection = idleConnection.connection;
+            long idleMillis = System.currentTimeMillis() - idleConnection.releaseMillis;
+            try {
+                if (!connection.isClosed() && (idleMillis < VALIDATION_IDLE_MILLIS
+                        || connection.isValid(VALIDATION_TIMEOUT))) {
+                    return connection;
+                }
+            } catch (SQLException ignored) {
+
+            }
+            closeQuietly(connection);
+        }
+        return null;
+    }
+
+    /**
+     * Return the physical connection to the pool.
+     *
+     * @param connection        physical connection
+     * @param statements        open statements created during checkout
+     */
+    private void release(Connection connection, Collection<Statement> statements) {
+        for (Statement statement: statements) {
+            try {
+                statement.close();
+            } catch (SQLException ignored) {
+
+            }
+        }
+        boolean reusable;
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            reusable = !connection.isClosed();
+        } catch (SQLException exception) {
+            reusable = false;
+        }
+        if (reusable) {
+            idle.offerFirst(new IdleConnection(connection));
+        }
+        else {
+            closeQuietly(connection);
+        }
+        nrActive.decrementAndGet();
+        permits.release();
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+
+        }
+    }
+
+    /**
+     * Close all idle connections. Connections that are
+     * checked out are closed when they are returned.
+     */
+    public void close() {
+        IdleConnection idleConnection;
+        while ((idleConnection = idle.pollFirst()) != null) {
+            closeQuietly(idleConnection.connection);
+        }
+    }
+
+    public long getNrCheckouts() {
+        return nrCheckouts.get();
+    }
+
+    public long getNrWaits() {
+        return nrWaits.get();
+    }
+
+    public long getNrTimeouts() {
+        return nrTimeouts.get();
+    }
+
+    public long getNrCreated() {
+        return nrCreated.get();
+    }
+
+    public int getNrActive() {
+        return nrActive.get();
+    }
+
+    public int getNrIdle() {
+        return idle.size();
+    }
+
+    public int getPeakActive() {
+        return peakActive.get();
+    }
+
+    /**
+     * Average waiting time (ms) of checkouts that had to wait.
+     *
+     * @return      average waiting time
+     */
+    public double getAvgWaitMillis() {
+        long waits = nrWaits.get() - nrTimeouts.get();
+        return waits == 0 ? 0 : waitNanos.get() / 1e6 / waits;
+    }
+
+    /**
+     * Share of checkouts that found the pool saturated.
+     *
+     * @return      saturation ratio between 0 and 1
+     */
+    public double getSaturation() {
+        long checkouts = nrCheckouts.get() + nrTimeouts.get();
+        return checkouts == 0 ? 0 : (nrWaits.get() + 0.0) / checkouts;
+    }
+
+    @Override
+    public String toString() {
+        return "Pool " + url + ": active " + getNrActive() + "/" + maxSize
+                + ", idle " + getNrIdle() + ", peak " + getPeakActive()
+                + ", checkouts " + getNrCheckouts() + ", waits " + getNrWaits()
+                + ", timeouts " + getNrTimeouts()
+                + ", avg wait " + String.format("%.2f", getAvgWaitMillis()) + " ms";
+    }
+
+    /**
+     * Physical connection waiting in the pool.
+     */
+    private static class IdleConnection {
+        final Connection connection;
+        final long releaseMillis;
+
+        IdleConnection(Connection connection) {
+            this.connection = connection;
+            this.releaseMillis = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Handler of the connection proxy handed out by the pool.
+     */
+    private class PooledConnection implements InvocationHandler {
+        private final Connection connection;
+        /**
+         * Statements created during checkout that are not closed yet.
+         */
+        private final Set<Statement> statements = Collections.newSetFromMap(new IdentityHashMap<>());
+        private boolean released = false;
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    synchronized (this) {
+                        if (!released) {
+                            released = true;
+                            release(connection, new ArrayList<>(statements));
+                            statements.clear();
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return released || connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled " + connection;
+                default:
+                    break;
+            }
+            if (released) {
+                throw new SQLException("Connection has already been returned to the pool.");
+            }
+            Object result;
+            try {
+                result = method.invoke(connection, args);
+            } catch (InvocationTargetException exception) {
+                throw exception.getCause();
+            }
+            if (result instanceof Statement) {
+                Statement statement = (Statement) result;
+                synchronized (this) {
+                    statements.add(statement);
+                }
+                return Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                        new Class[]{method.getReturnType()},
+                        new PooledStatement(statement, (Connection) proxy));
+            }
+            return result;
+        }
+
+        /**
+         * Stop tracking the statement once it is closed.
+         *
+         * @param statement     physical statement
+         */
+        synchronized void untrack(Statement statement) {
+            statements.remove(statement);
+        }
+
+        /**
+         * Handler of the statement proxy created through a pooled connection.
+         */
+        private class PooledStatement implements InvocationHandler {
+            private final Statement statement;
+            private final Connection pooledConnection;
+
+            PooledStatement(Statement statement, Connection pooledConnection) {
+                this.statement = statement;
+                this.pooledConnection = pooledConnection;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "getConnection":
+                        return pooledConnection;
+                    case "close":
+                        untrack(statement);
+                        break;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "Pooled " + statement;
+                    default:
+                        break;
+                }
+                try {
+                    return method.invoke(statement, args);
+                } catch (InvocationTargetException exception) {
+                    throw exception.getCause();
+                }
+            }
+        }
+    }
+}
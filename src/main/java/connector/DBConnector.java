@@ -16,9 +16,30 @@ public abstract class DBConnector {
      */
     public static DBConnector dbConnector;
     /**
-     * Connection object to the database engine.
+     * Pool of connections to the database engine.
      */
-    protected Connection connection;
+    protected ConnectionPool pool;
+
+    /**
+     * Check out a connection from the pool. Closing
+     * the connection returns it to the pool together
+     * with all statements created through it.
+     *
+     * @return                  Pooled connection
+     * @throws SQLException
+     */
+    public Connection getConnection() throws SQLException {
+        return pool.getConnection();
+    }
+
+    /**
+     * Get the pool of connections, e.g., for saturation metrics.
+     *
+     * @return                  Connection pool
+     */
+    public ConnectionPool getPool() {
+        return pool;
+    }
 
     /**
      * Given a list of queries, generate the explain
@@ -0,0 +1,225 @@
+package connector;
+
+import config.HostConfig;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.client.util.MultiPartContentProvider;
+import org.eclipse.jetty.client.util.StringContentProvider;
+import org.eclipse.jetty.http.HttpMethod;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process client of the text-to-SQL model. The client
+ * keeps a pool of keep-alive connections to the model host
+ * and sends the same multipart form (t=dataset, q=sentence)
+ * the model has been queried with so far. Requests are
+ * asynchronous so that concurrent sessions share the pooled
+ * connections instead of opening one connection each.
+ * Jetty's client does not pipeline HTTP/1.1 requests, so
+ * each connection carries one request at a time and is
+ * reused by the next queued request once the response has
+ * arrived. Requests whose future is completed or cancelled
+ * by the caller while queued are not sent.
+ *
+ * @author Ziyun Wei
+ */
+public class ModelClient {
+    /**
+     * Singleton instance of the model client.
+     */
+    private static ModelClient modelClient;
+    /**
+     * Maximal size of the model response in bytes.
+     */
+    private static final int MAX_RESPONSE_SIZE = 1024 * 1024;
+    /**
+     * Underlying HTTP client that owns the connection pool.
+     */
+    private final HttpClient httpClient;
+    /**
+     * Address of the model endpoint.
+     */
+    private final String modelURL;
+    /**
+     * Limits the number of requests in flight.
+     */
+    private final Semaphore inFlight;
+    /**
+     * Requests waiting for one in flight to complete.
+     */
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Initialize and start the client for the given model host.
+     *
+     * @param modelHost     host (and optional scheme) of the model
+     * @throws IOException
+     */
+    public ModelClient(String modelHost) throws IOException {
+        this.modelURL = modelHost.contains("://") ? modelHost : "http://" + modelHost;
+        this.inFlight = new Semaphore(HostConfig.MODEL_MAX_IN_FLIGHT);
+        this.httpClient = new HttpClient();
+        httpClient.setMaxConnectionsPerDestination(HostConfig.MODEL_CONNECTIONS);
+        httpClient.setMaxRequestsQueuedPerDestination(HostConfig.MODEL_MAX_IN_FLIGHT);
+        httpClient.setConnectTimeout(HostConfig.MODEL_CONNECT_TIMEOUT);
+        httpClient.setIdleTimeout(HostConfig.MODEL_IDLE_TIMEOUT);
+        httpClient.setFollowRedirects(false);
+        try {
+            httpClient.start();
+        } catch (Exception exception) {
+            throw new IOException("Error in starting the model client.", exception);
+        }
+    }
+
+    /**
+     * Use singleton pattern to get the instance of model client.
+     *
+     * @return      The instance of model client.
+     * @throws IOException
+     */
+    public static synchronized ModelClient getClient() throws IOException {
+        if (modelClient == null) {
+            modelClient = new ModelClient(HostConfig.MODEL_HOST);
+        }
+        return modelClient;
+    }
+
+    /**
+     * Translate the sentence into SQL and block until
+     * the model responds.
+     *
+     * @param dataset       dataset (table) the sentence refers to
+     * @param sentence      natural language sentence
+     * @return              raw JSON response of the model
+     * @throws IOException
+     */
+    public String translate(String dataset, String sentence) throws IOException {
+        try {
+            return translateAsync(dataset, sentence).get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the model.", exception);
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            throw cause instanceof IOException ? (IOException) cause :
+                    new IOException("Error in querying the model.", cause);
+        }
+    }
+
+    /**
+     * Translate the sentence into SQL asynchronously. The request
+     * is queued without blocking the caller if too many requests
+     * are in flight. Failed requests are retried up to the
+     * configured times if the failure may be transient.
+     *
+     * @param dataset       dataset (table) the sentence refers to
+     * @param sentence      natural language sentence
+     * @return              future of the raw JSON response
+     */
+    public CompletableFuture<String> translateAsync(String dataset, String sentence) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        waiting.add(() -> {
+            if (future.isDone()) {
+                // Cancelled by the caller while queued
+                inFlight.release();
+                return;
+            }
+            future.whenComplete((result, failure) -> {
+                inFlight.release();
+                sendWaiting();
+            });
+            try {
+                send(dataset, sentence, HostConfig.MODEL_RETRIES, future);
+            } catch (RuntimeException exception) {
+                future.completeExceptionally(exception);
+            }
+        });
+        sendWaiting();
+        return future;
+    }
+
+    /**
+     * Send queued requests while fewer than the maximal
+     * number of requests are in flight.
+     */
+    private void sendWaiting() {
+        while (!waiting.isEmpty() && inFlight.tryAcquire()) {
+            Runnable next = waiting.poll();
+            if (next == null) {
+                inFlight.release();
+                continue;
+            }
+            next.run();
+        }
+    }
+
+    /**
+     * Send one request and complete the future with the
+     * response, or retry if there are attempts left.
+     *
+     * @param dataset       dataset (table) the sentence refers to
+     * @param sentence      natural language sentence
+     * @param retries       number of remaining retries
+     * @param future        future to complete
+     */
+    private void send(String dataset, String sentence, int retries,
+                      CompletableFuture<String> future) {
+        MultiPartContentProvider multiPart = new MultiPartContentProvider();
+        multiPart.addFieldPart("t", new StringContentProvider(dataset), null);
+        multiPart.addFieldPart("q", new StringContentProvider(sentence), null);
+        multiPart.close();
+        Request request = httpClient.newRequest(modelURL)
+                .method(HttpMethod.POST)
+                .content(multiPart)
+                .timeout(HostConfig.MODEL_REQUEST_TIMEOUT, TimeUnit.MILLISECONDS);
+        request.send(new BufferingResponseListener(MAX_RESPONSE_SIZE) {
+            @Override
+            public void onComplete(Result result) {
+                IOException failure = null;
+                // Client errors fail the same way when retried
+                boolean isRetriable = true;
+                if (result.isFailed()) {
+                    failure = new IOException("Error in querying the model.", result.getFailure());
+                }
+                else if (result.getResponse().getStatus() / 100 != 2) {
+                    int status = result.getResponse().getStatus();
+                    failure = new IOException("Model responded with status " + status);
+                    isRetriable = status / 100 == 5 || status == 429;
+                }
+                if (failure == null) {
+                    future.complete(getContentAsString());
+                }
+                else if (isRetriable && retries > 0 && httpClient.isRunning()) {
+                    httpClient.getScheduler().schedule(() -> {
+                        if (!future.isDone()) {
+                            send(dataset, sentence, retries - 1, future);
+                        }
+                    }, HostConfig.MODEL_RETRY_DELAY, TimeUnit.MILLISECONDS);
+                }
+                else {
+                    future.completeExceptionally(failure);
+                }
+            }
+        });
+    }
+
+    /**
+     * Close all pooled connections.
+     */
+    public void close() {
+        try {
+            httpClient.stop();
+        } catch (Exception exception) {
+            System.out.println("Error in stopping the model client.");
+        }
+    }
+}
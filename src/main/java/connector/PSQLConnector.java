@@ -1,5 +1,7 @@
 package connector;
-import java.sql.DriverManager;
+import config.HostConfig;
+
+import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -14,12 +16,12 @@ import java.util.Properties;
  */
 public class PSQLConnector extends DBConnector{
     public PSQLConnector() {
-        String url = "jdbc:postgresql://localhost:5432/nycopen";
+        String url = HostConfig.PG_HOST;
         Properties props = new Properties();
         props.setProperty("user", "postgres");
         props.setProperty("password", "postgres");
-        try {
-            connection = DriverManager.getConnection(url, props);
+        pool = new ConnectionPool(url, props, HostConfig.DB_POOL_SIZE, HostConfig.DB_CHECKOUT_TIMEOUT);
+        try (Connection ignored = pool.getConnection()) {
             System.out.println("Connected to postgres successfully");
         } catch (SQLException throwables) {
             System.out.println("Error in connecting to postgres.");
@@ -31,7 +33,7 @@ public class PSQLConnector extends DBConnector{
      *
      * @return      The instance of DB connector.
      */
-    public static DBConnector getConnector() {
+    public static synchronized DBConnector getConnector() {
         if (dbConnector == null) {
             dbConnector = new PSQLConnector();
         }
@@ -40,26 +42,30 @@ public class PSQLConnector extends DBConnector{
 
 
     public List<String> execute(String query) throws SQLException {
-        Statement stmt = connection.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
-        List<String> results = new ArrayList<>();
-        while (rs.next()) {
-            String targetName = rs.getString(1);
-            results.add(targetName);
+        try (Connection connection = pool.getConnection()) {
+            Statement stmt = connection.createStatement();
+            ResultSet rs = stmt.executeQuery(query);
+            List<String> results = new ArrayList<>();
+            while (rs.next()) {
+                String targetName = rs.getString(1);
+                results.add(targetName);
+            }
+            rs.close();
+            return results;
         }
-        rs.close();
-        return results;
     }
 
     public List<String> explain(List<String> queries) throws SQLException {
-        Statement stmt = connection.createStatement();
-        List<String> explainOutput = new ArrayList<>(queries.size());
-        for (String query: queries) {
-            ResultSet rs = stmt.executeQuery("EXPLAIN " + query);
-            while (rs.next()) {
-                explainOutput.add(rs.getString(1));
+        try (Connection connection = pool.getConnection()) {
+            Statement stmt = connection.createStatement();
+            List<String> explainOutput = new ArrayList<>(queries.size());
+            for (String query: queries) {
+                ResultSet rs = stmt.executeQuery("EXPLAIN " + query);
+                while (rs.next()) {
+                    explainOutput.add(rs.getString(1));
+                }
             }
+            return explainOutput;
         }
-        return explainOutput;
     }
 }
@@ -0,0 +1,171 @@
+package matching;
+
+import config.SearchConfig;
+import org.apache.lucene.search.ScoreDoc;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Fuzzy matches of several literals looked up at once.
+ * The current searcher of each dataset is acquired once
+ * and all literals of the dataset are matched on it, so
+ * that the matches and the metadata resolving them come
+ * from the same snapshot of the index. Literals missing
+ * from the match cache are matched concurrently on a
+ * shared pool of threads.
+ *
+ * @author Ziyun Wei
+ */
+public class BatchLookup {
+    /**
+     * Threads shared by all batches.
+     */
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+            Math.max(1, SearchConfig.LOOKUP_THREADS), runnable -> {
+                Thread thread = new Thread(runnable, "fuzzy-lookup");
+                thread.setDaemon(true);
+                return thread;
+            });
+    /**
+     * Ranked matches of each literal, aligned with the lookups.
+     */
+    public final ScoreDoc[][] hits;
+    /**
+     * Metadata of the snapshot searched for each dataset.
+     */
+    private final Map<String, HitMetadata> metadata;
+
+    /**
+     * A literal to match in the index of a dataset.
+     */
+    public static class Lookup {
+        public final String literal;
+        public final String dataset;
+        public final int topK;
+
+        public Lookup(String literal, String dataset, int topK) {
+            this.literal = literal;
+            this.dataset = dataset;
+            this.topK = topK;
+        }
+    }
+
+    private BatchLookup(ScoreDoc[][] hits, Map<String, HitMetadata> metadata) {
+        this.hits = hits;
+        this.metadata = metadata;
+    }
+
+    /**
+     * Metadata resolving the matches of the dataset. Datasets
+     * without lookups in the batch get the current metadata.
+     *
+     * @param dataset       dataset of the index
+     * @return              metadata of the searched snapshot
+     * @throws IOException
+     */
+    public HitMetadata metadata(String dataset) throws IOException {
+        HitMetadata datasetMetadata = metadata.get(dataset);
+        return datasetMetadata != null ? datasetMetadata : FuzzySearch.metadata(dataset);
+    }
+
+    /**
+     * Match the literals in the index of one dataset.
+     *
+     * @param dataset       dataset of the index
+     * @param literals      literals to match
+     * @param topK          number of matches per literal
+     * @return              matches aligned with the literals
+     * @throws IOException
+     */
+    public static BatchLookup search(String dataset, List<String> literals, int topK) throws IOException {
+        List<Lookup> lookups = new ArrayList<>(literals.size());
+        for (String literal: literals) {
+            lookups.add(new Lookup(literal, dataset, topK));
+        }
+        return search(lookups);
+    }
+
+    /**
+     * Match the literals of the lookups.
+     *
+     * @param lookups       literals and their datasets
+     * @return              matches aligned with the lookups
+     * @throws IOException
+     */
+    public static BatchLookup search(List<Lookup> lookups) throws IOException {
+        int nrLookups = lookups.size();
+        ScoreDoc[][] hits = new ScoreDoc[nrLookups][];
+        MatchCache matchCache = FuzzySearch.matchCache;
+        long generation = matchCache.getGeneration();
+        Map<String, SearcherRegistry.DatasetSearcher> searchers = new LinkedHashMap<>();
+        try {
+            for (Lookup lookup: lookups) {
+                if (!searchers.containsKey(lookup.dataset)) {
+                    searchers.put(lookup.dataset, FuzzySearch.searchers.acquire(lookup.dataset));
+                }
+            }
+            // Cached matches of other readers than the acquired ones are misses
+            for (int lookupCtr = 0; lookupCtr < nrLookups; lookupCtr++) {
+                Lookup lookup = lookups.get(lookupCtr);
+                hits[lookupCtr] = matchCache.get(lookup.dataset, lookup.literal.toLowerCase(), lookup.topK,
+                        searchers.get(lookup.dataset).readerKey);
+            }
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int lookupCtr = 0; lookupCtr < nrLookups; lookupCtr++) {
+                if (hits[lookupCtr] != null) {
+                    continue;
+                }
+                int index = lookupCtr;
+                Lookup lookup = lookups.get(index);
+                SearcherRegistry.DatasetSearcher searcher = searchers.get(lookup.dataset);
+                tasks.add(() -> {
+                    hits[index] = FuzzySearch.search(searcher, searcher.metadata, lookup.literal, lookup.topK);
+                    matchCache.put(lookup.dataset, lookup.literal.toLowerCase(), lookup.topK,
+                            hits[index], searcher.readerKey, generation);
+                    return null;
+                });
+            }
+            run(tasks);
+            Map<String, HitMetadata> metadata = new HashMap<>(searchers.size());
+            for (SearcherRegistry.DatasetSearcher searcher: searchers.values()) {
+                metadata.put(searcher.dataset, searcher.metadata);
+            }
+            return new BatchLookup(hits, metadata);
+        } finally {
+            for (SearcherRegistry.DatasetSearcher searcher: searchers.values()) {
+                FuzzySearch.searchers.release(searcher);
+            }
+        }
+    }
+
+    /**
+     * Run the tasks on the shared threads, a single task on the caller's.
+     */
+    private static void run(List<Callable<Void>> tasks) throws IOException {
+        try {
+            if (tasks.size() == 1) {
+                tasks.get(0).call();
+                return;
+            }
+            for (Future<Void> future: EXECUTOR.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while matching literals");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+}
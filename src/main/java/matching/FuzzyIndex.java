@@ -1,6 +1,9 @@
 package matching;
 
+import config.IndexConfig;
+import matching.indexing.IncrementalIndexer;
 import matching.indexing.Indexer;
+import matching.indexing.ParallelIndexer;
 import matching.schema.*;
 
 import java.io.*;
@@ -31,10 +34,25 @@ public class FuzzyIndex {
         String outputDirPath = (Indexer.Phonetic ? PHONETIC_DIR : INDEX_DIR) + "/" + name;
 
         long startTime = System.currentTimeMillis();
-        Indexer index  = new Indexer(inputFilePath, outputDirPath, schema);
-
-        System.out.print("Creating index " + outputDirPath + " from " + inputFilePath + " ... ");
-        index.insert();
+        // Maintain the existing index: append new rows or reconcile with the file
+        String mode = args.length > 0 ? args[0] : "create";
+        if (mode.equals("append") || mode.equals("reconcile")) {
+            System.out.print("Updating index " + outputDirPath + " from " + inputFilePath + " ... ");
+            try (IncrementalIndexer index = new IncrementalIndexer(outputDirPath, schema)) {
+                System.out.println(mode.equals("append") ?
+                        index.append(inputFilePath) : index.reconcile(inputFilePath));
+            }
+        }
+        else if (IndexConfig.INDEX_THREADS > 1) {
+            System.out.print("Creating index " + outputDirPath + " from " + inputFilePath + " ... ");
+            ParallelIndexer index = new ParallelIndexer(inputFilePath, outputDirPath, schema);
+            System.out.println(index.insert());
+        }
+        else {
+            System.out.print("Creating index " + outputDirPath + " from " + inputFilePath + " ... ");
+            Indexer index  = new Indexer(inputFilePath, outputDirPath, schema);
+            index.insert();
+        }
 
         System.out.format("Finished in %.2f seconds.\n", (float) (System.currentTimeMillis() - startTime) / 1000);
     }
@@ -1,7 +1,11 @@
 package matching;
-import config.PlanConfig;
+import config.CacheConfig;
+import config.PlanContext;
+import config.SearchConfig;
 import matching.indexing.Indexer;
-import matching.score.ProbabilityScore;
+import matching.query.ProbabilityCollector;
+import matching.query.SpanProbQuery;
+import matching.score.SimilarityKernel;
 import org.apache.commons.codec.language.DoubleMetaphone;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.DirectoryReader;
@@ -17,137 +21,109 @@ import org.apache.lucene.store.FSDirectory;
 import java.io.*;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 import static matching.FuzzyIndex.*;
 
 public class FuzzySearch {
-    public static final Map<String, IndexSearcher> searchers = new ConcurrentHashMap<>();
+    /**
+     * Managed searchers of the indexed datasets.
+     */
+    public static final SearcherRegistry searchers = new SearcherRegistry();
+    /**
+     * Ranked matches of recently searched literals.
+     */
+    public static final MatchCache matchCache = new MatchCache(CacheConfig.MATCH_CACHE_SIZE);
 
-    public static ScoreDoc[] search(String query_str, String dataset) throws IOException, ParseException {
-        String normalized = preprocessing(query_str);
-        Query query = buildTermsQuery(normalized);
-        IndexReader reader;
-        IndexSearcher searcher;
-        if (!searchers.containsKey(dataset)) {
-            String searchDir = (Indexer.Phonetic ? PHONETIC_DIR : INDEX_DIR) + "/" + dataset;
-            reader = DirectoryReader.open(FSDirectory.open(Paths.get(searchDir)));
-            searcher = new IndexSearcher(reader);
-            searchers.put(dataset, searcher);
-        }
-        else {
-            searcher = searchers.get(dataset);
-        }
-        ScoreDoc[] hits = searcher.search(query, PlanConfig.TOPK).scoreDocs;
-        // Use phonetic indexing
-        Map<Integer, ScoreDoc> idToDocs = new HashMap<>(hits.length);
-        if (Indexer.Phonetic) {
-            Arrays.stream(hits).forEach(doc -> idToDocs.put(doc.doc, doc));
-            Query phoneticQuery = buildPhoneticQuery(normalized);
-            ScoreDoc[] phoneticHits = searcher.search(phoneticQuery, PlanConfig.TOPK).scoreDocs;
-            for (ScoreDoc phoneticDoc : phoneticHits) {
-                int docID = phoneticDoc.doc;
-                if (idToDocs.containsKey(docID)) {
-                    idToDocs.get(docID).score += phoneticDoc.score;
-                }
-                else {
-                    idToDocs.put(docID, phoneticDoc);
-                }
+    public static ScoreDoc[] search(String query_str, String dataset, int TOPK) throws IOException, ParseException {
+        // The phonetic score depends on the literal before preprocessing
+        String literal = query_str.toLowerCase();
+        long generation = matchCache.getGeneration();
+        SearcherRegistry.DatasetSearcher searcher = searchers.acquire(dataset);
+        try {
+            ScoreDoc[] cachedHits = matchCache.get(dataset, literal, TOPK, searcher.readerKey);
+            if (cachedHits != null) {
+                return cachedHits;
             }
+            ScoreDoc[] hits = search(searcher, searcher.metadata, query_str, TOPK);
+            matchCache.put(dataset, literal, TOPK, hits, searcher.readerKey, generation);
+            return hits;
+        } finally {
+            searchers.release(searcher);
         }
-        // Reorder the documents by similarity
-        String finalPhonetic = phoneticEncoder(query_str);
-        int toIndex = Math.min(PlanConfig.TOPK, idToDocs.size());
-        hits = idToDocs.values().stream().sorted((doc1, doc2) -> {
-            try {
-                Document hitDoc1 = searcher.doc(doc1.doc);
-                String text1 = hitDoc1.get("text");
-                String phonetic1 = hitDoc1.get("phonetic");
-                Document hitDoc2 = searcher.doc(doc2.doc);
-                String text2 = hitDoc2.get("text");
-                String phonetic2 = hitDoc2.get("phonetic");
-                float score1 = (float) ProbabilityScore.score(normalized, text1);
-                float score2 = (float) ProbabilityScore.score(normalized, text2);
-
-                float phoneticScore1 = (float) ProbabilityScore.score(finalPhonetic, phonetic1);
-                float phoneticScore2 = (float) ProbabilityScore.score(finalPhonetic, phonetic2);
-
-                doc1.score = score1;
-                doc2.score = score2;
+    }
 
-                doc1.score = 0.5f * score1 + 0.5f * phoneticScore1;
-                doc2.score = 0.5f * score2 + 0.5f * phoneticScore2;
-                if (score1 < score2) return 1;
-                if (score1 > score2) return -1;
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            return 0;
-        }).collect(Collectors.toList()).subList(0, toIndex).toArray(new ScoreDoc[0]);
-        return hits;
+    /**
+     * Search the literal on the given searcher without caching.
+     *
+     * @param searcher      searcher of the index
+     * @param metadata      metadata of the reader of the searcher
+     * @param query_str     literal to match
+     * @param TOPK          number of matches
+     * @return              matches ordered by similarity
+     * @throws IOException
+     */
+    public static ScoreDoc[] search(IndexSearcher searcher, HitMetadata metadata,
+                                    String query_str, int TOPK) throws IOException {
+        return search(searcher, metadata, query_str, TOPK, SearchConfig.ENGINE);
     }
 
-    public static ScoreDoc[] search(String query_str, String dataset, int TOPK) throws IOException, ParseException {
+    /**
+     * Search the literal on the given searcher without caching,
+     * generating candidates by the given engine.
+     *
+     * @param searcher      searcher of the index
+     * @param metadata      metadata of the reader of the searcher
+     * @param query_str     literal to match
+     * @param TOPK          number of matches
+     * @param engine        engine generating candidates
+     * @return              matches ordered by similarity
+     * @throws IOException
+     */
+    public static ScoreDoc[] search(IndexSearcher searcher, HitMetadata metadata,
+                                    String query_str, int TOPK, MatchEngine engine) throws IOException {
         String normalized = preprocessing(query_str);
-        Query query = buildTermsQuery(normalized);
-        IndexReader reader;
-        IndexSearcher searcher;
-        if (!searchers.containsKey(dataset)) {
-            String searchDir = (Indexer.Phonetic ? PHONETIC_DIR : INDEX_DIR) + "/" + dataset;
-            reader = DirectoryReader.open(FSDirectory.open(Paths.get(searchDir)));
-            searcher = new IndexSearcher(reader);
-            searchers.put(dataset, searcher);
-        }
-        else {
-            searcher = searchers.get(dataset);
+        String finalPhonetic = phoneticEncoder(query_str);
+        if (engine == MatchEngine.NGRAM && metadata.hasGrams()) {
+            int nrCandidates = Math.max(TOPK, SearchConfig.NGRAM_CANDIDATES);
+            ScoreDoc[] candidates = searcher.search(NGrams.candidateQuery(normalized), nrCandidates).scoreDocs;
+            return Reranker.rerank(metadata, Arrays.asList(candidates), normalized, finalPhonetic, TOPK, true);
         }
-        ScoreDoc[] hits = searcher.search(query, TOPK).scoreDocs;
-        // Use phonetic indexing
-        Map<Integer, ScoreDoc> idToDocs = new HashMap<>(hits.length);
-        if (Indexer.Phonetic) {
-            Arrays.stream(hits).forEach(doc -> idToDocs.put(doc.doc, doc));
-            Query phoneticQuery = buildPhoneticQuery(normalized);
-            ScoreDoc[] phoneticHits = searcher.search(phoneticQuery, TOPK).scoreDocs;
-            for (ScoreDoc phoneticDoc : phoneticHits) {
-                int docID = phoneticDoc.doc;
-                if (idToDocs.containsKey(docID)) {
-                    idToDocs.get(docID).score += phoneticDoc.score;
-                }
-                else {
-                    idToDocs.put(docID, phoneticDoc);
-                }
-            }
+        // Matches are ranked by their probability while they are collected
+        if (SearchConfig.COMBINED_COLLECTOR) {
+            ProbabilityCollector collector = new ProbabilityCollector(metadata, normalized, finalPhonetic, TOPK);
+            searcher.search(buildCandidateQuery(normalized), collector);
+            return collector.topDocs();
         }
-        // Reorder the documents by similarity
-        String finalPhonetic = phoneticEncoder(query_str);
-        hits = idToDocs.values().stream().sorted((doc1, doc2) -> {
-            try {
-                Document hitDoc1 = searcher.doc(doc1.doc);
-                String text1 = hitDoc1.get("text");
-                String phonetic1 = hitDoc1.get("phonetic");
-                Document hitDoc2 = searcher.doc(doc2.doc);
-                String text2 = hitDoc2.get("text");
-                String phonetic2 = hitDoc2.get("phonetic");
-                float score1 = (float) ProbabilityScore.score(normalized, text1);
-                float score2 = (float) ProbabilityScore.score(normalized, text2);
-
-                float phoneticScore1 = (float) ProbabilityScore.score(finalPhonetic, phonetic1);
-                float phoneticScore2 = (float) ProbabilityScore.score(finalPhonetic, phonetic2);
+        Query query = buildProbabilityQuery(normalized, finalPhonetic, metadata);
+        return searcher.search(query, TOPK).scoreDocs;
+    }
 
-                doc1.score = score1;
-                doc2.score = score2;
+    /**
+     * Metadata of the values indexed for the dataset.
+     *
+     * @param dataset       dataset of the index
+     * @return              metadata of the current searcher
+     * @throws IOException
+     */
+    public static HitMetadata metadata(String dataset) throws IOException {
+        SearcherRegistry.DatasetSearcher searcher = searchers.acquire(dataset);
+        try {
+            return searcher.metadata;
+        } finally {
+            searchers.release(searcher);
+        }
+    }
 
-                doc1.score = 0.5f * score1 + 0.5f * phoneticScore1;
-                doc2.score = 0.5f * score2 + 0.5f * phoneticScore2;
-                if (score1 < score2) return 1;
-                if (score1 > score2) return -1;
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            return 0;
-        }).collect(Collectors.toList()).subList(0, TOPK).toArray(new ScoreDoc[0]);
-        return hits;
+    /**
+     * Reopen the index of the dataset if it has changed
+     * and drop the cached matches of the dataset.
+     *
+     * @param dataset       dataset of the index
+     * @throws IOException
+     */
+    public static void reopen(String dataset) throws IOException {
+        searchers.refresh(dataset);
+        matchCache.invalidate(dataset);
     }
 
     public static String preprocessing(String query_str) {
@@ -157,7 +133,7 @@ public class FuzzySearch {
 
     public static String phoneticEncoding(String query_str) {
         StringBuilder representation = new StringBuilder();
-        DoubleMetaphone encoder = new DoubleMetaphone();
+        DoubleMetaphone encoder = SimilarityKernel.METAPHONE;
         for (String token: query_str.split(" ")) {
             if (!token.equals("")) {
                 String encoding = encoder.encode(token);
@@ -185,26 +161,74 @@ public class FuzzySearch {
         }
     }
 
-    public static String phoneticEncoder(String query_str) {
-        DoubleMetaphone encoder = new DoubleMetaphone();
-        String[] tokens = query_str.split(" ");
-        List<String> newTokens = new ArrayList<>(tokens.length);
-        for (String token : tokens) {
+    /**
+     * Query matching values like the text and phonetic queries
+     * and scoring each match by its probability of being the
+     * literal, see SpanProbQuery. Values matching both queries
+     * score their probability once.
+     *
+     * @param normalized    preprocessed query literal
+     * @param phonetic      phonetic encoding of the literal
+     * @param metadata      metadata of the searched reader
+     * @return              probabilistic query
+     */
+    public static Query buildProbabilityQuery(String normalized, String phonetic, HitMetadata metadata) {
+        List<Query> disjuncts = new ArrayList<>(2);
+        for (SpanQuery[] clauses: buildSpanClauses(normalized)) {
+            disjuncts.add(new SpanProbQuery(clauses, 3, true, metadata, normalized, phonetic));
+        }
+        return new DisjunctionMaxQuery(disjuncts, 0);
+    }
+
+    /**
+     * Disjunction of the text and phonetic queries, matched
+     * in one pass without scoring, see ProbabilityCollector.
+     *
+     * @param normalized    preprocessed query literal
+     * @return              candidate query
+     */
+    public static Query buildCandidateQuery(String normalized) {
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (SpanQuery[] clauses: buildSpanClauses(normalized)) {
+            builder.add(new SpanProbQuery(clauses, 3, true), BooleanClause.Occur.SHOULD);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Span clauses of the tokens of the literal in the text
+     * field and, if phonetic indexing is used, the phonetic field.
+     */
+    private static List<SpanQuery[]> buildSpanClauses(String normalized) {
+        DoubleMetaphone encoder = SimilarityKernel.METAPHONE;
+        List<SpanQuery> termClauses = new ArrayList<>();
+        List<SpanQuery> phoneticClauses = new ArrayList<>();
+        for (String token: normalized.split(" ")) {
             if (!token.equals("")) {
+                termClauses.add(new SpanMultiTermQueryWrapper<>(
+                        new FuzzyQuery(new Term("content", token), 2)));
                 String encoding = encoder.encode(token);
-                if (!encoding.equals("")) {
-                    newTokens.add(encoding.toLowerCase());
-                } else {
-                    newTokens.add(token);
-                }
+                phoneticClauses.add(new SpanMultiTermQueryWrapper<>(new FuzzyQuery(
+                        new Term("phonetic", encoding.equals("") ? token : encoding.toLowerCase()), 2)));
+            }
+        }
+        List<SpanQuery[]> clauses = new ArrayList<>(2);
+        if (!termClauses.isEmpty()) {
+            clauses.add(termClauses.toArray(new SpanQuery[0]));
+            if (Indexer.Phonetic) {
+                clauses.add(phoneticClauses.toArray(new SpanQuery[0]));
             }
         }
-        return String.join(" ",  newTokens);
+        return clauses;
+    }
+
+    public static String phoneticEncoder(String query_str) {
+        return SimilarityKernel.phoneticEncoder(query_str);
     }
 
     public static Query buildPhoneticQuery(String query_str) {
         String[] tokens = query_str.split(" ");
-        DoubleMetaphone encoder = new DoubleMetaphone();
+        DoubleMetaphone encoder = SimilarityKernel.METAPHONE;
         List<FuzzyQuery> fuzzyQueries = new ArrayList<>(tokens.length);
         List<SpanQuery> clauses = new ArrayList<>(tokens.length);
         for (int tokenCtr = 0; tokenCtr < tokens.length; tokenCtr++) {
@@ -243,7 +267,8 @@ public class FuzzySearch {
         String searchDir = (Indexer.Phonetic ? PHONETIC_DIR : INDEX_DIR) + "/" + dataset;
         reader = DirectoryReader.open(FSDirectory.open(Paths.get(searchDir)));
         IndexSearcher searcher = new IndexSearcher(reader);
-        ScoreDoc[] hits = searcher.search(query, PlanConfig.TOPK).scoreDocs;
+        int topK = PlanContext.fromConfig().topK;
+        ScoreDoc[] hits = searcher.search(query, topK).scoreDocs;
 
         // Use phonetic indexing
         if (Indexer.Phonetic) {
@@ -251,7 +276,7 @@ public class FuzzySearch {
             Arrays.stream(hits).forEach(doc -> idToDocs.put(doc.doc, doc));
 
             Query phoneticQuery = buildPhoneticQuery(query_str);
-            ScoreDoc[] phoneticHits = searcher.search(phoneticQuery, PlanConfig.TOPK).scoreDocs;
+            ScoreDoc[] phoneticHits = searcher.search(phoneticQuery, topK).scoreDocs;
             for (ScoreDoc phoneticDoc : phoneticHits) {
                 int docID = phoneticDoc.doc;
                 if (idToDocs.containsKey(docID)) {
@@ -263,40 +288,16 @@ public class FuzzySearch {
             }
         }
         // Iterate through the results:
-        String finalQuery_str = query_str;
         String finalPhonetic = phoneticEncoder(query_str);
-        List<ScoreDoc> scoreDocs = Arrays.stream(hits).sorted((doc1, doc2) -> {
-            try {
-                Document hitDoc1 = searcher.doc(doc1.doc);
-                String text1 = hitDoc1.get("text");
-                String phonetic1 = hitDoc1.get("phonetic");
-                Document hitDoc2 = searcher.doc(doc2.doc);
-                String text2 = hitDoc2.get("text");
-                String phonetic2 = hitDoc2.get("phonetic");
-                float score1 = (float) ProbabilityScore.score(finalQuery_str, text1);
-                float score2 = (float) ProbabilityScore.score(finalQuery_str, text2);
-
-                float phoneticScore1 = (float) ProbabilityScore.score(finalPhonetic, phonetic1);
-                float phoneticScore2 = (float) ProbabilityScore.score(finalPhonetic, phonetic2);
-
-                doc1.score = score1;
-                doc2.score = score2;
-
-                doc1.score = 0.5f * score1 + 0.5f * phoneticScore1;
-                doc2.score = 0.5f * score2 + 0.5f * phoneticScore2;
-                if (score1 < score2) return 1;
-                if (score1 > score2) return -1;
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            return 0;
-        }).collect(Collectors.toList()).subList(0, PlanConfig.TOPK);
+        HitMetadata hitMetadata = new HitMetadata(reader);
+        ScoreDoc[] scoreDocs = Reranker.rerank(hitMetadata, Arrays.asList(hits),
+                query_str, finalPhonetic, topK);
         for (ScoreDoc scoreDoc : scoreDocs) {
             Document hitDoc = searcher.doc(scoreDoc.doc);
-            String column = hitDoc.get("column");
+            String column = hitMetadata.column(scoreDoc.doc);
             String content = hitDoc.get("content");
-            String phonetic = hitDoc.get("phonetic");
-            String text = hitDoc.get("text");
+            String phonetic = hitMetadata.phonetic(scoreDoc.doc);
+            String text = hitMetadata.text(scoreDoc.doc);
             System.out.println("Column: " + column + "\tContent: " +
                     content + "\tPhonetic: " + phonetic + "\tText: " + text + "\tScore: " + scoreDoc.score);
         }
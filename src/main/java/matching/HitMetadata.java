@@ -0,0 +1,228 @@
+package matching;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.*;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.packed.PackedInts;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Metadata of each indexed value: the column, the original
+ * text and its phonetic encoding, looked up by document ID
+ * in the reader without loading documents. Column names are
+ * kept per segment as ordinals in packed arrays, built once
+ * per segment core and shared by all readers of the segment,
+ * so that a refresh only builds the new segments. Texts and
+ * phonetic encodings are read from binary doc values of the
+ * hit. Segments of indexes without doc values read the
+ * stored fields of the hit instead. It also records whether
+ * the values have n-grams.
+ *
+ * @author Ziyun Wei
+ */
+public class HitMetadata {
+    /**
+     * Stored fields read if the index has no doc values.
+     */
+    private static final Set<String> FIELDS = new HashSet<>(Arrays.asList("column", "text", "phonetic"));
+    /**
+     * Column dictionaries of the open segments by core key.
+     */
+    private static final Map<IndexReader.CacheKey, SegmentColumns> SEGMENTS = new ConcurrentHashMap<>();
+    /**
+     * Leaf readers of the reader and the first document ID of each.
+     */
+    private final LeafReader[] leaves;
+    private final int[] docStarts;
+    /**
+     * Column dictionary of each leaf, null if the leaf has no doc values.
+     */
+    private final SegmentColumns[] columns;
+    /**
+     * Number of documents in the reader.
+     */
+    private final int maxDoc;
+    /**
+     * Whether n-grams of values are indexed, see NGrams.
+     */
+    private final boolean grams;
+
+    /**
+     * Column names and the ordinal of the column of each
+     * document in one segment.
+     */
+    private static class SegmentColumns {
+        final String[] names;
+        final PackedInts.Reader ords;
+
+        SegmentColumns(LeafReader leaf) throws IOException {
+            SortedDocValues columnValues = DocValues.getSorted(leaf, "column");
+            names = new String[columnValues.getValueCount()];
+            for (int ordCtr = 0; ordCtr < names.length; ordCtr++) {
+                names[ordCtr] = columnValues.lookupOrd(ordCtr).utf8ToString();
+            }
+            // Ordinal 0 stands for documents without column
+            int maxDoc = leaf.maxDoc();
+            PackedInts.Mutable docOrds = PackedInts.getMutable(maxDoc,
+                    PackedInts.bitsRequired(names.length), PackedInts.COMPACT);
+            for (int docCtr = columnValues.nextDoc(); docCtr < maxDoc;
+                 docCtr = columnValues.nextDoc()) {
+                docOrds.set(docCtr, columnValues.ordValue() + 1);
+            }
+            ords = docOrds;
+        }
+
+        String column(int doc) {
+            int ord = (int) ords.get(doc);
+            return ord == 0 ? null : names[ord - 1];
+        }
+    }
+
+    /**
+     * Collect the metadata of all segments in the reader. The
+     * metadata is valid while the reader is open.
+     *
+     * @param reader        index reader
+     * @throws IOException
+     */
+    public HitMetadata(IndexReader reader) throws IOException {
+        List<LeafReaderContext> contexts = reader.leaves();
+        this.leaves = new LeafReader[contexts.size()];
+        this.docStarts = new int[contexts.size()];
+        this.columns = new SegmentColumns[contexts.size()];
+        for (int leafCtr = 0; leafCtr < contexts.size(); leafCtr++) {
+            LeafReader leaf = contexts.get(leafCtr).reader();
+            leaves[leafCtr] = leaf;
+            docStarts[leafCtr] = contexts.get(leafCtr).docBase;
+            FieldInfos fieldInfos = leaf.getFieldInfos();
+            if (hasDocValues(fieldInfos, "column", DocValuesType.SORTED)
+                    && hasDocValues(fieldInfos, "text", DocValuesType.BINARY)) {
+                columns[leafCtr] = segmentColumns(leaf);
+            }
+        }
+        this.maxDoc = reader.maxDoc();
+        this.grams = FieldInfos.getMergedFieldInfos(reader).fieldInfo(NGrams.FIELD) != null;
+    }
+
+    /**
+     * Column dictionary of the segment, built on first use of its core.
+     */
+    private static SegmentColumns segmentColumns(LeafReader leaf) throws IOException {
+        IndexReader.CacheHelper cacheHelper = leaf.getCoreCacheHelper();
+        if (cacheHelper == null) {
+            return new SegmentColumns(leaf);
+        }
+        IndexReader.CacheKey key = cacheHelper.getKey();
+        SegmentColumns segmentColumns = SEGMENTS.get(key);
+        if (segmentColumns == null) {
+            try {
+                segmentColumns = SEGMENTS.computeIfAbsent(key, k -> {
+                    try {
+                        return new SegmentColumns(leaf);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            cacheHelper.addClosedListener(SEGMENTS::remove);
+        }
+        return segmentColumns;
+    }
+
+    private static boolean hasDocValues(FieldInfos fieldInfos, String field, DocValuesType type) {
+        FieldInfo fieldInfo = fieldInfos.fieldInfo(field);
+        return fieldInfo != null && fieldInfo.getDocValuesType() == type;
+    }
+
+    /**
+     * Column name of the document.
+     *
+     * @param doc       document ID in the reader
+     * @return          column name or null
+     */
+    public String column(int doc) {
+        int leafCtr = ReaderUtil.subIndex(doc, docStarts);
+        if (columns[leafCtr] != null) {
+            return columns[leafCtr].column(doc - docStarts[leafCtr]);
+        }
+        return storedField(leafCtr, doc, "column");
+    }
+
+    /**
+     * Original text of the document.
+     *
+     * @param doc       document ID in the reader
+     * @return          original text or null
+     */
+    public String text(int doc) {
+        return field(doc, "text");
+    }
+
+    /**
+     * Phonetic encoding of the document.
+     *
+     * @param doc       document ID in the reader
+     * @return          phonetic encoding or null
+     */
+    public String phonetic(int doc) {
+        return field(doc, "phonetic");
+    }
+
+    /**
+     * Value of the field of the document, read from binary doc
+     * values if the segment has them and from stored fields otherwise.
+     */
+    private String field(int doc, String field) {
+        int leafCtr = ReaderUtil.subIndex(doc, docStarts);
+        if (columns[leafCtr] == null) {
+            return storedField(leafCtr, doc, field);
+        }
+        LeafReader leaf = leaves[leafCtr];
+        try {
+            if (!hasDocValues(leaf.getFieldInfos(), field, DocValuesType.BINARY)) {
+                return null;
+            }
+            BinaryDocValues values = DocValues.getBinary(leaf, field);
+            if (!values.advanceExact(doc - docStarts[leafCtr])) {
+                return null;
+            }
+            BytesRef value = values.binaryValue();
+            return value.utf8ToString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String storedField(int leafCtr, int doc, String field) {
+        try {
+            Document document = leaves[leafCtr].document(doc - docStarts[leafCtr], FIELDS);
+            return document.get(field);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Whether the n-gram engine can search the index.
+     *
+     * @return          true if n-grams of values are indexed
+     */
+    public boolean hasGrams() {
+        return grams;
+    }
+
+    /**
+     * Number of documents in the reader.
+     *
+     * @return          number of documents
+     */
+    public int size() {
+        return maxDoc;
+    }
+}
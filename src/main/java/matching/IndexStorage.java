@@ -0,0 +1,65 @@
+package matching;
+
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Storage of an index opened for searching.
+ *
+ * @author Ziyun Wei
+ */
+public enum IndexStorage {
+    /**
+     * Implementation chosen by the platform.
+     */
+    FS,
+    /**
+     * Index files memory mapped and loaded into physical memory when opened.
+     */
+    MMAP,
+    /**
+     * Index files copied to the heap when opened. Changes on disk
+     * become visible only when the index is opened again.
+     */
+    HEAP;
+
+    /**
+     * Open the index directory in this storage.
+     *
+     * @param path          path to the index directory
+     * @return              directory to open readers on
+     * @throws IOException
+     */
+    public Directory open(Path path) throws IOException {
+        switch (this) {
+            case MMAP:
+                MMapDirectory mmapDirectory = new MMapDirectory(path);
+                mmapDirectory.setPreload(true);
+                return mmapDirectory;
+            case HEAP:
+                ByteBuffersDirectory heapDirectory = new ByteBuffersDirectory();
+                try (Directory fsDirectory = FSDirectory.open(path)) {
+                    // Copy the files of the latest commit only
+                    SegmentInfos commit = SegmentInfos.readLatestCommit(fsDirectory);
+                    for (String file: commit.files(true)) {
+                        heapDirectory.copyFrom(fsDirectory, file, file, IOContext.READONCE);
+                    }
+                }
+                return heapDirectory;
+            default:
+                return FSDirectory.open(path);
+        }
+    }
+
+    /**
+     * Whether readers on the storage see changes of the files on disk.
+     *
+     * @return              false if the index has to be opened again
+     */
+    public boolean seesChanges() {
+        return this != HEAP;
+    }
+}
@@ -0,0 +1,189 @@
+package matching;
+
+import org.apache.lucene.search.ScoreDoc;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of ranked fuzzy matches keyed by dataset,
+ * literal and number of results. Document IDs are only
+ * valid for the reader that produced them, so each entry
+ * carries the cache key of its reader and is only returned
+ * to searches on that reader. Entries of a dataset are
+ * dropped whenever its index is reopened.
+ * Callers receive copies of the cached documents so that
+ * changing their scores does not affect the cache.
+ *
+ * @author Ziyun Wei
+ */
+public class MatchCache {
+    /**
+     * Maximal number of cached literals.
+     */
+    private final int maxSize;
+    /**
+     * Ranked matches in access order, the least recently used first.
+     */
+    private final LinkedHashMap<String, CachedMatches> entries;
+    /**
+     * Incremented on each invalidation. Matches computed on
+     * a searcher that has been replaced meanwhile are not cached.
+     */
+    private long generation = 0;
+    private final AtomicLong nrHits = new AtomicLong();
+    private final AtomicLong nrMisses = new AtomicLong();
+    private final AtomicLong nrEvictions = new AtomicLong();
+
+    public MatchCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<String, CachedMatches>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedMatches> eldest) {
+                if (size() > MatchCache.this.maxSize) {
+                    nrEvictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Look up the ranked matches of the literal.
+     *
+     * @param dataset       dataset of the index
+     * @param literal       literal to match
+     * @param topK          number of matches
+     * @param readerKey     cache key of the searched reader
+     * @return              copy of cached matches or null if absent
+     */
+    public ScoreDoc[] get(String dataset, String literal, int topK, Object readerKey) {
+        if (maxSize <= 0) {
+            return null;
+        }
+        String key = key(dataset, literal, topK);
+        CachedMatches cachedMatches;
+        synchronized (this) {
+            cachedMatches = entries.get(key);
+        }
+        if (cachedMatches == null || cachedMatches.readerKey != readerKey) {
+            nrMisses.incrementAndGet();
+            return null;
+        }
+        nrHits.incrementAndGet();
+        return copy(cachedMatches.docs);
+    }
+
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Cache the ranked matches of the literal unless the
+     * index has been reopened since the search started.
+     *
+     * @param dataset       dataset of the index
+     * @param literal       literal to match
+     * @param topK          number of matches
+     * @param docs          ranked matches
+     * @param readerKey     cache key of the searched reader
+     * @param generation    generation of the cache when the search started
+     */
+    public void put(String dataset, String literal, int topK, ScoreDoc[] docs,
+                    Object readerKey, long generation) {
+        if (maxSize <= 0) {
+            return;
+        }
+        String key = key(dataset, literal, topK);
+        CachedMatches cachedMatches = new CachedMatches(dataset, copy(docs), readerKey);
+        synchronized (this) {
+            if (generation == this.generation) {
+                entries.put(key, cachedMatches);
+            }
+        }
+    }
+
+    /**
+     * Drop all cached matches of the dataset.
+     *
+     * @param dataset       dataset of the index
+     */
+    public synchronized void invalidate(String dataset) {
+        Iterator<CachedMatches> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().dataset.equals(dataset)) {
+                iterator.remove();
+            }
+        }
+        generation++;
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        generation++;
+    }
+
+    private static String key(String dataset, String literal, int topK) {
+        return dataset + '\u0000' + literal + '\u0000' + topK;
+    }
+
+    private static ScoreDoc[] copy(ScoreDoc[] docs) {
+        ScoreDoc[] copies = new ScoreDoc[docs.length];
+        for (int docCtr = 0; docCtr < docs.length; docCtr++) {
+            ScoreDoc doc = docs[docCtr];
+            copies[docCtr] = new ScoreDoc(doc.doc, doc.score, doc.shardIndex);
+        }
+        return copies;
+    }
+
+    public long getNrHits() {
+        return nrHits.get();
+    }
+
+    public long getNrMisses() {
+        return nrMisses.get();
+    }
+
+    public long getNrEvictions() {
+        return nrEvictions.get();
+    }
+
+    public synchronized int getNrEntries() {
+        return entries.size();
+    }
+
+    public double getHitRate() {
+        long hits = nrHits.get();
+        long lookups = hits + nrMisses.get();
+        return lookups == 0 ? 0 : (hits + 0.0) / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "Match cache: entries " + getNrEntries() + "/" + maxSize
+                + ", hits " + getNrHits() + ", misses " + getNrMisses()
+                + ", hit rate " + String.format("%.2f", getHitRate())
+                + ", evictions " + getNrEvictions();
+    }
+
+    /**
+     * Ranked matches of one literal.
+     */
+    private static class CachedMatches {
+        final String dataset;
+        final ScoreDoc[] docs;
+        /**
+         * Cache key of the reader the documents belong to.
+         */
+        final Object readerKey;
+
+        CachedMatches(String dataset, ScoreDoc[] docs, Object readerKey) {
+            this.dataset = dataset;
+            this.docs = docs;
+            this.readerKey = readerKey;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package matching;
+
+/**
+ * Engine generating the candidates of fuzzy search.
+ * Candidates of both engines are ranked by the same
+ * combination of spelling and phonetic similarity.
+ *
+ * @author Ziyun Wei
+ */
+public enum MatchEngine {
+    /**
+     * Fuzzy queries with up to two edits per token, expanded
+     * over the term dictionaries of the text and phonetic fields
+     * and scored during collection, see SpanProbQuery.
+     */
+    FUZZY,
+    /**
+     * Values sharing most character n-grams with the literal,
+     * see NGrams, and ranked by Reranker by the same
+     * probability. Indexes without n-grams are searched
+     * by FUZZY.
+     */
+    NGRAM
+}
@@ -0,0 +1,128 @@
+package matching;
+
+import config.IndexConfig;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Character n-gram index of the normalized values, the
+ * alternative to expanding fuzzy queries over the whole
+ * term dictionary. The distinct n-grams of each value,
+ * padded at both ends, are indexed in their own field.
+ * A literal retrieves the values sharing most of its
+ * n-grams as candidates, which fuzzy search verifies by
+ * string similarity. A value within k edits of a literal
+ * with g n-grams shares at least g - k * n of them.
+ *
+ * @author Ziyun Wei
+ */
+public class NGrams {
+    /**
+     * Field of the n-grams.
+     */
+    public static final String FIELD = "grams";
+    /**
+     * Indexed without positions, frequencies and norms.
+     */
+    public static final FieldType FIELD_TYPE = new FieldType();
+    /**
+     * Edits per token tolerated by the count filter, as for fuzzy queries.
+     */
+    public static final int MAX_EDITS = 2;
+    /**
+     * Marks the start and end of a value.
+     */
+    private static final char PADDING = '$';
+
+    static {
+        FIELD_TYPE.setIndexOptions(IndexOptions.DOCS);
+        FIELD_TYPE.setTokenized(true);
+        FIELD_TYPE.setOmitNorms(true);
+        FIELD_TYPE.freeze();
+    }
+
+    /**
+     * Distinct n-grams of the normalized value.
+     *
+     * @param normalized    normalized value
+     * @return              n-grams in order of occurrence
+     */
+    public static String[] grams(String normalized) {
+        int size = IndexConfig.NGRAM_SIZE;
+        StringBuilder padded = new StringBuilder(normalized.length() + 2 * (size - 1));
+        for (int padCtr = 1; padCtr < size; padCtr++) {
+            padded.append(PADDING);
+        }
+        padded.append(normalized);
+        for (int padCtr = 1; padCtr < size; padCtr++) {
+            padded.append(PADDING);
+        }
+        Set<String> grams = new LinkedHashSet<>();
+        for (int start = 0; start + size <= padded.length(); start++) {
+            grams.add(padded.substring(start, start + size));
+        }
+        return grams.toArray(new String[0]);
+    }
+
+    /**
+     * Query retrieving values that share n-grams with the
+     * literal. Each shared n-gram scores one, so that the
+     * top documents are the candidates of largest overlap.
+     *
+     * @param normalized    preprocessed query literal
+     * @return              candidate query
+     */
+    public static Query candidateQuery(String normalized) {
+        String[] grams = grams(normalized);
+        int nrClauses = Math.min(grams.length, BooleanQuery.getMaxClauseCount());
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (int gramCtr = 0; gramCtr < nrClauses; gramCtr++) {
+            builder.add(new ConstantScoreQuery(new TermQuery(new Term(FIELD, grams[gramCtr]))),
+                    BooleanClause.Occur.SHOULD);
+        }
+        int nrTokens = normalized.trim().isEmpty() ? 1 : normalized.trim().split(" +").length;
+        int minShared = nrClauses - nrTokens * MAX_EDITS * IndexConfig.NGRAM_SIZE;
+        builder.setMinimumNumberShouldMatch(Math.max(1, minShared));
+        return builder.build();
+    }
+
+    /**
+     * Reusable token stream of the n-grams of one value.
+     */
+    public static class GramStream extends TokenStream {
+        private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+        private String[] grams = new String[0];
+        private int position;
+
+        /**
+         * Set the n-grams emitted by the next use of the stream.
+         *
+         * @param grams         n-grams of a value
+         */
+        public void set(String[] grams) {
+            this.grams = grams;
+        }
+
+        @Override
+        public boolean incrementToken() {
+            if (position >= grams.length) {
+                return false;
+            }
+            clearAttributes();
+            termAttribute.append(grams[position++]);
+            return true;
+        }
+
+        @Override
+        public void reset() {
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package matching;
+
+import matching.query.SpanProbWeight;
+import matching.score.SimilarityKernel;
+import org.apache.lucene.search.ScoreDoc;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Re-rank the candidates of fuzzy search by string
+ * similarity. Text and phonetic encoding of each
+ * candidate are looked up in the metadata of the
+ * index and each candidate is scored once
+ * before the top candidates are selected. Candidates
+ * are ranked by the similarity of text, as fuzzy search
+ * used to rank them, or by the probability that combines
+ * the similarity of text and phonetic encoding, as
+ * SpanProbQuery ranks them. Ties keep the order of the
+ * candidate list. The score of each returned document
+ * is the combined probability.
+ *
+ * @author Ziyun Wei
+ */
+public class Reranker {
+    /**
+     * Candidate sets of at least this size are scored in parallel.
+     */
+    public static int PARALLEL_THRESHOLD = 256;
+
+    /**
+     * Select the top candidates by similarity of text.
+     *
+     * @param metadata      metadata of the searcher that produced the candidates
+     * @param candidates    candidate documents
+     * @param normalized    preprocessed query literal
+     * @param phonetic      phonetic encoding of the literal
+     * @param topK          number of documents to return
+     * @return              top documents with combined scores
+     */
+    public static ScoreDoc[] rerank(HitMetadata metadata, Collection<ScoreDoc> candidates,
+                                    String normalized, String phonetic, int topK) {
+        return rerank(metadata, candidates, normalized, phonetic, topK, false);
+    }
+
+    /**
+     * Select the top candidates by similarity of text or by
+     * combined probability.
+     *
+     * @param metadata      metadata of the searcher that produced the candidates
+     * @param candidates    candidate documents
+     * @param normalized    preprocessed query literal
+     * @param phonetic      phonetic encoding of the literal
+     * @param topK          number of documents to return
+     * @param byProbability whether candidates are ranked by combined probability
+     * @return              top documents with combined scores
+     */
+    public static ScoreDoc[] rerank(HitMetadata metadata, Collection<ScoreDoc> candidates,
+                                    String normalized, String phonetic, int topK, boolean byProbability) {
+        int nrCandidates = candidates.size();
+        int[] docIDs = new int[nrCandidates];
+        String[] texts = new String[nrCandidates];
+        String[] phonetics = new String[nrCandidates];
+        int candidateCtr = 0;
+        for (ScoreDoc candidate: candidates) {
+            docIDs[candidateCtr] = candidate.doc;
+            texts[candidateCtr] = metadata.text(candidate.doc);
+            phonetics[candidateCtr] = metadata.phonetic(candidate.doc);
+            candidateCtr++;
+        }
+        SimilarityKernel.PreparedQuery textQuery = SimilarityKernel.prepare(normalized);
+        SimilarityKernel.PreparedQuery phoneticQuery = SimilarityKernel.prepare(phonetic);
+        float[] textScores = new float[nrCandidates];
+        float[] phoneticScores = new float[nrCandidates];
+        if (nrCandidates >= PARALLEL_THRESHOLD) {
+            IntStream.range(0, nrCandidates).parallel().forEach(scoreCtr -> {
+                textScores[scoreCtr] = (float) textQuery.score(texts[scoreCtr]);
+                phoneticScores[scoreCtr] = (float) phoneticQuery.score(phonetics[scoreCtr]);
+            });
+        }
+        else {
+            textQuery.score(texts, 0, nrCandidates, textScores);
+            phoneticQuery.score(phonetics, 0, nrCandidates, phoneticScores);
+        }
+        float[] scores = new float[nrCandidates];
+        for (int scoreCtr = 0; scoreCtr < nrCandidates; scoreCtr++) {
+            scores[scoreCtr] = SpanProbWeight.probability(textScores[scoreCtr], phoneticScores[scoreCtr]);
+        }
+        int[] top = selectTop(byProbability ? scores : textScores, Math.min(topK, nrCandidates));
+        ScoreDoc[] hits = new ScoreDoc[top.length];
+        for (int hitCtr = 0; hitCtr < top.length; hitCtr++) {
+            int index = top[hitCtr];
+            hits[hitCtr] = new ScoreDoc(docIDs[index], scores[index]);
+        }
+        return hits;
+    }
+
+    /**
+     * Select the indices of the highest scores in descending
+     * order of score. Equal scores keep ascending index order.
+     *
+     * @param scores        scores of candidates
+     * @param topK          number of indices to select
+     * @return              indices of the top scores
+     */
+    static int[] selectTop(float[] scores, int topK) {
+        if (topK <= 0) {
+            return new int[0];
+        }
+        // The head of the queue is the worst selected candidate
+        PriorityQueue<Integer> queue = new PriorityQueue<>(topK, (index1, index2) -> {
+            int compare = Float.compare(scores[index1], scores[index2]);
+            return compare != 0 ? compare : Integer.compare(index2, index1);
+        });
+        for (int index = 0; index < scores.length; index++) {
+            if (queue.size() < topK) {
+                queue.add(index);
+            }
+            else if (scores[index] > scores[queue.peek()]) {
+                queue.poll();
+                queue.add(index);
+            }
+        }
+        int[] top = new int[queue.size()];
+        for (int topCtr = top.length - 1; topCtr >= 0; topCtr--) {
+            top[topCtr] = queue.poll();
+        }
+        return top;
+    }
+}
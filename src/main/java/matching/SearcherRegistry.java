@@ -0,0 +1,263 @@
+package matching;
+
+import config.SearchConfig;
+import matching.indexing.Indexer;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.*;
+import org.apache.lucene.store.Directory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static matching.FuzzyIndex.INDEX_DIR;
+import static matching.FuzzyIndex.PHONETIC_DIR;
+
+/**
+ * Searchers of the similarity index of each dataset.
+ * Indexes are opened in the storage configured for the
+ * dataset. Searchers are managed by Lucene's SearcherManager:
+ * callers acquire the current searcher and release it
+ * when done, and readers are refreshed in the background
+ * or on demand and closed once no caller uses them. Each
+ * searcher carries the metadata of its reader and is
+ * warmed up by a few searches before it is published.
+ *
+ * @author Ziyun Wei
+ */
+public class SearcherRegistry {
+    /**
+     * Searcher manager of each opened dataset.
+     */
+    private final Map<String, SearcherManager> managers = new ConcurrentHashMap<>();
+    /**
+     * Thread refreshing the searchers in the background.
+     */
+    private ScheduledExecutorService refresher;
+
+    /**
+     * Searcher of one version of the index of a dataset.
+     */
+    public static class DatasetSearcher extends IndexSearcher {
+        /**
+         * Name of the dataset.
+         */
+        public final String dataset;
+        /**
+         * Metadata of the values visible to the searcher.
+         */
+        public final HitMetadata metadata;
+        /**
+         * Identity of the reader, cached matches must carry the same.
+         */
+        public final Object readerKey;
+
+        DatasetSearcher(String dataset, IndexReader reader) throws IOException {
+            super(reader);
+            this.dataset = dataset;
+            this.metadata = new HitMetadata(reader);
+            IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+            this.readerKey = cacheHelper != null ? cacheHelper.getKey() : reader;
+        }
+    }
+
+    /**
+     * Acquire the current searcher of the dataset, opening
+     * its index on first use. Release it when done.
+     *
+     * @param dataset       dataset of the index
+     * @return              current searcher
+     * @throws IOException
+     */
+    public DatasetSearcher acquire(String dataset) throws IOException {
+        return (DatasetSearcher) manager(dataset).acquire();
+    }
+
+    /**
+     * Release a searcher returned by acquire.
+     *
+     * @param searcher      acquired searcher
+     * @throws IOException
+     */
+    public void release(DatasetSearcher searcher) throws IOException {
+        SearcherManager manager = managers.get(searcher.dataset);
+        if (manager != null) {
+            manager.release(searcher);
+        }
+        else {
+            // The registry has been closed meanwhile
+            searcher.getIndexReader().decRef();
+        }
+    }
+
+    /**
+     * Refresh the searcher of the dataset if its index has
+     * changed and wait until the new searcher is published.
+     *
+     * @param dataset       dataset of the index
+     * @return              true if a new searcher was published
+     * @throws IOException
+     */
+    public boolean refresh(String dataset) throws IOException {
+        SearcherManager manager = managers.get(dataset);
+        if (manager == null) {
+            return false;
+        }
+        if (!SearchConfig.storage(dataset).seesChanges()) {
+            // Copy the index again, searchers in use keep the old copy
+            managers.put(dataset, openManager(dataset));
+            manager.close();
+            FuzzySearch.matchCache.invalidate(dataset);
+            return true;
+        }
+        DatasetSearcher before = acquire(dataset);
+        try {
+            manager.maybeRefreshBlocking();
+        } finally {
+            release(before);
+        }
+        DatasetSearcher after = acquire(dataset);
+        release(after);
+        return after != before;
+    }
+
+    /**
+     * Open the indexes of the datasets that exist on disk.
+     *
+     * @param datasets      datasets to open
+     */
+    public void preload(String... datasets) {
+        for (String dataset: datasets) {
+            if (!Files.isDirectory(indexPath(dataset))) {
+                System.out.println("No index of dataset " + dataset);
+                continue;
+            }
+            try {
+                long timer = System.currentTimeMillis();
+                manager(dataset);
+                System.out.println("Opened index of dataset " + dataset + " (" + SearchConfig.storage(dataset)
+                        + ") in " + (System.currentTimeMillis() - timer) + " ms");
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Check the opened indexes for changes periodically.
+     *
+     * @param intervalMillis    interval of checks (ms)
+     */
+    public synchronized void startRefresh(long intervalMillis) {
+        if (refresher != null || intervalMillis <= 0) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "searcher-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            for (Map.Entry<String, SearcherManager> entry: managers.entrySet()) {
+                if (!SearchConfig.storage(entry.getKey()).seesChanges()) {
+                    continue;
+                }
+                try {
+                    entry.getValue().maybeRefresh();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop refreshing and close all searchers once they are released.
+     *
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+        for (String dataset: managers.keySet()) {
+            SearcherManager manager = managers.remove(dataset);
+            if (manager != null) {
+                manager.close();
+            }
+        }
+    }
+
+    private SearcherManager manager(String dataset) throws IOException {
+        try {
+            return managers.computeIfAbsent(dataset, key -> {
+                try {
+                    return openManager(key);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static SearcherManager openManager(String dataset) throws IOException {
+        Directory directory = SearchConfig.storage(dataset).open(indexPath(dataset));
+        SearcherManager manager = new SearcherManager(directory, new WarmingFactory(dataset));
+        // Cached matches of the replaced searcher no longer match its reader, drop them
+        manager.addListener(new ReferenceManager.RefreshListener() {
+            @Override
+            public void beforeRefresh() {
+            }
+
+            @Override
+            public void afterRefresh(boolean didRefresh) {
+                if (didRefresh) {
+                    FuzzySearch.matchCache.invalidate(dataset);
+                }
+            }
+        });
+        return manager;
+    }
+
+    private static Path indexPath(String dataset) {
+        return Paths.get((Indexer.Phonetic ? PHONETIC_DIR : INDEX_DIR) + "/" + dataset);
+    }
+
+    /**
+     * Creates searchers with metadata and warms them up by
+     * searching a few indexed values before publishing them.
+     */
+    private static class WarmingFactory extends SearcherFactory {
+        private final String dataset;
+
+        WarmingFactory(String dataset) {
+            this.dataset = dataset;
+        }
+
+        @Override
+        public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) throws IOException {
+            DatasetSearcher searcher = new DatasetSearcher(dataset, reader);
+            HitMetadata metadata = searcher.metadata;
+            int nrDocs = metadata.size();
+            int nrQueries = Math.min(SearchConfig.NR_WARMUP_QUERIES, nrDocs);
+            for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
+                String text = metadata.text((int) ((long) queryCtr * nrDocs / nrQueries));
+                if (text == null || text.trim().isEmpty()) {
+                    continue;
+                }
+                FuzzySearch.search(searcher, metadata, text.trim(), 1);
+            }
+            return searcher;
+        }
+    }
+}
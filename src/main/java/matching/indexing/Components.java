@@ -54,6 +54,24 @@ abstract class Components {
             return new IndexWriter(outputDir, config);
         }
 
+        /**
+         * Creates and initializes a new instance of Lucene's IndexWriter class in CREATE open mode
+         * that buffers the given amount of memory before flushing.
+         *
+         * @param outputDirPath Path to directory where the index is going to be created.
+         * @param ramBufferMB Memory buffered before flushing a segment (MB).
+         * @return Initialized IndexWriter instance.
+         * @throws IOException
+         */
+        public static IndexWriter getIndexWriter(String outputDirPath, double ramBufferMB) throws IOException {
+            Directory outputDir = FSDirectory.open(Paths.get(outputDirPath));
+            Analyzer analyzer = new StandardAnalyzer();
+            IndexWriterConfig config = new IndexWriterConfig(analyzer)
+                    .setOpenMode(IndexWriterConfig.OpenMode.CREATE)
+                    .setRAMBufferSizeMB(ramBufferMB);
+            return new IndexWriter(outputDir, config);
+        }
+
         /**
          * Creates and initializes a new instance of Lucene's IndexWriter class.
          *
@@ -0,0 +1,205 @@
+package matching.indexing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * Set of 64-bit fingerprints of strings, used to skip
+ * values seen before while indexing. Fingerprints are
+ * kept in an open addressing table of primitive longs,
+ * on the heap or in a direct buffer outside of it, so
+ * that each distinct value costs 11 to 23 bytes instead
+ * of a string and a hash set entry. Distinct strings
+ * share a fingerprint with negligible probability, in
+ * which case the later one is treated as a duplicate.
+ *
+ * @author Ziyun Wei
+ */
+public class FingerprintSet {
+    /**
+     * Marks an empty slot. Fingerprints equal to it are remapped.
+     */
+    private static final long EMPTY = 0;
+    /**
+     * Fraction of occupied slots before the table grows.
+     */
+    private static final double MAX_LOAD = 0.7;
+    /**
+     * Largest number of slots of a direct buffer.
+     */
+    private static final int MAX_OFF_HEAP_SLOTS = 1 << 27;
+    /**
+     * Whether slots are stored outside of the heap.
+     */
+    private final boolean offHeap;
+    /**
+     * Slots on the heap.
+     */
+    private long[] table;
+    /**
+     * Slots outside of the heap.
+     */
+    private LongBuffer buffer;
+    /**
+     * Number of slots, a power of two.
+     */
+    private int capacity;
+    /**
+     * Number of fingerprints.
+     */
+    private int size = 0;
+
+    public FingerprintSet() {
+        this(1024, false);
+    }
+
+    /**
+     * Create an empty set.
+     *
+     * @param expectedSize  expected number of fingerprints
+     * @param offHeap       whether to store fingerprints outside of the heap
+     */
+    public FingerprintSet(int expectedSize, boolean offHeap) {
+        this.offHeap = offHeap;
+        int capacity = 16;
+        while (capacity * MAX_LOAD < expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Add the fingerprint of the string.
+     *
+     * @param value         string to add
+     * @return              true if no equal fingerprint was in the set
+     */
+    public boolean add(String value) {
+        return addFingerprint(fingerprint(value));
+    }
+
+    /**
+     * Whether the fingerprint of the string is in the set.
+     *
+     * @param value         string to look up
+     * @return              true if an equal fingerprint is in the set
+     */
+    public boolean contains(String value) {
+        long fingerprint = fingerprint(value);
+        int mask = capacity - 1;
+        for (int slot = slot(fingerprint, mask); ; slot = (slot + 1) & mask) {
+            long current = get(slot);
+            if (current == EMPTY) {
+                return false;
+            }
+            if (current == fingerprint) {
+                return true;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Memory held by the slots (bytes).
+     *
+     * @return              size of the table
+     */
+    public long memoryBytes() {
+        return 8L * capacity;
+    }
+
+    /**
+     * 64-bit fingerprint of the characters of the string.
+     * FNV-1a over the characters followed by the finalizer
+     * of MurmurHash3 to spread the bits.
+     *
+     * @param value         string to hash
+     * @return              non-empty fingerprint
+     */
+    public static long fingerprint(String value) {
+        long hash = 0xcbf29ce484222325L;
+        int length = value.length();
+        for (int charCtr = 0; charCtr < length; charCtr++) {
+            hash ^= value.charAt(charCtr);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= length;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == EMPTY ? 1 : hash;
+    }
+
+    private boolean addFingerprint(long fingerprint) {
+        int mask = capacity - 1;
+        for (int slot = slot(fingerprint, mask); ; slot = (slot + 1) & mask) {
+            long current = get(slot);
+            if (current == fingerprint) {
+                return false;
+            }
+            if (current == EMPTY) {
+                set(slot, fingerprint);
+                if (++size > capacity * MAX_LOAD) {
+                    grow();
+                }
+                return true;
+            }
+        }
+    }
+
+    private static int slot(long fingerprint, int mask) {
+        return (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+    }
+
+    private void grow() {
+        long[] oldTable = table;
+        LongBuffer oldBuffer = buffer;
+        int oldCapacity = capacity;
+        allocate(oldCapacity << 1);
+        int mask = capacity - 1;
+        for (int oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+            long fingerprint = oldTable != null ? oldTable[oldSlot] : oldBuffer.get(oldSlot);
+            if (fingerprint != EMPTY) {
+                int slot = slot(fingerprint, mask);
+                while (get(slot) != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                set(slot, fingerprint);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        if (offHeap) {
+            if (capacity > MAX_OFF_HEAP_SLOTS) {
+                throw new IllegalStateException("Too many fingerprints for a direct buffer: " + size);
+            }
+            // Direct buffers are zeroed, i.e., all slots are empty
+            this.buffer = ByteBuffer.allocateDirect(capacity * 8)
+                    .order(ByteOrder.nativeOrder()).asLongBuffer();
+        }
+        else {
+            this.table = new long[capacity];
+        }
+        this.capacity = capacity;
+    }
+
+    private long get(int slot) {
+        return offHeap ? buffer.get(slot) : table[slot];
+    }
+
+    private void set(int slot, long fingerprint) {
+        if (offHeap) {
+            buffer.put(slot, fingerprint);
+        }
+        else {
+            table[slot] = fingerprint;
+        }
+    }
+}
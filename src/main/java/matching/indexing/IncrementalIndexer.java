@@ -0,0 +1,351 @@
+package matching.indexing;
+
+import matching.HitMetadata;
+import matching.schema.Schema;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MultiBits;
+import org.apache.lucene.util.Bits;
+import stats.IndexStats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Maintains an existing index while its dataset changes,
+ * without taking the index offline. Appending indexes the
+ * values of rows added to the CSV file since the last
+ * commit, or of rows returned by a change query. Values
+ * are upserted by their identifier, see ValueDocument:
+ * documents are added if missing and replaced if their
+ * stored fields differ from the current schema. Documents
+ * of indexes built before hashed identifiers are given one.
+ * Reconciling reads the whole file, upserts its values
+ * and deletes values that no longer occur.
+ * Searchers see the changes once FuzzySearch reopens the
+ * index of the dataset.
+ *
+ * @author Ziyun Wei
+ */
+public class IncrementalIndexer implements Closeable {
+    /**
+     * Key of the number of indexed CSV rows in the commit data.
+     */
+    public static final String ROWS_KEY = "rows";
+    /**
+     * Stored fields compared with the current document of a value.
+     */
+    private static final Set<String> SIGNATURE_FIELDS = new HashSet<>(Arrays.asList("content", "phonetic"));
+    /**
+     * Index writer in CREATE_OR_APPEND mode.
+     */
+    private final IndexWriter writer;
+    /**
+     * Schema of dataset.
+     */
+    private final Schema schema;
+    /**
+     * Reusable document of a value.
+     */
+    private final ValueDocument document = new ValueDocument();
+    /**
+     * Statistics of the last maintenance.
+     */
+    public final IndexStats stats = new IndexStats();
+
+    /**
+     * Opens the index for maintenance. The index is created if it does not exist.
+     *
+     * @param outputDirPath Path to the directory where the index is stored.
+     * @param schema Schema of dataset.
+     * @throws IOException
+     */
+    public IncrementalIndexer(String outputDirPath, Schema schema) throws IOException {
+        this.writer = Components.Lucene.getIndexWriter(outputDirPath, Indexer.OpenMode.CREATE_OR_APPEND);
+        this.schema = schema;
+    }
+
+    /**
+     * Number of CSV rows indexed by the last commit.
+     *
+     * @return Number of rows, 0 for indexes built before checkpoints.
+     */
+    public long checkpoint() {
+        Iterable<Map.Entry<String, String>> commitData = writer.getLiveCommitData();
+        if (commitData != null) {
+            for (Map.Entry<String, String> entry: commitData) {
+                if (entry.getKey().equals(ROWS_KEY)) {
+                    return Long.parseLong(entry.getValue());
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Indexes the values of rows after the checkpoint. Use reconcile
+     * if rows of the file may have changed or have been removed.
+     *
+     * @param inputFilePath Path to the CSV file of the dataset.
+     * @return Statistics of the maintenance.
+     * @throws IOException
+     */
+    public IndexStats append(String inputFilePath) throws IOException {
+        long startMillis = System.currentTimeMillis();
+        long checkpoint = checkpoint();
+        long nrRows = 0;
+        long nrDocs = 0;
+        try (CSVParser input = Components.CSV.getCsvParser(inputFilePath)) {
+            String[] fieldNames = input.getHeaderMap().keySet().toArray(new String[0]);
+            Function<String, String>[] preFunctions = preFunctions(fieldNames.length);
+            FingerprintSet[] indexed = indexedValues(fieldNames, preFunctions);
+            FingerprintSet[] seen = newSets(fieldNames.length);
+            for (CSVRecord row: input) {
+                if (nrRows++ < checkpoint) {
+                    continue;
+                }
+                for (int fieldCtr = 0; fieldCtr < fieldNames.length; fieldCtr++) {
+                    String text = row.get(fieldCtr);
+                    if (seen[fieldCtr].add(text) && upsert(fieldNames, fieldCtr, text, preFunctions, indexed)) {
+                        nrDocs++;
+                    }
+                }
+            }
+        }
+        commit(Math.max(nrRows, checkpoint));
+        return report(startMillis, nrRows - Math.min(nrRows, checkpoint), nrDocs, 0);
+    }
+
+    /**
+     * Indexes the values of rows returned by the query, for example rows
+     * of a table changed since the last synchronization. Columns are
+     * matched to the schema by position. The CSV checkpoint is kept.
+     *
+     * @param connection Database connection.
+     * @param sql Query returning changed rows.
+     * @return Statistics of the maintenance.
+     * @throws IOException
+     * @throws SQLException
+     */
+    public IndexStats append(Connection connection, String sql) throws IOException, SQLException {
+        long startMillis = System.currentTimeMillis();
+        long nrRows = 0;
+        long nrDocs = 0;
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            String[] fieldNames = new String[metaData.getColumnCount()];
+            for (int fieldCtr = 0; fieldCtr < fieldNames.length; fieldCtr++) {
+                fieldNames[fieldCtr] = metaData.getColumnLabel(fieldCtr + 1);
+            }
+            Function<String, String>[] preFunctions = preFunctions(fieldNames.length);
+            FingerprintSet[] indexed = indexedValues(fieldNames, preFunctions);
+            FingerprintSet[] seen = newSets(fieldNames.length);
+            while (resultSet.next()) {
+                nrRows++;
+                for (int fieldCtr = 0; fieldCtr < fieldNames.length; fieldCtr++) {
+                    String value = resultSet.getString(fieldCtr + 1);
+                    String text = value == null ? "" : value;
+                    if (seen[fieldCtr].add(text) && upsert(fieldNames, fieldCtr, text, preFunctions, indexed)) {
+                        nrDocs++;
+                    }
+                }
+            }
+        }
+        commit(checkpoint());
+        return report(startMillis, nrRows, nrDocs, 0);
+    }
+
+    /**
+     * Synchronizes the index with the whole CSV file: values are
+     * upserted and values that no longer occur in their column
+     * are deleted.
+     *
+     * @param inputFilePath Path to the CSV file of the dataset.
+     * @return Statistics of the maintenance.
+     * @throws IOException
+     */
+    public IndexStats reconcile(String inputFilePath) throws IOException {
+        long startMillis = System.currentTimeMillis();
+        long nrRows = 0;
+        long nrDocs = 0;
+        String[] fieldNames;
+        FingerprintSet[] seen;
+        try (CSVParser input = Components.CSV.getCsvParser(inputFilePath)) {
+            fieldNames = input.getHeaderMap().keySet().toArray(new String[0]);
+            Function<String, String>[] preFunctions = preFunctions(fieldNames.length);
+            FingerprintSet[] indexed = indexedValues(fieldNames, preFunctions);
+            seen = newSets(fieldNames.length);
+            for (CSVRecord row: input) {
+                nrRows++;
+                for (int fieldCtr = 0; fieldCtr < fieldNames.length; fieldCtr++) {
+                    String text = row.get(fieldCtr);
+                    if (schema.types[fieldCtr] != ElementType.NONE && seen[fieldCtr].add(text)
+                            && upsert(fieldNames, fieldCtr, text, preFunctions, indexed)) {
+                        nrDocs++;
+                    }
+                }
+            }
+        }
+        long nrDeleted = deleteAbsent(fieldNames, seen);
+        commit(nrRows);
+        return report(startMillis, nrRows, nrDocs, nrDeleted);
+    }
+
+    /**
+     * Adds the document of the value, or replaces the indexed
+     * document of the value if its stored fields differ.
+     *
+     * @return True if a document was added or replaced.
+     */
+    private boolean upsert(String[] fieldNames, int fieldCtr, String text,
+                           Function<String, String>[] preFunctions,
+                           FingerprintSet[] indexed) throws IOException {
+        if (schema.types[fieldCtr] == ElementType.NONE) {
+            return false;
+        }
+        String column = fieldNames[fieldCtr];
+        Document valueDocument = document.set(column, text, preFunctions[fieldCtr]);
+        if (!indexed[fieldCtr].add(document.signature())) {
+            return false;
+        }
+        writer.updateDocument(ValueDocument.idTerm(column, text), valueDocument);
+        return true;
+    }
+
+    /**
+     * Deletes documents of values not seen in their column.
+     *
+     * @return Number of deleted documents.
+     */
+    private long deleteAbsent(String[] fieldNames, FingerprintSet[] seen) throws IOException {
+        Map<String, Integer> columnToField = new HashMap<>();
+        for (int fieldCtr = 0; fieldCtr < fieldNames.length; fieldCtr++) {
+            columnToField.put(fieldNames[fieldCtr], fieldCtr);
+        }
+        long nrDeleted = 0;
+        boolean isRetry;
+        do {
+            // Deleting by position fails if a merge has removed the segment since the reader was opened
+            isRetry = false;
+            try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                HitMetadata metadata = new HitMetadata(reader);
+                Bits liveDocs = MultiBits.getLiveDocs(reader);
+                for (int docCtr = 0; docCtr < metadata.size(); docCtr++) {
+                    if (liveDocs != null && !liveDocs.get(docCtr)) {
+                        continue;
+                    }
+                    Integer fieldCtr = columnToField.get(metadata.column(docCtr));
+                    String text = metadata.text(docCtr);
+                    if (fieldCtr == null || text == null || !seen[fieldCtr].contains(text)) {
+                        if (writer.tryDeleteDocument(reader, docCtr) < 0) {
+                            isRetry = true;
+                        }
+                        else {
+                            nrDeleted++;
+                        }
+                    }
+                }
+            }
+        } while (isRetry);
+        return nrDeleted;
+    }
+
+    /**
+     * Fingerprints of the signatures of the documents indexed for
+     * each column. Documents without identifier are replaced by
+     * documents with one.
+     */
+    private FingerprintSet[] indexedValues(String[] fieldNames,
+                                           Function<String, String>[] preFunctions) throws IOException {
+        Map<String, Integer> columnToField = new HashMap<>();
+        FingerprintSet[] indexed = newSets(fieldNames.length);
+        for (int fieldCtr = 0; fieldCtr < fieldNames.length; fieldCtr++) {
+            columnToField.put(fieldNames[fieldCtr], fieldCtr);
+        }
+        boolean isRetry;
+        do {
+            isRetry = false;
+            try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                HitMetadata metadata = new HitMetadata(reader);
+                Bits liveDocs = MultiBits.getLiveDocs(reader);
+                for (int docCtr = 0; docCtr < metadata.size(); docCtr++) {
+                    Integer fieldCtr = columnToField.get(metadata.column(docCtr));
+                    if (fieldCtr == null || (liveDocs != null && !liveDocs.get(docCtr))) {
+                        continue;
+                    }
+                    String column = fieldNames[fieldCtr];
+                    String text = metadata.text(docCtr);
+                    if (text == null) {
+                        // Reconciling deletes documents without value
+                        continue;
+                    }
+                    if (reader.docFreq(ValueDocument.idTerm(column, text)) == 0) {
+                        // Documents of indexes built before hashed identifiers are replaced by position
+                        if (writer.tryDeleteDocument(reader, docCtr) < 0) {
+                            isRetry = true;
+                            continue;
+                        }
+                        writer.addDocument(document.set(column, text, preFunctions[fieldCtr]));
+                        indexed[fieldCtr].add(document.signature());
+                    }
+                    else {
+                        Document stored = reader.document(docCtr, SIGNATURE_FIELDS);
+                        indexed[fieldCtr].add(ValueDocument.signature(text,
+                                stored.get("content"), stored.get("phonetic")));
+                    }
+                }
+            }
+        } while (isRetry);
+        return indexed;
+    }
+
+    private static FingerprintSet[] newSets(int nrFields) {
+        FingerprintSet[] sets = new FingerprintSet[nrFields];
+        for (int fieldCtr = 0; fieldCtr < nrFields; fieldCtr++) {
+            sets[fieldCtr] = new FingerprintSet();
+        }
+        return sets;
+    }
+
+    private Function<String, String>[] preFunctions(int nrFields) throws IOException {
+        if (schema.types.length < nrFields) {
+            throw new IOException("Schema has " + schema.types.length + " columns, input has " + nrFields);
+        }
+        Function<String, String>[] preFunctions = new Function[nrFields];
+        for (int fieldCtr = 0; fieldCtr < nrFields; fieldCtr++) {
+            preFunctions[fieldCtr] = schema.types[fieldCtr].getPreProcessFunction();
+        }
+        return preFunctions;
+    }
+
+    private void commit(long nrRows) throws IOException {
+        writer.setLiveCommitData(Collections.singletonMap(ROWS_KEY, Long.toString(nrRows)).entrySet());
+        writer.commit();
+    }
+
+    private IndexStats report(long startMillis, long nrRows, long nrDocs, long nrDeleted) {
+        stats.nrRows = nrRows;
+        stats.nrDocs = nrDocs;
+        stats.nrDeleted = nrDeleted;
+        stats.nrThreads = 1;
+        stats.totalMillis = System.currentTimeMillis() - startMillis;
+        return stats;
+    }
+
+    /**
+     * Closes the index writer.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
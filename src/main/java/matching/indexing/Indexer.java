@@ -39,15 +39,19 @@ public class Indexer {
 
     /**
      * Takes a next entry from the input file and adds the entry to the index.
+     * The number of rows is committed, so that appending continues after them.
      *
      * @throws IOException
      */
     public void insert() throws IOException {
+        long nrRows = 0;
         while (this.input.hasNext()) {
             Document[] documents = this.input.next();
             this.output.insert(documents);
+            nrRows++;
         }
 
+        this.output.checkpoint(nrRows);
         this.output.close();
     }
 
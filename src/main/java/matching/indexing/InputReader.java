@@ -1,5 +1,7 @@
 package matching.indexing;
 
+import config.IndexConfig;
+import matching.NGrams;
 import matching.schema.Schema;
 import org.apache.commons.codec.language.DoubleMetaphone;
 import org.apache.lucene.analysis.standard.StandardTokenizer;
@@ -7,6 +9,7 @@ import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.document.*;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
+import org.apache.lucene.util.BytesRef;
 
 import java.io.IOException;
 import java.io.StringReader;
@@ -35,6 +38,22 @@ class InputReader implements Iterator<Document[]> {
      * An array of fields. It's a de facto schema of the original content.
      */
     private Field[] texts;
+    /**
+     * Doc values of the original content, read by search without loading stored fields.
+     */
+    private Field[] textValues;
+    /**
+     * Doc values of the phonetic encoding.
+     */
+    private Field[] phoneticValues;
+    /**
+     * An array of fields. Identifiers of the values, see ValueDocument.
+     */
+    private Field[] ids;
+    /**
+     * Token streams of the n-grams of the values, see NGrams.
+     */
+    private NGrams.GramStream[] grams;
     /**
      * An array of functions. Using functions to preprocess the target string.
      */
@@ -48,9 +67,9 @@ class InputReader implements Iterator<Document[]> {
      */
     private Iterator<CSVRecord> iterator;
     /**
-     * An array of entry set. It contains distinct values for each column.
+     * An array of fingerprint sets. It contains distinct values for each column.
      */
-    public Set<String>[] contents;
+    public FingerprintSet[] contents;
     /**
      * Encode string by using double metaphone.
      */
@@ -98,37 +117,18 @@ class InputReader implements Iterator<Document[]> {
             String text = row.get(fieldCtr);
             // Normalized the target value
             String value = preFunctions[fieldCtr].apply(Preprocessing.toLowerCase().apply(text));
-            if (!this.contents[fieldCtr].contains(text) && this.schema.types[fieldCtr] != ElementType.NONE) {
+            if (this.schema.types[fieldCtr] != ElementType.NONE && this.contents[fieldCtr].add(text)) {
                 this.fields[fieldCtr].setStringValue(value);
                 this.texts[fieldCtr].setStringValue(text);
-                this.contents[fieldCtr].add(text);
+                this.ids[fieldCtr].setStringValue(ValueDocument.id(fieldNames[fieldCtr], text));
+                this.textValues[fieldCtr].setBytesValue(new BytesRef(text));
+                if (IndexConfig.INDEX_NGRAMS) {
+                    this.grams[fieldCtr].set(NGrams.grams(value));
+                }
                 if (Indexer.Phonetic) {
-                    StandardTokenizer stream = new StandardTokenizer();
-                    stream.setReader(new StringReader(value));
-                    CharTermAttribute charTermAttribute = stream.addAttribute(CharTermAttribute.class);
-                    StringBuilder phonetic = new StringBuilder();
-                    try {
-                        stream.reset();
-                        while (stream.incrementToken()) {
-                            String term = charTermAttribute.toString();
-                            String encoding = metaphone.encode(term);
-                            if (!encoding.equals("")) {
-                                if (!phonetic.toString().equals("")) {
-                                    phonetic.append(" ");
-                                }
-                                phonetic.append(encoding.toLowerCase());
-                            }
-                            else {
-                                if (!phonetic.toString().equals("")) {
-                                    phonetic.append(" ");
-                                }
-                                phonetic.append(term);
-                            }
-                        }
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                    this.phonetics[fieldCtr].setStringValue(phonetic.toString());
+                    String phonetic = phoneticEncoding(value, metaphone);
+                    this.phonetics[fieldCtr].setStringValue(phonetic);
+                    this.phoneticValues[fieldCtr].setBytesValue(new BytesRef(phonetic));
                 }
             }
             else {
@@ -138,6 +138,44 @@ class InputReader implements Iterator<Document[]> {
         return documents;
     }
 
+    /**
+     * Encodes each token of the normalized value by double metaphone.
+     *
+     * @param value Normalized value.
+     * @param metaphone Phonetic encoder.
+     * @return Encodings separated by spaces.
+     */
+    static String phoneticEncoding(String value, DoubleMetaphone metaphone) {
+        StandardTokenizer stream = new StandardTokenizer();
+        stream.setReader(new StringReader(value));
+        CharTermAttribute charTermAttribute = stream.addAttribute(CharTermAttribute.class);
+        StringBuilder phonetic = new StringBuilder();
+        try {
+            stream.reset();
+            while (stream.incrementToken()) {
+                String term = charTermAttribute.toString();
+                String encoding = metaphone.encode(term);
+                if (!encoding.equals("")) {
+                    if (!phonetic.toString().equals("")) {
+                        phonetic.append(" ");
+                    }
+                    phonetic.append(encoding.toLowerCase());
+                }
+                else {
+                    if (!phonetic.toString().equals("")) {
+                        phonetic.append(" ");
+                    }
+                    phonetic.append(term);
+                }
+            }
+            stream.end();
+            stream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return phonetic.toString();
+    }
+
     /**
      * Checks if the CSV file has more contents to process.
      *
@@ -166,11 +204,15 @@ class InputReader implements Iterator<Document[]> {
         this.fields = new Field[this.fieldNames.length];
         this.phonetics = new Field[this.fieldNames.length];
         this.texts = new Field[this.fieldNames.length];
-        this.contents = new HashSet[this.fieldNames.length];
+        this.textValues = new Field[this.fieldNames.length];
+        this.phoneticValues = new Field[this.fieldNames.length];
+        this.ids = new Field[this.fieldNames.length];
+        this.grams = new NGrams.GramStream[this.fieldNames.length];
+        this.contents = new FingerprintSet[this.fieldNames.length];
         this.documents = new Document[this.fieldNames.length];
         this.preFunctions = new Function[this.fieldNames.length];
         for (int fieldCtr = 0; fieldCtr < this.fieldNames.length; fieldCtr++) {
-            this.contents[fieldCtr] = new HashSet<>();
+            this.contents[fieldCtr] = new FingerprintSet(1024, IndexConfig.INDEX_DEDUPE_OFF_HEAP);
             this.documents[fieldCtr] = Components.Lucene.getEmptyDocument();
             this.preFunctions[fieldCtr] = schema.types[fieldCtr].getPreProcessFunction();
         }
@@ -183,13 +225,24 @@ class InputReader implements Iterator<Document[]> {
         for (int fieldCtr = 0; fieldCtr < this.fieldNames.length; fieldCtr++) {
             this.fields[fieldCtr] = new TextField("content", "", Field.Store.YES);
             this.texts[fieldCtr] = new TextField("text", "", Field.Store.YES);
+            this.textValues[fieldCtr] = new BinaryDocValuesField("text", new BytesRef());
             if (Indexer.Phonetic) {
                 this.phonetics[fieldCtr] = new TextField("phonetic", "", Field.Store.YES);
+                this.phoneticValues[fieldCtr] = new BinaryDocValuesField("phonetic", new BytesRef());
                 this.documents[fieldCtr].add(this.phonetics[fieldCtr]);
+                this.documents[fieldCtr].add(this.phoneticValues[fieldCtr]);
             }
+            this.ids[fieldCtr] = new StringField("id", "", Field.Store.NO);
+            this.documents[fieldCtr].add(this.ids[fieldCtr]);
             this.documents[fieldCtr].add(new StringField("column", fieldNames[fieldCtr], Field.Store.YES));
+            this.documents[fieldCtr].add(new SortedDocValuesField("column", new BytesRef(fieldNames[fieldCtr])));
             this.documents[fieldCtr].add(this.fields[fieldCtr]);
             this.documents[fieldCtr].add(this.texts[fieldCtr]);
+            this.documents[fieldCtr].add(this.textValues[fieldCtr]);
+            if (IndexConfig.INDEX_NGRAMS) {
+                this.grams[fieldCtr] = new NGrams.GramStream();
+                this.documents[fieldCtr].add(new Field(NGrams.FIELD, this.grams[fieldCtr], NGrams.FIELD_TYPE));
+            }
         }
     }
 }
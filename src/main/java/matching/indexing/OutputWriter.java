@@ -2,9 +2,9 @@ package matching.indexing;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.Term;
 
 import java.io.IOException;
+import java.util.Collections;
 
 class OutputWriter {
     /**
@@ -55,8 +55,18 @@ class OutputWriter {
      * @throws IOException
      */
     public void update(Document doc) throws IOException {
-        String idField = doc.getFields().get(0).name();
-        this.output.updateDocument(new Term(idField, doc.get(idField)), doc);
+        this.output.updateDocument(ValueDocument.idTerm(doc.get("column"), doc.get("text")), doc);
+    }
+
+    /**
+     * Records the number of indexed CSV rows in the next commit,
+     * see IncrementalIndexer.checkpoint().
+     *
+     * @param nrRows Number of indexed rows.
+     */
+    public void checkpoint(long nrRows) {
+        this.output.setLiveCommitData(Collections.singletonMap(
+                IncrementalIndexer.ROWS_KEY, Long.toString(nrRows)).entrySet());
     }
 
     /**
@@ -0,0 +1,231 @@
+package matching.indexing;
+
+import config.IndexConfig;
+import matching.schema.Schema;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.lucene.index.IndexWriter;
+import stats.IndexStats;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Builds the same index as Indexer in a pipeline. The
+ * calling thread parses the CSV file and drops values
+ * seen before in the same column. Batches of new values
+ * are handed to worker threads that normalize and encode
+ * them and add the documents to a shared index writer.
+ * Documents are added in a different order than by the
+ * sequential indexer.
+ *
+ * @author Ziyun Wei
+ */
+public class ParallelIndexer {
+    /**
+     * Marks the end of the input for a worker.
+     */
+    private static final List<Value> END = Collections.emptyList();
+    /**
+     * Path to the CSV file that is going to be indexed.
+     */
+    private final String inputFilePath;
+    /**
+     * Path to the directory where the index will be stored.
+     */
+    private final String outputDirPath;
+    /**
+     * Schema of dataset.
+     */
+    private final Schema schema;
+    /**
+     * Number of worker threads.
+     */
+    private final int nrThreads;
+    /**
+     * Memory buffered by the index writer (MB).
+     */
+    private final double ramBufferMB;
+    /**
+     * Statistics of the last build.
+     */
+    public final IndexStats stats = new IndexStats();
+
+    public ParallelIndexer(String inputFilePath, String outputDirPath, Schema schema) {
+        this(inputFilePath, outputDirPath, schema, IndexConfig.INDEX_THREADS, IndexConfig.INDEX_RAM_BUFFER_MB);
+    }
+
+    public ParallelIndexer(String inputFilePath, String outputDirPath, Schema schema,
+                           int nrThreads, double ramBufferMB) {
+        this.inputFilePath = inputFilePath;
+        this.outputDirPath = outputDirPath;
+        this.schema = schema;
+        this.nrThreads = Math.max(1, nrThreads);
+        this.ramBufferMB = ramBufferMB;
+    }
+
+    /**
+     * Reads the input file and adds each distinct value of each column to the index.
+     *
+     * @return Statistics of building the index.
+     * @throws IOException
+     */
+    public IndexStats insert() throws IOException {
+        long startMillis = System.currentTimeMillis();
+        CSVParser input = Components.CSV.getCsvParser(inputFilePath);
+        String[] fieldNames = input.getHeaderMap().keySet().toArray(new String[0]);
+        if (fieldNames.length == 0) {
+            input.close();
+            throw new IOException("CSV file doesn't have headers");
+        }
+        IndexWriter writer = Components.Lucene.getIndexWriter(outputDirPath, ramBufferMB);
+        BlockingQueue<List<Value>> queue = new ArrayBlockingQueue<>(IndexConfig.INDEX_QUEUE_BATCHES);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicLong nrDocs = new AtomicLong();
+        ExecutorService workers = Executors.newFixedThreadPool(nrThreads);
+        for (int threadCtr = 0; threadCtr < nrThreads; threadCtr++) {
+            Worker worker = new Worker(fieldNames, writer);
+            workers.execute(() -> worker.run(queue, failure, nrDocs));
+        }
+        long nrRows = 0;
+        try {
+            FingerprintSet[] contents = new FingerprintSet[fieldNames.length];
+            for (int fieldCtr = 0; fieldCtr < fieldNames.length; fieldCtr++) {
+                contents[fieldCtr] = new FingerprintSet(1024, IndexConfig.INDEX_DEDUPE_OFF_HEAP);
+            }
+            List<Value> batch = new ArrayList<>();
+            int nrBatchRows = 0;
+            for (CSVRecord row: input) {
+                for (int fieldCtr = 0; fieldCtr < fieldNames.length; fieldCtr++) {
+                    String text = row.get(fieldCtr);
+                    if (schema.types[fieldCtr] != ElementType.NONE && contents[fieldCtr].add(text)) {
+                        batch.add(new Value(fieldCtr, text));
+                    }
+                }
+                nrRows++;
+                if (++nrBatchRows >= IndexConfig.INDEX_BATCH_ROWS && !batch.isEmpty()) {
+                    if (!hand(queue, batch, failure)) {
+                        break;
+                    }
+                    batch = new ArrayList<>();
+                    nrBatchRows = 0;
+                }
+            }
+            if (!batch.isEmpty()) {
+                hand(queue, batch, failure);
+            }
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            stats.readMillis = System.currentTimeMillis() - startMillis;
+            for (int threadCtr = 0; threadCtr < nrThreads; threadCtr++) {
+                if (!hand(queue, END, failure)) {
+                    break;
+                }
+            }
+            workers.shutdown();
+            try {
+                while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                    if (failure.get() != null) {
+                        workers.shutdownNow();
+                    }
+                }
+            } catch (InterruptedException e) {
+                workers.shutdownNow();
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, e);
+            }
+            input.close();
+        }
+        Throwable cause = failure.get();
+        if (cause != null) {
+            writer.rollback();
+            throw new IOException("Failed to build index " + outputDirPath, cause);
+        }
+        // Appending continues after the indexed rows, see IncrementalIndexer
+        writer.setLiveCommitData(Collections.singletonMap(
+                IncrementalIndexer.ROWS_KEY, Long.toString(nrRows)).entrySet());
+        writer.close();
+        stats.nrRows = nrRows;
+        stats.nrDocs = nrDocs.get();
+        stats.nrThreads = nrThreads;
+        stats.totalMillis = System.currentTimeMillis() - startMillis;
+        return stats;
+    }
+
+    /**
+     * Hands the batch to the workers unless one of them has failed.
+     *
+     * @return True if the batch is queued.
+     */
+    private static boolean hand(BlockingQueue<List<Value>> queue, List<Value> batch,
+                                AtomicReference<Throwable> failure) {
+        try {
+            while (failure.get() == null) {
+                if (queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        }
+        return false;
+    }
+
+    /**
+     * A new value of a column.
+     */
+    private static class Value {
+        final int fieldCtr;
+        final String text;
+
+        Value(int fieldCtr, String text) {
+            this.fieldCtr = fieldCtr;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Normalizes values and adds their documents to the index.
+     * Each worker reuses one document whose fields are reset
+     * for each value.
+     */
+    private class Worker {
+        private final String[] fieldNames;
+        private final IndexWriter writer;
+        private final Function<String, String>[] preFunctions;
+        private final ValueDocument document = new ValueDocument();
+
+        Worker(String[] fieldNames, IndexWriter writer) {
+            this.fieldNames = fieldNames;
+            this.writer = writer;
+            this.preFunctions = new Function[fieldNames.length];
+            for (int fieldCtr = 0; fieldCtr < fieldNames.length; fieldCtr++) {
+                this.preFunctions[fieldCtr] = schema.types[fieldCtr].getPreProcessFunction();
+            }
+        }
+
+        void run(BlockingQueue<List<Value>> queue, AtomicReference<Throwable> failure, AtomicLong nrDocs) {
+            try {
+                while (failure.get() == null) {
+                    List<Value> batch = queue.take();
+                    if (batch == END) {
+                        return;
+                    }
+                    for (Value value: batch) {
+                        int fieldCtr = value.fieldCtr;
+                        writer.addDocument(document.set(fieldNames[fieldCtr], value.text, preFunctions[fieldCtr]));
+                    }
+                    nrDocs.addAndGet(batch.size());
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+    }
+}
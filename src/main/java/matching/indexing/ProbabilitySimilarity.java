@@ -3,10 +3,16 @@ package matching.indexing;
 import org.apache.lucene.index.FieldInvertState;
 import org.apache.lucene.search.CollectionStatistics;
 import org.apache.lucene.search.TermStatistics;
-import org.apache.lucene.search.similarities.BasicStats;
 
 import org.apache.lucene.search.similarities.Similarity;
 
+/**
+ * Similarity of probabilistic matching. Whether a value is
+ * the searched literal does not depend on term statistics:
+ * each match scores its boost, and SpanProbQuery computes
+ * the probability of its matches from the matched values.
+ * No norms are computed.
+ */
 public class ProbabilitySimilarity extends Similarity {
 
     @Override
@@ -16,15 +22,19 @@ public class ProbabilitySimilarity extends Similarity {
 
     @Override
     public SimScorer scorer(float boost, CollectionStatistics collectionStats, TermStatistics... termStats) {
-        return null;
+        return new ProbScorer(boost);
     }
 
     private static class ProbScorer extends Similarity.SimScorer {
+        private final float boost;
+
+        ProbScorer(float boost) {
+            this.boost = boost;
+        }
 
         @Override
         public float score(float freq, long norm) {
-            return 0;
+            return boost;
         }
     }
 }
-
@@ -0,0 +1,141 @@
+package matching.indexing;
+
+import config.IndexConfig;
+import matching.NGrams;
+import org.apache.commons.codec.language.DoubleMetaphone;
+import org.apache.lucene.document.*;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.util.BytesRef;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.function.Function;
+
+/**
+ * Reusable document of one distinct value of a column.
+ * Fields are reset for each value, so that a single
+ * thread adds many documents without creating fields.
+ * The "id" field identifies the value across builds by
+ * a hash of its column and value, so that long values stay
+ * below Lucene's term length limit.
+ */
+class ValueDocument {
+    /**
+     * Digest of identifiers, one per thread.
+     */
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+    /**
+     * Lucene's document object.
+     */
+    final Document document = Components.Lucene.getEmptyDocument();
+    private final Field id = new StringField("id", "", Field.Store.NO);
+    private final Field column = new StringField("column", "", Field.Store.YES);
+    private final Field columnValue = new SortedDocValuesField("column", new BytesRef());
+    private final Field content = new TextField("content", "", Field.Store.YES);
+    private final Field text = new TextField("text", "", Field.Store.YES);
+    private final Field textValue = new BinaryDocValuesField("text", new BytesRef());
+    private final Field phonetic = new TextField("phonetic", "", Field.Store.YES);
+    private final Field phoneticValue = new BinaryDocValuesField("phonetic", new BytesRef());
+    private final NGrams.GramStream gramStream = new NGrams.GramStream();
+    private final Field grams = new Field(NGrams.FIELD, gramStream, NGrams.FIELD_TYPE);
+    /**
+     * Encode string by using double metaphone.
+     */
+    private final DoubleMetaphone metaphone = new DoubleMetaphone();
+
+    ValueDocument() {
+        if (Indexer.Phonetic) {
+            document.add(phonetic);
+            document.add(phoneticValue);
+        }
+        document.add(id);
+        document.add(column);
+        document.add(columnValue);
+        document.add(content);
+        document.add(text);
+        document.add(textValue);
+        if (IndexConfig.INDEX_NGRAMS) {
+            document.add(grams);
+        }
+    }
+
+    /**
+     * Loads the value in the document fields.
+     *
+     * @param columnName Name of the column.
+     * @param value Original value.
+     * @param preFunction Normalization of the column.
+     * @return Document of the value.
+     */
+    Document set(String columnName, String value, Function<String, String> preFunction) {
+        String normalized = preFunction.apply(Preprocessing.toLowerCase().apply(value));
+        id.setStringValue(id(columnName, value));
+        column.setStringValue(columnName);
+        columnValue.setBytesValue(new BytesRef(columnName));
+        content.setStringValue(normalized);
+        text.setStringValue(value);
+        textValue.setBytesValue(new BytesRef(value));
+        if (IndexConfig.INDEX_NGRAMS) {
+            gramStream.set(NGrams.grams(normalized));
+        }
+        if (Indexer.Phonetic) {
+            String encoding = InputReader.phoneticEncoding(normalized, metaphone);
+            phonetic.setStringValue(encoding);
+            phoneticValue.setBytesValue(new BytesRef(encoding));
+        }
+        return document;
+    }
+
+    /**
+     * Stable identifier of a value of a column.
+     *
+     * @param columnName Name of the column.
+     * @param value Original value.
+     * @return Identifier of the document.
+     */
+    static String id(String columnName, String value) {
+        MessageDigest digest = DIGEST.get();
+        digest.update(columnName.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        byte[] hash = digest.digest(value.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().withoutPadding().encodeToString(hash);
+    }
+
+    /**
+     * Stored fields that derive from the value, so that a document
+     * whose signature differs is built from an outdated schema.
+     *
+     * @return Signature of the current document.
+     */
+    String signature() {
+        return signature(text.stringValue(), content.stringValue(),
+                Indexer.Phonetic ? phonetic.stringValue() : null);
+    }
+
+    /**
+     * Signature of an indexed document, see signature().
+     *
+     * @param text Original value.
+     * @param content Normalized value.
+     * @param phonetic Phonetic encoding or null.
+     * @return Signature of the document.
+     */
+    static String signature(String text, String content, String phonetic) {
+        return text + '\u0000' + content + '\u0000' + (phonetic == null ? "" : phonetic);
+    }
+
+    /**
+     * Term that selects the document of a value of a column.
+     */
+    static Term idTerm(String columnName, String value) {
+        return new Term("id", id(columnName, value));
+    }
+}
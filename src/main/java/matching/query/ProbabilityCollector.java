@@ -0,0 +1,146 @@
+package matching.query;
+
+import matching.HitMetadata;
+import matching.score.SimilarityKernel;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.PriorityQueue;
+
+/**
+ * Collects the documents most likely to be the literal in
+ * one pass over the matches of a candidate query, such as
+ * the disjunction of the text and phonetic queries. The
+ * query is not scored: each matching document is scored
+ * once, however many clauses match it, by the similarity
+ * of spelling and phonetic encoding, and both sub-scores
+ * are kept with the hit. Ties prefer lower document IDs,
+ * as Lucene's top score collector.
+ *
+ * @author Ziyun Wei
+ */
+public class ProbabilityCollector implements Collector {
+    /**
+     * Metadata of the searched reader.
+     */
+    private final HitMetadata metadata;
+    private final SimilarityKernel.PreparedQuery textQuery;
+    private final SimilarityKernel.PreparedQuery phoneticQuery;
+    /**
+     * Best hits so far, the head is the worst of them.
+     */
+    private final HitQueue queue;
+    /**
+     * Number of scored documents.
+     */
+    private int nrMatches = 0;
+
+    /**
+     * Hit with the spelling and phonetic similarity it is scored by.
+     */
+    public static class Hit extends ScoreDoc {
+        /**
+         * Similarity of the literal and the text of the document.
+         */
+        public final float textScore;
+        /**
+         * Similarity of the phonetic encodings.
+         */
+        public final float phoneticScore;
+
+        Hit(int doc, float textScore, float phoneticScore) {
+            super(doc, SpanProbWeight.probability(textScore, phoneticScore));
+            this.textScore = textScore;
+            this.phoneticScore = phoneticScore;
+        }
+    }
+
+    /**
+     * Create a collector of the top hits.
+     *
+     * @param metadata      metadata of the searched reader
+     * @param normalized    preprocessed query literal
+     * @param phonetic      phonetic encoding of the literal
+     * @param topK          number of hits
+     */
+    public ProbabilityCollector(HitMetadata metadata, String normalized, String phonetic, int topK) {
+        this.metadata = metadata;
+        this.textQuery = SimilarityKernel.prepare(normalized);
+        this.phoneticQuery = SimilarityKernel.prepare(phonetic);
+        this.queue = new HitQueue(Math.max(topK, 0));
+    }
+
+    @Override
+    public LeafCollector getLeafCollector(LeafReaderContext context) {
+        int docBase = context.docBase;
+        return new LeafCollector() {
+            @Override
+            public void setScorer(Scorable scorer) {
+            }
+
+            @Override
+            public void collect(int doc) {
+                collectGlobal(docBase + doc);
+            }
+        };
+    }
+
+    private void collectGlobal(int globalDoc) {
+        nrMatches++;
+        String text = metadata.text(globalDoc);
+        String phonetic = metadata.phonetic(globalDoc);
+        float textScore = text == null ? 0 : (float) textQuery.score(text);
+        float phoneticScore = phonetic == null ? 0 : (float) phoneticQuery.score(phonetic);
+        float score = SpanProbWeight.probability(textScore, phoneticScore);
+        if (queue.size() < queue.capacity) {
+            queue.add(new Hit(globalDoc, textScore, phoneticScore));
+        }
+        else if (queue.capacity > 0 && score > queue.top().score) {
+            // Documents arrive in ascending order, equal scores keep the earlier hit
+            queue.updateTop(new Hit(globalDoc, textScore, phoneticScore));
+        }
+    }
+
+    @Override
+    public ScoreMode scoreMode() {
+        return ScoreMode.COMPLETE_NO_SCORES;
+    }
+
+    /**
+     * Collected hits in descending order of score.
+     *
+     * @return              top hits
+     */
+    public Hit[] topDocs() {
+        Hit[] hits = new Hit[queue.size()];
+        for (int hitCtr = hits.length - 1; hitCtr >= 0; hitCtr--) {
+            hits[hitCtr] = queue.pop();
+        }
+        return hits;
+    }
+
+    /**
+     * Number of documents matching the candidate query.
+     *
+     * @return              number of scored documents
+     */
+    public int getNrMatches() {
+        return nrMatches;
+    }
+
+    private static class HitQueue extends PriorityQueue<Hit> {
+        private final int capacity;
+
+        HitQueue(int capacity) {
+            super(capacity);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean lessThan(Hit hit1, Hit hit2) {
+            if (hit1.score != hit2.score) {
+                return hit1.score < hit2.score;
+            }
+            return hit1.doc > hit2.doc;
+        }
+    }
+}
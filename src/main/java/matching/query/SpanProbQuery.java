@@ -1,5 +1,6 @@
 package matching.query;
 
+import matching.HitMetadata;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.*;
 import org.apache.lucene.search.spans.SpanQuery;
@@ -9,12 +10,37 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 
+/**
+ * Span query whose matches are scored by the probability
+ * that they are the searched literal: the Jaro-Winkler
+ * similarity of the literal and the original text of the
+ * match, combined with the similarity of their phonetic
+ * encodings. Scores lie between 0 and 1, so that Lucene's
+ * top-K collection ranks the matches directly. Without
+ * metadata, matches are scored by the searcher's similarity.
+ *
+ * @author Ziyun Wei
+ */
 public class SpanProbQuery extends SpanQuery implements Cloneable {
     public List<SpanQuery> clauses;
     public int slop;
     public boolean inOrder;
     public String field;
+    /**
+     * Metadata of the searched reader, giving the text and
+     * phonetic encoding of each match.
+     */
+    public HitMetadata metadata;
+    /**
+     * Preprocessed query literal.
+     */
+    public String literal;
+    /**
+     * Phonetic encoding of the query literal.
+     */
+    public String phonetic;
     /** Construct a SpanProbQuery.  Matches spans matching a span from each
      * clause, with up to <code>slop</code> total unmatched positions between
      * them.
@@ -40,6 +66,23 @@ public class SpanProbQuery extends SpanQuery implements Cloneable {
         this.inOrder = inOrder;
     }
 
+    /** Construct a SpanProbQuery that scores its matches by their
+     * probability of being the literal.
+     * @param clausesIn the clauses to find near each other, in the same field, at least 1.
+     * @param slop The slop value
+     * @param inOrder true if order is important
+     * @param metadata metadata of the reader that is searched
+     * @param literal the preprocessed query literal
+     * @param phonetic the phonetic encoding of the literal
+     */
+    public SpanProbQuery(SpanQuery[] clausesIn, int slop, boolean inOrder,
+                         HitMetadata metadata, String literal, String phonetic) {
+        this(clausesIn, slop, inOrder);
+        this.metadata = metadata;
+        this.literal = literal;
+        this.phonetic = phonetic;
+    }
+
     /** Return the clauses whose spans are matched. */
     public SpanQuery[] getClauses() {
         return clauses.toArray(new SpanQuery[0]);
@@ -70,6 +113,12 @@ public class SpanProbQuery extends SpanQuery implements Cloneable {
         buffer.append(slop);
         buffer.append(", ");
         buffer.append(inOrder);
+        if (literal != null) {
+            buffer.append(", ");
+            buffer.append(literal);
+            buffer.append("/");
+            buffer.append(phonetic);
+        }
         buffer.append(")");
         return buffer.toString();
     }
@@ -131,7 +180,10 @@ public class SpanProbQuery extends SpanQuery implements Cloneable {
     private boolean equalsTo(SpanProbQuery other) {
         return inOrder == other.inOrder &&
                 slop == other.slop &&
-                clauses.equals(other.clauses);
+                clauses.equals(other.clauses) &&
+                metadata == other.metadata &&
+                Objects.equals(literal, other.literal) &&
+                Objects.equals(phonetic, other.phonetic);
     }
 
     @Override
@@ -139,6 +191,8 @@ public class SpanProbQuery extends SpanQuery implements Cloneable {
         int result = classHash();
         result ^= clauses.hashCode();
         result += slop;
+        result = 31 * result + Objects.hashCode(literal);
+        result = 31 * result + Objects.hashCode(phonetic);
         int fac = 1 + (inOrder ? 8 : 4);
         return fac * result;
     }
@@ -0,0 +1,39 @@
+package matching.query;
+
+import org.apache.lucene.search.spans.SpanScorer;
+import org.apache.lucene.search.spans.Spans;
+
+import java.io.IOException;
+
+/**
+ * Scores each document matching the spans of a SpanProbQuery
+ * by the probability that it is the literal. Spans are only
+ * iterated to find matching documents, the score does not
+ * depend on their frequency.
+ *
+ * @author Ziyun Wei
+ */
+public class SpanProbScorer extends SpanScorer {
+    private final SpanProbWeight weight;
+    /**
+     * First document ID of the segment in the searched reader.
+     */
+    private final int docBase;
+
+    SpanProbScorer(SpanProbWeight weight, Spans spans, int docBase) {
+        super(weight, spans, null);
+        this.weight = weight;
+        this.docBase = docBase;
+    }
+
+    @Override
+    protected float scoreCurrentDoc() throws IOException {
+        int globalDoc = docBase + docID();
+        return SpanProbWeight.probability(weight.textScore(globalDoc), weight.phoneticScore(globalDoc));
+    }
+
+    @Override
+    public float getMaxScore(int upTo) {
+        return 1;
+    }
+}
@@ -1,9 +1,11 @@
 package matching.query;
 
+import matching.score.SimilarityKernel;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermStates;
 import org.apache.lucene.index.Terms;
+import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.search.spans.*;
@@ -18,6 +20,12 @@ public class SpanProbWeight extends SpanWeight {
 
     final List<SpanWeight> subWeights;
     final SpanProbQuery query;
+    /**
+     * Literal and its phonetic encoding prepared for scoring, null without metadata.
+     */
+    final SimilarityKernel.PreparedQuery textQuery;
+    final SimilarityKernel.PreparedQuery phoneticQuery;
+
     public SpanProbWeight(List<SpanWeight> subWeights,
                           IndexSearcher searcher,
                           Map<Term, TermStates> terms,
@@ -26,6 +34,10 @@ public class SpanProbWeight extends SpanWeight {
         super(query, searcher, terms, boost);
         this.query = query;
         this.subWeights = subWeights;
+        boolean probabilistic = query.metadata != null && query.literal != null;
+        this.textQuery = probabilistic ? SimilarityKernel.prepare(query.literal) : null;
+        this.phoneticQuery = probabilistic ?
+                SimilarityKernel.prepare(query.phonetic == null ? "" : query.phonetic) : null;
     }
 
     @Override
@@ -52,12 +64,72 @@ public class SpanProbWeight extends SpanWeight {
                 return null; // all required
             }
         }
+        if (subSpans.size() == 1) {
+            return subSpans.get(0); // a single clause matches by itself
+        }
 
         // all NearSpans require at least two subSpans
         return (!query.inOrder) ? new NearSpansUnordered(query.slop, subSpans)
                 : new NearSpansOrdered(query.slop, subSpans);
     }
 
+    @Override
+    public SpanScorer scorer(LeafReaderContext context) throws IOException {
+        if (textQuery == null) {
+            return super.scorer(context);
+        }
+        Spans spans = getSpans(context, Postings.POSITIONS);
+        if (spans == null) {
+            return null;
+        }
+        return new SpanProbScorer(this, spans, context.docBase);
+    }
+
+    @Override
+    public Explanation explain(LeafReaderContext context, int doc) throws IOException {
+        if (textQuery == null) {
+            return super.explain(context, doc);
+        }
+        SpanScorer scorer = scorer(context);
+        if (scorer == null || scorer.iterator().advance(doc) != doc) {
+            return Explanation.noMatch("no matching spans");
+        }
+        int globalDoc = context.docBase + doc;
+        float textScore = textScore(globalDoc);
+        float phoneticScore = phoneticScore(globalDoc);
+        return Explanation.match(probability(textScore, phoneticScore),
+                "probability of " + query.literal + ", average of:",
+                Explanation.match(textScore, "spelling similarity"),
+                Explanation.match(phoneticScore, "phonetic similarity"));
+    }
+
+    /**
+     * Similarity of the literal and the text of the document.
+     *
+     * @param globalDoc     document ID in the searched reader
+     */
+    float textScore(int globalDoc) {
+        String text = query.metadata.text(globalDoc);
+        return text == null ? 0 : (float) textQuery.score(text);
+    }
+
+    /**
+     * Similarity of the phonetic encodings of the literal and the document.
+     *
+     * @param globalDoc     document ID in the searched reader
+     */
+    float phoneticScore(int globalDoc) {
+        String phonetic = query.metadata.phonetic(globalDoc);
+        return phonetic == null ? 0 : (float) phoneticQuery.score(phonetic);
+    }
+
+    /**
+     * Combined score of spelling and phonetic similarity.
+     */
+    public static float probability(float textScore, float phoneticScore) {
+        return 0.5f * textScore + 0.5f * phoneticScore;
+    }
+
     @Override
     public void extractTerms(Set<Term> terms) {
         for (SpanWeight w : subWeights) {
@@ -74,4 +146,4 @@ public class SpanProbWeight extends SpanWeight {
         return true;
     }
 
-}
\ No newline at end of file
+}
@@ -5,4 +5,28 @@ import matching.indexing.ElementType;
 
 public class Schema {
     public ElementType[] types;
+
+    /**
+     * Schema of the dataset with the given index name.
+     *
+     * @param dataset       name of the dataset
+     * @return              schema or null if the dataset is unknown
+     */
+    public static Schema forDataset(String dataset) {
+        switch (dataset) {
+            case "sample_311":
+                return new Sample311();
+            case "sample_au":
+                return new SampleAu();
+            case "dob_job":
+            case "DOB_Job_Application_Filings":
+                return new DobJob();
+            case "delayed_flight":
+                return new DelayedFlight();
+            case "customer":
+                return new Customer();
+            default:
+                return null;
+        }
+    }
 }
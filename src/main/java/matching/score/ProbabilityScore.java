@@ -1,22 +1,17 @@
 package matching.score;
-import info.debatty.java.stringsimilarity.JaroWinkler;
 
 /**
  * Measure th score of each query. We consider
  * the string similarity. The score is defined by the
- * Jaro–Winkler distance.
+ * Jaro–Winkler distance, computed by SimilarityKernel.
  *
  * @author Ziyun Wei
  */
 public class ProbabilityScore {
 
     public static double score(String inputString, String hitString) {
-        JaroWinkler jaroWinkler = new JaroWinkler();
-        String inputLowCase = inputString.toLowerCase().replace(" ", "");
-        String hitLowCase = hitString.toLowerCase().replace(" ", "");
-
         // Word spelling score.
-        double stringScore = jaroWinkler.similarity(inputLowCase, hitLowCase);
+        double stringScore = SimilarityKernel.similarity(inputString, hitString);
 
         // Semantic score
 
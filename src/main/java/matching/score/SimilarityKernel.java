@@ -0,0 +1,278 @@
+package matching.score;
+
+import org.apache.commons.codec.language.DoubleMetaphone;
+
+import java.util.Arrays;
+
+/**
+ * Jaro-Winkler similarity on character arrays. Strings
+ * are lower cased and stripped of spaces into buffers
+ * that are reused by each thread, so that scoring does
+ * not allocate. Scores are identical to the similarity
+ * of java-string-similarity used by ProbabilityScore.
+ * A prepared query is scored against many candidates
+ * without preprocessing it again.
+ *
+ * @author Ziyun Wei
+ */
+public class SimilarityKernel {
+    /**
+     * Similarity above which the common prefix is rewarded.
+     */
+    public static final double THRESHOLD = 0.7;
+    /**
+     * Maximal weight of the common prefix.
+     */
+    public static final double JW_COEF = 0.1;
+    /**
+     * Shared phonetic encoder. Encoding does not change its state.
+     */
+    public static final DoubleMetaphone METAPHONE = new DoubleMetaphone();
+    /**
+     * Scratch buffers of each thread.
+     */
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    /**
+     * Similarity of two strings, ignoring case and spaces.
+     *
+     * @param inputString   query string
+     * @param hitString     candidate string
+     * @return              Jaro-Winkler similarity
+     */
+    public static double similarity(String inputString, String hitString) {
+        Buffers buffers = BUFFERS.get();
+        buffers.query = normalize(inputString, buffers.query);
+        int queryLength = buffers.length;
+        return score(buffers.query, queryLength, hitString, buffers);
+    }
+
+    /**
+     * Prepare the query for scoring against several candidates.
+     *
+     * @param inputString   query string
+     * @return              prepared query
+     */
+    public static PreparedQuery prepare(String inputString) {
+        char[] chars = normalize(inputString, new char[inputString.length()]);
+        return new PreparedQuery(Arrays.copyOf(chars, BUFFERS.get().length));
+    }
+
+    /**
+     * Encode each token of the string by double metaphone.
+     * Tokens without encoding are kept as they are.
+     *
+     * @param query_str     string of tokens separated by spaces
+     * @return              lower case encodings separated by spaces
+     */
+    public static String phoneticEncoder(String query_str) {
+        StringBuilder encoded = new StringBuilder(query_str.length());
+        int length = query_str.length();
+        int start = 0;
+        while (start < length) {
+            int end = query_str.indexOf(' ', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                String token = query_str.substring(start, end);
+                String encoding = METAPHONE.encode(token);
+                if (encoded.length() > 0) {
+                    encoded.append(' ');
+                }
+                encoded.append(encoding.equals("") ? token : encoding.toLowerCase());
+            }
+            start = end + 1;
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * Query whose characters have been normalized once.
+     * Prepared queries are immutable and may be shared
+     * by several threads.
+     */
+    public static class PreparedQuery {
+        private final char[] chars;
+
+        private PreparedQuery(char[] chars) {
+            this.chars = chars;
+        }
+
+        /**
+         * Similarity of the query and the candidate.
+         *
+         * @param hitString     candidate string
+         * @return              Jaro-Winkler similarity
+         */
+        public double score(String hitString) {
+            return SimilarityKernel.score(chars, chars.length, hitString, BUFFERS.get());
+        }
+
+        /**
+         * Score a range of candidates.
+         *
+         * @param hitStrings    candidate strings
+         * @param from          first candidate (inclusive)
+         * @param to            last candidate (exclusive)
+         * @param scores        similarity of each candidate
+         */
+        public void score(String[] hitStrings, int from, int to, float[] scores) {
+            Buffers buffers = BUFFERS.get();
+            for (int hitCtr = from; hitCtr < to; hitCtr++) {
+                scores[hitCtr] = (float) SimilarityKernel.score(chars, chars.length,
+                        hitStrings[hitCtr], buffers);
+            }
+        }
+    }
+
+    private static double score(char[] query, int queryLength, String hitString, Buffers buffers) {
+        buffers.hit = normalize(hitString, buffers.hit);
+        return jaroWinkler(query, queryLength, buffers.hit, buffers.length, buffers);
+    }
+
+    /**
+     * Lower case the string and drop spaces. The result is
+     * written to the buffer, which is grown if necessary,
+     * and its length is stored in the buffers of the thread.
+     */
+    private static char[] normalize(String string, char[] buffer) {
+        int length = string.length();
+        if (buffer.length < length) {
+            buffer = new char[Math.max(length, buffer.length * 2)];
+        }
+        int size = 0;
+        for (int charCtr = 0; charCtr < length; charCtr++) {
+            char c = string.charAt(charCtr);
+            if (c >= 128) {
+                // Case mapping outside ASCII may depend on context
+                return normalizeUnicode(string, buffer);
+            }
+            if (c >= 'A' && c <= 'Z') {
+                c = (char) (c + ('a' - 'A'));
+            }
+            if (c != ' ') {
+                buffer[size++] = c;
+            }
+        }
+        BUFFERS.get().length = size;
+        return buffer;
+    }
+
+    private static char[] normalizeUnicode(String string, char[] buffer) {
+        String lowerCase = string.toLowerCase().replace(" ", "");
+        int length = lowerCase.length();
+        if (buffer.length < length) {
+            buffer = new char[length];
+        }
+        lowerCase.getChars(0, length, buffer, 0);
+        BUFFERS.get().length = length;
+        return buffer;
+    }
+
+    private static double jaroWinkler(char[] s1, int length1, char[] s2, int length2, Buffers buffers) {
+        if (length1 == length2 && equals(s1, s2, length1)) {
+            return 1;
+        }
+        char[] max;
+        char[] min;
+        int maxLength;
+        int minLength;
+        if (length1 > length2) {
+            max = s1;
+            maxLength = length1;
+            min = s2;
+            minLength = length2;
+        }
+        else {
+            max = s2;
+            maxLength = length2;
+            min = s1;
+            minLength = length1;
+        }
+        int range = Math.max(maxLength / 2 - 1, 0);
+        buffers.ensure(maxLength);
+        int[] matchIndexes = buffers.matchIndexes;
+        boolean[] matchFlags = buffers.matchFlags;
+        Arrays.fill(matchIndexes, 0, minLength, -1);
+        Arrays.fill(matchFlags, 0, maxLength, false);
+        int matches = 0;
+        for (int minCtr = 0; minCtr < minLength; minCtr++) {
+            char c1 = min[minCtr];
+            int end = Math.min(minCtr + range + 1, maxLength);
+            for (int maxCtr = Math.max(minCtr - range, 0); maxCtr < end; maxCtr++) {
+                if (!matchFlags[maxCtr] && c1 == max[maxCtr]) {
+                    matchIndexes[minCtr] = maxCtr;
+                    matchFlags[maxCtr] = true;
+                    matches++;
+                    break;
+                }
+            }
+        }
+        if (matches == 0) {
+            return 0;
+        }
+        // Count matched characters that appear in a different order
+        int transpositions = 0;
+        int maxCtr = 0;
+        for (int minCtr = 0; minCtr < minLength; minCtr++) {
+            if (matchIndexes[minCtr] != -1) {
+                while (!matchFlags[maxCtr]) {
+                    maxCtr++;
+                }
+                if (min[minCtr] != max[maxCtr]) {
+                    transpositions++;
+                }
+                maxCtr++;
+            }
+        }
+        int prefix = 0;
+        for (int charCtr = 0; charCtr < minLength; charCtr++) {
+            if (s1[charCtr] == s2[charCtr]) {
+                prefix++;
+            }
+            else {
+                break;
+            }
+        }
+        // Same float arithmetic as the reference implementation
+        float m = matches;
+        double j = (m / length1 + m / length2 + (m - transpositions / 2) / m) / 3;
+        double jw = j;
+        if (j > THRESHOLD) {
+            jw = j + Math.min(JW_COEF, 1.0 / maxLength) * prefix * (1 - j);
+        }
+        return jw;
+    }
+
+    private static boolean equals(char[] s1, char[] s2, int length) {
+        for (int charCtr = 0; charCtr < length; charCtr++) {
+            if (s1[charCtr] != s2[charCtr]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Scratch space of one thread.
+     */
+    private static class Buffers {
+        char[] query = new char[64];
+        char[] hit = new char[64];
+        int[] matchIndexes = new int[64];
+        boolean[] matchFlags = new boolean[64];
+        /**
+         * Length of the last normalized string.
+         */
+        int length;
+
+        void ensure(int length) {
+            if (matchFlags.length < length) {
+                int capacity = Math.max(length, matchFlags.length * 2);
+                matchIndexes = new int[capacity];
+                matchFlags = new boolean[capacity];
+            }
+        }
+    }
+}
@@ -1,10 +1,11 @@
 package matching.search;
 
+import config.SearchConfig;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.Directory;
 
 import java.io.IOException;
 import java.nio.file.Paths;
@@ -38,7 +39,7 @@ abstract class Components {
      * @throws IOException
      */
     public static IndexSearcher getIndexSearcher(String indexDirPath) throws IOException {
-        FSDirectory directory = FSDirectory.open(Paths.get(indexDirPath));
+        Directory directory = SearchConfig.STORAGE.open(Paths.get(indexDirPath));
         DirectoryReader reader = DirectoryReader.open(directory);
 
         return new IndexSearcher(reader);
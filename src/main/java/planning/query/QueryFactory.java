@@ -1,20 +1,18 @@
 package planning.query;
 
 import benchmarks.PlannerBenchmark;
-import config.PlanConfig;
-import matching.FuzzySearch;
+import config.PlanContext;
+import matching.BatchLookup;
+import matching.HitMetadata;
 import net.sf.jsqlparser.JSQLParserException;
 import net.sf.jsqlparser.expression.Expression;
 import net.sf.jsqlparser.parser.CCJSqlParserUtil;
 import net.sf.jsqlparser.schema.Table;
 import net.sf.jsqlparser.statement.select.*;
-import org.apache.lucene.document.Document;
 import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.ScoreDoc;
 import planning.viz.DataPoint;
 import planning.viz.Plot;
-import stats.PlanStats;
 
 import java.io.IOException;
 import java.util.*;
@@ -82,9 +80,11 @@ public class QueryFactory {
      */
     public final int nrDims;
     /**
-     * A list of queries that are similar to parsed query.
+     * A list of queries that are similar to parsed query, in
+     * descending order of probability. Planners may pull more
+     * queries, up to the top-k of the context, see pullQueries.
      */
-    public final DataPoint[] queries;
+    public DataPoint[] queries;
     /**
      * The position where the SELECT clause starts.
      */
@@ -97,8 +97,43 @@ public class QueryFactory {
      * The position where the WHERE clause starts.
      */
     public int wherePos;
+    /**
+     * Planning context of the request.
+     */
+    public final PlanContext context;
+    /**
+     * Ranked matches of each literal.
+     */
+    private final ScoreDoc[][] scoreDocs;
+    /**
+     * Metadata resolving the matches.
+     */
+    private final HitMetadata metadata;
+    /**
+     * Enumerates the queries after the pulled ones.
+     */
+    private final Candidates candidates;
+    /**
+     * Summed match scores of the pulled queries.
+     */
+    private double[] scores;
+
+    public QueryFactory (String query, PlanContext context) throws IOException, ParseException, JSQLParserException {
+        this(query, context, context.topK);
+    }
 
-    public QueryFactory (String query) throws IOException, ParseException, JSQLParserException {
+    /**
+     * Parse the query and pull the given number of its most
+     * likely similar queries. Matches are looked up for the
+     * top-k of the context so that more queries can be pulled.
+     *
+     * @param query         SQL query
+     * @param context       planning context of the request
+     * @param nrQueries     number of queries to pull at first
+     */
+    public QueryFactory (String query, PlanContext context, int nrQueries)
+            throws IOException, ParseException, JSQLParserException {
+        this.context = context;
         int maxLen = query.split(" ").length;
         this.terms = new ArrayList<>(maxLen);
         this.replaceIndex = new ArrayList<>(maxLen);
@@ -109,73 +144,157 @@ public class QueryFactory {
         parseQueryTemplate(query);
         this.nrDims = replaceIndex.size();
         this.termToKey = new HashMap[nrDims];
-        this.keyToTerms = new String[nrDims][PlanConfig.TOPK+1];
+        this.keyToTerms = new String[nrDims][context.topK+1];
         for (int setCtr = 0; setCtr < nrDims; setCtr++) {
-            termToKey[setCtr] = new HashMap<>(PlanConfig.TOPK+1);
+            termToKey[setCtr] = new HashMap<>(context.topK+1);
         }
         int nrValues = valueIndex.size();
-        List<ScoreDoc[]> scoreDocs = new ArrayList<>(nrValues);
-        int maxQueries = 1;
+        List<String> values = new ArrayList<>(nrValues);
         for (int valuePos : valueIndex) {
-            String value = terms.get(replaceIndex.get(valuePos));
-            ScoreDoc[] docs = FuzzySearch.search(value, dataset);
-            if (maxQueries < PlanConfig.TOPK) {
-                maxQueries *= docs.length;
-            }
-            scoreDocs.add(docs);
+            values.add(terms.get(replaceIndex.get(valuePos)));
         }
-
-        // Transform documents to queries
-        int nrQueries = Math.min(maxQueries, PlanConfig.TOPK);
-        this.queries = new DataPoint[nrQueries];
+        // Match all literals on one snapshot of the index
+        BatchLookup lookup = BatchLookup.search(dataset, values, context.topK);
+        this.scoreDocs = lookup.hits;
+        this.metadata = lookup.metadata(dataset);
+        context.stats.nrPredicates = nrValues;
         this.nrDistinctValues = new int[nrDims];
+        Arrays.fill(nrDistinctValues, 1);
+        this.candidates = new Candidates();
+        this.queries = new DataPoint[0];
+        this.scores = new double[0];
+        pullQueries(Math.min(nrQueries, context.topK));
+    }
+
+    /**
+     * Whether more queries can be pulled.
+     *
+     * @return      true if pullQueries adds a query
+     */
+    public boolean hasMoreQueries() {
+        return queries.length < context.topK && candidates.hasNext();
+    }
+
+    /**
+     * Pull the next most likely queries, up to the top-k of
+     * the context. Pulled queries are numbered after the
+     * previous ones and the probabilities of all queries are
+     * normalized again, so plans of the previous queries must
+     * be planned again.
+     *
+     * @param nrQueries     maximal number of queries to pull
+     * @return              number of pulled queries
+     */
+    public int pullQueries(int nrQueries) {
+        List<DataPoint> dataPoints = new ArrayList<>(Arrays.asList(queries));
+        while (dataPoints.size() < Math.min(queries.length + nrQueries, context.topK)
+                && candidates.hasNext()) {
+            dataPoints.add(candidates.next());
+        }
+        int nrPulled = dataPoints.size() - queries.length;
+        int nrOld = queries.length;
+        this.queries = dataPoints.toArray(new DataPoint[0]);
+        this.scores = Arrays.copyOf(scores, queries.length);
         double sum = 0;
+        for (int queryCtr = 0; queryCtr < queries.length; queryCtr++) {
+            if (queryCtr >= nrOld) {
+                scores[queryCtr] = queries[queryCtr].probability;
+            }
+            sum += scores[queryCtr];
+        }
+        // Normalize probability distribution
+        for (int queryCtr = 0; queryCtr < queries.length; queryCtr++) {
+            queries[queryCtr].probability = scores[queryCtr] / sum;
+        }
+        return nrPulled;
+    }
 
-        // Match similar literals in round robin way
-        TreeSet<SearchDocument> nextDocuments = new TreeSet<>();
-        int[] indices = new int[nrValues];
-        double[] scores = new double[nrValues];
+    /**
+     * Lazy enumeration of queries in descending order of the
+     * summed scores of their matches, pulled by the factory as
+     * planners ask for them. Each query combines one match per
+     * literal and is generated once, from the combination that
+     * differs in the last literal whose match is not the best.
+     * Matches are resolved only when a query uses them.
+     */
+    private class Candidates implements Iterator<DataPoint> {
+        /**
+         * Combinations found but not enumerated yet, the best first.
+         */
+        private final PriorityQueue<SearchDocument> frontier = new PriorityQueue<>();
+        /**
+         * Key of the column and the text of each match, 0 before first use.
+         */
+        private final int[][] columnKeys;
+        private final int[][] valueKeys;
+        private long nrFound = 0;
+        private int nrEnumerated = 0;
 
-        for (int valueCtr = 0; valueCtr < nrValues; valueCtr++) {
-            scores[valueCtr] = scoreDocs.get(valueCtr)[indices[valueCtr]].score;
+        Candidates() {
+            int nrValues = scoreDocs.length;
+            this.columnKeys = new int[nrValues][];
+            this.valueKeys = new int[nrValues][];
+            boolean hasMatches = true;
+            for (int valueCtr = 0; valueCtr < nrValues; valueCtr++) {
+                columnKeys[valueCtr] = new int[scoreDocs[valueCtr].length];
+                valueKeys[valueCtr] = new int[scoreDocs[valueCtr].length];
+                hasMatches = hasMatches && scoreDocs[valueCtr].length > 0;
+            }
+            if (hasMatches) {
+                int[] indices = new int[nrValues];
+                frontier.add(new SearchDocument(indices, score(indices), nrFound++));
+            }
         }
-        PlanStats.nrPredicates = nrValues;
-        nextDocuments.add(new SearchDocument(indices, scores));
-        IndexSearcher searcher = FuzzySearch.searchers.get(dataset);
-        for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
-            // Find the optimal document from the set
-            SearchDocument searchDocument = nextDocuments.pollLast();
+
+        @Override
+        public boolean hasNext() {
+            return !frontier.isEmpty();
+        }
+
+        @Override
+        public DataPoint next() {
+            SearchDocument searchDocument = frontier.poll();
             if (searchDocument == null) {
-                break;
+                throw new NoSuchElementException();
             }
-            for (int valueCtr = 0; valueCtr < nrValues; valueCtr++) {
-                SearchDocument newDocuments = new SearchDocument(searchDocument.documentIndices,
-                        searchDocument.scores);
-                int nextCtr = (++newDocuments.documentIndices[valueCtr]);
-                if (nextCtr < scoreDocs.get(valueCtr).length) {
-                    newDocuments.scores[valueCtr] = scoreDocs.get(valueCtr)[nextCtr].score;
-                    nextDocuments.add(newDocuments);
+            int[] indices = searchDocument.documentIndices;
+            for (int valueCtr = searchDocument.lastAdvanced(); valueCtr < indices.length; valueCtr++) {
+                if (indices[valueCtr] + 1 < scoreDocs[valueCtr].length) {
+                    int[] nextIndices = indices.clone();
+                    nextIndices[valueCtr]++;
+                    frontier.add(new SearchDocument(nextIndices, score(nextIndices), nrFound++));
                 }
             }
+            return toDataPoint(indices, searchDocument.score);
+        }
 
-            int[] vector = new int[nrDims];
+        private double score(int[] indices) {
             double score = 0;
-            for (int valueCtr = 0; valueCtr < nrValues; valueCtr++) {
-                int docCtr = searchDocument.documentIndices[valueCtr];
+            for (int valueCtr = 0; valueCtr < indices.length; valueCtr++) {
+                score += scoreDocs[valueCtr][indices[valueCtr]].score;
+            }
+            return score;
+        }
+
+        private DataPoint toDataPoint(int[] indices, double score) {
+            int[] vector = new int[nrDims];
+            for (int valueCtr = 0; valueCtr < indices.length; valueCtr++) {
+                int docCtr = indices[valueCtr];
                 int valuePos = valueIndex.get(valueCtr);
                 int columnPos = columnIndex.get(valueCtr);
-                ScoreDoc[] valueScoreDocs = scoreDocs.get(valueCtr);
-                ScoreDoc scoreDoc = valueScoreDocs[docCtr];
-                Document document = searcher.doc(scoreDoc.doc);
-                String column = document.get("column");
-                String content = document.get("text");
-                vector[columnPos] = termToKey[columnPos]
-                        .computeIfAbsent(column, k -> (termToKey[columnPos].size() + 1));
-                vector[valuePos] = termToKey[valuePos]
-                        .computeIfAbsent(content, k -> (termToKey[valuePos].size() + 1));
-                keyToTerms[columnPos][vector[columnPos]] = column;
-                keyToTerms[valuePos][vector[valuePos]] = content;
-                score += scoreDoc.score;
+                if (columnKeys[valueCtr][docCtr] == 0) {
+                    int doc = scoreDocs[valueCtr][docCtr].doc;
+                    String column = metadata.column(doc);
+                    String content = metadata.text(doc);
+                    columnKeys[valueCtr][docCtr] = termToKey[columnPos]
+                            .computeIfAbsent(column, k -> (termToKey[columnPos].size() + 1));
+                    valueKeys[valueCtr][docCtr] = termToKey[valuePos]
+                            .computeIfAbsent(content, k -> (termToKey[valuePos].size() + 1));
+                    keyToTerms[columnPos][columnKeys[valueCtr][docCtr]] = column;
+                    keyToTerms[valuePos][valueKeys[valueCtr][docCtr]] = content;
+                }
+                vector[columnPos] = columnKeys[valueCtr][docCtr];
+                vector[valuePos] = valueKeys[valueCtr][docCtr];
             }
 
             // Join predicates
@@ -185,17 +304,10 @@ public class QueryFactory {
                         .computeIfAbsent(columnName, k -> (termToKey[joinColumnPos].size() + 1));
                 keyToTerms[joinColumnPos][vector[joinColumnPos]] = columnName;
             }
-
-            queries[queryCtr] = new DataPoint(vector, score, queryCtr);
-            sum += score;
-
-        }
-        // Normalize probability distribution
-        for (DataPoint dataPoint: queries) {
-            dataPoint.probability /= sum;
-        }
-        for (int dimCtr = 0; dimCtr < nrDims; dimCtr++) {
-            nrDistinctValues[dimCtr] = termToKey[dimCtr].size() + 1;
+            for (int dimCtr = 0; dimCtr < nrDims; dimCtr++) {
+                nrDistinctValues[dimCtr] = termToKey[dimCtr].size() + 1;
+            }
+            return new DataPoint(vector, score, nrEnumerated++);
         }
     }
 
@@ -281,6 +393,10 @@ public class QueryFactory {
     }
 
     public String plotQuery(Plot plot, String query, boolean isSampling) {
+        return plotQuery(plot, query, isSampling, context.samplingRate);
+    }
+
+    public String plotQuery(Plot plot, String query, boolean isSampling, double samplingRate) {
         String sql = "";
         // TODO: find the correct index
         int indexPos = Math.max(this.columnIndex.indexOf(plot.freeIndex),
@@ -303,8 +419,8 @@ public class QueryFactory {
             String predicate = "\"" + columnName + "\" in (" + values + ")";
             predicates.add(predicate);
         }
-        String sampling = isSampling ? (" TABLESAMPLE SYSTEM(" + PlanConfig.SAMPLING_RATE + ")") : "";
-        String expand = isSampling ? (" * " + (100 / PlanConfig.SAMPLING_RATE)) : "";
+        String sampling = isSampling ? (" TABLESAMPLE SYSTEM(" + samplingRate + ")") : "";
+        String expand = isSampling ? (" * " + (100 / samplingRate)) : "";
         if (columnToValues.size() == 1) {
             String columnName = keyToTerms[columnIndex][columnToValues.keySet().iterator().next()];
             String select = query.split("SELECT ")[1].split(" FROM ")[0] + expand + ", " + "\"" + columnName + "\"";
@@ -1,55 +1,50 @@
 package planning.query;
 
-import java.util.Arrays;
-
+/**
+ * Combination of fuzzy matches, one per literal, waiting
+ * to be enumerated. Combinations are ordered by the sum
+ * of the scores of their matches and, for equal sums, by
+ * the order in which they were found.
+ */
 public class SearchDocument implements Comparable<SearchDocument>{
+    /**
+     * Index of the match of each literal.
+     */
     public final int[] documentIndices;
-    public final double[] scores;
-
-    public SearchDocument(int[] documentIndices, double[] scores) {
-        this.documentIndices = documentIndices.clone();
-        this.scores = scores.clone();
+    /**
+     * Sum of the scores of the matches.
+     */
+    public final double score;
+    /**
+     * Sequence number of the combination.
+     */
+    public final long order;
+
+    public SearchDocument(int[] documentIndices, double score, long order) {
+        this.documentIndices = documentIndices;
+        this.score = score;
+        this.order = order;
     }
 
-    @Override
-    public boolean equals(Object o) {
-        // If the object is compared with itself then return true
-        if (o == this) {
-            return true;
-        }
-
-        /* Check if o is an instance of Complex or not
-          "null instanceof [type]" also returns false */
-        if (!(o instanceof SearchDocument)) {
-            return false;
-        }
-
-        // typecast o to Complex so that we can compare data members
-        SearchDocument c = (SearchDocument) o;
-
-        // Compare the data members and return accordingly
-        for (int index = 0; index < documentIndices.length; index++) {
-            if (documentIndices[index] != c.documentIndices[index]) {
-                return false;
+    /**
+     * Last literal whose match is not the best one, 0 if none.
+     * Combinations are only extended at or after this literal,
+     * so that each combination is generated exactly once.
+     *
+     * @return      index of the literal
+     */
+    public int lastAdvanced() {
+        for (int index = documentIndices.length - 1; index > 0; index--) {
+            if (documentIndices[index] > 0) {
+                return index;
             }
         }
-        return true;
-    }
-
-    @Override
-    public int hashCode() {
-        return Arrays.hashCode(documentIndices);
+        return 0;
     }
 
-
     @Override
     public int compareTo(SearchDocument o) {
-        double score = 0;
-        double newScore = 0;
-        for (int index = 0; index < documentIndices.length; index++) {
-            score += scores[index];
-            newScore += o.scores[index];
-        }
-        return Double.compare(score, newScore);
+        int compare = Double.compare(o.score, score);
+        return compare != 0 ? compare : Long.compare(order, o.order);
     }
 }
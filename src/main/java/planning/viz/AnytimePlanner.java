@@ -0,0 +1,159 @@
+package planning.viz;
+
+import config.PlanContext;
+import gurobi.GRBException;
+import planning.query.QueryFactory;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Plans the interface progressively. The greedy plan is
+ * reported first, then the ILP model is optimized starting
+ * from it and each incumbent that reduces the wait time
+ * by more than the improvement of the context is reported,
+ * until the deadline of the request or until the planner
+ * is cancelled, e.g., by a new utterance. Plans are reported
+ * on the planning thread, listeners should hand them off
+ * instead of executing their queries.
+ *
+ * @author Ziyun Wei
+ */
+public class AnytimePlanner {
+    /**
+     * Factory that generated the queries to plan.
+     */
+    private final QueryFactory factory;
+    private final PlanContext context;
+    /**
+     * Time (ms) at which planning stops.
+     */
+    private final long deadlineMillis;
+    /**
+     * Whether planning should stop.
+     */
+    private volatile boolean cancelled = false;
+
+    /**
+     * Receives the plans in the order they are found.
+     */
+    public interface PlanListener {
+        /**
+         * Receive a better plan. Plots only contain the queries
+         * shown in the plot and count their highlighted queries.
+         *
+         * @param plan          plots and their queries in each row
+         * @param waitTime      expected wait time of the plan
+         * @return              whether to continue planning
+         */
+        boolean onPlan(List<Map<Plot, List<DataPoint>>> plan, double waitTime);
+    }
+
+    /**
+     * Initialize the planner of the factory's queries.
+     *
+     * @param factory           factory that generated the queries
+     * @param context           planning context of the request
+     * @param startMillis       time (ms) the request started, the
+     *                          timeout of the context counts from there
+     */
+    public AnytimePlanner(QueryFactory factory, PlanContext context, long startMillis) {
+        this.factory = factory;
+        this.context = context;
+        this.deadlineMillis = startMillis + (long) (context.timeout * 1000);
+    }
+
+    /**
+     * Stop planning as soon as possible.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Whether planning should stop, because the planner is
+     * cancelled or the deadline of the request has passed.
+     */
+    private boolean isStopped() {
+        return cancelled || System.currentTimeMillis() >= deadlineMillis;
+    }
+
+    /**
+     * Report the greedy plan and the improving ILP plans.
+     *
+     * @param listener      receiver of the plans
+     * @throws IOException
+     * @throws SQLException
+     * @throws GRBException
+     */
+    public void plan(PlanListener listener) throws IOException, SQLException, GRBException {
+        List<Map<Plot, List<DataPoint>>> greedyPlan = PlotGreedyPlanner.plan(factory.queries,
+                factory.nrDistinctValues, context.nrRows, context.R, factory, false);
+        double[] bestWaitTime = new double[]{context.stats.waitTime};
+        if (cancelled || !listener.onPlan(shownPlan(greedyPlan), bestWaitTime[0]) || isStopped()) {
+            return;
+        }
+        WaitTimeGurobiPlanner.plan(factory.queries, factory.nrDistinctValues, context.nrRows, context.R,
+                factory, context, greedyPlan, new WaitTimeGurobiPlanner.SolutionListener() {
+                    @Override
+                    public boolean onSolution(List<Map<Plot, List<DataPoint>>> plan, double waitTime) {
+                        if (isStopped()) {
+                            return false;
+                        }
+                        if (waitTime >= bestWaitTime[0] * (1 - context.anytimeImprovement)) {
+                            return true;
+                        }
+                        bestWaitTime[0] = waitTime;
+                        return listener.onPlan(shownPlan(plan), waitTime);
+                    }
+
+                    @Override
+                    public boolean isStopped() {
+                        return AnytimePlanner.this.isStopped();
+                    }
+                });
+    }
+
+    /**
+     * New plots with copies of the queries shown in each plot
+     * of the plan, unaffected by later changes of the planners.
+     */
+    static List<Map<Plot, List<DataPoint>>> shownPlan(List<Map<Plot, List<DataPoint>>> plan) {
+        List<Map<Plot, List<DataPoint>>> shownPlan = new ArrayList<>(plan.size());
+        for (Map<Plot, List<DataPoint>> resultsPerRow: plan) {
+            Map<Plot, List<DataPoint>> shownRow = new LinkedHashMap<>();
+            resultsPerRow.forEach((plot, dataPoints) -> {
+                Plot shownPlot = new Plot(plot.plotID, plot.freeIndex);
+                shownPlot.setCost(plot.cost);
+                for (DataPoint dataPoint: dataPoints) {
+                    shownPlot.addDataPoint(dataPoint.copy());
+                    if (dataPoint.highlighted) {
+                        shownPlot.nrHighlighted++;
+                    }
+                }
+                shownRow.put(shownPlot, shownPlot.dataPoints);
+            });
+            shownPlan.add(shownRow);
+        }
+        return shownPlan;
+    }
+
+    /**
+     * Identity of a shown plot: its plot, queries and highlights.
+     *
+     * @param plot          shown plot
+     * @return              signature of the plot
+     */
+    public static String signature(Plot plot) {
+        StringBuilder signature = new StringBuilder().append(plot.plotID).append(':');
+        plot.dataPoints.stream().sorted(Comparator.comparingInt(dataPoint -> dataPoint.id))
+                .forEach(dataPoint -> signature.append(dataPoint.id)
+                        .append(dataPoint.highlighted ? "*," : ","));
+        return signature.toString();
+    }
+}
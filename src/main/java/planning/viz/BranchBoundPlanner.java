@@ -0,0 +1,543 @@
+package planning.viz;
+
+import config.PlanConfig;
+import config.PlanContext;
+import planning.query.QueryFactory;
+import stats.PlanStats;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plans the interface by branch and bound in the JVM, without
+ * an ILP solver. Plots are decided one after the other in
+ * decreasing order of probability: a plot is either left out
+ * or shown in a row with the k most likely of its queries that
+ * earlier plots do not show. Processing is charged as in the
+ * greedy planner: a shown plot costs its processing cost times
+ * its number of queries, weighted by their probability. The
+ * greedy plan is the first incumbent. A subtree is pruned if
+ * its bound, which fills the free width of the rows with the
+ * most likely queries left in as few plots as the row width
+ * allows, cannot improve on the incumbent. Subtrees of the first levels are searched in
+ * parallel and share the incumbent. The layout is optimal in
+ * this search space unless the search stops at the timeout or
+ * the node limit, in which case the gap to the bound is kept
+ * in the statistics. Queries of the layout are then colored
+ * as in the greedy planner.
+ *
+ * @author Ziyun Wei
+ */
+public class BranchBoundPlanner {
+    /**
+     * Tolerance when comparing wait times.
+     */
+    private static final double EPSILON = 1e-9;
+    /**
+     * Number of nodes a task searches before reporting them.
+     */
+    private static final int NODES_PER_REPORT = 1024;
+
+    /**
+     * Decisions on the path from the root to a node of the search.
+     */
+    private static class Node {
+        /**
+         * Plot showing each query, -1 if the query is not shown.
+         */
+        final int[] queryPlots;
+        /**
+         * Row of each plot, -1 if the plot is not shown.
+         */
+        final int[] plotRows;
+        /**
+         * Free pixels of each row.
+         */
+        final int[] rowPixels;
+        /**
+         * Number of decided plots.
+         */
+        int depth = 0;
+        int nrShownQueries = 0;
+        int nrShownPlots = 0;
+        /**
+         * Probability of the shown queries and processing cost of
+         * the shown plots weighted by probability of their queries.
+         */
+        double probability = 0;
+        double processing = 0;
+        /**
+         * Nodes searched since the last report.
+         */
+        int nrNodes = 0;
+
+        Node(int nrQueries, int nrPlots, int nrRows, int R) {
+            queryPlots = new int[nrQueries];
+            plotRows = new int[nrPlots];
+            rowPixels = new int[nrRows];
+            Arrays.fill(queryPlots, -1);
+            Arrays.fill(plotRows, -1);
+            Arrays.fill(rowPixels, R);
+        }
+
+        Node(Node node) {
+            queryPlots = node.queryPlots.clone();
+            plotRows = node.plotRows.clone();
+            rowPixels = node.rowPixels.clone();
+            depth = node.depth;
+            nrShownQueries = node.nrShownQueries;
+            nrShownPlots = node.nrShownPlots;
+            probability = node.probability;
+            processing = node.processing;
+        }
+    }
+
+    /**
+     * Search of the subtree below a node in a parallel task.
+     */
+    private static class Subtree extends RecursiveAction {
+        final Search search;
+        final Node node;
+
+        Subtree(Search search, Node node) {
+            this.search = search;
+            this.node = node;
+        }
+
+        @Override
+        protected void compute() {
+            search.search(node);
+            search.report(node);
+        }
+    }
+
+    /**
+     * Problem, limits and incumbent shared by all tasks.
+     */
+    private static class Search {
+        final PlanModel model;
+        final int nrRows;
+        final int penaltyTime;
+        final double weight;
+        final long deadline;
+        /**
+         * Relative gap, node limit and parallel levels of the request.
+         */
+        final double gap;
+        final long maxNodes;
+        final int splitDepth;
+        /**
+         * Plots in the order they are decided and the depth of each plot.
+         */
+        final int[] plotOrder;
+        final int[] plotDepths;
+        /**
+         * Distinct queries of each plot in decreasing order of probability,
+         * from the offset of the plot in the model to the end of the plot.
+         */
+        final int[] sortedPlotQueries;
+        final int[] plotEnds;
+        /**
+         * Queries in decreasing order of probability and the last
+         * depth at which one of their plots is decided.
+         */
+        final int[] queryOrder;
+        final int[] lastDepths;
+        /**
+         * Largest number of queries of a plot that fits into a row.
+         */
+        final int maxPlotQueries;
+        final AtomicLong nrNodes = new AtomicLong();
+        volatile boolean stopped = false;
+        /**
+         * Wait time and decisions of the incumbent, null while
+         * the incumbent is the greedy plan.
+         */
+        volatile double bestWaitTime;
+        int[] bestQueryPlots = null;
+        int[] bestPlotRows = null;
+        /**
+         * Smallest bound of the subtrees that were not searched.
+         */
+        double lowerBound = Double.MAX_VALUE;
+
+        Search(PlanModel model, int nrRows, int R, int penaltyTime, PlanContext context, long deadline) {
+            this.model = model;
+            this.nrRows = nrRows;
+            this.penaltyTime = penaltyTime;
+            this.weight = context.processingWeight;
+            this.deadline = deadline;
+            this.gap = context.bnbGap;
+            this.maxNodes = context.bnbMaxNodes;
+            this.splitDepth = context.bnbSplitDepth;
+            this.maxPlotQueries = Math.max((R - PlanConfig.C) / PlanConfig.B, 0);
+            int nrPlots = model.nrPlots;
+            int nrQueries = model.nrQueries;
+            Integer[] plots = new Integer[nrPlots];
+            for (int plotCtr = 0; plotCtr < nrPlots; plotCtr++) {
+                plots[plotCtr] = plotCtr;
+            }
+            Arrays.sort(plots, (plot1, plot2) ->
+                    Double.compare(model.plotProbabilities[plot2], model.plotProbabilities[plot1]));
+            plotOrder = new int[nrPlots];
+            plotDepths = new int[nrPlots];
+            for (int depthCtr = 0; depthCtr < nrPlots; depthCtr++) {
+                plotOrder[depthCtr] = plots[depthCtr];
+                plotDepths[plots[depthCtr]] = depthCtr;
+            }
+            // Plots of different free indices may share an identifier and list a query twice
+            sortedPlotQueries = new int[model.plotQueries.length];
+            plotEnds = new int[nrPlots];
+            for (int plotCtr = 0; plotCtr < nrPlots; plotCtr++) {
+                int start = model.plotOffsets[plotCtr];
+                Integer[] queries = new Integer[model.plotSize(plotCtr)];
+                for (int queryCtr = 0; queryCtr < queries.length; queryCtr++) {
+                    queries[queryCtr] = model.plotQueries[start + queryCtr];
+                }
+                Arrays.sort(queries, (query1, query2) -> {
+                    int compare = Double.compare(model.probabilities[query2], model.probabilities[query1]);
+                    return compare != 0 ? compare : Integer.compare(query1, query2);
+                });
+                plotEnds[plotCtr] = start;
+                for (int queryCtr = 0; queryCtr < queries.length; queryCtr++) {
+                    if (queryCtr == 0 || !queries[queryCtr].equals(queries[queryCtr - 1])) {
+                        sortedPlotQueries[plotEnds[plotCtr]++] = queries[queryCtr];
+                    }
+                }
+            }
+            Integer[] queries = new Integer[nrQueries];
+            for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
+                queries[queryCtr] = queryCtr;
+            }
+            Arrays.sort(queries, (query1, query2) ->
+                    Double.compare(model.probabilities[query2], model.probabilities[query1]));
+            queryOrder = new int[nrQueries];
+            lastDepths = new int[nrQueries];
+            for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
+                queryOrder[queryCtr] = queries[queryCtr];
+                lastDepths[queryCtr] = -1;
+                for (int entryCtr = model.queryOffsets[queryCtr];
+                     entryCtr < model.queryOffsets[queryCtr + 1]; entryCtr++) {
+                    lastDepths[queryCtr] = Math.max(lastDepths[queryCtr], plotDepths[model.queryPlots[entryCtr]]);
+                }
+            }
+        }
+
+        /**
+         * Expected wait time of showing the given queries and plots,
+         * before highlighting queries.
+         */
+        double waitTime(int nrShownQueries, int nrShownPlots, double probability, double processing) {
+            double readTime = 0.5 * (nrShownQueries * PlanConfig.READ_DATA + nrShownPlots * PlanConfig.READ_TITLE);
+            return penaltyTime - probability * (penaltyTime - readTime) + weight * processing;
+        }
+
+        /**
+         * Expected wait time of a plan, counting each query once.
+         */
+        double waitTime(List<Map<Plot, List<DataPoint>>> plan) {
+            boolean[] shown = new boolean[model.nrQueries];
+            int nrShownQueries = 0;
+            int nrShownPlots = 0;
+            double probability = 0;
+            double processing = 0;
+            for (Map<Plot, List<DataPoint>> resultsPerRow: plan) {
+                for (Map.Entry<Plot, List<DataPoint>> entry: resultsPerRow.entrySet()) {
+                    List<DataPoint> dataPoints = entry.getValue();
+                    nrShownPlots += dataPoints.isEmpty() ? 0 : 1;
+                    int nrPlotQueries = 0;
+                    double plotProbability = 0;
+                    for (DataPoint dataPoint: dataPoints) {
+                        if (!shown[dataPoint.id]) {
+                            shown[dataPoint.id] = true;
+                            nrPlotQueries++;
+                            plotProbability += model.probabilities[dataPoint.id];
+                        }
+                    }
+                    nrShownQueries += nrPlotQueries;
+                    probability += plotProbability;
+                    processing += plotProbability * entry.getKey().cost * nrPlotQueries;
+                }
+            }
+            return waitTime(nrShownQueries, nrShownPlots, probability, processing);
+        }
+
+        /**
+         * Lower bound on the wait time of plans below the node.
+         * Queries left are added in decreasing order of probability,
+         * each group of queries that fits into a row in a new plot,
+         * while their width fits into the free width of all rows.
+         */
+        double bound(Node node) {
+            int freePixels = 0;
+            for (int rowPixels: node.rowPixels) {
+                if (rowPixels >= PlanConfig.C + PlanConfig.B) {
+                    freePixels += rowPixels;
+                }
+            }
+            double bound = waitTime(node.nrShownQueries, node.nrShownPlots, node.probability, node.processing);
+            double probability = node.probability;
+            int nrQueries = 0;
+            for (int orderCtr = 0; orderCtr < queryOrder.length && freePixels > 0; orderCtr++) {
+                int query = queryOrder[orderCtr];
+                if (node.queryPlots[query] >= 0 || lastDepths[query] < node.depth) {
+                    continue;
+                }
+                nrQueries++;
+                int nrPlots = (nrQueries + maxPlotQueries - 1) / maxPlotQueries;
+                if (PlanConfig.C * nrPlots + PlanConfig.B * nrQueries > freePixels) {
+                    break;
+                }
+                probability += model.probabilities[query];
+                bound = Math.min(bound, waitTime(node.nrShownQueries + nrQueries,
+                        node.nrShownPlots + nrPlots, probability, node.processing));
+            }
+            return bound;
+        }
+
+        /**
+         * Search the subtree below the node, in parallel tasks for
+         * the first levels. The node is left as it was.
+         */
+        void search(Node node) {
+            node.nrNodes++;
+            if (node.nrNodes >= NODES_PER_REPORT) {
+                report(node);
+            }
+            double bound = bound(node);
+            if (bound >= bestWaitTime - EPSILON) {
+                return;
+            }
+            if (stopped || bound >= bestWaitTime * (1 - gap)) {
+                keepBound(bound);
+                return;
+            }
+            if (node.depth >= plotOrder.length) {
+                return;
+            }
+            int plot = plotOrder[node.depth];
+            boolean parallel = node.depth < splitDepth;
+            List<Subtree> subtrees = parallel ? new ArrayList<>() : null;
+            // Queries of the plot that earlier plots do not show
+            int start = model.plotOffsets[plot];
+            int[] available = new int[model.plotSize(plot)];
+            int nrAvailable = 0;
+            for (int entryCtr = start; entryCtr < plotEnds[plot]; entryCtr++) {
+                if (node.queryPlots[sortedPlotQueries[entryCtr]] < 0) {
+                    available[nrAvailable++] = sortedPlotQueries[entryCtr];
+                }
+            }
+            double probability = node.probability;
+            double processing = node.processing;
+            for (int nrQueries = Math.min(nrAvailable, maxPlotQueries); nrQueries > 0; nrQueries--) {
+                int pixels = PlanConfig.C + PlanConfig.B * nrQueries;
+                for (int rowCtr = 0; rowCtr < nrRows; rowCtr++) {
+                    if (node.rowPixels[rowCtr] < pixels || isSameRow(node.rowPixels, rowCtr)) {
+                        continue;
+                    }
+                    // Show the plot with its most likely queries
+                    double plotProbability = 0;
+                    for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
+                        int query = available[queryCtr];
+                        node.queryPlots[query] = plot;
+                        plotProbability += model.probabilities[query];
+                    }
+                    node.probability += plotProbability;
+                    node.processing += plotProbability * model.plotCosts[plot] * nrQueries;
+                    node.plotRows[plot] = rowCtr;
+                    node.rowPixels[rowCtr] -= pixels;
+                    node.nrShownQueries += nrQueries;
+                    node.nrShownPlots++;
+                    offer(node);
+                    node.depth++;
+                    if (parallel) {
+                        subtrees.add(new Subtree(this, new Node(node)));
+                    }
+                    else {
+                        search(node);
+                    }
+                    node.depth--;
+                    node.nrShownPlots--;
+                    node.nrShownQueries -= nrQueries;
+                    node.rowPixels[rowCtr] += pixels;
+                    node.plotRows[plot] = -1;
+                    for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
+                        node.queryPlots[available[queryCtr]] = -1;
+                    }
+                    node.probability = probability;
+                    node.processing = processing;
+                }
+            }
+            // Leave the plot out
+            node.depth++;
+            if (parallel) {
+                subtrees.add(new Subtree(this, new Node(node)));
+                RecursiveAction.invokeAll(subtrees);
+            }
+            else {
+                search(node);
+            }
+            node.depth--;
+        }
+
+        /**
+         * Whether an earlier row has the same free pixels, so that
+         * showing a plot in either row leads to the same plans.
+         */
+        private static boolean isSameRow(int[] rowPixels, int row) {
+            for (int rowCtr = 0; rowCtr < row; rowCtr++) {
+                if (rowPixels[rowCtr] == rowPixels[row]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Make the plan of the node the incumbent if it is better.
+         */
+        void offer(Node node) {
+            double waitTime = waitTime(node.nrShownQueries, node.nrShownPlots, node.probability, node.processing);
+            if (waitTime < bestWaitTime - EPSILON) {
+                synchronized (this) {
+                    if (waitTime < bestWaitTime - EPSILON) {
+                        bestWaitTime = waitTime;
+                        bestQueryPlots = node.queryPlots.clone();
+                        bestPlotRows = node.plotRows.clone();
+                    }
+                }
+            }
+        }
+
+        synchronized void keepBound(double bound) {
+            lowerBound = Math.min(lowerBound, bound);
+        }
+
+        /**
+         * Count the nodes searched by a task and stop the search
+         * at the node limit or the timeout.
+         */
+        void report(Node node) {
+            long nrSearched = nrNodes.addAndGet(node.nrNodes);
+            node.nrNodes = 0;
+            if (nrSearched >= maxNodes || System.currentTimeMillis() > deadline) {
+                stopped = true;
+            }
+        }
+
+        /**
+         * Materialize the incumbent.
+         *
+         * @param bestPlots         collects the shown plots
+         * @param bestDataPoints    collects the shown queries
+         * @return                  plots and their queries in each row
+         */
+        List<Map<Plot, List<DataPoint>>> plan(List<Plot> bestPlots, Set<DataPoint> bestDataPoints) {
+            List<Map<Plot, List<DataPoint>>> results = new ArrayList<>(nrRows);
+            for (int rowCtr = 0; rowCtr < nrRows; rowCtr++) {
+                results.add(new LinkedHashMap<>());
+            }
+            for (int plot: plotOrder) {
+                int row = bestPlotRows[plot];
+                if (row < 0) {
+                    continue;
+                }
+                Plot bestPlot = new Plot(model.plotIDs[plot], model.freeIndices[plot]);
+                bestPlot.setCost(model.plotCosts[plot]);
+                for (int entryCtr = model.plotOffsets[plot]; entryCtr < plotEnds[plot]; entryCtr++) {
+                    int query = sortedPlotQueries[entryCtr];
+                    if (bestQueryPlots[query] == plot) {
+                        bestPlot.addDataPoint(model.dataPoints[query]);
+                    }
+                }
+                bestPlots.add(bestPlot);
+                bestDataPoints.addAll(bestPlot.dataPoints);
+                results.get(row).put(bestPlot, bestPlot.dataPoints);
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Search the layout with the least wait time, starting from
+     * the greedy plan, within the timeout of the planning context.
+     *
+     * @param scorePoints           array of similar data points
+     * @param maxIndices            number of distinct candidates for each replaceable terms
+     * @param nrRows                number of rows in the screen
+     * @param R                     width of a row
+     * @param factory               similar queries generator
+     * @return                      plots of each row
+     * @throws IOException
+     * @throws SQLException
+     */
+    public static List<Map<Plot, List<DataPoint>>> plan(DataPoint[] scorePoints,
+                                                        int[] maxIndices,
+                                                        int nrRows, int R,
+                                                        QueryFactory factory) throws IOException, SQLException {
+        PlanContext context = factory.context;
+        PlanStats stats = context.stats;
+        long startMillis = System.currentTimeMillis();
+        PlanModel planModel = PlanModel.build(scorePoints, maxIndices);
+        long modelMillis = System.currentTimeMillis();
+        // The greedy plan is the first incumbent and estimates the processing costs of the model
+        List<Map<Plot, List<DataPoint>>> greedyPlan = PlotGreedyPlanner.plan(planModel,
+                nrRows, R, factory, false, context.lazyGreedy);
+        double greedyWaitTime = stats.waitTime;
+        long greedyInitMillis = stats.initMillis;
+        long greedyBuildMillis = stats.buildMillis;
+        long greedyOptimizeMillis = stats.optimizeMillis;
+        int nrQueries = scorePoints.length;
+        boolean[] greedyHighlights = new boolean[nrQueries];
+        for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
+            greedyHighlights[queryCtr] = scorePoints[queryCtr].highlighted;
+        }
+        long searchMillis = System.currentTimeMillis();
+        int penaltyTime = nrQueries * PlanConfig.READ_DATA + planModel.nrPlots * PlanConfig.READ_TITLE;
+        Search search = new Search(planModel, nrRows, R, penaltyTime, context,
+                searchMillis + (long) (context.timeout * 1000));
+        search.bestWaitTime = search.waitTime(greedyPlan);
+        long buildMillis = System.currentTimeMillis();
+
+        Node root = new Node(nrQueries, planModel.nrPlots, nrRows, R);
+        ForkJoinPool.commonPool().invoke(new Subtree(search, root));
+        long optimizeMillis = System.currentTimeMillis();
+
+        List<Map<Plot, List<DataPoint>>> results = greedyPlan;
+        double waitTime = greedyWaitTime;
+        if (search.bestQueryPlots != null) {
+            for (DataPoint dataPoint: scorePoints) {
+                dataPoint.highlighted = false;
+            }
+            List<Plot> bestPlots = new ArrayList<>();
+            Set<DataPoint> bestDataPoints = new HashSet<>();
+            List<Map<Plot, List<DataPoint>>> plan = search.plan(bestPlots, bestDataPoints);
+            double timeSaving = PlotGreedyPlanner.colorPlots(bestPlots, bestDataPoints,
+                    penaltyTime - search.bestWaitTime, penaltyTime);
+            if (penaltyTime - timeSaving < greedyWaitTime) {
+                results = plan;
+                waitTime = penaltyTime - timeSaving;
+            }
+            else {
+                for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
+                    scorePoints[queryCtr].highlighted = greedyHighlights[queryCtr];
+                }
+            }
+        }
+        long endMillis = System.currentTimeMillis();
+        double lowerBound = Math.min(search.lowerBound, search.bestWaitTime);
+        stats.nrNodes = search.nrNodes.get();
+        stats.gap = search.bestWaitTime > 0 ? (search.bestWaitTime - lowerBound) / search.bestWaitTime : 0;
+        // Times include the greedy plan that seeds the search
+        stats.initMillis = modelMillis - startMillis + greedyInitMillis + buildMillis - searchMillis;
+        stats.buildMillis = greedyBuildMillis + endMillis - optimizeMillis;
+        stats.optimizeMillis = greedyOptimizeMillis + optimizeMillis - buildMillis;
+        stats.isTimeout = search.stopped;
+        stats.waitTime = waitTime;
+        return results;
+    }
+}
@@ -55,6 +55,20 @@ public class DataPoint {
         this.cost = Math.min(cost, this.cost);
     }
 
+    /**
+     * Copy the data point with its cost and highlight,
+     * e.g., to hand a plan to another thread while the
+     * planner keeps changing the original.
+     *
+     * @return          copy of the data point
+     */
+    public DataPoint copy() {
+        DataPoint dataPoint = new DataPoint(vector, probability, id);
+        dataPoint.cost = cost;
+        dataPoint.highlighted = highlighted;
+        return dataPoint;
+    }
+
 
     public String toString() {
         return Arrays.toString(vector);
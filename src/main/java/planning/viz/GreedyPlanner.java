@@ -1,8 +1,7 @@
 package planning.viz;
 
 import config.PlanConfig;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.search.IndexSearcher;
+import matching.HitMetadata;
 import org.apache.lucene.search.ScoreDoc;
 
 import java.io.IOException;
@@ -19,7 +18,7 @@ import static java.util.stream.Collectors.toList;
 public class GreedyPlanner {
     public static List<Map<String, List<ScoreDoc>>> plan(ScoreDoc[] hitDocs,
                                                          int nrRows, int R,
-                                                         IndexSearcher searcher) throws IOException {
+                                                         HitMetadata metadata) throws IOException {
         Arrays.sort(hitDocs, (doc1, doc2) -> Double.compare(doc2.score, doc1.score));
         int nrDocs = hitDocs.length;
         // Calculate average rewards for each plot.
@@ -34,9 +33,8 @@ public class GreedyPlanner {
         for (int docCtr = 0; docCtr < nrDocs; docCtr++) {
             docToCtx[docCtr] = new ArrayList<>(nrAvailable);
             ScoreDoc hitScoreDoc = hitDocs[docCtr];
-            Document hitDoc = searcher.doc(hitScoreDoc.doc);
-            String column = hitDoc.get("column");
-            String content = hitDoc.get("text");
+            String column = metadata.column(hitScoreDoc.doc);
+            String content = metadata.text(hitScoreDoc.doc);
             double score = hitScoreDoc.score;
             int literalIndex = literals.indexOf(content);
             int columnIndex = columns.indexOf(column);
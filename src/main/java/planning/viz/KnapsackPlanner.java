@@ -0,0 +1,503 @@
+package planning.viz;
+
+import config.PlanConfig;
+import config.PlanContext;
+import planning.query.QueryFactory;
+import planning.viz.cost.PlanCost;
+import stats.PlanStats;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Plans each row by dynamic programming over the plots. A plot
+ * with k queries takes C + B * k pixels, so a row is a grouped
+ * knapsack: at most one option per plot, where the k-th option
+ * shows the k most likely queries of the plot, under the width R.
+ * The table holds the largest probability for each number of
+ * plots and queries that fit into the row, which determine the
+ * read time, and the row is the entry with the least wait time.
+ * Processing is charged as in the greedy planner: a plot with k
+ * queries costs k times its processing cost, weighted by the
+ * probability of its queries.
+ * Plots of different free indices may share a query; if the best
+ * entry shows a query twice, the planner branches on the plot
+ * that keeps the query and solves the table again. One row is
+ * optimal before highlighting, several rows are planned one after
+ * the other given the rows above. Queries are then colored as in
+ * the greedy planner.
+ *
+ * @author Ziyun Wei
+ */
+public class KnapsackPlanner {
+    /**
+     * Tolerance when comparing wait times.
+     */
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * Plots of a row and the queries each plot shows.
+     */
+    private static class RowLayout implements Comparable<RowLayout> {
+        /**
+         * Expected wait time of the rows so far with this row,
+         * a lower bound if a query is shown twice.
+         */
+        final double waitTime;
+        final int[] plots;
+        final int[][] queries;
+        /**
+         * Plot and query pairs excluded to solve this layout.
+         */
+        final Set<Long> excluded;
+
+        RowLayout(double waitTime, int[] plots, int[][] queries, Set<Long> excluded) {
+            this.waitTime = waitTime;
+            this.plots = plots;
+            this.queries = queries;
+            this.excluded = excluded;
+        }
+
+        @Override
+        public int compareTo(RowLayout o) {
+            return Double.compare(waitTime, o.waitTime);
+        }
+    }
+
+    /**
+     * Plans rows given the plots and queries shown in the rows above.
+     */
+    private static class RowPlanner {
+        final PlanModel model;
+        final int R;
+        final int penaltyTime;
+        final double weight;
+        /**
+         * Largest number of plots and of queries in a row.
+         */
+        final int maxPlots;
+        final int maxQueries;
+        /**
+         * Distinct queries of each plot in decreasing order of probability,
+         * from the offset of the plot in the model to the end of the plot.
+         */
+        final int[] sortedPlotQueries;
+        final int[] plotEnds;
+        /**
+         * Queries and plots shown in the rows above and their totals.
+         */
+        final boolean[] shownQueries;
+        final boolean[] shownPlots;
+        int nrShownQueries = 0;
+        int nrShownPlots = 0;
+        /**
+         * Probability of the shown queries and processing cost of
+         * the shown plots weighted by probability of their queries.
+         */
+        double probability = 0;
+        double processing = 0;
+        /**
+         * Whether branching stopped at the timeout.
+         */
+        boolean isTimeout = false;
+
+        RowPlanner(PlanModel model, int R, int penaltyTime, double weight) {
+            this.model = model;
+            this.R = R;
+            this.penaltyTime = penaltyTime;
+            this.weight = weight;
+            this.maxPlots = Math.max(R / (PlanConfig.C + PlanConfig.B), 0);
+            this.maxQueries = Math.max((R - PlanConfig.C) / PlanConfig.B, 0);
+            this.shownQueries = new boolean[model.nrQueries];
+            this.shownPlots = new boolean[model.nrPlots];
+            // Plots of different free indices may share an identifier and list a query twice
+            sortedPlotQueries = new int[model.plotQueries.length];
+            plotEnds = new int[model.nrPlots];
+            for (int plotCtr = 0; plotCtr < model.nrPlots; plotCtr++) {
+                int start = model.plotOffsets[plotCtr];
+                Integer[] queries = new Integer[model.plotSize(plotCtr)];
+                for (int queryCtr = 0; queryCtr < queries.length; queryCtr++) {
+                    queries[queryCtr] = model.plotQueries[start + queryCtr];
+                }
+                Arrays.sort(queries, (query1, query2) -> {
+                    int compare = Double.compare(model.probabilities[query2], model.probabilities[query1]);
+                    return compare != 0 ? compare : Integer.compare(query1, query2);
+                });
+                plotEnds[plotCtr] = start;
+                for (int queryCtr = 0; queryCtr < queries.length; queryCtr++) {
+                    if (queryCtr == 0 || !queries[queryCtr].equals(queries[queryCtr - 1])) {
+                        sortedPlotQueries[plotEnds[plotCtr]++] = queries[queryCtr];
+                    }
+                }
+            }
+        }
+
+        /**
+         * Reading coefficient of the shown probability with the given
+         * numbers of queries and plots in this row.
+         */
+        double coefficient(int nrQueries, int nrPlots) {
+            return penaltyTime - 0.5 * ((nrShownQueries + nrQueries) * PlanConfig.READ_DATA
+                    + (nrShownPlots + nrPlots) * PlanConfig.READ_TITLE);
+        }
+
+        /**
+         * Best layout of the next row that shows queries at most once,
+         * or the best one found when the timeout passes.
+         *
+         * @param deadline      time in milliseconds to stop branching
+         * @return              plots and queries of the row
+         */
+        RowLayout plan(long deadline) {
+            RowLayout relaxed = solve(new HashSet<>());
+            RowLayout best = repair(relaxed);
+            PriorityQueue<RowLayout> layouts = new PriorityQueue<>();
+            if (best != relaxed) {
+                layouts.add(relaxed);
+            }
+            while (!layouts.isEmpty() && layouts.peek().waitTime < best.waitTime - EPSILON) {
+                if (System.currentTimeMillis() > deadline) {
+                    isTimeout = true;
+                    break;
+                }
+                RowLayout layout = layouts.poll();
+                // Branch on the plot that keeps the first query shown twice
+                int[] plots = sharingPlots(layout);
+                int query = plots[0];
+                for (int keepCtr = 1; keepCtr < plots.length; keepCtr++) {
+                    Set<Long> excluded = new HashSet<>(layout.excluded);
+                    for (int plotCtr = 1; plotCtr < plots.length; plotCtr++) {
+                        if (plotCtr != keepCtr) {
+                            excluded.add((long) plots[plotCtr] * model.nrQueries + query);
+                        }
+                    }
+                    RowLayout child = solve(excluded);
+                    RowLayout repaired = repair(child);
+                    if (repaired.waitTime < best.waitTime - EPSILON) {
+                        best = repaired;
+                    }
+                    if (repaired != child && child.waitTime < best.waitTime - EPSILON) {
+                        layouts.add(child);
+                    }
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Layout of the largest table entry, ignoring that plots may
+         * share queries. With a processing weight, the value of a plot
+         * depends on the entry, so the table is solved for each entry.
+         */
+        RowLayout solve(Set<Long> excluded) {
+            if (weight <= Double.MIN_VALUE) {
+                return knapsack(excluded, 1, -1, -1);
+            }
+            RowLayout best = null;
+            for (int plotCtr = 0; plotCtr <= maxPlots; plotCtr++) {
+                for (int queryCtr = plotCtr; queryCtr <= maxQueries; queryCtr++) {
+                    if (PlanConfig.C * plotCtr + PlanConfig.B * queryCtr > R) {
+                        break;
+                    }
+                    RowLayout layout = knapsack(excluded, coefficient(queryCtr, plotCtr), plotCtr, queryCtr);
+                    if (layout != null && (best == null || layout.waitTime < best.waitTime)) {
+                        best = layout;
+                    }
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Fill the table with the largest value of each number of plots
+         * and queries, where a plot showing k queries is worth their
+         * probability times the coefficient minus k times its weighted
+         * processing cost.
+         *
+         * @param excluded      plot and query pairs that are not allowed
+         * @param coefficient   value of probability
+         * @param targetPlots   number of plots of the layout, -1 for the best entry
+         * @param targetQueries number of queries of the layout
+         * @return              layout of the entry
+         */
+        RowLayout knapsack(Set<Long> excluded, double coefficient, int targetPlots, int targetQueries) {
+            int nrPlots = model.nrPlots;
+            int nrColumns = maxQueries + 1;
+            int nrStates = (maxPlots + 1) * nrColumns;
+            // Options of each plot: its allowed queries in decreasing order of value
+            int[] activePlots = new int[nrPlots];
+            int[][] options = new int[nrPlots][];
+            double[][] gains = new double[nrPlots][];
+            int nrActive = 0;
+            int[] allowed = new int[model.maxPlotSize];
+            for (int plotCtr = 0; plotCtr < nrPlots; plotCtr++) {
+                if (shownPlots[plotCtr]) {
+                    continue;
+                }
+                int nrAllowed = 0;
+                for (int entryCtr = model.plotOffsets[plotCtr]; entryCtr < plotEnds[plotCtr]; entryCtr++) {
+                    int query = sortedPlotQueries[entryCtr];
+                    if (!shownQueries[query] && (excluded.isEmpty() ||
+                            !excluded.contains((long) plotCtr * model.nrQueries + query))) {
+                        allowed[nrAllowed++] = query;
+                    }
+                }
+                if (nrAllowed == 0) {
+                    continue;
+                }
+                // The k most likely queries are the best option of k queries
+                int[] queries = Arrays.copyOf(allowed, nrAllowed);
+                int nrOptions = Math.min(nrAllowed, maxQueries);
+                double[] plotGains = new double[nrOptions + 1];
+                double plotProbability = 0;
+                for (int optionCtr = 0; optionCtr < nrOptions; optionCtr++) {
+                    plotProbability += model.probabilities[queries[optionCtr]];
+                    plotGains[optionCtr + 1] = value(plotCtr, plotProbability, optionCtr + 1, coefficient);
+                }
+                activePlots[nrActive] = plotCtr;
+                options[nrActive] = queries;
+                gains[nrActive] = plotGains;
+                nrActive++;
+            }
+            double[] values = new double[nrStates];
+            Arrays.fill(values, Double.NEGATIVE_INFINITY);
+            values[0] = 0;
+            int[] choices = new int[nrActive * nrStates];
+            for (int activeCtr = 0; activeCtr < nrActive; activeCtr++) {
+                double[] plotGains = gains[activeCtr];
+                int base = activeCtr * nrStates;
+                // Entries with one plot less are read before they are updated
+                for (int plotsCtr = maxPlots; plotsCtr > 0; plotsCtr--) {
+                    for (int queryCtr = maxQueries; queryCtr >= plotsCtr; queryCtr--) {
+                        if (PlanConfig.C * plotsCtr + PlanConfig.B * queryCtr > R) {
+                            continue;
+                        }
+                        int state = plotsCtr * nrColumns + queryCtr;
+                        int previous = state - nrColumns;
+                        int nrOptions = Math.min(plotGains.length - 1, queryCtr);
+                        for (int optionCtr = 1; optionCtr <= nrOptions; optionCtr++) {
+                            double value = values[previous - optionCtr] + plotGains[optionCtr];
+                            if (value > values[state]) {
+                                values[state] = value;
+                                choices[base + state] = optionCtr;
+                            }
+                        }
+                    }
+                }
+            }
+            // Entry with the least wait time
+            int bestState = -1;
+            double bestWaitTime = Double.MAX_VALUE;
+            for (int plotsCtr = 0; plotsCtr <= maxPlots; plotsCtr++) {
+                for (int queryCtr = 0; queryCtr <= maxQueries; queryCtr++) {
+                    int state = plotsCtr * nrColumns + queryCtr;
+                    if (values[state] == Double.NEGATIVE_INFINITY || targetPlots >= 0 &&
+                            (plotsCtr != targetPlots || queryCtr != targetQueries)) {
+                        continue;
+                    }
+                    double rowCoefficient = coefficient(queryCtr, plotsCtr);
+                    double waitTime = weight > Double.MIN_VALUE ?
+                            penaltyTime - probability * rowCoefficient + weight * processing - values[state] :
+                            penaltyTime - (probability + values[state]) * rowCoefficient;
+                    if (waitTime < bestWaitTime) {
+                        bestWaitTime = waitTime;
+                        bestState = state;
+                    }
+                }
+            }
+            if (bestState < 0) {
+                return null;
+            }
+            // Walk back through the plots that improved the entry
+            int nrLayoutPlots = bestState / nrColumns;
+            int[] plots = new int[nrLayoutPlots];
+            int[][] queries = new int[nrLayoutPlots][];
+            int state = bestState;
+            for (int activeCtr = nrActive - 1; activeCtr >= 0 && state > 0; activeCtr--) {
+                int nrQueries = choices[activeCtr * nrStates + state];
+                if (nrQueries > 0) {
+                    nrLayoutPlots--;
+                    plots[nrLayoutPlots] = activePlots[activeCtr];
+                    queries[nrLayoutPlots] = Arrays.copyOf(options[activeCtr], nrQueries);
+                    state -= nrColumns + nrQueries;
+                }
+            }
+            return new RowLayout(bestWaitTime, plots, queries, excluded);
+        }
+
+        /**
+         * Value of showing the plot with queries of the given
+         * probability under the coefficient.
+         */
+        double value(int plot, double plotProbability, int nrQueries, double coefficient) {
+            return plotProbability * (coefficient - weight * model.plotCosts[plot] * nrQueries);
+        }
+
+        /**
+         * Processing cost of the plot with the queries, weighted by their probability.
+         */
+        double processing(int plot, int[] queries) {
+            double plotProbability = 0;
+            for (int query: queries) {
+                plotProbability += model.probabilities[query];
+            }
+            return plotProbability * model.plotCosts[plot] * queries.length;
+        }
+
+        /**
+         * Query shown twice in the layout followed by the plots showing it.
+         */
+        int[] sharingPlots(RowLayout layout) {
+            Map<Integer, List<Integer>> queryToPlots = new HashMap<>();
+            for (int plotCtr = 0; plotCtr < layout.plots.length; plotCtr++) {
+                for (int query: layout.queries[plotCtr]) {
+                    queryToPlots.computeIfAbsent(query, key -> new ArrayList<>()).add(layout.plots[plotCtr]);
+                }
+            }
+            for (Map.Entry<Integer, List<Integer>> entry: queryToPlots.entrySet()) {
+                if (entry.getValue().size() > 1) {
+                    int[] plots = new int[entry.getValue().size() + 1];
+                    plots[0] = entry.getKey();
+                    for (int plotCtr = 1; plotCtr < plots.length; plotCtr++) {
+                        plots[plotCtr] = entry.getValue().get(plotCtr - 1);
+                    }
+                    return plots;
+                }
+            }
+            return new int[]{-1};
+        }
+
+        /**
+         * The layout itself if it shows each query once, otherwise
+         * the layout where later plots drop queries shown before,
+         * with its exact wait time.
+         */
+        RowLayout repair(RowLayout layout) {
+            Set<Integer> queries = new HashSet<>();
+            boolean isRepaired = false;
+            List<Integer> plots = new ArrayList<>(layout.plots.length);
+            List<int[]> plotQueries = new ArrayList<>(layout.plots.length);
+            for (int plotCtr = 0; plotCtr < layout.plots.length; plotCtr++) {
+                int[] distinctQueries = Arrays.stream(layout.queries[plotCtr]).filter(queries::add).toArray();
+                isRepaired |= distinctQueries.length < layout.queries[plotCtr].length;
+                if (distinctQueries.length > 0) {
+                    plots.add(layout.plots[plotCtr]);
+                    plotQueries.add(distinctQueries);
+                }
+            }
+            if (!isRepaired) {
+                return layout;
+            }
+            double rowProbability = 0;
+            double rowProcessing = 0;
+            for (int query: queries) {
+                rowProbability += model.probabilities[query];
+            }
+            for (int plotCtr = 0; plotCtr < plots.size(); plotCtr++) {
+                rowProcessing += processing(plots.get(plotCtr), plotQueries.get(plotCtr));
+            }
+            double waitTime = penaltyTime - (probability + rowProbability) * coefficient(queries.size(), plots.size())
+                    + weight * (processing + rowProcessing);
+            return new RowLayout(waitTime, plots.stream().mapToInt(Integer::intValue).toArray(),
+                    plotQueries.toArray(new int[0][]), layout.excluded);
+        }
+
+        /**
+         * Show the layout in the next row.
+         */
+        void show(RowLayout layout) {
+            for (int plotCtr = 0; plotCtr < layout.plots.length; plotCtr++) {
+                shownPlots[layout.plots[plotCtr]] = true;
+                nrShownPlots++;
+                processing += processing(layout.plots[plotCtr], layout.queries[plotCtr]);
+                for (int query: layout.queries[plotCtr]) {
+                    shownQueries[query] = true;
+                    nrShownQueries++;
+                    probability += model.probabilities[query];
+                }
+            }
+        }
+
+        /**
+         * Expected wait time of the rows shown so far.
+         */
+        double waitTime() {
+            return penaltyTime - probability * coefficient(0, 0) + weight * processing;
+        }
+    }
+
+    /**
+     * Plan the rows one after the other, each row with the least
+     * wait time given the rows above.
+     *
+     * @param scorePoints           array of similar data points
+     * @param maxIndices            number of distinct candidates for each replaceable terms
+     * @param nrRows                number of rows in the screen
+     * @param R                     width of a row
+     * @param factory               similar queries generator
+     * @return                      plots of each row
+     * @throws IOException
+     * @throws SQLException
+     */
+    public static List<Map<Plot, List<DataPoint>>> plan(DataPoint[] scorePoints,
+                                                        int[] maxIndices,
+                                                        int nrRows, int R,
+                                                        QueryFactory factory) throws IOException, SQLException {
+        List<Map<Plot, List<DataPoint>>> results = new ArrayList<>(nrRows);
+        PlanContext context = factory.context;
+        PlanStats stats = context.stats;
+        int nrQueries = scorePoints.length;
+        long startMillis = System.currentTimeMillis();
+        PlanModel planModel = PlanModel.build(scorePoints, maxIndices);
+        stats.nrQueries = nrQueries;
+        stats.nrPlots = planModel.nrPlots;
+        int penaltyTime = nrQueries * PlanConfig.READ_DATA + planModel.nrPlots * PlanConfig.READ_TITLE;
+        if (context.processingWeight > Double.MIN_VALUE) {
+            List<Plot> modelPlots = planModel.plots();
+            PlanCost.processCost(modelPlots, factory);
+            planModel.updateCosts(modelPlots);
+        }
+        else {
+            planModel.setCosts(0);
+        }
+        for (DataPoint dataPoint: scorePoints) {
+            dataPoint.highlighted = false;
+        }
+        RowPlanner rowPlanner = new RowPlanner(planModel, R, penaltyTime, context.processingWeight);
+        long buildMillis = System.currentTimeMillis();
+
+        long deadline = buildMillis + (long) (context.timeout * 1000);
+        List<Plot> bestPlots = new ArrayList<>();
+        Set<DataPoint> bestDataPoints = new HashSet<>(nrQueries);
+        for (int rowCtr = 0; rowCtr < nrRows; rowCtr++) {
+            RowLayout layout = rowPlanner.plan(deadline);
+            Map<Plot, List<DataPoint>> resultsPerRow = new LinkedHashMap<>();
+            rowPlanner.show(layout);
+            for (int plotCtr = 0; plotCtr < layout.plots.length; plotCtr++) {
+                int plot = layout.plots[plotCtr];
+                Plot bestPlot = new Plot(planModel.plotIDs[plot], planModel.freeIndices[plot]);
+                bestPlot.setCost(planModel.plotCosts[plot]);
+                for (int query: layout.queries[plotCtr]) {
+                    bestPlot.addDataPoint(scorePoints[query]);
+                }
+                bestPlot.sortByProbability();
+                bestPlots.add(bestPlot);
+                bestDataPoints.addAll(bestPlot.dataPoints);
+                resultsPerRow.put(bestPlot, bestPlot.dataPoints);
+            }
+            results.add(resultsPerRow);
+        }
+        long optimizeMillis = System.currentTimeMillis();
+
+        double timeSaving = PlotGreedyPlanner.colorPlots(bestPlots, bestDataPoints,
+                penaltyTime - rowPlanner.waitTime(), penaltyTime);
+        long endMillis = System.currentTimeMillis();
+        stats.initMillis = buildMillis - startMillis;
+        stats.buildMillis = endMillis - optimizeMillis;
+        stats.optimizeMillis = optimizeMillis - buildMillis;
+        stats.isTimeout = rowPlanner.isTimeout;
+        stats.waitTime = penaltyTime - timeSaving;
+        return results;
+    }
+}
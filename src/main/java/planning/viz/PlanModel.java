@@ -0,0 +1,321 @@
+package planning.viz;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Planning problem over data points in primitive arrays.
+ * Vectors are stored in one row-major matrix, probabilities
+ * and costs in double arrays, and the membership of queries
+ * in plots in compressed sparse rows in both directions.
+ * Plots are the groups of queries that agree on all indices
+ * except one free index; plots of a single query are dropped
+ * unless the query has no other plot. Plots are numbered in
+ * order of their first query, queries of a plot are listed
+ * in ascending order and plots of a query by free index.
+ *
+ * @author Ziyun Wei
+ */
+public class PlanModel {
+    /**
+     * Data points the model was built from, indexed by query.
+     */
+    public final DataPoint[] dataPoints;
+    public final int nrQueries;
+    public final int nrDims;
+    public final int nrPlots;
+    /**
+     * Vector of query q at [q * nrDims, (q + 1) * nrDims).
+     */
+    public final int[] vectors;
+    /**
+     * Probability and cost of each query.
+     */
+    public final double[] probabilities;
+    public final double[] costs;
+    /**
+     * Identifier, free index, probability and constant cost of each plot.
+     */
+    public final int[] plotIDs;
+    public final int[] freeIndices;
+    public final double[] plotProbabilities;
+    public final double[] plotCosts;
+    /**
+     * Queries of plot p at plotQueries[plotOffsets[p]] to plotQueries[plotOffsets[p + 1] - 1].
+     */
+    public final int[] plotOffsets;
+    public final int[] plotQueries;
+    /**
+     * Plots of query q at queryPlots[queryOffsets[q]] to queryPlots[queryOffsets[q + 1] - 1].
+     */
+    public final int[] queryOffsets;
+    public final int[] queryPlots;
+    /**
+     * Largest number of queries in a plot.
+     */
+    public final int maxPlotSize;
+
+    private PlanModel(DataPoint[] dataPoints, int nrDims, int nrPlots,
+                      int[] plotIDs, int[] freeIndices,
+                      int[] plotOffsets, int[] plotQueries,
+                      int[] queryOffsets, int[] queryPlots) {
+        this.dataPoints = dataPoints;
+        this.nrQueries = dataPoints.length;
+        this.nrDims = nrDims;
+        this.nrPlots = nrPlots;
+        this.plotIDs = plotIDs;
+        this.freeIndices = freeIndices;
+        this.plotOffsets = plotOffsets;
+        this.plotQueries = plotQueries;
+        this.queryOffsets = queryOffsets;
+        this.queryPlots = queryPlots;
+        this.vectors = new int[nrQueries * nrDims];
+        this.probabilities = new double[nrQueries];
+        this.costs = new double[nrQueries];
+        for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
+            DataPoint dataPoint = dataPoints[queryCtr];
+            System.arraycopy(dataPoint.vector, 0, vectors, queryCtr * nrDims, nrDims);
+            probabilities[queryCtr] = dataPoint.probability;
+            costs[queryCtr] = dataPoint.cost;
+        }
+        this.plotProbabilities = new double[nrPlots];
+        this.plotCosts = new double[nrPlots];
+        int maxPlotSize = 0;
+        for (int plotCtr = 0; plotCtr < nrPlots; plotCtr++) {
+            for (int entryCtr = plotOffsets[plotCtr]; entryCtr < plotOffsets[plotCtr + 1]; entryCtr++) {
+                plotProbabilities[plotCtr] += probabilities[plotQueries[entryCtr]];
+            }
+            maxPlotSize = Math.max(maxPlotSize, plotSize(plotCtr));
+        }
+        this.maxPlotSize = maxPlotSize;
+    }
+
+    /**
+     * Build the model of the data points.
+     *
+     * @param dataPoints    data points whose IDs are their positions
+     * @param maxIndices    number of distinct values of each index
+     * @return              planning model
+     */
+    public static PlanModel build(DataPoint[] dataPoints, int[] maxIndices) {
+        int nrQueries = dataPoints.length;
+        int nrDims = nrQueries == 0 ? 0 : dataPoints[0].vector.length;
+        int[] cardinals = new int[nrDims + 1];
+        cardinals[0] = 1;
+        for (int dimCtr = 0; dimCtr < nrDims; dimCtr++) {
+            cardinals[dimCtr + 1] = cardinals[dimCtr] * maxIndices[dimCtr];
+        }
+        // Number each distinct plot identifier in order of appearance
+        int nrEntries = nrQueries * nrDims;
+        int[] entryPlots = new int[nrEntries];
+        int[] plotIDs = new int[nrEntries];
+        int[] freeIndices = new int[nrEntries];
+        int[] plotSizes = new int[nrEntries];
+        int nrPlots = 0;
+        int capacity = Integer.highestOneBit(Math.max(2 * nrEntries, 2) - 1) << 1;
+        int[] slotIDs = new int[capacity];
+        int[] slotPlots = new int[capacity];
+        Arrays.fill(slotPlots, -1);
+        // Slots take the high bits of the product, which mix all bits of the ID
+        int shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
+            int[] vector = dataPoints[queryCtr].vector;
+            int dataPointID = 0;
+            for (int dimCtr = 0; dimCtr < nrDims; dimCtr++) {
+                dataPointID += cardinals[dimCtr] * vector[dimCtr];
+            }
+            for (int dimCtr = 0; dimCtr < nrDims; dimCtr++) {
+                int plotID = dataPointID - cardinals[dimCtr] * vector[dimCtr];
+                int slot = (plotID * 0x9E3779B9) >>> shift;
+                while (slotPlots[slot] >= 0 && slotIDs[slot] != plotID) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                if (slotPlots[slot] < 0) {
+                    slotIDs[slot] = plotID;
+                    slotPlots[slot] = nrPlots;
+                    plotIDs[nrPlots] = plotID;
+                    freeIndices[nrPlots] = dimCtr;
+                    nrPlots++;
+                }
+                int plot = slotPlots[slot];
+                entryPlots[queryCtr * nrDims + dimCtr] = plot;
+                plotSizes[plot]++;
+            }
+        }
+        // Drop plots of a single query, except the first plot of a query without others
+        boolean[] keep = new boolean[nrPlots];
+        for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
+            boolean hasPlot = false;
+            for (int dimCtr = 0; dimCtr < nrDims; dimCtr++) {
+                int plot = entryPlots[queryCtr * nrDims + dimCtr];
+                if (plotSizes[plot] > 1) {
+                    keep[plot] = true;
+                    hasPlot = true;
+                }
+            }
+            if (!hasPlot && nrDims > 0) {
+                keep[entryPlots[queryCtr * nrDims]] = true;
+            }
+        }
+        int[] plotIndex = new int[nrPlots];
+        int nrKept = 0;
+        for (int plotCtr = 0; plotCtr < nrPlots; plotCtr++) {
+            plotIndex[plotCtr] = keep[plotCtr] ? nrKept++ : -1;
+        }
+        int[] keptIDs = new int[nrKept];
+        int[] keptFreeIndices = new int[nrKept];
+        int[] plotOffsets = new int[nrKept + 1];
+        for (int plotCtr = 0; plotCtr < nrPlots; plotCtr++) {
+            if (keep[plotCtr]) {
+                keptIDs[plotIndex[plotCtr]] = plotIDs[plotCtr];
+                keptFreeIndices[plotIndex[plotCtr]] = freeIndices[plotCtr];
+                plotOffsets[plotIndex[plotCtr] + 1] = plotSizes[plotCtr];
+            }
+        }
+        for (int plotCtr = 0; plotCtr < nrKept; plotCtr++) {
+            plotOffsets[plotCtr + 1] += plotOffsets[plotCtr];
+        }
+        // Fill both adjacencies in query order
+        int[] queryOffsets = new int[nrQueries + 1];
+        int[] queryPlots = new int[plotOffsets[nrKept]];
+        int[] plotQueries = new int[plotOffsets[nrKept]];
+        int[] plotFill = Arrays.copyOf(plotOffsets, nrKept);
+        int nrQueryPlots = 0;
+        for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
+            for (int dimCtr = 0; dimCtr < nrDims; dimCtr++) {
+                int plot = plotIndex[entryPlots[queryCtr * nrDims + dimCtr]];
+                if (plot >= 0) {
+                    queryPlots[nrQueryPlots++] = plot;
+                    plotQueries[plotFill[plot]++] = queryCtr;
+                }
+            }
+            queryOffsets[queryCtr + 1] = nrQueryPlots;
+        }
+        return new PlanModel(dataPoints, nrDims, nrKept, keptIDs, keptFreeIndices,
+                plotOffsets, plotQueries, queryOffsets, queryPlots);
+    }
+
+    /**
+     * Number of queries in the plot.
+     *
+     * @param plot          plot index
+     * @return              number of queries
+     */
+    public int plotSize(int plot) {
+        return plotOffsets[plot + 1] - plotOffsets[plot];
+    }
+
+    /**
+     * Number of plots of the query.
+     *
+     * @param query         query index
+     * @return              number of plots
+     */
+    public int nrPlotsOf(int query) {
+        return queryOffsets[query + 1] - queryOffsets[query];
+    }
+
+    /**
+     * Index of a vector element of the query in the vector matrix.
+     *
+     * @param query         query index
+     * @param dim           index of the vector element
+     * @return              vector element
+     */
+    public int vector(int query, int dim) {
+        return vectors[query * nrDims + dim];
+    }
+
+    /**
+     * Largest number of plots of a query.
+     *
+     * @return              number of plots
+     */
+    public int maxPlotsOfQuery() {
+        int maxPlots = 0;
+        for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
+            maxPlots = Math.max(maxPlots, nrPlotsOf(queryCtr));
+        }
+        return maxPlots;
+    }
+
+    /**
+     * Plots of each query in rows led by their number, as used
+     * by the ILP planners.
+     *
+     * @return              number and indices of plots per query
+     */
+    public int[][] queriesToPlots() {
+        int[][] queriesToPlots = new int[nrQueries][nrDims + 1];
+        for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
+            int nrPlots = nrPlotsOf(queryCtr);
+            queriesToPlots[queryCtr][0] = nrPlots;
+            System.arraycopy(queryPlots, queryOffsets[queryCtr], queriesToPlots[queryCtr], 1, nrPlots);
+        }
+        return queriesToPlots;
+    }
+
+    /**
+     * Queries of each plot in rows led by their number, as used
+     * by the ILP planners.
+     *
+     * @return              number and indices of queries per plot
+     */
+    public int[][] plotsToQueries() {
+        int[][] plotsToQueries = new int[nrPlots][maxPlotSize + 1];
+        for (int plotCtr = 0; plotCtr < nrPlots; plotCtr++) {
+            int nrQueries = plotSize(plotCtr);
+            plotsToQueries[plotCtr][0] = nrQueries;
+            System.arraycopy(plotQueries, plotOffsets[plotCtr], plotsToQueries[plotCtr], 1, nrQueries);
+        }
+        return plotsToQueries;
+    }
+
+    /**
+     * Plot objects of all plots in index order, for results
+     * and for components that work on plots.
+     *
+     * @return              plots with their data points
+     */
+    public List<Plot> plots() {
+        List<Plot> plots = new ArrayList<>(nrPlots);
+        for (int plotCtr = 0; plotCtr < nrPlots; plotCtr++) {
+            Plot plot = new Plot(plotIDs[plotCtr], freeIndices[plotCtr]);
+            for (int entryCtr = plotOffsets[plotCtr]; entryCtr < plotOffsets[plotCtr + 1]; entryCtr++) {
+                plot.addDataPoint(dataPoints[plotQueries[entryCtr]]);
+            }
+            plot.setCost(plotCosts[plotCtr]);
+            plots.add(plot);
+        }
+        return plots;
+    }
+
+    /**
+     * Copy costs estimated on the plot objects and data points
+     * into the model.
+     *
+     * @param plots         plots returned by plots()
+     */
+    public void updateCosts(List<Plot> plots) {
+        for (int plotCtr = 0; plotCtr < nrPlots; plotCtr++) {
+            plotCosts[plotCtr] = plots.get(plotCtr).cost;
+        }
+        for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
+            costs[queryCtr] = dataPoints[queryCtr].cost;
+        }
+    }
+
+    /**
+     * Set the cost of all queries. Plot costs are
+     * left unchanged.
+     *
+     * @param cost          cost of each query
+     */
+    public void setCosts(double cost) {
+        for (DataPoint dataPoint: dataPoints) {
+            dataPoint.cost = cost;
+        }
+        Arrays.fill(costs, cost);
+    }
+}
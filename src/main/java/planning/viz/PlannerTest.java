@@ -2,9 +2,8 @@ package planning.viz;
 
 import config.PlanConfig;
 import matching.FuzzySearch;
-import org.apache.lucene.document.Document;
+import matching.HitMetadata;
 import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.ScoreDoc;
 
 import java.io.IOException;
@@ -15,15 +14,15 @@ import java.util.Map;
 public class PlannerTest {
     public static void main(String[] args) throws IOException, ParseException {
         String dataset = "sample_au";
-        ScoreDoc[] docs = FuzzySearch.search("marketing", dataset);
-        IndexSearcher searcher = FuzzySearch.searchers.get(dataset);
+        ScoreDoc[] docs = FuzzySearch.search("marketing", dataset, PlanConfig.TOPK);
+        HitMetadata metadata = FuzzySearch.metadata(dataset);
         long timer1 = System.currentTimeMillis();
         Arrays.sort(docs, (doc1, doc2) -> Double.compare(doc2.score, doc1.score));
         int nrRows = 2;
         List<Map<String, List<ScoreDoc>>> results =
-                GreedyPlanner.plan(docs, nrRows, PlanConfig.R, searcher);
+                GreedyPlanner.plan(docs, nrRows, PlanConfig.R, metadata);
 //        List<Map<String, List<ScoreDoc>>> results =
-//                SimpleVizPlanner.plan(docs, nrRows, PlanConfig.R, searcher);
+//                SimpleVizPlanner.plan(docs, nrRows, PlanConfig.R, metadata);
         long timer2 = System.currentTimeMillis();
         System.out.println(timer2 - timer1);
         double utility = 0;
@@ -36,9 +35,8 @@ public class PlannerTest {
                 for (ScoreDoc scoreDoc: rowResults.get(plotName)) {
                     double score = scoreDoc.score;
                     int docCtr = scoreDoc.doc;
-                    Document hitDoc = searcher.doc(docCtr);
-                    String column = hitDoc.get("column");
-                    String content = hitDoc.get("text");
+                    String column = metadata.column(docCtr);
+                    String content = metadata.text(docCtr);
                     System.out.println(column + "=" + content + ": " + score);
                     utility += score;
                 }
@@ -1,7 +1,5 @@
 package planning.viz;
 
-import config.PlanConfig;
-
 import java.util.ArrayList;
 import java.util.List;
 
@@ -57,7 +55,7 @@ public class Plot {
     public Plot(int plotID, int freeIndex) {
         this.plotID = plotID;
         this.freeIndex = freeIndex;
-        this.dataPoints = new ArrayList<>(PlanConfig.TOPK);
+        this.dataPoints = new ArrayList<>();
     }
 
     /**
@@ -1,6 +1,7 @@
 package planning.viz;
 
 import config.PlanConfig;
+import config.PlanContext;
 import net.sf.jsqlparser.JSQLParserException;
 import org.apache.lucene.queryparser.classic.ParseException;
 import planning.query.QueryFactory;
@@ -10,96 +11,223 @@ import stats.PlanStats;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class PlotGreedyPlanner {
-    public static List<Map<Plot, List<DataPoint>>> plan(DataPoint[] scorePoints,
-                                                               int[] maxIndices,
-                                                               int nrRows, int R,
-                                                               QueryFactory factory,
-                                                          boolean isStatic) throws IOException, SQLException {
-        List<Map<Plot, List<DataPoint>>> results = new ArrayList<>();
-        // Generate a list of data points for query candidates
-        int nrQueries = scorePoints.length;
-        long startMillis = System.currentTimeMillis();
-        Map<Integer, Plot> idToPlots = new HashMap<>(nrQueries);
-        int nrDims = scorePoints[0].vector.length;
-        int[][] plots = new int[nrQueries][nrDims];
-        // Initialize cardinals
-        int[] cardinals = new int[nrDims+1];
-        cardinals[0] = 1;
-        for (int dimCtr = 0; dimCtr < nrDims; dimCtr++) {
-            cardinals[dimCtr + 1] = cardinals[dimCtr] * maxIndices[dimCtr];
+    /**
+     * Savings of a plot candidate as of some number of selected plots.
+     */
+    private static class CandidateSavings implements Comparable<CandidateSavings> {
+        final Plot plot;
+        final int plotIndex;
+        /**
+         * Position of the candidate in the scan order of the eager planner.
+         */
+        final int order;
+        double savings;
+        /**
+         * Number of selected plots when the savings were computed.
+         */
+        int version;
+
+        CandidateSavings(Plot plot, int plotIndex, int order, double savings, int version) {
+            this.plot = plot;
+            this.plotIndex = plotIndex;
+            this.order = order;
+            this.savings = savings;
+            this.version = version;
         }
-        for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
-            DataPoint dataPoint = scorePoints[queryCtr];
-            int[] vector = dataPoint.vector;
-            int dataPointID = 0;
-            // Calculate data point ID
-            for (int valueCtr = 0; valueCtr < nrDims; valueCtr++) {
-                dataPointID += cardinals[valueCtr] * vector[valueCtr];
+
+        @Override
+        public int compareTo(CandidateSavings o) {
+            int compare = Double.compare(o.savings, savings);
+            return compare != 0 ? compare : Integer.compare(order, o.order);
+        }
+    }
+
+    /**
+     * Scan of the candidates of a range of plots for the most saving
+     * one that fits into the row. Ranges with many candidates are
+     * split and scanned in parallel. Of equal savings, the candidate
+     * first in scan order wins, as in a sequential scan.
+     */
+    private static class CandidateScan extends RecursiveTask<CandidateSavings> {
+        final List<List<Plot>> plotToCandidates;
+        /**
+         * Number of candidates of the plots before each plot.
+         */
+        final int[] candidateOffsets;
+        final int fromPlot;
+        final int toPlot;
+        final boolean isStatic;
+        final List<Plot> bestPlots;
+        final Set<DataPoint> bestDataPoints;
+        final int nrSubQueries;
+        final int penalty;
+        final double weight;
+        final int freePixels;
+        final int grain;
+
+        CandidateScan(List<List<Plot>> plotToCandidates, int[] candidateOffsets, int fromPlot, int toPlot,
+                      boolean isStatic, List<Plot> bestPlots, Set<DataPoint> bestDataPoints,
+                      int nrSubQueries, int penalty, double weight, int freePixels, int grain) {
+            this.plotToCandidates = plotToCandidates;
+            this.candidateOffsets = candidateOffsets;
+            this.fromPlot = fromPlot;
+            this.toPlot = toPlot;
+            this.isStatic = isStatic;
+            this.bestPlots = bestPlots;
+            this.bestDataPoints = bestDataPoints;
+            this.nrSubQueries = nrSubQueries;
+            this.penalty = penalty;
+            this.weight = weight;
+            this.freePixels = freePixels;
+            this.grain = grain;
+        }
+
+        @Override
+        protected CandidateSavings compute() {
+            int nrCandidates = candidateOffsets[toPlot] - candidateOffsets[fromPlot];
+            if (nrCandidates <= grain || toPlot - fromPlot == 1) {
+                return scan();
             }
-            // Add corresponding plots to the map
-            for (int valueCtr = 0; valueCtr < nrDims; valueCtr++) {
-                int plotID = dataPointID - cardinals[valueCtr] * vector[valueCtr];
-                plots[queryCtr][valueCtr] = plotID;
-                if (!idToPlots.containsKey(plotID)) {
-                    Plot newPlot = new Plot(plotID, valueCtr);
-                    newPlot.addDataPoint(dataPoint);
-                    idToPlots.put(plotID, newPlot);
-                }
-                else {
-                    idToPlots.get(plotID).addDataPoint(dataPoint);
-                }
+            int middle = (fromPlot + toPlot) >>> 1;
+            CandidateScan left = new CandidateScan(plotToCandidates, candidateOffsets, fromPlot, middle,
+                    isStatic, bestPlots, bestDataPoints, nrSubQueries, penalty, weight, freePixels, grain);
+            CandidateScan right = new CandidateScan(plotToCandidates, candidateOffsets, middle, toPlot,
+                    isStatic, bestPlots, bestDataPoints, nrSubQueries, penalty, weight, freePixels, grain);
+            left.fork();
+            CandidateSavings rightBest = right.compute();
+            CandidateSavings leftBest = left.join();
+            if (leftBest == null) {
+                return rightBest;
             }
+            return rightBest != null && rightBest.savings > leftBest.savings ? rightBest : leftBest;
         }
 
-        // Remove plots that contain only one query
-        int[] removePlots = new int[nrDims];
-        for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
-            int nrSingles = 0;
-            Arrays.fill(removePlots, -1);
-            int firstPlotID = plots[queryCtr][0];
-            for (int valueCtr = 0; valueCtr < nrDims; valueCtr++) {
-                int plotID = plots[queryCtr][valueCtr];
-                if (idToPlots.get(plotID).nrDataPoints == 1) {
-                    removePlots[valueCtr] = plotID;
-                    plots[queryCtr][valueCtr] = -1;
-                    nrSingles++;
+        /**
+         * Scan the candidates of the plots in order.
+         *
+         * @return      most saving candidate, null if none fits
+         */
+        CandidateSavings scan() {
+            double bestSavings = Integer.MIN_VALUE;
+            Plot bestPlot = null;
+            int bestIndex = -1;
+            for (int plotCtr = fromPlot; plotCtr < toPlot; plotCtr++) {
+                for (Plot plot: plotToCandidates.get(plotCtr)) {
+                    double savings = savings(plot, isStatic, bestPlots, bestDataPoints,
+                            nrSubQueries, penalty, weight);
+                    int plotPixels = PlanConfig.C + PlanConfig.B * plot.nrDataPoints;
+                    if (savings > bestSavings && plotPixels <= freePixels) {
+                        bestPlot = plot;
+                        bestIndex = plotCtr;
+                        bestSavings = savings;
+                    }
                 }
             }
-            if (nrSingles == nrDims) {
-                removePlots[0] = -1;
-                plots[queryCtr][0] = firstPlotID;
-            }
-            for (Integer removeID: removePlots) {
-                idToPlots.remove(removeID);
-            }
+            return bestPlot == null ? null :
+                    new CandidateSavings(bestPlot, bestIndex, 0, bestSavings, bestPlots.size());
         }
+    }
+
+    public static List<Map<Plot, List<DataPoint>>> plan(DataPoint[] scorePoints,
+                                                               int[] maxIndices,
+                                                               int nrRows, int R,
+                                                               QueryFactory factory,
+                                                          boolean isStatic) throws IOException, SQLException {
+        return plan(scorePoints, maxIndices, nrRows, R, factory, isStatic, factory.context.lazyGreedy);
+    }
+
+    /**
+     * Select plots greedily by time savings. The lazy mode keeps
+     * the savings of candidates in a priority queue and computes
+     * them again only when a candidate reaches the head after
+     * other plots were selected. Savings only shrink as plots are
+     * selected, except for candidates sharing queries with the
+     * selected plot, which are evaluated again right away. Both
+     * modes select the same plots.
+     *
+     * @param scorePoints           array of similar data points
+     * @param maxIndices            number of distinct candidates for each replaceable terms
+     * @param nrRows                number of rows in the screen
+     * @param R                     width of a row
+     * @param factory               similar queries generator
+     * @param isStatic              whether selected queries stay in other candidates
+     * @param lazy                  whether to evaluate candidates lazily
+     * @return                      plots of each row
+     * @throws IOException
+     * @throws SQLException
+     */
+    public static List<Map<Plot, List<DataPoint>>> plan(DataPoint[] scorePoints,
+                                                        int[] maxIndices,
+                                                        int nrRows, int R,
+                                                        QueryFactory factory,
+                                                        boolean isStatic,
+                                                        boolean lazy) throws IOException, SQLException {
+        long startMillis = System.currentTimeMillis();
+        PlanModel planModel = PlanModel.build(scorePoints, maxIndices);
+        long modelMillis = System.currentTimeMillis();
+        List<Map<Plot, List<DataPoint>>> results = plan(planModel, nrRows, R, factory, isStatic, lazy);
+        factory.context.stats.initMillis += modelMillis - startMillis;
+        return results;
+    }
+
+    /**
+     * Select plots of the model greedily by time savings, see
+     * above. The processing costs are estimated into the model,
+     * so that planners starting from the greedy plan can reuse
+     * them.
+     *
+     * @param planModel             model of the data points to plan
+     * @param nrRows                number of rows in the screen
+     * @param R                     width of a row
+     * @param factory               similar queries generator
+     * @param isStatic              whether selected queries stay in other candidates
+     * @param lazy                  whether to evaluate candidates lazily
+     * @return                      plots of each row
+     * @throws IOException
+     * @throws SQLException
+     */
+    public static List<Map<Plot, List<DataPoint>>> plan(PlanModel planModel,
+                                                        int nrRows, int R,
+                                                        QueryFactory factory,
+                                                        boolean isStatic,
+                                                        boolean lazy) throws IOException, SQLException {
+        List<Map<Plot, List<DataPoint>>> results = new ArrayList<>();
+        PlanContext context = factory.context;
+        PlanStats stats = context.stats;
+        // Generate a list of data points for query candidates
+        int nrQueries = planModel.nrQueries;
+        long startMillis = System.currentTimeMillis();
+        List<Plot> modelPlots = planModel.plots();
         long buildMillis = System.currentTimeMillis();
-        int nrPlots = idToPlots.size();
-        PlanStats.nrQueries = nrQueries;
-        PlanStats.nrPlots = nrPlots;
+        int nrPlots = planModel.nrPlots;
+        stats.nrQueries = nrQueries;
+        stats.nrPlots = nrPlots;
         int penaltyTime = nrQueries * PlanConfig.READ_DATA + nrPlots * PlanConfig.READ_TITLE;
-        if (PlanConfig.PROCESSING_WEIGHT > Double.MIN_VALUE) {
-            PlanCost.processCost(idToPlots.values(), factory);
+        if (context.processingWeight > Double.MIN_VALUE) {
+            PlanCost.processCost(modelPlots, factory);
+            planModel.updateCosts(modelPlots);
         }
         else {
-            for (DataPoint dataPoint: scorePoints) {
-                dataPoint.cost = 0;
-            }
+            planModel.setCosts(0);
         }
 
-        Map<Integer, List<Plot>> plotToCandidates = new HashMap<>(nrPlots);
+        List<List<Plot>> plotToCandidates = new ArrayList<>(nrPlots);
         Set<DataPoint> newDataPoints = new HashSet<>(nrQueries);
         Set<DataPoint> bestDataPoints = new HashSet<>(nrQueries);
         int pixels = 0;
 
-        // Initialize plot candidates
-        idToPlots.forEach((plotID, plot) -> {
+        // Initialize plot candidates, the k-th candidate holds the k most likely queries
+        for (Plot plot: modelPlots) {
             plot.sortByProbability();
             List<Plot> plotCandidates = new ArrayList<>(plot.nrDataPoints);
             for (int dataCtr = 0; dataCtr < plot.nrDataPoints; dataCtr++) {
-                plotCandidates.add(new Plot(plotID, plot.freeIndex));
+                Plot candidate = new Plot(plot.plotID, plot.freeIndex);
+                candidate.setCost(plot.cost);
+                plotCandidates.add(candidate);
             }
             for (int dataCtr = 0; dataCtr < plot.nrDataPoints; dataCtr++) {
                 // Add data point into each list
@@ -107,35 +235,92 @@ public class PlotGreedyPlanner {
                     plotCandidates.get(listCtr).addDataPoint(plot.dataPoints.get(dataCtr));
                 }
             }
-            plotToCandidates.put(plotID, plotCandidates);
-        });
+            plotToCandidates.add(plotCandidates);
+        }
         List<Plot> bestPlots = new ArrayList<>(nrPlots);
         Map<Integer, Plot> bestPlotsMap = new HashMap<>(nrPlots);
         int nrSubQueries = 0;
         double timeSaving = 0;
         long optimizeMillis = System.currentTimeMillis();
         int offset = 0;
+        double weight = context.processingWeight;
+        // Candidates by savings, the current entry of each candidate and those too wide for the row
+        PriorityQueue<CandidateSavings> queue = new PriorityQueue<>();
+        Map<Plot, CandidateSavings> current = new IdentityHashMap<>();
+        List<CandidateSavings> oversized = new ArrayList<>();
+        if (lazy) {
+            int order = 0;
+            for (int plotCtr = 0; plotCtr < nrPlots; plotCtr++) {
+                for (Plot plot: plotToCandidates.get(plotCtr)) {
+                    CandidateSavings entry = new CandidateSavings(plot, plotCtr, order++, savings(plot, isStatic,
+                            bestPlots, bestDataPoints, nrSubQueries, penaltyTime, weight), 0);
+                    current.put(plot, entry);
+                    queue.add(entry);
+                }
+            }
+        }
         for (int rowCtr = 0; rowCtr < nrRows; rowCtr++) {
             double timeSavingForRow = 0;
+            for (CandidateSavings entry: oversized) {
+                if (current.get(entry.plot) == entry) {
+                    queue.add(entry);
+                }
+            }
+            oversized.clear();
             while (plotToCandidates.size() > 0) {
                 // Remove redundant plots and queries
-                if (!isStatic) {
-                    selectPlotCandidates(plotToCandidates, newDataPoints, plots, nrDims);
+                if (!isStatic && !lazy) {
+                    selectPlotCandidates(plotToCandidates, newDataPoints, planModel);
                 }
                 double bestSavings = Integer.MIN_VALUE;
                 Plot bestPlot = null;
+                int bestIndex = -1;
                 int bestPixels = 0;
-                // Find the optimal plot that maximizes the time saving
-                for (Map.Entry<Integer, List<Plot>> entry: plotToCandidates.entrySet()) {
-                    for (Plot plot: entry.getValue()) {
-                        double savings = isStatic ? timeSavingsFromStaticPlot(plot,
-                                bestPlots, bestDataPoints, nrSubQueries, penaltyTime) :
-                                timeSavingsFromPlot(plot, bestPlots, nrSubQueries, penaltyTime);
-                        int plotPixels = PlanConfig.C + PlanConfig.B * plot.nrDataPoints;
-                        if (savings > bestSavings && pixels + plotPixels <= R) {
-                            bestPlot = plot;
-                            bestSavings = savings;
+                if (!lazy) {
+                    // Find the optimal plot that maximizes the time saving
+                    int[] candidateOffsets = new int[nrPlots + 1];
+                    for (int plotCtr = 0; plotCtr < nrPlots; plotCtr++) {
+                        candidateOffsets[plotCtr + 1] = candidateOffsets[plotCtr]
+                                + plotToCandidates.get(plotCtr).size();
+                    }
+                    CandidateScan scan = new CandidateScan(plotToCandidates, candidateOffsets, 0, nrPlots,
+                            isStatic, bestPlots, bestDataPoints, nrSubQueries, penaltyTime, weight, R - pixels,
+                            context.parallelGrain);
+                    boolean parallel = context.parallelCandidates > 0
+                            && candidateOffsets[nrPlots] >= context.parallelCandidates;
+                    CandidateSavings best = nrPlots == 0 ? null :
+                            parallel ? ForkJoinPool.commonPool().invoke(scan) : scan.scan();
+                    if (best != null) {
+                        bestPlot = best.plot;
+                        bestIndex = best.plotIndex;
+                        bestSavings = best.savings;
+                        bestPixels = PlanConfig.C + PlanConfig.B * bestPlot.nrDataPoints;
+                    }
+                }
+                else {
+                    // Evaluate the head again until its savings are up to date
+                    while (!queue.isEmpty()) {
+                        CandidateSavings head = queue.peek();
+                        int plotPixels = PlanConfig.C + PlanConfig.B * head.plot.nrDataPoints;
+                        if (current.get(head.plot) != head) {
+                            queue.poll();
+                        }
+                        else if (pixels + plotPixels > R) {
+                            oversized.add(queue.poll());
+                        }
+                        else if (head.version < bestPlots.size()) {
+                            queue.poll();
+                            head.savings = savings(head.plot, isStatic, bestPlots, bestDataPoints,
+                                    nrSubQueries, penaltyTime, weight);
+                            head.version = bestPlots.size();
+                            queue.add(head);
+                        }
+                        else {
+                            bestPlot = head.plot;
+                            bestIndex = head.plotIndex;
+                            bestSavings = head.savings;
                             bestPixels = plotPixels;
+                            break;
                         }
                     }
                 }
@@ -148,15 +333,45 @@ public class PlotGreedyPlanner {
                         nrSubQueries += bestPlot.nrDataPoints;
                         newDataPoints.clear();
                         newDataPoints.addAll(bestPlot.dataPoints);
-                        plotToCandidates.get(bestPlot.plotID).remove(bestPlot);
+                        plotToCandidates.get(bestIndex).remove(bestPlot);
                         mergePlots(bestPlot, bestPlotsMap);
                         bestDataPoints.addAll(bestPlot.dataPoints);
                     }
                     else {
                         nrSubQueries += bestPlot.nrDataPoints;
-                        plotToCandidates.get(bestPlot.plotID).remove(bestPlot);
+                        plotToCandidates.get(bestIndex).remove(bestPlot);
                         bestDataPoints.addAll(bestPlot.dataPoints);
                     }
+                    if (lazy) {
+                        queue.poll();
+                        current.remove(bestPlot);
+                        // Savings of candidates sharing the selected queries may grow
+                        Set<Integer> touched = new TreeSet<>();
+                        for (DataPoint dataPoint: bestPlot.dataPoints) {
+                            for (int entryCtr = planModel.queryOffsets[dataPoint.id];
+                                 entryCtr < planModel.queryOffsets[dataPoint.id + 1]; entryCtr++) {
+                                touched.add(planModel.queryPlots[entryCtr]);
+                            }
+                        }
+                        Map<Plot, CandidateSavings> previous = new IdentityHashMap<>();
+                        for (int plotIndex: touched) {
+                            for (Plot plot: plotToCandidates.get(plotIndex)) {
+                                previous.put(plot, current.remove(plot));
+                            }
+                        }
+                        if (!isStatic) {
+                            selectPlotCandidates(plotToCandidates, newDataPoints, planModel, touched);
+                        }
+                        for (int plotIndex: touched) {
+                            for (Plot plot: plotToCandidates.get(plotIndex)) {
+                                CandidateSavings entry = new CandidateSavings(plot, plotIndex,
+                                        previous.get(plot).order, savings(plot, isStatic, bestPlots,
+                                        bestDataPoints, nrSubQueries, penaltyTime, weight), bestPlots.size());
+                                current.put(plot, entry);
+                                queue.add(entry);
+                            }
+                        }
+                    }
                 }
                 else {
                     break;
@@ -177,6 +392,108 @@ public class PlotGreedyPlanner {
         }
 
         // Optimize coloring
+        timeSaving = colorPlots(bestPlots, bestDataPoints, timeSaving, penaltyTime);
+        long endMillis = System.currentTimeMillis();
+        stats.initMillis = buildMillis - startMillis;
+        stats.buildMillis = optimizeMillis - buildMillis;
+        stats.optimizeMillis = endMillis - optimizeMillis;
+        stats.isTimeout = false;
+        stats.waitTime = penaltyTime - timeSaving;
+
+        System.out.println("Cost: " + stats.waitTime);
+
+//        int rowCtr = 0;
+//        for (Map<Plot, List<DataPoint>> resultsPerRow: results) {
+//            System.out.println("Row: " + rowCtr);
+//            for (Plot plot: resultsPerRow.keySet()) {
+//                System.out.println("Plot: " + plot);
+//                for (DataPoint dataPoint: resultsPerRow.get(plot)) {
+//                    System.out.println(factory.queryString(dataPoint) +
+//                            "\tScore:" + dataPoint.probability + "\tHighlighted: " + dataPoint.highlighted);
+//                }
+//            }
+//            rowCtr++;
+//        }
+
+        return results;
+    }
+
+    /**
+     * Plan the queries of the factory and pull more queries from
+     * the factory while they improve the plan. A screen shows at
+     * most as many queries as fit into its rows, the factory is
+     * expected to start with that many. Queries are pulled in
+     * batches of the same size as long as the plan shows one of
+     * the least likely queries, i.e., of the last batch or of
+     * the less likely half of the first queries.
+     *
+     * @param factory               factory of the queries
+     * @param nrRows                number of rows in the screen
+     * @param R                     width of a row
+     * @param isStatic              whether selected queries stay in other candidates
+     * @return                      plots of each row
+     * @throws IOException
+     * @throws SQLException
+     */
+    public static List<Map<Plot, List<DataPoint>>> planIncrementally(QueryFactory factory,
+                                                                     int nrRows, int R,
+                                                                     boolean isStatic)
+            throws IOException, SQLException {
+        int batchSize = Math.max(screenQueries(nrRows, R), 1);
+        int firstNew = factory.queries.length / 2;
+        List<Map<Plot, List<DataPoint>>> results = plan(factory.queries, factory.nrDistinctValues,
+                nrRows, R, factory, isStatic);
+        while (factory.hasMoreQueries() && showsQuery(results, firstNew)) {
+            firstNew = factory.queries.length;
+            factory.pullQueries(batchSize);
+            for (DataPoint dataPoint: factory.queries) {
+                dataPoint.highlighted = false;
+            }
+            results = plan(factory.queries, factory.nrDistinctValues, nrRows, R, factory, isStatic);
+        }
+        return results;
+    }
+
+    /**
+     * Maximal number of queries shown on a screen.
+     *
+     * @param nrRows        number of rows in the screen
+     * @param R             width of a row
+     * @return              number of queries that fit into the rows
+     */
+    public static int screenQueries(int nrRows, int R) {
+        return nrRows * Math.max((R - PlanConfig.C) / PlanConfig.B, 0);
+    }
+
+    /**
+     * Whether the plan shows a query numbered from the given ID.
+     */
+    private static boolean showsQuery(List<Map<Plot, List<DataPoint>>> plan, int fromID) {
+        for (Map<Plot, List<DataPoint>> resultsPerRow: plan) {
+            for (List<DataPoint> dataPoints: resultsPerRow.values()) {
+                for (DataPoint dataPoint: dataPoints) {
+                    if (dataPoint.id >= fromID) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Highlight queries of the plots, one at a time, as long as
+     * highlighting saves time and at most half of the queries are
+     * highlighted.
+     *
+     * @param bestPlots         plots of the plan
+     * @param bestDataPoints    queries of the plan
+     * @param timeSaving        time saving of the plan without highlights
+     * @param penaltyTime       time of reading all queries
+     * @return                  time saving of the colored plan
+     */
+    static double colorPlots(List<Plot> bestPlots, Set<DataPoint> bestDataPoints,
+                             double timeSaving, int penaltyTime) {
         int nrBestQueries = bestDataPoints.size();
         int colorCtr = 0;
         int nrHighlightedPlots = 0;
@@ -230,29 +547,7 @@ public class PlotGreedyPlanner {
             }
             colorCtr++;
         }
-        long endMillis = System.currentTimeMillis();
-        PlanStats.initMillis = buildMillis - startMillis;
-        PlanStats.buildMillis = optimizeMillis - buildMillis;
-        PlanStats.optimizeMillis = endMillis - optimizeMillis;
-        PlanStats.isTimeout = false;
-        PlanStats.waitTime = penaltyTime - timeSaving;
-
-        System.out.println("Cost: " + PlanStats.waitTime);
-
-//        int rowCtr = 0;
-//        for (Map<Plot, List<DataPoint>> resultsPerRow: results) {
-//            System.out.println("Row: " + rowCtr);
-//            for (Plot plot: resultsPerRow.keySet()) {
-//                System.out.println("Plot: " + plot);
-//                for (DataPoint dataPoint: resultsPerRow.get(plot)) {
-//                    System.out.println(factory.queryString(dataPoint) +
-//                            "\tScore:" + dataPoint.probability + "\tHighlighted: " + dataPoint.highlighted);
-//                }
-//            }
-//            rowCtr++;
-//        }
-
-        return results;
+        return timeSaving;
     }
 
     /**
@@ -283,15 +578,27 @@ public class PlotGreedyPlanner {
         return time;
     }
 
+    /**
+     * Time savings of the plot candidate in either mode.
+     */
+    private static double savings(Plot plot, boolean isStatic, List<Plot> bestPlots,
+                                  Set<DataPoint> bestDataPoints, int nrSubQueries,
+                                  int penalty, double weight) {
+        return isStatic ? timeSavingsFromStaticPlot(plot, bestPlots, bestDataPoints, nrSubQueries, penalty, weight) :
+                timeSavingsFromPlot(plot, bestPlots, nrSubQueries, penalty, weight);
+    }
+
     /**
      * Calculates time savings when outputting queries in the context of plot.
      *
      * @param plot          The plot used to save time in outputting rows
      * @param bestPlots     Set of optimal plots observed so far
      * @param nrSubQueries  Number of queries in optimal plots
+     * @param weight        Significance of processing time
      * @return              The time savings from outputting matching queries within plot
      */
-    private static double timeSavingsFromPlot(Plot plot, List<Plot> bestPlots, int nrSubQueries, int penalty) {
+    private static double timeSavingsFromPlot(Plot plot, List<Plot> bestPlots, int nrSubQueries,
+                                              int penalty, double weight) {
         // Additional time cost for reading queries in the new plot
         int timeForQueries = plot.nrDataPoints * PlanConfig.READ_DATA;
         // Additional time cost for reading the title of new plot
@@ -302,7 +609,7 @@ public class PlotGreedyPlanner {
             totalSavings -= (selectedPlot.probability * 0.5 * (timeForTitle + timeForQueries));
         }
 
-        double cost = PlanConfig.PROCESSING_WEIGHT * plot.cost * plot.nrDataPoints
+        double cost = weight * plot.cost * plot.nrDataPoints
                 + 0.5 * ((nrSubQueries + plot.nrDataPoints) * PlanConfig.READ_DATA +
                 (1 + bestPlots.size()) * PlanConfig.READ_TITLE);
 
@@ -319,10 +626,12 @@ public class PlotGreedyPlanner {
      * @param plot          The plot used to save time in outputting rows
      * @param bestPlots     Set of optimal plots observed so far
      * @param nrSubQueries  Number of queries in optimal plots
+     * @param weight        Significance of processing time
      * @return              The time savings from outputting matching queries within plot
      */
     private static double timeSavingsFromStaticPlot(Plot plot, List<Plot> bestPlots,
-                                                    Set<DataPoint> bestDataPoints, int nrSubQueries, int penalty) {
+                                                    Set<DataPoint> bestDataPoints, int nrSubQueries,
+                                                    int penalty, double weight) {
 
         List<DataPoint> distinctDataPoints = new ArrayList<>(plot.nrDataPoints);
         distinctDataPoints.addAll(plot.dataPoints);
@@ -341,7 +650,7 @@ public class PlotGreedyPlanner {
             totalSavings -= (selectedPlot.probability * 0.5 * (timeForTitle + timeForQueries));
         }
 
-        double cost = PlanConfig.PROCESSING_WEIGHT * plot.cost * nrPlotQueries
+        double cost = weight * plot.cost * nrPlotQueries
                 + 0.5 * ((nrSubQueries + plot.nrDataPoints) * PlanConfig.READ_DATA +
                 (1 + bestPlots.size()) * PlanConfig.READ_TITLE);
 
@@ -355,48 +664,73 @@ public class PlotGreedyPlanner {
      * Remove some queries and plots from plot candidate
      * based on some observations.
      *
-     * @param plotToCandidates
-     * @param newDataPoints
-     * @param plots
-     * @param nrDims
+     * @param plotToCandidates  candidates of each plot in the model
+     * @param newDataPoints     queries of the last selected plot
+     * @param model             planning model
+     */
+    public static void selectPlotCandidates(List<List<Plot>> plotToCandidates,
+                                            Set<DataPoint> newDataPoints,
+                                            PlanModel model) {
+        removeDataPoints(plotToCandidates, newDataPoints, model);
+        if (newDataPoints.size() > 0) {
+            // Remove redundant plots
+            plotToCandidates.forEach(PlotGreedyPlanner::removeDuplicates);
+        }
+    }
+
+    /**
+     * Remove the queries from plot candidates and redundant
+     * plots from the candidates of the given plots, which
+     * have to include all plots of the queries.
+     *
+     * @param plotToCandidates  candidates of each plot in the model
+     * @param newDataPoints     queries of the last selected plot
+     * @param model             planning model
+     * @param plotIndices       plots whose candidates may change
      */
-    public static void selectPlotCandidates(Map<Integer, List<Plot>> plotToCandidates,
+    public static void selectPlotCandidates(List<List<Plot>> plotToCandidates,
                                             Set<DataPoint> newDataPoints,
-                                            int[][] plots, int nrDims) {
+                                            PlanModel model,
+                                            Collection<Integer> plotIndices) {
+        removeDataPoints(plotToCandidates, newDataPoints, model);
+        if (newDataPoints.size() > 0) {
+            for (int plotIndex: plotIndices) {
+                removeDuplicates(plotToCandidates.get(plotIndex));
+            }
+        }
+    }
+
+    private static void removeDataPoints(List<List<Plot>> plotToCandidates,
+                                         Set<DataPoint> newDataPoints,
+                                         PlanModel model) {
         // Remove queries from plot candidates
         newDataPoints.forEach(dataPoint -> {
-            for (int dimCtr = 0; dimCtr < nrDims; dimCtr++) {
-                int plotID = plots[dataPoint.id][dimCtr];
-                if (plotID >= 0 && plotToCandidates.containsKey(plotID)) {
-                    plotToCandidates.get(plotID).forEach(plot -> plot.removeDataPoint(dataPoint));
-                }
+            for (int entryCtr = model.queryOffsets[dataPoint.id];
+                 entryCtr < model.queryOffsets[dataPoint.id + 1]; entryCtr++) {
+                plotToCandidates.get(model.queryPlots[entryCtr]).forEach(plot -> plot.removeDataPoint(dataPoint));
             }
         });
+    }
 
-        if (newDataPoints.size() > 0) {
-            // Remove redundant plots
-            plotToCandidates.forEach((plotID, candidates) -> {
-                Map<Integer, List<Plot>> plotMap = new HashMap<>(candidates.size());
-                Iterator<Plot> plotIterator = candidates.iterator();
-                while (plotIterator.hasNext()) {
-                    Plot nextPlot = plotIterator.next();
-                    int nrDataPoints = nextPlot.nrDataPoints;
-                    if (plotMap.containsKey(nrDataPoints)) {
-                        for (Plot plot: plotMap.get(nrDataPoints)) {
-                            if (nextPlot.equals(plot)) {
-                                plotIterator.remove();
-                            }
-                            break;
-                        }
-                    }
-                    else {
-                        plotMap.putIfAbsent(nrDataPoints, new ArrayList<>());
-                        plotMap.get(nrDataPoints).add(nextPlot);
+    private static void removeDuplicates(List<Plot> candidates) {
+        Map<Integer, List<Plot>> plotMap = new HashMap<>(candidates.size());
+        Iterator<Plot> plotIterator = candidates.iterator();
+        while (plotIterator.hasNext()) {
+            Plot nextPlot = plotIterator.next();
+            int nrDataPoints = nextPlot.nrDataPoints;
+            if (plotMap.containsKey(nrDataPoints)) {
+                for (Plot plot: plotMap.get(nrDataPoints)) {
+                    if (nextPlot.equals(plot)) {
+                        plotIterator.remove();
                     }
+                    break;
                 }
-            });
+            }
+            else {
+                plotMap.putIfAbsent(nrDataPoints, new ArrayList<>());
+                plotMap.get(nrDataPoints).add(nextPlot);
+            }
         }
-
     }
 
     /**
@@ -421,12 +755,10 @@ public class PlotGreedyPlanner {
     public static void main(String[] args) throws IOException, ParseException, JSQLParserException, SQLException {
 //        String query = "SELECT count(*) FROM dob_job WHERE \"city\" = 'BRONX';";
         String query = "SELECT count(*) FROM sample_311 WHERE \"intersection_street_1\"='EAST  110 STREET'";
-        PlanConfig.TOPK = 10;
-        PlanConfig.PROCESSING_WEIGHT = 0.1;
-        PlanConfig.NR_ROWS = 1;
-        PlanConfig.R = 300;
-        QueryFactory queryFactory = new QueryFactory(query);
-        plan(queryFactory.queries, queryFactory.nrDistinctValues, 2, PlanConfig.R, queryFactory, true);
+        PlanContext context = new PlanContext(10, 300, 1, 0.1,
+                PlanConfig.MAX_PROCESSING_COST, PlanConfig.SAMPLING_RATE, PlanConfig.TIMEOUT);
+        QueryFactory queryFactory = new QueryFactory(query, context);
+        plan(queryFactory.queries, queryFactory.nrDistinctValues, 2, context.R, queryFactory, true);
 
     }
 }
@@ -2,9 +2,8 @@ package planning.viz;
 
 import config.PlanConfig;
 import matching.FuzzySearch;
-import org.apache.lucene.document.Document;
+import matching.HitMetadata;
 import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.ScoreDoc;
 import org.gnu.glpk.*;
 
@@ -24,7 +23,7 @@ import java.util.*;
 public class SimpleVizPlanner {
     public static List<Map<String, List<ScoreDoc>>> plan(ScoreDoc[] hitDocs,
                                                    int nrRows, int R,
-                                                   IndexSearcher searcher) throws IOException {
+                                                   HitMetadata metadata) throws IOException {
         int nrDocs = hitDocs.length;
         int nrAvailable = 2;
         int[][] docToCtx = new int[nrDocs][nrAvailable];
@@ -33,9 +32,8 @@ public class SimpleVizPlanner {
         List<String> columns = new ArrayList<>();
         for (int docCtr = 0; docCtr < nrDocs; docCtr++) {
             ScoreDoc hitScoreDoc = hitDocs[docCtr];
-            Document hitDoc = searcher.doc(hitScoreDoc.doc);
-            String column = hitDoc.get("column");
-            String content = hitDoc.get("text");
+            String column = metadata.column(hitScoreDoc.doc);
+            String content = metadata.text(hitScoreDoc.doc);
             int literalIndex = literals.indexOf(content);
             int columnIndex = columns.indexOf(column);
             if (literalIndex < 0) {
@@ -339,7 +337,7 @@ public class SimpleVizPlanner {
 
     public static void main(String[] args) throws IOException, ParseException {
         String dataset = "sample_311";
-        ScoreDoc[] docs = FuzzySearch.search("brockley", dataset);
-        plan(docs, 2, PlanConfig.R, FuzzySearch.searchers.get(dataset));
+        ScoreDoc[] docs = FuzzySearch.search("brockley", dataset, PlanConfig.TOPK);
+        plan(docs, 2, PlanConfig.R, FuzzySearch.metadata(dataset));
     }
 }
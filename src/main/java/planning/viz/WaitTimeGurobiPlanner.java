@@ -1,5 +1,6 @@
 package planning.viz;
 import config.PlanConfig;
+import config.PlanContext;
 import gurobi.*;
 import net.sf.jsqlparser.JSQLParserException;
 import org.apache.lucene.queryparser.classic.ParseException;
@@ -19,123 +20,86 @@ public class WaitTimeGurobiPlanner {
                                                           int nrRows, int R,
                                                           QueryFactory factory)
             throws IOException, SQLException, GRBException {
+        return plan(scorePoints, maxIndices, nrRows, R, factory, factory.context);
+    }
+
+    /**
+     * Receives the improving solutions found during optimization.
+     */
+    public interface SolutionListener {
+        /**
+         * Receive a new incumbent plan.
+         *
+         * @param plan          plots and their queries in each row
+         * @param waitTime      expected wait time of the plan
+         * @return              whether to continue optimizing
+         */
+        boolean onSolution(List<Map<Plot, List<DataPoint>>> plan, double waitTime);
+
+        /**
+         * Whether to stop optimizing before the next solution.
+         */
+        default boolean isStopped() {
+            return false;
+        }
+    }
+
+    /**
+     * Generate the optimal plan under the given planning
+     * context, e.g., to re-plan the queries of a factory
+     * with a longer timeout.
+     */
+    public static List<Map<Plot, List<DataPoint>>> plan(DataPoint[] scorePoints,
+                                                          int[] maxIndices,
+                                                          int nrRows, int R,
+                                                          QueryFactory factory,
+                                                          PlanContext context)
+            throws IOException, SQLException, GRBException {
+        return plan(scorePoints, maxIndices, nrRows, R, factory, context, null, null);
+    }
+
+    /**
+     * Generate the optimal plan starting from the given plan,
+     * e.g., the greedy plan, and report each improving solution
+     * to the listener as soon as it is found.
+     *
+     * @param startPlan     plan to start from or null
+     * @param listener      receiver of improving solutions or null
+     */
+    public static List<Map<Plot, List<DataPoint>>> plan(DataPoint[] scorePoints,
+                                                          int[] maxIndices,
+                                                          int nrRows, int R,
+                                                          QueryFactory factory,
+                                                          PlanContext context,
+                                                          List<Map<Plot, List<DataPoint>>> startPlan,
+                                                          SolutionListener listener)
+            throws IOException, SQLException, GRBException {
         List<Map<Plot, List<DataPoint>>> results = new ArrayList<>();
+        PlanStats stats = context.stats;
         // Generate a list of data points for query candidates
         int nrQueries = scorePoints.length;
-        Map<Integer, Plot> idToPlots = new HashMap<>(nrQueries);
-        int nrDims = scorePoints[0].vector.length;
-        int[][] plots = new int[nrQueries][nrDims];
         long startMillis = System.currentTimeMillis();
-        // Initialize cardinals
-        int[] cardinals = new int[nrDims+1];
-        cardinals[0] = 1;
-
-        for (int dimCtr = 0; dimCtr < nrDims; dimCtr++) {
-            cardinals[dimCtr + 1] = cardinals[dimCtr] * maxIndices[dimCtr];
-        }
-        int maxQueries = 0;
-        for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
-            DataPoint dataPoint = scorePoints[queryCtr];
-            int[] vector = dataPoint.vector;
-            int dataPointID = 0;
-            // Calculate data point ID
-            for (int valueCtr = 0; valueCtr < nrDims; valueCtr++) {
-                dataPointID += cardinals[valueCtr] * vector[valueCtr];
-            }
-            // Add corresponding plots to the map
-            for (int valueCtr = 0; valueCtr < nrDims; valueCtr++) {
-                int plotID = dataPointID - cardinals[valueCtr] * vector[valueCtr];
-                plots[queryCtr][valueCtr] = plotID;
-                if (!idToPlots.containsKey(plotID)) {
-                    Plot newPlot = new Plot(plotID, valueCtr);
-                    newPlot.addDataPoint(dataPoint);
-                    idToPlots.put(plotID, newPlot);
-                    maxQueries = Math.max(maxQueries, newPlot.nrDataPoints);
-                }
-                else {
-                    Plot curPlot = idToPlots.get(plotID);
-                    curPlot.addDataPoint(dataPoint);
-                    maxQueries = Math.max(maxQueries, curPlot.nrDataPoints);
-                }
-            }
-        }
-
-        // Remove plots that contain only one query
-        int[] removePlots = new int[nrDims];
-        for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
-            int nrSingles = 0;
-            Arrays.fill(removePlots, -1);
-            int firstPlotID = plots[queryCtr][0];
-            for (int valueCtr = 0; valueCtr < nrDims; valueCtr++) {
-                int plotID = plots[queryCtr][valueCtr];
-                if (idToPlots.get(plotID).nrDataPoints == 1) {
-                    removePlots[valueCtr] = plotID;
-                    plots[queryCtr][valueCtr] = -1;
-                    nrSingles++;
-                }
-            }
-            if (nrSingles == nrDims) {
-                removePlots[0] = -1;
-                plots[queryCtr][0] = firstPlotID;
-            }
-            for (Integer removeID: removePlots) {
-                idToPlots.remove(removeID);
-            }
-        }
+        PlanModel planModel = PlanModel.build(scorePoints, maxIndices);
 
         // Initialize processing overhead from Postgres
-        int nrPlots = idToPlots.size();
-        PlanStats.nrQueries = nrQueries;
-        PlanStats.nrPlots = nrPlots;
-        if (PlanConfig.PROCESSING_WEIGHT > Double.MIN_VALUE) {
-            for (DataPoint dataPoint: scorePoints) {
-                dataPoint.cost = 50;
-            }
-//            PlanCost.processCost(idToPlots.values(), factory);
+        int nrPlots = planModel.nrPlots;
+        stats.nrQueries = nrQueries;
+        stats.nrPlots = nrPlots;
+        if (context.processingWeight > Double.MIN_VALUE) {
+            planModel.setCosts(50);
+//            PlanCost.processCost(plots, factory);
         }
         else {
-            for (DataPoint dataPoint: scorePoints) {
-                dataPoint.cost = 0;
-            }
+            planModel.setCosts(0);
         }
+        List<Plot> plots = planModel.plots();
 
         // Sort the number of plot based on probability
         // Build a index mapping query to plots
-        int maxPlot = 0;
-        int maxPlotsForQuery = 0;
-        Map<Integer, Integer> plotIDToVarID = new HashMap<>(nrPlots);
-        int[][] queriesToPlots = new int[nrQueries][nrDims+1];
-        int[][] plotsToQueries = new int[nrPlots][maxQueries+1];
-        int[] queriesPlotOffsets = new int[nrQueries];
-        int plotOffsets = 0;
-        for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
-            int queryNrPlots = 0;
-            int offset = 1;
-            for (int valueCtr = 0; valueCtr < nrDims; valueCtr++) {
-                int plotID = plots[queryCtr][valueCtr];
-                if (plotID >= 0) {
-                    if (!plotIDToVarID.containsKey(plotID)) {
-                        int nextID = plotIDToVarID.size();
-                        plotIDToVarID.put(plotID, nextID);
-                    }
-                    int variableID = plotIDToVarID.get(plotID);
-                    maxPlot = Math.max(maxPlot, variableID);
-                    queriesToPlots[queryCtr][offset] = variableID;
-
-                    // Add to plot index
-                    int nrQueriesInPlot = plotsToQueries[variableID][0];
-                    plotsToQueries[variableID][nrQueriesInPlot+1] = queryCtr;
-                    plotsToQueries[variableID][0]++;
-
-                    queryNrPlots++;
-                    offset++;
-                }
-            }
-            maxPlotsForQuery = Math.max(maxPlotsForQuery, queryNrPlots);
-            queriesToPlots[queryCtr][0] = queryNrPlots;
-            queriesPlotOffsets[queryCtr] = plotOffsets;
-            plotOffsets += queryNrPlots;
-        }
+        int maxPlotsForQuery = planModel.maxPlotsOfQuery();
+        int[][] queriesToPlots = planModel.queriesToPlots();
+        int[][] plotsToQueries = planModel.plotsToQueries();
+        int[] queriesPlotOffsets = planModel.queryOffsets;
         long buildMillis = System.currentTimeMillis();
 
         // Define columns
@@ -525,7 +489,7 @@ public class WaitTimeGurobiPlanner {
                 int varID = queryCtr + nrPlotInRows;
                 expr.addTerm(PlanConfig.QUERY_COST, vars[varID]);
             }
-            model.addConstr(expr, GRB.LESS_EQUAL, PlanConfig.MAX_PROCESSING_COST, constraint);
+            model.addConstr(expr, GRB.LESS_EQUAL, context.maxProcessingCost, constraint);
             constraintID++;
         }
 
@@ -542,8 +506,8 @@ public class WaitTimeGurobiPlanner {
                     int highlightID = variableIndex * nrRows + rowCtr + nrPlotInRows;
                     int uncoloredID = variableIndex * nrRows + rowCtr + nrQueryInPlotsInRows + nrPlotInRows;
 
-                    double coefficient = PlanConfig.PROCESSING_WEIGHT > Double.MIN_VALUE ?
-                            (-1 * readTime + PlanConfig.PROCESSING_WEIGHT * cost) * probability:
+                    double coefficient = context.processingWeight > Double.MIN_VALUE ?
+                            (-1 * readTime + context.processingWeight * cost) * probability:
                             -1 * readTime * probability;
 //                    double coefficient = -1 * readTime * probability;
                     expr.addTerm(coefficient, vars[highlightID]);
@@ -562,81 +526,51 @@ public class WaitTimeGurobiPlanner {
         }
         long optimizeMillis = System.currentTimeMillis();
         model.setObjective(expr, GRB.MINIMIZE);
-        model.set(GRB.DoubleParam.TimeLimit, PlanConfig.TIMEOUT);
-        // Optimize model
-        model.optimize();
-
-        Map<Integer, Plot> varIDToPlot = new HashMap<>(nrPlots);
-        for (int rowCtr = 0; rowCtr < nrRows; rowCtr++) {
-            Map<Plot, List<DataPoint>> resultsPerRow = new HashMap<>();
-            for (int plotCtr = 0; plotCtr < nrPlots; plotCtr++) {
-                int plotID = plotCtr * nrRows + rowCtr;
-
-                int finalPlotCtr = plotCtr;
-                int plotIndex = plotIDToVarID.entrySet().stream().filter(e -> e.getValue() == finalPlotCtr)
-                        .findFirst().orElse(new AbstractMap.SimpleEntry<>(0, 0)).getKey();
-                Plot plot = idToPlots.get(plotIndex);
-                varIDToPlot.put(plotID, plot);
-                double value = vars[plotID].get(GRB.DoubleAttr.X);
-                if (value > Double.MIN_VALUE) {
-                    String contextName = String.valueOf(plotID);
-                    resultsPerRow.put(plot, new ArrayList<>());
-                }
-            }
-            results.add(resultsPerRow);
+        model.set(GRB.DoubleParam.TimeLimit, context.timeout);
+        GRBVar[] shownVars = Arrays.copyOf(vars, nrPlotInRows + nrQueryInPlotsInRows * 2);
+        if (startPlan != null) {
+            model.set(GRB.DoubleAttr.Start, shownVars, startValues(startPlan, planModel,
+                    nrRows, nrPlotInRows, nrQueryInPlotsInRows));
         }
-
-        // Highlighted queries
-        for (int rowCtr = 0; rowCtr < nrRows; rowCtr++) {
-            Map<Plot, List<DataPoint>> resultsPerRow = results.get(rowCtr);
-            for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
-                int nrPlotsForQuery = queriesToPlots[queryCtr][0];
-                for (int plotCtr = 1; plotCtr <= nrPlotsForQuery; plotCtr++) {
-                    int variableIndex = queriesPlotOffsets[queryCtr] + plotCtr - 1;
-                    int queryID = variableIndex * nrRows + rowCtr + nrPlotInRows;
-                    String name = vars[queryID].get(GRB.StringAttr.VarName);
-                    double value = vars[queryID].get(GRB.DoubleAttr.X);
-
-                    if (value > Double.MIN_VALUE) {
-                        int plotIndex = queriesToPlots[queryCtr][plotCtr];
-                        int plotID = plotIndex * nrRows + rowCtr;
-                        Plot plot = varIDToPlot.get(plotID);
-                        String contextName = String.valueOf(plotID);
-                        if (resultsPerRow.containsKey(plot)) {
-                            scorePoints[queryCtr].highlighted = true;
-                            resultsPerRow.get(plot).add(scorePoints[queryCtr]);
-                        }
-                        else {
-                            System.out.println("Wrong here!");
-                        }
-                    }
-                }
-            }
-            // Uncolored queries
-            for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
-                int nrPlotsForQuery = queriesToPlots[queryCtr][0];
-                for (int plotCtr = 1; plotCtr <= nrPlotsForQuery; plotCtr++) {
-                    int variableIndex = queriesPlotOffsets[queryCtr] + plotCtr - 1;
-                    int queryID = variableIndex * nrRows + rowCtr + nrQueryInPlotsInRows + nrPlotInRows;
-                    String name = vars[queryID].get(GRB.StringAttr.VarName);
-                    double value = vars[queryID].get(GRB.DoubleAttr.X);
-                    if (value > Double.MIN_VALUE) {
-                        int plotIndex = queriesToPlots[queryCtr][plotCtr];
-                        int plotID = plotIndex * nrRows + rowCtr;
-                        String contextName = String.valueOf(plotID);
-                        Plot plot = varIDToPlot.get(plotID);
-                        if (resultsPerRow.containsKey(plot)) {
-                            resultsPerRow.get(plot).add(scorePoints[queryCtr]);
+        if (listener != null) {
+            model.setCallback(new GRBCallback() {
+                @Override
+                protected void callback() {
+                    try {
+                        if (listener.isStopped()) {
+                            abort();
                         }
-                        else {
-                            System.out.println("Wrong here!");
+                        else if (where == GRB.CB_MIPSOL) {
+                            // The incumbent is copied, the solver keeps using the data points
+                            List<Map<Plot, List<DataPoint>>> plan = toPlan(getSolution(shownVars),
+                                    scorePoints, plots, queriesToPlots, queriesPlotOffsets,
+                                    nrRows, nrPlotInRows, nrQueryInPlotsInRows, true);
+                            if (!listener.onSolution(plan, getDoubleInfo(GRB.CB_MIPSOL_OBJ) + readTime)) {
+                                abort();
+                            }
                         }
+                    } catch (GRBException e) {
+                        e.printStackTrace();
+                        abort();
                     }
                 }
+            });
+        }
+        // Optimize model
+        model.optimize();
+        boolean hasSolution = model.get(GRB.IntAttr.SolCount) > 0;
+
+        if (hasSolution) {
+            results.addAll(toPlan(model.get(GRB.DoubleAttr.X, shownVars), scorePoints, plots,
+                    queriesToPlots, queriesPlotOffsets, nrRows, nrPlotInRows, nrQueryInPlotsInRows, false));
+        }
+        else {
+            for (int rowCtr = 0; rowCtr < nrRows; rowCtr++) {
+                results.add(new HashMap<>());
             }
         }
 
-        if (PRINT_LOGS) {
+        if (PRINT_LOGS && hasSolution) {
             for (int rowCtr = 0; rowCtr < nrRows; rowCtr++) {
                 for (int plotCtr = 0; plotCtr < nrPlots; plotCtr++) {
                     int plotID = plotCtr * nrRows + rowCtr;
@@ -686,20 +620,22 @@ public class WaitTimeGurobiPlanner {
         int status = model.get(GRB.IntAttr.Status);
 
         if (status == GRB.OPTIMAL) {
-            PlanStats.isTimeout = false;
+            stats.isTimeout = false;
         }
         else if (status == GRB.TIME_LIMIT) {
             System.out.println("Optimization was stopped with status " + status);
-            PlanStats.isTimeout = true;
+            stats.isTimeout = true;
         }
 
         long endMillis = System.currentTimeMillis();
-        PlanStats.initMillis = buildMillis - startMillis;
-        PlanStats.buildMillis = optimizeMillis - buildMillis;
-        PlanStats.optimizeMillis = endMillis - optimizeMillis;
-        double value = model.get(GRB.DoubleAttr.ObjVal);
-        PlanStats.waitTime = value + readTime;
-        System.out.println("Wait Time: " + (value + readTime) + " ms");
+        stats.initMillis = buildMillis - startMillis;
+        stats.buildMillis = optimizeMillis - buildMillis;
+        stats.optimizeMillis = endMillis - optimizeMillis;
+        if (hasSolution) {
+            double value = model.get(GRB.DoubleAttr.ObjVal);
+            stats.waitTime = value + readTime;
+            System.out.println("Wait Time: " + (value + readTime) + " ms");
+        }
         // Dispose of model and environment
         model.dispose();
         env.dispose();
@@ -720,14 +656,120 @@ public class WaitTimeGurobiPlanner {
         return results;
     }
 
+    /**
+     * Plots and queries of each row in a solution. Highlighted
+     * queries come first in each plot and are flagged. A copied
+     * plan consists of new plots and copies of the data points,
+     * leaving the plots and data points of the model unchanged.
+     *
+     * @param values        values of plot, highlighted and uncolored query variables
+     * @param copy          whether to copy plots and data points
+     * @return              plots and their queries in each row
+     */
+    private static List<Map<Plot, List<DataPoint>>> toPlan(double[] values, DataPoint[] scorePoints,
+                                                         List<Plot> plots, int[][] queriesToPlots,
+                                                         int[] queriesPlotOffsets, int nrRows,
+                                                         int nrPlotInRows, int nrQueryInPlotsInRows,
+                                                         boolean copy) {
+        List<Map<Plot, List<DataPoint>>> results = new ArrayList<>(nrRows);
+        DataPoint[] planPoints = new DataPoint[scorePoints.length];
+        for (int queryCtr = 0; queryCtr < scorePoints.length; queryCtr++) {
+            planPoints[queryCtr] = copy ? scorePoints[queryCtr].copy() : scorePoints[queryCtr];
+            planPoints[queryCtr].highlighted = false;
+        }
+        List<Plot> planPlots = plots;
+        if (copy) {
+            planPlots = new ArrayList<>(plots.size());
+            for (Plot plot: plots) {
+                Plot planPlot = new Plot(plot.plotID, plot.freeIndex);
+                planPlot.setCost(plot.cost);
+                planPlots.add(planPlot);
+            }
+        }
+        for (int rowCtr = 0; rowCtr < nrRows; rowCtr++) {
+            Map<Plot, List<DataPoint>> resultsPerRow = new HashMap<>();
+            for (int plotCtr = 0; plotCtr < planPlots.size(); plotCtr++) {
+                if (values[plotCtr * nrRows + rowCtr] > 0.5) {
+                    resultsPerRow.put(planPlots.get(plotCtr), new ArrayList<>());
+                }
+            }
+            results.add(resultsPerRow);
+        }
+        // Highlighted queries, then uncolored queries
+        for (int formCtr = 0; formCtr < 2; formCtr++) {
+            for (int rowCtr = 0; rowCtr < nrRows; rowCtr++) {
+                Map<Plot, List<DataPoint>> resultsPerRow = results.get(rowCtr);
+                for (int queryCtr = 0; queryCtr < scorePoints.length; queryCtr++) {
+                    int nrPlotsForQuery = queriesToPlots[queryCtr][0];
+                    for (int plotCtr = 1; plotCtr <= nrPlotsForQuery; plotCtr++) {
+                        int variableIndex = queriesPlotOffsets[queryCtr] + plotCtr - 1;
+                        int queryID = variableIndex * nrRows + rowCtr
+                                + formCtr * nrQueryInPlotsInRows + nrPlotInRows;
+                        if (values[queryID] > 0.5) {
+                            Plot plot = planPlots.get(queriesToPlots[queryCtr][plotCtr]);
+                            if (resultsPerRow.containsKey(plot)) {
+                                planPoints[queryCtr].highlighted |= formCtr == 0;
+                                resultsPerRow.get(plot).add(planPoints[queryCtr]);
+                            }
+                            else {
+                                System.out.println("Wrong here!");
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Start values of plot, highlighted and uncolored query variables
+     * that show the given plan. Plots shown twice and queries shown in
+     * several plots keep their first occurrence, the solver repairs or
+     * discards a start that violates other constraints.
+     *
+     * @param startPlan     plots and their queries in each row
+     * @return              values of the variables
+     */
+    private static double[] startValues(List<Map<Plot, List<DataPoint>>> startPlan, PlanModel planModel,
+                                        int nrRows, int nrPlotInRows, int nrQueryInPlotsInRows) {
+        double[] values = new double[nrPlotInRows + nrQueryInPlotsInRows * 2];
+        Map<Integer, Integer> plotIndices = new HashMap<>(planModel.nrPlots);
+        for (int plotCtr = 0; plotCtr < planModel.nrPlots; plotCtr++) {
+            plotIndices.put(planModel.plotIDs[plotCtr], plotCtr);
+        }
+        boolean[] shownPlots = new boolean[planModel.nrPlots];
+        boolean[] shownQueries = new boolean[planModel.nrQueries];
+        for (int rowCtr = 0; rowCtr < Math.min(nrRows, startPlan.size()); rowCtr++) {
+            for (Map.Entry<Plot, List<DataPoint>> entry: startPlan.get(rowCtr).entrySet()) {
+                Integer plotIndex = plotIndices.get(entry.getKey().plotID);
+                if (plotIndex == null || shownPlots[plotIndex]) {
+                    continue;
+                }
+                shownPlots[plotIndex] = true;
+                values[plotIndex * nrRows + rowCtr] = 1;
+                for (DataPoint dataPoint: entry.getValue()) {
+                    int queryCtr = dataPoint.id;
+                    for (int entryCtr = planModel.queryOffsets[queryCtr];
+                         entryCtr < planModel.queryOffsets[queryCtr + 1] && !shownQueries[queryCtr]; entryCtr++) {
+                        if (planModel.queryPlots[entryCtr] == plotIndex) {
+                            int formOffset = dataPoint.highlighted ? 0 : nrQueryInPlotsInRows;
+                            values[entryCtr * nrRows + rowCtr + formOffset + nrPlotInRows] = 1;
+                            shownQueries[queryCtr] = true;
+                        }
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
     public static void main(String[] args) throws ParseException, JSQLParserException,
             IOException, GRBException, SQLException {
         String query = "SELECT count(*) FROM sample_311 WHERE \"intersection_street_1\"='EAST  110 STREET'";
-        PlanConfig.TOPK = 10;
-        PlanConfig.PROCESSING_WEIGHT = 0;
-        PlanConfig.NR_ROWS = 1;
-        PlanConfig.R = 300;
-        QueryFactory queryFactory = new QueryFactory(query);
-        plan(queryFactory.queries, queryFactory.nrDistinctValues, 1, PlanConfig.R, queryFactory);
+        PlanContext context = new PlanContext(10, 300, 1, 0,
+                PlanConfig.MAX_PROCESSING_COST, PlanConfig.SAMPLING_RATE, PlanConfig.TIMEOUT);
+        QueryFactory queryFactory = new QueryFactory(query, context);
+        plan(queryFactory.queries, queryFactory.nrDistinctValues, 1, context.R, queryFactory);
     }
 }
@@ -1,6 +1,7 @@
 package planning.viz;
 
 import config.PlanConfig;
+import config.PlanContext;
 import net.sf.jsqlparser.JSQLParserException;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.gnu.glpk.*;
@@ -42,112 +43,27 @@ public class WaitTimePlanner {
                                                           int nrRows, int R,
                                                           QueryFactory factory) throws IOException, SQLException {
         List<Map<String, List<DataPoint>>> results = new ArrayList<>();
+        PlanContext context = factory.context;
+        PlanStats stats = context.stats;
         // Generate a list of data points for query candidates
         int nrQueries = scorePoints.length;
-        Map<Integer, Plot> idToPlots = new HashMap<>(nrQueries);
-        int nrDims = scorePoints[0].vector.length;
-        int[][] plots = new int[nrQueries][nrDims];
         long startMillis = System.currentTimeMillis();
-        // Initialize cardinals
-        int[] cardinals = new int[nrDims+1];
-        cardinals[0] = 1;
-
-        for (int dimCtr = 0; dimCtr < nrDims; dimCtr++) {
-            cardinals[dimCtr + 1] = cardinals[dimCtr] * maxIndices[dimCtr];
-        }
-        int maxQueries = 0;
-        for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
-            DataPoint dataPoint = scorePoints[queryCtr];
-            int[] vector = dataPoint.vector;
-            int dataPointID = 0;
-            // Calculate data point ID
-            for (int valueCtr = 0; valueCtr < nrDims; valueCtr++) {
-                dataPointID += cardinals[valueCtr] * vector[valueCtr];
-            }
-            // Add corresponding plots to the map
-            for (int valueCtr = 0; valueCtr < nrDims; valueCtr++) {
-                int plotID = dataPointID - cardinals[valueCtr] * vector[valueCtr];
-                plots[queryCtr][valueCtr] = plotID;
-                if (!idToPlots.containsKey(plotID)) {
-                    Plot newPlot = new Plot(plotID, valueCtr);
-                    newPlot.addDataPoint(dataPoint);
-                    idToPlots.put(plotID, newPlot);
-                    maxQueries = Math.max(maxQueries, newPlot.nrDataPoints);
-                }
-                else {
-                    Plot curPlot = idToPlots.get(plotID);
-                    curPlot.addDataPoint(dataPoint);
-                    maxQueries = Math.max(maxQueries, curPlot.nrDataPoints);
-                }
-            }
-        }
-
-        // Remove plots that contain only one query
-        int[] removePlots = new int[nrDims];
-        for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
-            int nrSingles = 0;
-            Arrays.fill(removePlots, -1);
-            int firstPlotID = plots[queryCtr][0];
-            for (int valueCtr = 0; valueCtr < nrDims; valueCtr++) {
-                int plotID = plots[queryCtr][valueCtr];
-                if (idToPlots.get(plotID).nrDataPoints == 1) {
-                    removePlots[valueCtr] = plotID;
-                    plots[queryCtr][valueCtr] = -1;
-                    nrSingles++;
-                }
-            }
-            if (nrSingles == nrDims) {
-                removePlots[0] = -1;
-                plots[queryCtr][0] = firstPlotID;
-            }
-            for (Integer removeID: removePlots) {
-                idToPlots.remove(removeID);
-            }
-        }
+        PlanModel planModel = PlanModel.build(scorePoints, maxIndices);
 
         // Initialize processing overhead from Postgres
-        int nrPlots = idToPlots.size();
-        PlanStats.nrQueries = nrQueries;
-        PlanStats.nrPlots = nrPlots;
-        PlanCost.processCost(idToPlots.values(), factory);
+        int nrPlots = planModel.nrPlots;
+        stats.nrQueries = nrQueries;
+        stats.nrPlots = nrPlots;
+        List<Plot> plots = planModel.plots();
+        PlanCost.processCost(plots, factory);
+        planModel.updateCosts(plots);
 
         // Sort the number of plot based on probability
         // Build a index mapping query to plots
-        int maxPlot = 0;
-        int maxPlotsForQuery = 0;
-        Map<Integer, Integer> plotIDToVarID = new HashMap<>(nrPlots);
-        int[][] queriesToPlots = new int[nrQueries][nrDims+1];
-        int[][] plotsToQueries = new int[nrPlots][maxQueries+1];
-        int[] queriesPlotOffsets = new int[nrQueries];
-        int plotOffsets = 0;
-        for (int queryCtr = 0; queryCtr < nrQueries; queryCtr++) {
-            int queryNrPlots = 0;
-            int offset = 1;
-            for (int valueCtr = 0; valueCtr < nrDims; valueCtr++) {
-                int plotID = plots[queryCtr][valueCtr];
-                if (plotID >= 0) {
-                    if (!plotIDToVarID.containsKey(plotID)) {
-                        int nextID = plotIDToVarID.size();
-                        plotIDToVarID.put(plotID, nextID);
-                    }
-                    int variableID = plotIDToVarID.get(plotID);
-                    maxPlot = Math.max(maxPlot, variableID);
-                    queriesToPlots[queryCtr][offset] = variableID;
-
-                    // Add to plot index
-                    int nrQueriesInPlot = plotsToQueries[variableID][0];
-                    plotsToQueries[variableID][nrQueriesInPlot+1] = queryCtr;
-                    plotsToQueries[variableID][0]++;
-
-                    queryNrPlots++;
-                    offset++;
-                }
-            }
-            maxPlotsForQuery = Math.max(maxPlotsForQuery, queryNrPlots);
-            queriesToPlots[queryCtr][0] = queryNrPlots;
-            queriesPlotOffsets[queryCtr] = plotOffsets;
-            plotOffsets += queryNrPlots;
-        }
+        int maxPlotsForQuery = planModel.maxPlotsOfQuery();
+        int[][] queriesToPlots = planModel.queriesToPlots();
+        int[][] plotsToQueries = planModel.plotsToQueries();
+        int[] queriesPlotOffsets = planModel.queryOffsets;
         long buildMillis = System.currentTimeMillis();
         // Create problem
         glp_prob lp = GLPK.glp_create_prob();
@@ -845,7 +761,7 @@ public class WaitTimePlanner {
                 for (int rowCtr = 0; rowCtr < nrRows; rowCtr++) {
                     int highlightID = variableIndex * nrRows + rowCtr + nrPlotInRows + 1;
                     int uncoloredID = variableIndex * nrRows + rowCtr + nrQueryInPlotsInRows + nrPlotInRows + 1;
-                    double coefficient = (-1 * readTime + PlanConfig.PROCESSING_WEIGHT * cost) * probability;
+                    double coefficient = (-1 * readTime + context.processingWeight * cost) * probability;
                     GLPK.glp_set_obj_coef(lp, highlightID, coefficient);
                     GLPK.glp_set_obj_coef(lp, uncoloredID, coefficient);
                 }
@@ -966,22 +882,22 @@ public class WaitTimePlanner {
 //                System.out.println("Product: " + productID + "," + indicator);
 //            }
             long endMillis = System.currentTimeMillis();
-            PlanStats.initMillis = buildMillis - startMillis;
-            PlanStats.buildMillis = optimizeMillis - buildMillis;
-            PlanStats.optimizeMillis = endMillis - optimizeMillis;
-            PlanStats.isTimeout = false;
+            stats.initMillis = buildMillis - startMillis;
+            stats.buildMillis = optimizeMillis - buildMillis;
+            stats.optimizeMillis = endMillis - optimizeMillis;
+            stats.isTimeout = false;
             double value = GLPK.glp_mip_obj_val(lp);
-            PlanStats.waitTime = value + readTime;
+            stats.waitTime = value + readTime;
             System.out.println("Wait Time: " + (value + readTime) + " ms");
         }
         else {
             long endMillis = System.currentTimeMillis();
-            PlanStats.initMillis = buildMillis - startMillis;
-            PlanStats.buildMillis = optimizeMillis - buildMillis;
-            PlanStats.optimizeMillis = endMillis - optimizeMillis;
-            PlanStats.isTimeout = true;
+            stats.initMillis = buildMillis - startMillis;
+            stats.buildMillis = optimizeMillis - buildMillis;
+            stats.optimizeMillis = endMillis - optimizeMillis;
+            stats.isTimeout = true;
             double value = GLPK.glp_mip_obj_val(lp);
-            PlanStats.waitTime = value + readTime;
+            stats.waitTime = value + readTime;
             System.out.println("Wait Time: " + (value + readTime) + " ms");
         }
         int rowCtr = 1;
@@ -1060,13 +976,11 @@ public class WaitTimePlanner {
 
     public static void main(String[] args) throws IOException, ParseException, JSQLParserException, SQLException {
         String query = "SELECT count(*) FROM sample_311 WHERE \"intersection_street_1\"='EAST  110 STREET'";
-        PlanConfig.TOPK = 5;
-        PlanConfig.R = 300;
-        PlanConfig.PROCESSING_WEIGHT = 0;
-        PlanConfig.NR_ROWS = 1;
-        QueryFactory queryFactory = new QueryFactory(query);
+        PlanContext context = new PlanContext(5, 300, 1, 0,
+                PlanConfig.MAX_PROCESSING_COST, PlanConfig.SAMPLING_RATE, PlanConfig.TIMEOUT);
+        QueryFactory queryFactory = new QueryFactory(query, context);
 
-        plan(queryFactory.queries, queryFactory.nrDistinctValues, 1, PlanConfig.R, queryFactory);
+        plan(queryFactory.queries, queryFactory.nrDistinctValues, 1, context.R, queryFactory);
 
     }
 }
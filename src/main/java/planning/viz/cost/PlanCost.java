@@ -25,7 +25,8 @@ public class PlanCost {
      * We assume the cost model is a linear function.
      * Generate a list of explain SQL queries and extract
      * the intercept and slope of the cost model for each
-     * plot and corresponding queries.
+     * plot and corresponding queries. The duration of
+     * estimation is recorded in the stats of the request.
      *
      * @param plots             Set of plots in the optimization problem
      * @param queryFactory      Factory to generate similar queries
@@ -40,7 +41,7 @@ public class PlanCost {
                     + queryFactory.combinedPredicate(plot, plot.nrDataPoints);
             explainQueries.add(newQuery + ";");
         }
-//        long timer1 = System.currentTimeMillis();
+        long timer1 = System.currentTimeMillis();
         String costRegex = "[0-9]+\\.[0-9][0-9]\\.\\.[0-9]+\\.[0-9][0-9]";
         Pattern pattern = Pattern.compile(costRegex);
         try {
@@ -79,7 +80,7 @@ public class PlanCost {
             }
         }
 
-//        long timer2 = System.currentTimeMillis();
-//        System.out.println("Explain time: " + (timer2 - timer1) + " ms");
+        long timer2 = System.currentTimeMillis();
+        queryFactory.context.stats.costMillis = timer2 - timer1;
     }
 }
@@ -2,16 +2,16 @@ package processor;
 
 import config.HostConfig;
 import config.PlanConfig;
+import connector.ConnectionPool;
 import matching.FuzzySearch;
+import matching.HitMetadata;
 import net.sf.jsqlparser.JSQLParserException;
 import net.sf.jsqlparser.parser.CCJSqlParserUtil;
 import net.sf.jsqlparser.statement.select.FromItem;
 import net.sf.jsqlparser.statement.select.PlainSelect;
 import net.sf.jsqlparser.statement.select.Select;
 import net.sf.jsqlparser.statement.select.SelectItem;
-import org.apache.lucene.document.Document;
 import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.ScoreDoc;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -52,7 +52,7 @@ public class MultiQueryProcessor {
     }
 
     public static JSONArray execute(List<Map<String, List<ScoreDoc>>> planResults,
-                                    IndexSearcher searcher,
+                                    HitMetadata metadata,
                                     PlainSelect plainSelect,
                                     Connection connection) throws IOException, SQLException {
         // Return an array of data points
@@ -85,6 +85,7 @@ public class MultiQueryProcessor {
         FromItem fromItems = plainSelect.getFromItem();
         String selectBase = "SELECT " + String.join(", ", selectItemsName);
         String fromBase = "FROM " + fromItems.toString();
+        // Statements are closed when the connection returns to the pool
         Statement statement = connection.createStatement();
         // Iterate over all rows
         for (Map<String, List<ScoreDoc>> resultPerRow: planResults) {
@@ -99,9 +100,8 @@ public class MultiQueryProcessor {
                 Map<String, Float> scoreIndex = new HashMap<>(nrDocs);
                 // First case
                 ScoreDoc scoreDocFirst = groupDocs.get(0);
-                Document hitDocFirst = searcher.doc(scoreDocFirst.doc);
-                String contentFirst = hitDocFirst.get("text");
-                String columnNameFirst = hitDocFirst.get("column");
+                String contentFirst = metadata.text(scoreDocFirst.doc);
+                String columnNameFirst = metadata.column(scoreDocFirst.doc);
                 boolean isColumn = columnNameFirst.equals(groupVal);
                 String labelFirst = isColumn ? contentFirst : columnNameFirst;
                 float scoreFirst = scoreDocFirst.score;
@@ -109,9 +109,8 @@ public class MultiQueryProcessor {
                 // Rest cases
                 for (int docCtr = 1; docCtr < nrDocs; docCtr++) {
                     ScoreDoc scoreDoc = groupDocs.get(docCtr);
-                    Document hitDoc = searcher.doc(scoreDoc.doc);
-                    String columnName = hitDoc.get("column");
-                    String content = hitDoc.get("text");
+                    String columnName = metadata.column(scoreDoc.doc);
+                    String content = metadata.text(scoreDoc.doc);
                     String label = isColumn ? content : columnName;
                     float score = scoreDoc.score;
                     scoreIndex.put(label, score);
@@ -123,12 +122,12 @@ public class MultiQueryProcessor {
                     String predicate = groupVal + " in ('" + String.join("','", scoreIndex.keySet()) + "')";
                     String comprehensiveSQL = newSelect + " " + fromBase
                             + " WHERE " + predicate + " GROUP BY " + groupVal + ";";
-                    ResultSet rs = statement.executeQuery(comprehensiveSQL);
-                    while (rs.next()) {
+                    List<String[]> rows = PlotExecutor.executeCachedQuery(statement, comprehensiveSQL);
+                    for (String[] row: rows) {
                         // Query results
                         JSONObject resultObj = new JSONObject();
-                        String result = rs.getString(1);
-                        String literal = rs.getString(2);
+                        String result = row[0];
+                        String literal = row[1];
                         String labelName = literal.replace("_", " ");
                         float score = scoreIndex.get(literal);
                         int rank = ranks.get(score);
@@ -138,7 +137,6 @@ public class MultiQueryProcessor {
                                 .put("label", labelName).put("context", "column");
                         resultArray.put(resultObj);
                     }
-                    rs.close();
                 }
                 // Execute in the normal way
                 else {
@@ -147,13 +145,13 @@ public class MultiQueryProcessor {
                         String predicate = columnName + "='" + groupVal + "'";
                         String singleSQL = selectBase + " " + fromBase
                                 + " WHERE " + predicate +  ";";
-                        ResultSet rs = statement.executeQuery(singleSQL);
+                        List<String[]> rows = PlotExecutor.executeCachedQuery(statement, singleSQL);
                         JSONObject resultObj = new JSONObject();
                         String result = "";
                         String labelName = "";
-                        while (rs.next()) {
+                        for (String[] row: rows) {
                             // Query results
-                            result = rs.getString(1);
+                            result = row[0];
                         }
                         labelName = columnName.replace("_", " ");
                         float score = scoreEntry.getValue();
@@ -163,7 +161,6 @@ public class MultiQueryProcessor {
                                 .put("results", "[" + result + "]").put("type", isAgg ? "agg" : "rows")
                                 .put("label", labelName).put("context", "column");
                         resultArray.put(resultObj);
-                        rs.close();
                     }
 
                 }
@@ -184,19 +181,22 @@ public class MultiQueryProcessor {
         Properties props = new Properties();
         props.setProperty("user", "monetdb");
         props.setProperty("password", "monetdb");
-        Connection connection = DriverManager.getConnection(url, props);
+        ConnectionPool pool = new ConnectionPool(url, props, 1, HostConfig.DB_CHECKOUT_TIMEOUT);
         String dataset = "dob_job";
-        ScoreDoc[] docs = FuzzySearch.search("Bronx", dataset);
-        IndexSearcher searcher = FuzzySearch.searchers.get(dataset);
+        ScoreDoc[] docs = FuzzySearch.search("Bronx", dataset, PlanConfig.TOPK);
+        HitMetadata metadata = FuzzySearch.metadata(dataset);
         List<Map<String, List<ScoreDoc>>> results = SimpleVizPlanner.plan(docs, 2,
-                PlanConfig.R, searcher);
+                PlanConfig.R, metadata);
         String template = "SELECT max(\"estimate_fee\") FROM dob_job WHERE \"city\" = ?;";
         Select sqlStatement = (Select) CCJSqlParserUtil.parse(template);
         PlainSelect plainSelect = (PlainSelect) sqlStatement.getSelectBody();
-        long executionStart = System.currentTimeMillis();
-        execute(results, searcher, plainSelect, connection);
-        long executionEnd = System.currentTimeMillis();
-        System.out.println(executionEnd - executionStart);
-        connection.close();
+        try (Connection connection = pool.getConnection()) {
+            long executionStart = System.currentTimeMillis();
+            execute(results, metadata, plainSelect, connection);
+            long executionEnd = System.currentTimeMillis();
+            System.out.println(executionEnd - executionStart);
+        }
+        System.out.println(ResultCache.getCache());
+        pool.close();
     }
 }
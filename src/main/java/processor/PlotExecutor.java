@@ -0,0 +1,216 @@
+package processor;
+
+import config.HostConfig;
+import connector.DBConnector;
+import connector.PSQLConnector;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Execute the queries of plots in parallel. Each query
+ * runs on its own pooled connection and results are
+ * materialized as rows of strings. Results are handed
+ * back to the calling thread in the order of completion
+ * so that the caller can push each plot to the client
+ * as soon as its data is available. Results are looked
+ * up in the result cache before going to the database.
+ * Queries of one session, across all of its concurrent
+ * calls, share a limit of queries in flight, so that a
+ * session cannot take over the pooled connections.
+ *
+ * @author Ziyun Wei
+ */
+public class PlotExecutor {
+    /**
+     * Worker threads shared by all sessions.
+     */
+    private static final ExecutorService executor = Executors.newFixedThreadPool(
+            HostConfig.PLOT_THREADS, new ThreadFactory() {
+                private final AtomicInteger threadCtr = new AtomicInteger();
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "plot-executor-" + threadCtr.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * Permits of queries in flight of each session.
+     */
+    private static final Map<Object, Semaphore> sessionPermits = new ConcurrentHashMap<>();
+
+    /**
+     * Consumer of query results.
+     */
+    public interface PlotConsumer {
+        /**
+         * Receive the result of one query.
+         *
+         * @param queryCtr      index of the query in the submitted list
+         * @param rows          result rows of the query
+         * @return              false if remaining queries are not needed
+         * @throws Exception
+         */
+        boolean accept(int queryCtr, List<String[]> rows) throws Exception;
+    }
+
+    /**
+     * Execute the given queries with at most HostConfig.SESSION_QUERIES
+     * queries of the session in flight. Queries are started in the
+     * order of the list, so callers should list the most important
+     * plots (e.g., highlighted ones) first.
+     *
+     * @param session           session that the queries belong to
+     * @param queries           SQL query of each plot
+     * @param consumer          consumer of the results
+     * @throws Exception
+     */
+    public static void execute(Object session, List<String> queries,
+                               PlotConsumer consumer) throws Exception {
+        Semaphore permits = sessionPermits.computeIfAbsent(session,
+                key -> new Semaphore(HostConfig.SESSION_QUERIES));
+        DBConnector connector = PSQLConnector.getConnector();
+        ResultCache cache = ResultCache.getCache();
+        CompletionService<Integer> completionService = new ExecutorCompletionService<>(executor);
+        int nrQueries = queries.size();
+        List<Future<Integer>> futures = new ArrayList<>(nrQueries);
+        Object[] results = new Object[nrQueries];
+        int nrSubmitted = 0;
+        int nrCompleted = 0;
+        // Queries of this call that hold a permit
+        int nrInFlight = 0;
+        try {
+            while (nrCompleted < nrQueries) {
+                while (nrSubmitted < nrQueries) {
+                    int queryCtr = nrSubmitted;
+                    String query = queries.get(queryCtr);
+                    // Cached results are consumed without a round trip
+                    List<String[]> cachedRows = cache.get(query);
+                    if (cachedRows != null) {
+                        nrSubmitted++;
+                        nrCompleted++;
+                        if (!consumer.accept(queryCtr, cachedRows)) {
+                            return;
+                        }
+                        continue;
+                    }
+                    // Wait for other calls of the session only if none of ours can free a permit
+                    if (nrInFlight == 0) {
+                        permits.acquire();
+                    }
+                    else if (!permits.tryAcquire()) {
+                        break;
+                    }
+                    nrSubmitted++;
+                    nrInFlight++;
+                    long generation = cache.getGeneration();
+                    futures.add(completionService.submit(() -> {
+                        List<String[]> rows = executeQuery(connector, query);
+                        cache.put(query, rows, generation);
+                        results[queryCtr] = rows;
+                        return queryCtr;
+                    }));
+                }
+                if (nrCompleted == nrQueries) {
+                    break;
+                }
+                Future<Integer> completed = completionService.take();
+                nrInFlight--;
+                permits.release();
+                int queryCtr;
+                try {
+                    queryCtr = completed.get();
+                } catch (ExecutionException exception) {
+                    Throwable cause = exception.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : exception;
+                }
+                nrCompleted++;
+                @SuppressWarnings("unchecked")
+                List<String[]> rows = (List<String[]>) results[queryCtr];
+                results[queryCtr] = null;
+                if (!consumer.accept(queryCtr, rows)) {
+                    break;
+                }
+            }
+        } finally {
+            for (Future<Integer> future: futures) {
+                future.cancel(true);
+            }
+            permits.release(nrInFlight);
+        }
+    }
+
+    /**
+     * Forget the limit of a closed session.
+     *
+     * @param session           closed session
+     */
+    public static void closeSession(Object session) {
+        sessionPermits.remove(session);
+    }
+
+    /**
+     * Execute a single query on a pooled connection.
+     *
+     * @param connector         database connector
+     * @param query             SQL query
+     * @return                  result rows of the query
+     * @throws SQLException
+     */
+    public static List<String[]> executeQuery(DBConnector connector, String query) throws SQLException {
+        try (Connection connection = connector.getConnection()) {
+            return executeQuery(connection.createStatement(), query);
+        }
+    }
+
+    /**
+     * Execute a single query with the given statement.
+     *
+     * @param statement         statement to execute the query
+     * @param query             SQL query
+     * @return                  result rows of the query
+     * @throws SQLException
+     */
+    public static List<String[]> executeQuery(Statement statement, String query) throws SQLException {
+        ResultSet rs = statement.executeQuery(query);
+        int nrColumns = rs.getMetaData().getColumnCount();
+        List<String[]> rows = new ArrayList<>();
+        while (rs.next()) {
+            String[] row = new String[nrColumns];
+            for (int columnCtr = 0; columnCtr < nrColumns; columnCtr++) {
+                row[columnCtr] = rs.getString(columnCtr + 1);
+            }
+            rows.add(row);
+        }
+        rs.close();
+        return rows;
+    }
+
+    /**
+     * Execute a single query unless its result is cached.
+     *
+     * @param statement         statement to execute the query
+     * @param query             SQL query
+     * @return                  result rows of the query
+     * @throws SQLException
+     */
+    public static List<String[]> executeCachedQuery(Statement statement, String query) throws SQLException {
+        ResultCache cache = ResultCache.getCache();
+        List<String[]> rows = cache.get(query);
+        if (rows == null) {
+            long generation = cache.getGeneration();
+            rows = executeQuery(statement, query);
+            cache.put(query, rows, generation);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,344 @@
+package processor;
+
+import config.CacheConfig;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cache of materialized query results keyed by the
+ * normalized SQL text. The cache is bounded by the
+ * estimated memory of the cached rows and evicts the
+ * least recently used results first. Results expire
+ * after the configured time to live and can be
+ * invalidated per dataset when the data changes.
+ * Results of sampled queries differ between runs
+ * and are never cached.
+ *
+ * @author Ziyun Wei
+ */
+public class ResultCache {
+    /**
+     * Singleton instance of the result cache.
+     */
+    private static final ResultCache resultCache = new ResultCache(
+            CacheConfig.RESULT_CACHE_BYTES, CacheConfig.RESULT_CACHE_TTL);
+    /**
+     * Extract the queried table from the FROM clause.
+     */
+    private static final Pattern FROM_PATTERN = Pattern.compile(
+            "(?i)\\bFROM\\s+\"?([\\w.]+)\"?");
+    /**
+     * Detect queries on a sample of the table.
+     */
+    private static final Pattern SAMPLE_PATTERN = Pattern.compile("(?i)\\bTABLESAMPLE\\b");
+    /**
+     * Maximal estimated size of cached results in bytes.
+     */
+    private final long maxWeight;
+    /**
+     * Time to live of cached results in milliseconds.
+     */
+    private final long ttlMillis;
+    /**
+     * Cached results in access order, the least recently used first.
+     */
+    private final LinkedHashMap<String, CachedResult> entries = new LinkedHashMap<>(64, 0.75f, true);
+    /**
+     * Estimated size of all cached results in bytes.
+     */
+    private long weight = 0;
+    /**
+     * Incremented on each invalidation. Results of queries
+     * started before an invalidation of their dataset are
+     * not cached.
+     */
+    private long generation = 0;
+    /**
+     * Generation of the last invalidation of each dataset
+     * and of the last invalidation of all datasets.
+     */
+    private final Map<String, Long> datasetGenerations = new HashMap<>();
+    private long allGeneration = 0;
+    private final AtomicLong nrHits = new AtomicLong();
+    private final AtomicLong nrMisses = new AtomicLong();
+    private final AtomicLong nrEvictions = new AtomicLong();
+    private final AtomicLong nrExpirations = new AtomicLong();
+    private final AtomicLong nrInvalidations = new AtomicLong();
+
+    public ResultCache(long maxWeight, long ttlMillis) {
+        this.maxWeight = maxWeight;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public static ResultCache getCache() {
+        return resultCache;
+    }
+
+    /**
+     * Look up the cached result of the query.
+     *
+     * @param sql       SQL query
+     * @return          cached rows or null if absent
+     */
+    public List<String[]> get(String sql) {
+        if (maxWeight <= 0 || isSampled(sql)) {
+            return null;
+        }
+        String key = normalize(sql);
+        synchronized (this) {
+            CachedResult cachedResult = entries.get(key);
+            if (cachedResult != null && isExpired(cachedResult)) {
+                remove(key);
+                nrExpirations.incrementAndGet();
+                cachedResult = null;
+            }
+            if (cachedResult == null) {
+                nrMisses.incrementAndGet();
+                return null;
+            }
+            nrHits.incrementAndGet();
+            return cachedResult.rows;
+        }
+    }
+
+    /**
+     * Current generation of the cache. Callers read the
+     * generation before executing a query and pass it
+     * to put() along with the result.
+     *
+     * @return      generation of the cache
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Cache the result of the query unless its dataset has
+     * been invalidated since the query was started.
+     *
+     * @param sql           SQL query
+     * @param rows          result rows of the query
+     * @param generation    generation of the cache when the query started
+     */
+    public void put(String sql, List<String[]> rows, long generation) {
+        if (maxWeight <= 0 || isSampled(sql)) {
+            return;
+        }
+        String key = normalize(sql);
+        long resultWeight = weigh(key, rows);
+        if (resultWeight > maxWeight) {
+            return;
+        }
+        String dataset = datasetOf(key);
+        CachedResult cachedResult = new CachedResult(dataset,
+                Collections.unmodifiableList(new ArrayList<>(rows)), resultWeight);
+        synchronized (this) {
+            if (generation < allGeneration || generation < datasetGenerations.getOrDefault(dataset, 0L)) {
+                return;
+            }
+            remove(key);
+            entries.put(key, cachedResult);
+            weight += resultWeight;
+            Iterator<CachedResult> iterator = entries.values().iterator();
+            while (weight > maxWeight && iterator.hasNext()) {
+                CachedResult eldest = iterator.next();
+                iterator.remove();
+                weight -= eldest.weight;
+                nrEvictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Drop all cached results of queries on the dataset.
+     *
+     * @param dataset       queried table
+     */
+    public synchronized void invalidate(String dataset) {
+        String table = dataset.toLowerCase();
+        Iterator<CachedResult> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            CachedResult cachedResult = iterator.next();
+            if (table.equals(cachedResult.dataset)) {
+                iterator.remove();
+                weight -= cachedResult.weight;
+                nrInvalidations.incrementAndGet();
+            }
+        }
+        generation++;
+        datasetGenerations.put(table, generation);
+    }
+
+    /**
+     * Drop all cached results.
+     */
+    public synchronized void invalidateAll() {
+        nrInvalidations.addAndGet(entries.size());
+        entries.clear();
+        weight = 0;
+        generation++;
+        allGeneration = generation;
+        datasetGenerations.clear();
+    }
+
+    private boolean isExpired(CachedResult cachedResult) {
+        return ttlMillis > 0 && System.currentTimeMillis() - cachedResult.createMillis > ttlMillis;
+    }
+
+    private void remove(String key) {
+        CachedResult cachedResult = entries.remove(key);
+        if (cachedResult != null) {
+            weight -= cachedResult.weight;
+        }
+    }
+
+    /**
+     * Normalize the SQL text so that queries differing only
+     * in white spaces or trailing semicolons share one entry.
+     * Quoted identifiers and literals are kept as they are.
+     *
+     * @param sql       SQL query
+     * @return          normalized SQL query
+     */
+    public static String normalize(String sql) {
+        StringBuilder normalized = new StringBuilder(sql.length());
+        char quote = 0;
+        boolean space = false;
+        for (int charCtr = 0; charCtr < sql.length(); charCtr++) {
+            char character = sql.charAt(charCtr);
+            if (quote != 0) {
+                normalized.append(character);
+                if (character == quote) {
+                    quote = 0;
+                }
+            }
+            else if (Character.isWhitespace(character)) {
+                space = normalized.length() > 0;
+            }
+            else {
+                if (space) {
+                    normalized.append(' ');
+                    space = false;
+                }
+                if (character == '\'' || character == '"') {
+                    quote = character;
+                }
+                normalized.append(character);
+            }
+        }
+        int length = normalized.length();
+        while (length > 0 && normalized.charAt(length - 1) == ';') {
+            length--;
+        }
+        normalized.setLength(length);
+        return normalized.toString().trim();
+    }
+
+    /**
+     * Extract the queried table of the SQL query.
+     *
+     * @param sql       SQL query
+     * @return          table name in lower case or empty string
+     */
+    public static String datasetOf(String sql) {
+        Matcher matcher = FROM_PATTERN.matcher(sql);
+        return matcher.find() ? matcher.group(1).toLowerCase() : "";
+    }
+
+    /**
+     * Whether the SQL query reads a sample of the table.
+     *
+     * @param sql       SQL query
+     * @return          true if the query samples the table
+     */
+    public static boolean isSampled(String sql) {
+        return SAMPLE_PATTERN.matcher(sql).find();
+    }
+
+    /**
+     * Estimate the memory of cached rows in bytes.
+     */
+    private static long weigh(String key, List<String[]> rows) {
+        long bytes = 64 + 2L * key.length();
+        for (String[] row: rows) {
+            bytes += 16 + 8L * row.length;
+            for (String value: row) {
+                if (value != null) {
+                    bytes += 40 + 2L * value.length();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    public long getNrHits() {
+        return nrHits.get();
+    }
+
+    public long getNrMisses() {
+        return nrMisses.get();
+    }
+
+    public long getNrEvictions() {
+        return nrEvictions.get();
+    }
+
+    public long getNrExpirations() {
+        return nrExpirations.get();
+    }
+
+    public long getNrInvalidations() {
+        return nrInvalidations.get();
+    }
+
+    public synchronized int getNrEntries() {
+        return entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Share of lookups that were served from the cache.
+     *
+     * @return      hit rate between 0 and 1
+     */
+    public double getHitRate() {
+        long hits = nrHits.get();
+        long lookups = hits + nrMisses.get();
+        return lookups == 0 ? 0 : (hits + 0.0) / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "Result cache: entries " + getNrEntries() + ", bytes " + getWeight() + "/" + maxWeight
+                + ", hits " + getNrHits() + ", misses " + getNrMisses()
+                + ", hit rate " + String.format("%.2f", getHitRate())
+                + ", evictions " + getNrEvictions() + ", expirations " + getNrExpirations();
+    }
+
+    /**
+     * Materialized result of one query.
+     */
+    private static class CachedResult {
+        final String dataset;
+        final List<String[]> rows;
+        final long weight;
+        final long createMillis;
+
+        CachedResult(String dataset, List<String[]> rows, long weight) {
+            this.dataset = dataset;
+            this.rows = rows;
+            this.weight = weight;
+            this.createMillis = System.currentTimeMillis();
+        }
+    }
+}
@@ -2,13 +2,25 @@ package server;
 
 import config.HostConfig;
 import config.PlanConfig;
-import gurobi.GRBException;
+import config.PlanContext;
+import config.SearchConfig;
+import connector.ConnectionPool;
+import connector.DBConnector;
+import connector.ModelClient;
+import connector.PSQLConnector;
 import io.javalin.Javalin;
+import io.javalin.http.Context;
 import io.javalin.http.staticfiles.Location;
 import io.javalin.websocket.WsContext;
+import matching.BatchLookup;
 import matching.FuzzySearch;
+import matching.HitMetadata;
+import matching.MatchCache;
 import matching.MatchingVisitor;
 import matching.SelectVisitor;
+import matching.indexing.IncrementalIndexer;
+import matching.indexing.Indexer;
+import matching.schema.Schema;
 import net.sf.jsqlparser.JSQLParserException;
 import net.sf.jsqlparser.expression.Expression;
 import net.sf.jsqlparser.parser.CCJSqlParserUtil;
@@ -17,27 +29,37 @@ import net.sf.jsqlparser.statement.select.PlainSelect;
 import net.sf.jsqlparser.statement.select.Select;
 import net.sf.jsqlparser.statement.select.SelectExpressionItem;
 import net.sf.jsqlparser.statement.select.SelectItem;
-import org.apache.lucene.document.Document;
 import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.ScoreDoc;
 import org.eclipse.jetty.server.*;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import planning.query.QueryFactory;
+import processor.PlotExecutor;
+import processor.ResultCache;
 import planning.viz.*;
+import stats.IndexStats;
 
 import java.io.*;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.sql.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import static matching.FuzzyIndex.INDEX_DIR;
+import static matching.FuzzyIndex.PHONETIC_DIR;
+
 /**
  * The demo servlet. Initialize an https server
  * using Javalin.
@@ -47,7 +69,36 @@ import java.util.stream.Collectors;
 public class LuceneServlet {
     private static Map<WsContext, String> userUsernameMap = new ConcurrentHashMap<>();
     private static int nextUserNumber = 1;
-    private static Connection connection;
+    /**
+     * Anytime planner running for each session.
+     */
+    private static Map<WsContext, AnytimePlanner> sessionPlanners = new ConcurrentHashMap<>();
+    /**
+     * Threads running anytime planners, so that new utterances
+     * of a session are received while planning.
+     */
+    private static final ExecutorService PLANNER_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "anytime-planner");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * Limits the requests holding a pooled connection so that
+     * the remaining connections are left to the plot workers.
+     */
+    private static final Semaphore presenters = new Semaphore(HostConfig.MAX_PRESENTERS, true);
+
+    /**
+     * Whether the request carries the administration token.
+     *
+     * @param ctx       context of the request
+     * @return          true if the request may change server state
+     */
+    private static boolean isAdmin(Context ctx) {
+        String token = ctx.header("X-Admin-Token");
+        return HostConfig.ADMIN_TOKEN != null && token != null && MessageDigest.isEqual(
+                HostConfig.ADMIN_TOKEN.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
 
     private static Server createHttpsServer() {
         Server server = new Server();
@@ -78,35 +129,110 @@ public class LuceneServlet {
             config.addSinglePageRoot("/", "./html/muve.html", Location.EXTERNAL);
         }).start(HostConfig.SERVER_PORT);
 
-        String url = HostConfig.PG_HOST;
-        Properties props = new Properties();
-        props.setProperty("user", "postgres");
-        props.setProperty("password", "postgres");
-        connection = DriverManager.getConnection(url, props);
+        DBConnector dbConnector = PSQLConnector.getConnector();
+        // Open the indexes before the first query arrives
+        FuzzySearch.searchers.preload(SearchConfig.DATASETS);
+        FuzzySearch.searchers.startRefresh(SearchConfig.REFRESH_INTERVAL);
 
         app.post("/query", ctx -> {
             // some code
             String sql = ctx.body();
             System.out.println("Query sql: " + sql);
             // Execute the query
-            Statement statement = connection.createStatement();
-            ResultSet rs = statement.executeQuery(sql);
-
             JSONArray result = new JSONArray();
-            while (rs.next()) {
-                String targetName = rs.getString(1);
-                // Validate number
-                try {
-                    targetName = targetName.equals("null") ? "0" : targetName;
-                    targetName = new BigDecimal(targetName).toPlainString();
-                } catch (Exception e) {
+            presenters.acquire();
+            try (Connection connection = dbConnector.getConnection()) {
+                Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery(sql);
+                while (rs.next()) {
+                    String targetName = rs.getString(1);
+                    // Validate number
+                    try {
+                        targetName = targetName.equals("null") ? "0" : targetName;
+                        targetName = new BigDecimal(targetName).toPlainString();
+                    } catch (Exception e) {
 
+                    }
+                    result.put(targetName);
                 }
-                result.put(targetName);
+            } finally {
+                presenters.release();
             }
             ctx.result(result.toString());
         });
 
+        app.get("/pool", ctx -> {
+            ConnectionPool pool = dbConnector.getPool();
+            JSONObject poolStats = new JSONObject();
+            poolStats.put("size", pool.maxSize).put("active", pool.getNrActive())
+                    .put("idle", pool.getNrIdle()).put("peak", pool.getPeakActive())
+                    .put("checkouts", pool.getNrCheckouts()).put("waits", pool.getNrWaits())
+                    .put("timeouts", pool.getNrTimeouts()).put("saturation", pool.getSaturation())
+                    .put("avgWaitMillis", pool.getAvgWaitMillis());
+            ctx.result(poolStats.toString());
+        });
+
+        app.get("/cache", ctx -> {
+            ResultCache cache = ResultCache.getCache();
+            JSONObject cacheStats = new JSONObject();
+            cacheStats.put("entries", cache.getNrEntries()).put("bytes", cache.getWeight())
+                    .put("maxBytes", cache.getMaxWeight()).put("hits", cache.getNrHits())
+                    .put("misses", cache.getNrMisses()).put("hitRate", cache.getHitRate())
+                    .put("evictions", cache.getNrEvictions()).put("expirations", cache.getNrExpirations())
+                    .put("invalidations", cache.getNrInvalidations());
+            MatchCache matchCache = FuzzySearch.matchCache;
+            cacheStats.put("matches", new JSONObject().put("entries", matchCache.getNrEntries())
+                    .put("hits", matchCache.getNrHits()).put("misses", matchCache.getNrMisses())
+                    .put("hitRate", matchCache.getHitRate()).put("evictions", matchCache.getNrEvictions()));
+            ctx.result(cacheStats.toString());
+        });
+
+        app.post("/cache/invalidate", ctx -> {
+            if (!isAdmin(ctx)) {
+                ctx.status(403).result("Forbidden");
+                return;
+            }
+            // Invalidate one dataset or the whole cache if no dataset is given
+            String dataset = ctx.body().trim();
+            if (dataset.isEmpty()) {
+                ResultCache.getCache().invalidateAll();
+            }
+            else {
+                ResultCache.getCache().invalidate(dataset);
+            }
+            ctx.result("OK");
+        });
+
+        // Index maintenance of one dataset at a time
+        Object indexLock = new Object();
+        app.post("/index/update", ctx -> {
+            // Append new rows of the dataset file or reconcile the index with it, then refresh searchers
+            if (!isAdmin(ctx)) {
+                ctx.status(403).result("Forbidden");
+                return;
+            }
+            JSONObject request = new JSONObject(ctx.body());
+            String dataset = request.getString("dataset");
+            boolean reconcile = request.optString("mode", "append").equals("reconcile");
+            Schema schema = Schema.forDataset(dataset);
+            String inputFilePath = SearchConfig.DATASET_FILES.get(dataset);
+            if (schema == null || inputFilePath == null) {
+                ctx.status(400).result("Unknown dataset: " + dataset);
+                return;
+            }
+            String outputDirPath = (Indexer.Phonetic ? PHONETIC_DIR : INDEX_DIR) + "/" + dataset;
+            IndexStats indexStats;
+            synchronized (indexLock) {
+                try (IncrementalIndexer indexer = new IncrementalIndexer(outputDirPath, schema)) {
+                    indexStats = reconcile ? indexer.reconcile(inputFilePath) : indexer.append(inputFilePath);
+                }
+                FuzzySearch.reopen(dataset);
+                ResultCache.getCache().invalidate(dataset);
+            }
+            ctx.result(new JSONObject().put("rows", indexStats.nrRows).put("documents", indexStats.nrDocs)
+                    .put("deleted", indexStats.nrDeleted).put("millis", indexStats.totalMillis).toString());
+        });
+
         app.post("/study", ctx -> {
             String message = ctx.body();
             String[] elements = message.split("[|]");
@@ -116,8 +242,12 @@ public class LuceneServlet {
                     + ", " + elements[7] + ", " + elements[8] + ");";
             System.out.println(sql + " " + message);
             // Insert a row into database
-            Statement statement = connection.createStatement();
-            statement.execute(sql);
+            presenters.acquire();
+            try (Connection connection = dbConnector.getConnection()) {
+                connection.createStatement().execute(sql);
+            } finally {
+                presenters.release();
+            }
             ctx.result("Done!");
         });
 
@@ -130,8 +260,12 @@ public class LuceneServlet {
                     + ", " + elements[7] + ", " + elements[8] + ");";
             System.out.println(sql + " " + message);
             // Insert a row into database
-            Statement statement = connection.createStatement();
-            statement.execute(sql);
+            presenters.acquire();
+            try (Connection connection = dbConnector.getConnection()) {
+                connection.createStatement().execute(sql);
+            } finally {
+                presenters.release();
+            }
             ctx.result("Done!");
         });
 
@@ -142,37 +276,30 @@ public class LuceneServlet {
             });
             ws.onClose(ctx -> {
                 userUsernameMap.remove(ctx);
+                PlotExecutor.closeSession(ctx);
             });
             ws.onMessage(ctx -> {
                 String message = ctx.message();
                 String[] query_list = message.split(";");
-                List<String> commands = new ArrayList<>(6);
-                commands.add("curl");
-                commands.add("-F");
-                commands.add("t=" + query_list[0]);
-                commands.add("-F");
-                commands.add("q=" + query_list[1]);
-                commands.add(HostConfig.MODEL_HOST);
 
                 int width = (int) Math.floor(Double.parseDouble(query_list[2]));
 
-                ProcessBuilder processBuilder = new ProcessBuilder(commands);
-                Process process = processBuilder.start();
-
-                String result = new BufferedReader(
-                        new InputStreamReader(process.getInputStream()))
-                        .lines()
-                        .collect(Collectors.joining("\n"));
+                String result = ModelClient.getClient().translate(query_list[0], query_list[1]);
                 System.out.println(result);
                 JSONObject jsonObject = new JSONObject(result);
-                try {
-                    searchResults(ctx, jsonObject, query_list[0], 900, query_list[3]);
+                presenters.acquire();
+                try (Connection connection = dbConnector.getConnection()) {
+                    searchResults(ctx, connection, jsonObject, query_list[0], 900, query_list[3],
+                            PlanContext.fromConfig());
                 }
                 catch (Exception e) {
                     e.printStackTrace();
                     System.out.println("Error");
                     ctx.send("{\"data\": [], debug: {}");
                 }
+                finally {
+                    presenters.release();
+                }
             });
         });
 
@@ -181,28 +308,18 @@ public class LuceneServlet {
                 String username = "User" + nextUserNumber++;
                 userUsernameMap.put(ctx, username);
             });
-            ws.onClose(ctx -> userUsernameMap.remove(ctx));
+            ws.onClose(ctx -> {
+                userUsernameMap.remove(ctx);
+                PlotExecutor.closeSession(ctx);
+            });
             ws.onMessage(ctx -> {
                 String message = ctx.message();
                 String[] query_list = message.split("\\|");
                 String dataset = query_list[0];
                 String sentence = query_list[1];
                 String presenter = query_list[5];
-                List<String> commands = new ArrayList<>(6);
-                commands.add("curl");
-                commands.add("-F");
-                commands.add("t=" + dataset);
-                commands.add("-F");
-                commands.add("q=" + sentence);
-                commands.add(HostConfig.MODEL_HOST);
-
-                ProcessBuilder processBuilder = new ProcessBuilder(commands);
-                Process process = processBuilder.start();
-
-                String result = new BufferedReader(
-                        new InputStreamReader(process.getInputStream()))
-                        .lines()
-                        .collect(Collectors.joining("\n"));
+
+                String result = ModelClient.getClient().translate(dataset, sentence);
                 JSONObject resultObj = new JSONObject(result);
 
                 String query = resultObj.getString("sql");
@@ -224,16 +341,13 @@ public class LuceneServlet {
                 }
                 query = query.split(" WHERE ")[0] + " WHERE " + String.join(" AND ", predicates);
                 System.out.println(result);
-                int before = PlanConfig.TOPK;
-                PlanConfig.TOPK = 1;
                 try {
-                    defaultResults(ctx, query, dataset, 900, query_list[3], query_list[4]);
-                    PlanConfig.TOPK = before;
+                    defaultResults(ctx, query, dataset, 900, query_list[3], query_list[4],
+                            PlanContext.fromConfig().withTopK(1));
                 }
                 catch (Exception e) {
                     e.printStackTrace();
                     System.out.println("Error");
-                    PlanConfig.TOPK = before;
                     ctx.send("{\"data\": [], debug: {}");
                 }
             });
@@ -244,31 +358,21 @@ public class LuceneServlet {
                 String username = "User" + nextUserNumber++;
                 userUsernameMap.put(ctx, username);
             });
-            ws.onClose(ctx -> userUsernameMap.remove(ctx));
+            ws.onClose(ctx -> {
+                userUsernameMap.remove(ctx);
+                PlotExecutor.closeSession(ctx);
+            });
             ws.onMessage(ctx -> {
                 String message = ctx.message();
                 String[] query_list = message.split(";");
                 String dataset = query_list[0];
                 String sentence = query_list[1];
-                List<String> commands = new ArrayList<>(6);
-                commands.add("curl");
-                commands.add("-F");
-                commands.add("t=" + dataset);
-                commands.add("-F");
-                commands.add("q=" + sentence);
-                commands.add(HostConfig.MODEL_HOST);
-
-                ProcessBuilder processBuilder = new ProcessBuilder(commands);
-                Process process = processBuilder.start();
-
-                String result = new BufferedReader(
-                        new InputStreamReader(process.getInputStream()))
-                        .lines()
-                        .collect(Collectors.joining("\n"));
-                System.out.println(result);
 
-                try {
+                String result = ModelClient.getClient().translate(dataset, sentence);
+                System.out.println(result);
 
+                presenters.acquire();
+                try (Connection connection = dbConnector.getConnection()) {
                     JSONObject jsonObject = new JSONObject(result);
                     String sql = jsonObject.getString("sql") + ";";
                     Select sqlStatement = (Select) CCJSqlParserUtil.parse(sql);
@@ -292,18 +396,19 @@ public class LuceneServlet {
                     }
                     String curColumn = visitor.columns.get(0).getColumnName();
                     String curValue = listParams.get(0);
-                    // Fuzzy search
-                    ScoreDoc[] docs = FuzzySearch.search(curValue, dataset);
+                    // Fuzzy search, resolving the matches on the searched snapshot
+                    BatchLookup lookup = BatchLookup.search(dataset,
+                            Collections.singletonList(curValue), PlanContext.fromConfig().topK);
+                    ScoreDoc[] docs = lookup.hits[0];
                     List<ScoreDoc> scoreList = Arrays.stream(docs).sorted((doc1, doc2) ->
                             Double.compare(doc2.score, doc1.score)).collect(Collectors.toList());
 
                     Set<String> columns = new HashSet<>(docs.length);
                     List<String> valuesList = new ArrayList<>(docs.length);
-                    IndexSearcher searcher = FuzzySearch.searchers.get(dataset);
+                    HitMetadata metadata = lookup.metadata(dataset);
                     for (ScoreDoc scoreDoc: scoreList) {
-                        Document hitDoc = searcher.doc(scoreDoc.doc);
-                        String column = hitDoc.get("column");
-                        String value = hitDoc.get("text");
+                        String column = metadata.column(scoreDoc.doc);
+                        String value = metadata.text(scoreDoc.doc);
                         columns.add(column);
                         if (!valuesList.contains(value)) {
                             valuesList.add(value);
@@ -354,6 +459,9 @@ public class LuceneServlet {
                     e.printStackTrace();
                     ctx.send("[]");
                 }
+                finally {
+                    presenters.release();
+                }
             });
         });
 
@@ -364,29 +472,21 @@ public class LuceneServlet {
             });
             ws.onClose(ctx -> {
                 userUsernameMap.remove(ctx);
+                cancelPlanner(ctx);
+                PlotExecutor.closeSession(ctx);
             });
             ws.onMessage(ctx -> {
+                long startMillis = System.currentTimeMillis();
+                // A new utterance replaces the plans of the previous one
+                cancelPlanner(ctx);
                 String message = ctx.message();
                 String[] query_list = message.split("\\|");
-                List<String> commands = new ArrayList<>(6);
-                commands.add("curl");
-                commands.add("-F");
-                commands.add("t=" + query_list[0]);
-                commands.add("-F");
-                commands.add("q=" + query_list[1]);
-                commands.add(HostConfig.MODEL_HOST);
                 String presenter = query_list[5];
                 String dataset = query_list[0];
 
                 int width = (int) Math.floor(Double.parseDouble(query_list[2]));
 
-                ProcessBuilder processBuilder = new ProcessBuilder(commands);
-                Process process = processBuilder.start();
-
-                String result = new BufferedReader(
-                        new InputStreamReader(process.getInputStream()))
-                        .lines()
-                        .collect(Collectors.joining("\n"));
+                String result = ModelClient.getClient().translate(query_list[0], query_list[1]);
                 JSONObject resultObj = new JSONObject(result);
                 String query = resultObj.getString("sql");
                 String select = query.split(" FROM")[0].split(" ")[1];
@@ -408,18 +508,19 @@ public class LuceneServlet {
                 query = query.split(" WHERE ")[0] + " WHERE " + String.join(" AND ", predicates);
                 System.out.println(result);
 //                String query = query_list[1];
+                PlanContext context = PlanContext.fromConfig();
                 try {
                     if (presenter.equals("incremental")) {
-                        incrementalResults(ctx, query, dataset, 900, query_list[3], query_list[4]);
+                        incrementalResults(ctx, query, dataset, 900, query_list[3], query_list[4], context);
                     }
                     else if (presenter.equals("approximate")) {
-                        approximateResults(ctx, query, dataset, 900, query_list[4]);
+                        approximateResults(ctx, query, dataset, 900, query_list[4], context);
                     }
-                    else if (presenter.equals("backup")) {
-                        ILPBackupSearch(ctx, query, dataset, 900, query_list[4]);
+                    else if (presenter.equals("backup") || presenter.equals("anytime")) {
+                        anytimeResults(ctx, query, dataset, 900, query_list[4], context, startMillis);
                     }
                     else {
-                        defaultResults(ctx, query, dataset, 900, query_list[3], query_list[4]);
+                        defaultResults(ctx, query, dataset, 900, query_list[3], query_list[4], context);
                     }
                 }
                 catch (Exception e) {
@@ -434,9 +535,10 @@ public class LuceneServlet {
     private static void approximateResults(WsContext session,
                                            String query,
                                            String dataset,
-                                           int width, String time)
-            throws ParseException, JSQLParserException, IOException, SQLException {
-        QueryFactory queryFactory = new QueryFactory(query);
+                                           int width, String time,
+                                           PlanContext context)
+            throws Exception {
+        QueryFactory queryFactory = new QueryFactory(query, context);
 //        queryFactory.queries[0].probability = 0.5;
 //        for (DataPoint dataPoint: queryFactory.queries) {
 //            if (dataPoint != queryFactory.queries[0]) {
@@ -444,13 +546,14 @@ public class LuceneServlet {
 //            }
 //        }
         List<Map<Plot, List<DataPoint>>> optimalPlan = PlotGreedyPlanner.plan(queryFactory.queries,
-                queryFactory.nrDistinctValues, PlanConfig.NR_ROWS, PlanConfig.R, queryFactory, false);
+                queryFactory.nrDistinctValues, context.nrRows, context.R, queryFactory, false);
         List<Plot> highlightedPlots = new ArrayList<>();
         List<Plot> uncoloredPlots = new ArrayList<>();
         JSONObject divInformation = new JSONObject();
         JSONArray divTemplates = new JSONArray();
         int id = 0;
         Map<Plot, String> plotToName = new HashMap<>();
+        Map<Plot, JSONObject> plotToDiv = new HashMap<>();
         for (Map<Plot, List<DataPoint>> plotToPoints: optimalPlan) {
             JSONArray highlightedDivs = new JSONArray();
             JSONArray uncoloredDivs = new JSONArray();
@@ -473,157 +576,48 @@ public class LuceneServlet {
                 }
                 id++;
                 plotToName.put(plot, name);
-
-                // Sampling data
-                String mergedQuery = queryFactory.plotQuery(plot, query, true);
-                Statement statement = connection.createStatement();
-                ResultSet rs = statement.executeQuery(mergedQuery);
-
-                JSONArray result = new JSONArray();
-                int freeIndex = plot.freeIndex;
-                boolean isLiteral = !queryFactory.valueIndex.contains(freeIndex) && plot.nrDataPoints > 1;
-                int indexPos = Math.max(queryFactory.columnIndex.indexOf(freeIndex),
-                        queryFactory.valueIndex.indexOf(freeIndex));
-                int columnIndex = queryFactory.columnIndex.get(indexPos);
-                int valueIndex = queryFactory.valueIndex.get(indexPos);
-                int[] vector = plot.dataPoints.get(0).vector;
-
-                String groupBy = isLiteral ? queryFactory.keyToTerms[valueIndex][vector[valueIndex]]
-                        : queryFactory.keyToTerms[columnIndex][vector[columnIndex]];
-                // A list of highlighted labels
-                List<String> highlightedValues = plot.dataPoints.stream()
-                        .filter(x -> x.highlighted)
-                        .map(x -> isLiteral ? queryFactory.keyToTerms[columnIndex][x.vector[columnIndex]]
-                                : queryFactory.keyToTerms[valueIndex][x.vector[valueIndex]]).collect(Collectors.toList());
-                if (isLiteral) {
-                    rs.next();
-                    for (int columnCtr = 1; columnCtr <= plot.nrDataPoints; columnCtr++) {
-                        String value = rs.getString(columnCtr);
-                        String targetName = queryFactory.keyToTerms[columnIndex]
-                                [plot.dataPoints.get(columnCtr - 1).vector[columnIndex]];
-                        JSONObject valueObj = new JSONObject();
-                        valueObj.put("highlighted", highlightedValues.contains(targetName))
-                                .put("results", value).put("type", "agg")
-                                .put("label", targetName)
-                                .put("context", "value")
-                                .put("groupby", groupBy);
-                        result.put(valueObj);
-                    }
-                }
-                else {
-                    Set<String> containKeys = new HashSet<>();
-                    while (rs.next()) {
-                        String value = rs.getString(1);
-                        String targetName = rs.getString(2);
-                        JSONObject valueObj = new JSONObject();
-                        // Validate number
-                        try {
-                            value = value.equals("null") ? "0" : value;
-                            value = new BigDecimal(value).toPlainString();
-                        } catch (Exception ignored) {
-
-                        }
-                        valueObj.put("highlighted", highlightedValues.contains(targetName))
-                                .put("results", value).put("type", "agg")
-                                .put("label", targetName)
-                                .put("context", "column")
-                                .put("groupby", groupBy);
-                        containKeys.add(targetName);
-                        result.put(valueObj);
-                    }
-                    plot.dataPoints.stream().map(x -> queryFactory.keyToTerms[valueIndex]
-                            [x.vector[valueIndex]])
-                            .filter(x -> !containKeys.contains(x))
-                            .forEach(x -> result.put(new JSONObject().put("highlighted", highlightedValues.contains(x))
-                                    .put("results", 0).put("type", "agg")
-                                    .put("label", x)
-                                    .put("context", "column")
-                                    .put("groupby", groupBy)));
-                }
-                divObj.put("result", result);
+                plotToDiv.put(plot, divObj);
             }
             highlightedDivs.putAll(uncoloredDivs);
             divTemplates.put(highlightedDivs);
         }
+        highlightedPlots.addAll(uncoloredPlots);
+        // Sampling data
+        List<String> sampleQueries = highlightedPlots.stream().map(plot ->
+                queryFactory.plotQuery(plot, query, true)).collect(Collectors.toList());
+        PlotExecutor.execute(session, sampleQueries, (plotCtr, rows) -> {
+            Plot plot = highlightedPlots.get(plotCtr);
+            plotToDiv.get(plot).put("result", plotResult(rows, plot, queryFactory, null, true));
+            return true;
+        });
         divInformation.put("data", divTemplates);
         divInformation.put("timestamp", time);
         // Send div specifications
         session.send(divInformation.toString());
-        highlightedPlots.addAll(uncoloredPlots);
-        for (Plot plot: highlightedPlots) {
-            String mergedQuery = queryFactory.plotQuery(plot, query, false);
-            Statement statement = connection.createStatement();
-            ResultSet rs = statement.executeQuery(mergedQuery);
-
-            JSONArray result = new JSONArray();
-            int freeIndex = plot.freeIndex;
-            boolean isLiteral = !queryFactory.valueIndex.contains(freeIndex) && plot.nrDataPoints > 1;
-            int indexPos = Math.max(queryFactory.columnIndex.indexOf(freeIndex),
-                    queryFactory.valueIndex.indexOf(freeIndex));
-            int columnIndex = queryFactory.columnIndex.get(indexPos);
-            int valueIndex = queryFactory.valueIndex.get(indexPos);
-            int[] vector = plot.dataPoints.get(0).vector;
-
-            String groupBy = isLiteral ? queryFactory.keyToTerms[valueIndex][vector[valueIndex]]
-                    : queryFactory.keyToTerms[columnIndex][vector[columnIndex]];
-            // A list of highlighted labels
-            List<String> highlightedValues = plot.dataPoints.stream()
-                    .filter(x -> x.highlighted)
-                    .map(x -> isLiteral ? queryFactory.keyToTerms[columnIndex][x.vector[columnIndex]]
-                            : queryFactory.keyToTerms[valueIndex][x.vector[valueIndex]]).collect(Collectors.toList());
-            if (isLiteral) {
-                rs.next();
-                for (int columnCtr = 1; columnCtr <= plot.nrDataPoints; columnCtr++) {
-                    String value = rs.getString(columnCtr);
-                    String targetName = queryFactory.keyToTerms[columnIndex]
-                            [plot.dataPoints.get(columnCtr - 1).vector[columnIndex]];
-                    JSONObject valueObj = new JSONObject();
-                    valueObj.put("highlighted", highlightedValues.contains(targetName))
-                            .put("results", value).put("type", "agg")
-                            .put("label", targetName)
-                            .put("context", "value")
-                            .put("groupby", groupBy);
-                    result.put(valueObj);
-                }
-            }
-            else {
-                while (rs.next()) {
-                    String value = rs.getString(1);
-                    String targetName = rs.getString(2);
-                    JSONObject valueObj = new JSONObject();
-                    // Validate number
-                    try {
-                        value = value.equals("null") ? "0" : value;
-                        value = new BigDecimal(value).toPlainString();
-                    } catch (Exception ignored) {
-
-                    }
-                    valueObj.put("highlighted", highlightedValues.contains(targetName))
-                            .put("results", value).put("type", "agg")
-                            .put("label", targetName)
-                            .put("context", "column")
-                            .put("groupby", groupBy);
-                    result.put(valueObj);
-                }
-            }
+        List<String> plotQueries = highlightedPlots.stream().map(plot ->
+                queryFactory.plotQuery(plot, query, false)).collect(Collectors.toList());
+        PlotExecutor.execute(session, plotQueries, (plotCtr, rows) -> {
+            Plot plot = highlightedPlots.get(plotCtr);
             if (!userUsernameMap.containsKey(session)) {
-                return;
+                return false;
             }
             JSONObject plotInformation = new JSONObject();
-            plotInformation.put("data", result);
+            plotInformation.put("data", plotResult(rows, plot, queryFactory, null, false));
             plotInformation.put("name", plotToName.get(plot));
             plotInformation.put("timestamp", time);
             session.send(plotInformation.toString());
-        }
+            return true;
+        });
     }
 
     private static void incrementalResults(WsContext session,
                                            String query,
                                            String dataset,
                                            int width,
-                                           String planner, String time)
-            throws ParseException, JSQLParserException, IOException, SQLException {
-        QueryFactory queryFactory = new QueryFactory(query);
+                                           String planner, String time,
+                                           PlanContext context)
+            throws Exception {
+        QueryFactory queryFactory = new QueryFactory(query, context);
 //        queryFactory.queries[0].probability = 0.5;
 //        for (DataPoint dataPoint: queryFactory.queries) {
 //            if (dataPoint != queryFactory.queries[0]) {
@@ -631,7 +625,7 @@ public class LuceneServlet {
 //            }
 //        }
         List<Map<Plot, List<DataPoint>>> optimalPlan = PlotGreedyPlanner.plan(queryFactory.queries,
-                queryFactory.nrDistinctValues, PlanConfig.NR_ROWS, PlanConfig.R, queryFactory, false);
+                queryFactory.nrDistinctValues, context.nrRows, context.R, queryFactory, false);
         List<Plot> highlightedPlots = new ArrayList<>();
         List<Plot> uncoloredPlots = new ArrayList<>();
         JSONObject divInformation = new JSONObject();
@@ -669,81 +663,35 @@ public class LuceneServlet {
         // Send div specifications
         session.send(divInformation.toString());
         highlightedPlots.addAll(uncoloredPlots);
-        for (Plot plot: highlightedPlots) {
-            String mergedQuery = queryFactory.plotQuery(plot, query, false);
-            Statement statement = connection.createStatement();
-            ResultSet rs = statement.executeQuery(mergedQuery);
-
-            JSONArray result = new JSONArray();
-            int freeIndex = plot.freeIndex;
-            boolean isLiteral = !queryFactory.valueIndex.contains(freeIndex) && plot.nrDataPoints > 1;
-            int indexPos = Math.max(queryFactory.columnIndex.indexOf(freeIndex),
-                    queryFactory.valueIndex.indexOf(freeIndex));
-            int columnIndex = queryFactory.columnIndex.get(indexPos);
-            int valueIndex = queryFactory.valueIndex.get(indexPos);
-            int[] vector = plot.dataPoints.get(0).vector;
-
-            String groupBy = isLiteral ? queryFactory.keyToTerms[valueIndex][vector[valueIndex]]
-                    : queryFactory.keyToTerms[columnIndex][vector[columnIndex]];
-            // A list of highlighted labels
-            List<String> highlightedValues = plot.dataPoints.stream()
-                    .filter(x -> x.highlighted)
-                    .map(x -> isLiteral ? queryFactory.keyToTerms[columnIndex][x.vector[columnIndex]]
-                            : queryFactory.keyToTerms[valueIndex][x.vector[valueIndex]]).collect(Collectors.toList());
-            if (isLiteral) {
-                rs.next();
-                for (int columnCtr = 1; columnCtr <= plot.nrDataPoints; columnCtr++) {
-                    String value = rs.getString(columnCtr);
-                    String targetName = queryFactory.keyToTerms[columnIndex]
-                            [plot.dataPoints.get(columnCtr - 1).vector[columnIndex]];
-                    JSONObject valueObj = new JSONObject();
-                    valueObj.put("highlighted", highlightedValues.contains(targetName))
-                            .put("results", value).put("type", "agg")
-                            .put("label", targetName)
-                            .put("context", "value")
-                            .put("groupby", groupBy);
-                    result.put(valueObj);
-                }
-            }
-            else {
-                while (rs.next()) {
-                    String value = rs.getString(1);
-                    String targetName = rs.getString(2);
-                    JSONObject valueObj = new JSONObject();
-                    // Validate number
-                    try {
-                        value = value.equals("null") ? "0" : value;
-                        value = new BigDecimal(value).toPlainString();
-                    } catch (Exception ignored) {
-
-                    }
-                    valueObj.put("highlighted", highlightedValues.contains(targetName))
-                            .put("results", value).put("type", "agg")
-                            .put("label", targetName)
-                            .put("context", "column")
-                            .put("groupby", groupBy);
-                    result.put(valueObj);
-                }
-            }
+        List<String> plotQueries = highlightedPlots.stream().map(plot ->
+                queryFactory.plotQuery(plot, query, false)).collect(Collectors.toList());
+        // Push each plot as soon as its query finishes
+        PlotExecutor.execute(session, plotQueries, (plotCtr, rows) -> {
+            Plot plot = highlightedPlots.get(plotCtr);
             JSONObject plotInformation = new JSONObject();
-            plotInformation.put("data", result);
+            plotInformation.put("data", plotResult(rows, plot, queryFactory, null, false));
             plotInformation.put("name", plotToName.get(plot));
             plotInformation.put("timestamp", time);
             if (!userUsernameMap.containsKey(session)) {
-                return;
+                return false;
             }
             session.send(plotInformation.toString());
             System.out.println(plotInformation);
-        }
+            return true;
+        });
     }
 
     private static void defaultResults(WsContext session,
                                            String query,
                                            String dataset,
                                            int width,
-                                           String planner, String time)
-            throws ParseException, JSQLParserException, IOException, SQLException {
-        QueryFactory queryFactory = new QueryFactory(query);
+                                           String planner, String time,
+                                           PlanContext context)
+            throws Exception {
+        boolean isGreedy = !planner.equals("bnb") && !planner.equals("dp");
+        // The greedy planner pulls queries beyond a screen only if they improve the plan
+        QueryFactory queryFactory = isGreedy ? new QueryFactory(query, context,
+                PlotGreedyPlanner.screenQueries(context.nrRows, context.R)) : new QueryFactory(query, context);
         String title = query.split(" FROM ")[0].split(" ")[1];
 //        int index = 2;
 //        queryFactory.queries[index].probability = 0.5;
@@ -754,193 +702,337 @@ public class LuceneServlet {
 //            }
 //            System.out.println(queryFactory.queries[i].probability);
 //        }
-        List<Map<Plot, List<DataPoint>>> optimalPlan = PlotGreedyPlanner.plan(queryFactory.queries,
-                queryFactory.nrDistinctValues, PlanConfig.NR_ROWS, PlanConfig.R, queryFactory, false);
+        List<Map<Plot, List<DataPoint>>> optimalPlan;
+        if (planner.equals("bnb")) {
+            optimalPlan = BranchBoundPlanner.plan(queryFactory.queries, queryFactory.nrDistinctValues,
+                    context.nrRows, context.R, queryFactory);
+        }
+        else if (planner.equals("dp")) {
+            optimalPlan = KnapsackPlanner.plan(queryFactory.queries, queryFactory.nrDistinctValues,
+                    context.nrRows, context.R, queryFactory);
+        }
+        else {
+            optimalPlan = PlotGreedyPlanner.planIncrementally(queryFactory, context.nrRows, context.R, false);
+        }
 //        queryFactory.queries[0].highlighted = true;
-        JSONArray resultRows = new JSONArray();
+        JSONArray resultRows = planResults(session, optimalPlan, queryFactory, query, title);
+        if (resultRows == null) {
+            return;
+        }
         JSONObject resultObj = new JSONObject();
-        for (Map<Plot, List<DataPoint>> plotListMap: optimalPlan) {
-            JSONArray resultArray = new JSONArray();
-            int sumPixels = plotListMap.values().stream().mapToInt(points ->
-                    points.size() * PlanConfig.B + PlanConfig.C).sum();
-            for (Plot plot: plotListMap.keySet()) {
-                int pixels = (int) Math.round((plot.nrDataPoints * PlanConfig.B + PlanConfig.C + 0.0) / sumPixels * 90);
-                String mergedQuery = queryFactory.plotQuery(plot, query, false);
-                Statement statement = connection.createStatement();
-                ResultSet rs = statement.executeQuery(mergedQuery);
-                JSONArray result = new JSONArray();
-
-                int freeIndex = plot.freeIndex;
-                boolean isLiteral = !queryFactory.valueIndex.contains(freeIndex) && plot.nrDataPoints > 1;
-                int indexPos = Math.max(queryFactory.columnIndex.indexOf(freeIndex),
-                        queryFactory.valueIndex.indexOf(freeIndex));
-                int columnIndex = queryFactory.columnIndex.get(indexPos);
-                int valueIndex = queryFactory.valueIndex.get(indexPos);
-                int[] vector = plot.dataPoints.get(0).vector;
-
-                String groupBy = isLiteral ? queryFactory.keyToTerms[valueIndex][vector[valueIndex]]
-                        : queryFactory.keyToTerms[columnIndex][vector[columnIndex]];
-                // A list of highlighted labels
-                List<String> highlightedValues = plot.dataPoints.stream()
-                        .filter(x -> x.highlighted)
-                        .map(x -> isLiteral ? queryFactory.keyToTerms[columnIndex][x.vector[columnIndex]]
-                                : queryFactory.keyToTerms[valueIndex][x.vector[valueIndex]]).collect(Collectors.toList());
-                if (isLiteral) {
-                    rs.next();
-                    for (int columnCtr = 1; columnCtr <= plot.nrDataPoints; columnCtr++) {
-                        String value = rs.getString(columnCtr);
-                        String targetName = queryFactory.keyToTerms[columnIndex]
-                                [plot.dataPoints.get(columnCtr - 1).vector[columnIndex]];
-                        JSONObject valueObj = new JSONObject();
-                        valueObj.put("highlighted", highlightedValues.contains(targetName))
-                                .put("results", value).put("type", "agg")
-                                .put("label", targetName)
-                                .put("context", "value")
-                                .put("groupby", groupBy).put("title", title);
-                        result.put(valueObj);
+        resultObj.put("data", resultRows);
+        session.send(resultObj.toString());
+    }
+
+    /**
+     * Stop the anytime planner of the session, if any.
+     */
+    private static void cancelPlanner(WsContext session) {
+        AnytimePlanner planner = sessionPlanners.remove(session);
+        if (planner != null) {
+            planner.cancel();
+        }
+    }
+
+    /**
+     * Send the greedy plan at once and better plans of the ILP
+     * planner as they are found, until the planning timeout,
+     * counted from the arrival of the utterance, or the next
+     * utterance of the session. Each plan is sent as a layout
+     * of named plots, followed by the results of the plots that
+     * were not part of the previous plan; unchanged plots keep
+     * their names. Plans are sent by a separate thread so that
+     * the solver never waits for queries, a plan superseded
+     * before it is sent is skipped.
+     */
+    private static void anytimeResults(WsContext session,
+                                       String query,
+                                       String dataset,
+                                       int width, String time,
+                                       PlanContext context,
+                                       long startMillis)
+            throws Exception {
+        QueryFactory queryFactory = new QueryFactory(query, context);
+        AnytimePlanner planner = new AnytimePlanner(queryFactory, context, startMillis);
+        sessionPlanners.put(session, planner);
+        ExecutorService sender = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "anytime-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicReference<List<Map<Plot, List<DataPoint>>>> nextPlan = new AtomicReference<>();
+        Map<String, String> sentNames = new HashMap<>();
+        int[] nextName = new int[]{0};
+        Runnable sendNextPlan = () -> {
+            List<Map<Plot, List<DataPoint>>> plan = nextPlan.getAndSet(null);
+            if (plan == null || planner.isCancelled() || !userUsernameMap.containsKey(session)) {
+                return;
+            }
+            try {
+                sendChangedPlots(session, plan, queryFactory, query, time, sentNames, nextName);
+            } catch (Exception e) {
+                e.printStackTrace();
+                planner.cancel();
+            }
+        };
+        PLANNER_EXECUTOR.execute(() -> {
+            try {
+                planner.plan((plan, waitTime) -> {
+                    if (planner.isCancelled() || !userUsernameMap.containsKey(session)) {
+                        return false;
                     }
-                }
-                else {
-                    while (rs.next()) {
-                        String value = rs.getString(1);
-                        String targetName = rs.getString(2);
-                        JSONObject valueObj = new JSONObject();
-                        // Validate number
-                        try {
-                            value = value.equals("null") ? "0" : value;
-                            value = new BigDecimal(value).toPlainString();
-                        } catch (Exception ignored) {
+                    nextPlan.set(plan);
+                    sender.execute(sendNextPlan);
+                    return true;
+                });
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                sessionPlanners.remove(session, planner);
+                sender.shutdown();
+            }
+        });
+    }
 
-                        }
-                        valueObj.put("highlighted", highlightedValues.contains(targetName))
-                                .put("results", value).put("type", "agg")
-                                .put("label", targetName)
-                                .put("context", "column")
-                                .put("groupby", groupBy).put("title", title);
-                        result.put(valueObj);
+    /**
+     * Send the layout of the plan and the results of its new plots.
+     *
+     * @param sentNames     names of the plots sent so far by signature
+     * @param nextName      number of the next plot name
+     * @return              whether the session is still open
+     * @throws Exception
+     */
+    private static boolean sendChangedPlots(WsContext session,
+                                            List<Map<Plot, List<DataPoint>>> plan,
+                                            QueryFactory queryFactory,
+                                            String query, String time,
+                                            Map<String, String> sentNames,
+                                            int[] nextName) throws Exception {
+        Map<String, String> planNames = new HashMap<>();
+        List<Plot> changedPlots = new ArrayList<>();
+        List<Plot> uncoloredPlots = new ArrayList<>();
+        Map<Plot, String> plotToName = new HashMap<>();
+        JSONArray divTemplates = new JSONArray();
+        for (Map<Plot, List<DataPoint>> plotToPoints: plan) {
+            JSONArray highlightedDivs = new JSONArray();
+            JSONArray uncoloredDivs = new JSONArray();
+            int sumPixels = plotToPoints.values().stream().mapToInt(points ->
+                    points.size() * PlanConfig.B + PlanConfig.C).sum();
+            for (Plot plot: plotToPoints.keySet()) {
+                String signature = AnytimePlanner.signature(plot);
+                String name = sentNames.get(signature);
+                if (name == null) {
+                    name = "viz_" + nextName[0]++;
+                    if (plot.nrHighlighted > 0) {
+                        changedPlots.add(plot);
+                    }
+                    else {
+                        uncoloredPlots.add(plot);
                     }
                 }
-                JSONObject plotInformation = new JSONObject();
-                plotInformation.put("data", result);
-                plotInformation.put("width", pixels);
-                resultArray.put(plotInformation);
-                if (!userUsernameMap.containsKey(session)) {
-                    return;
+                planNames.put(signature, name);
+                plotToName.put(plot, name);
+                JSONObject divObj = new JSONObject();
+                divObj.put("name", name);
+                int pixels = (int) Math.round((plot.nrDataPoints * PlanConfig.B + PlanConfig.C + 0.0) / sumPixels * 90);
+                divObj.put("width", pixels);
+                if (plot.nrHighlighted > 0) {
+                    highlightedDivs.put(divObj);
+                }
+                else {
+                    uncoloredDivs.put(divObj);
                 }
             }
-            resultRows.put(resultArray);
+            highlightedDivs.putAll(uncoloredDivs);
+            divTemplates.put(highlightedDivs);
         }
-        resultObj.put("data", resultRows);
-        session.send(resultObj.toString());
+        // Start with highlighted plots
+        changedPlots.addAll(uncoloredPlots);
+        sentNames.clear();
+        sentNames.putAll(planNames);
+        JSONObject divInformation = new JSONObject();
+        divInformation.put("data", divTemplates);
+        divInformation.put("timestamp", time);
+        session.send(divInformation.toString());
+        List<String> plotQueries = changedPlots.stream().map(plot ->
+                queryFactory.plotQuery(plot, query, false)).collect(Collectors.toList());
+        PlotExecutor.execute(session, plotQueries, (plotCtr, rows) -> {
+            Plot plot = changedPlots.get(plotCtr);
+            if (!userUsernameMap.containsKey(session)) {
+                return false;
+            }
+            JSONObject plotInformation = new JSONObject();
+            plotInformation.put("data", plotResult(rows, plot, queryFactory, null, false));
+            plotInformation.put("name", plotToName.get(plot));
+            plotInformation.put("timestamp", time);
+            session.send(plotInformation.toString());
+            return true;
+        });
+        return userUsernameMap.containsKey(session);
     }
 
-    private static void ILPBackupSearch(WsContext session,
-                                        String query,
-                                        String dataset,
-                                        int width,
-                                        String time)
-            throws JSQLParserException, IOException, ParseException, SQLException, GRBException {
-        QueryFactory queryFactory = new QueryFactory(query);
-        double[] timeouts = new double[]{0.256, 0.512, 1.024};
-
-        for (Double timeout: timeouts) {
-            PlanConfig.TIMEOUT = timeout;
-            List<Map<Plot, List<DataPoint>>> optimalPlan = WaitTimeGurobiPlanner.plan(queryFactory.queries,
-                    queryFactory.nrDistinctValues, PlanConfig.NR_ROWS, PlanConfig.R, queryFactory);
-            JSONArray resultRows = new JSONArray();
-            JSONObject resultObj = new JSONObject();
-            for (Map<Plot, List<DataPoint>> plotListMap: optimalPlan) {
-                JSONArray resultArray = new JSONArray();
-                int sumPixels = plotListMap.values().stream().mapToInt(points ->
-                        points.size() * PlanConfig.B + PlanConfig.C).sum();
-                for (Plot plot: plotListMap.keySet()) {
-                    List<DataPoint> points = plotListMap.get(plot);
-                    plot.dataPoints.clear();
-                    plot.nrDataPoints = 0;
-                    points.forEach(plot::addDataPoint);
-
-                    int nrSize = points.size();
-                    int pixels = (int) Math.round((nrSize * PlanConfig.B + PlanConfig.C + 0.0) / sumPixels * 90);
-                    String mergedQuery = queryFactory.plotQuery(plot, query, false);
-                    Statement statement = connection.createStatement();
-                    ResultSet rs = statement.executeQuery(mergedQuery);
-                    JSONArray result = new JSONArray();
-
-                    int freeIndex = plot.freeIndex;
-                    boolean isLiteral = !queryFactory.valueIndex.contains(freeIndex) && plot.nrDataPoints > 1;
-                    int indexPos = Math.max(queryFactory.columnIndex.indexOf(freeIndex),
-                            queryFactory.valueIndex.indexOf(freeIndex));
-                    int columnIndex = queryFactory.columnIndex.get(indexPos);
-                    int valueIndex = queryFactory.valueIndex.get(indexPos);
-                    int[] vector = plot.dataPoints.get(0).vector;
-
-                    String groupBy = isLiteral ? queryFactory.keyToTerms[valueIndex][vector[valueIndex]]
-                            : queryFactory.keyToTerms[columnIndex][vector[columnIndex]];
-                    // A list of highlighted labels
-                    List<String> highlightedValues = plot.dataPoints.stream()
-                            .filter(x -> x.highlighted)
-                            .map(x -> isLiteral ? queryFactory.keyToTerms[columnIndex][x.vector[columnIndex]]
-                                    : queryFactory.keyToTerms[valueIndex][x.vector[valueIndex]]).collect(Collectors.toList());
-                    if (isLiteral) {
-                        rs.next();
-                        for (int columnCtr = 1; columnCtr <= plot.nrDataPoints; columnCtr++) {
-                            String value = rs.getString(columnCtr);
-                            String targetName = queryFactory.keyToTerms[columnIndex]
-                                    [plot.dataPoints.get(columnCtr - 1).vector[columnIndex]];
-                            JSONObject valueObj = new JSONObject();
-                            valueObj.put("highlighted", highlightedValues.contains(targetName))
-                                    .put("results", value).put("type", "agg")
-                                    .put("label", targetName)
-                                    .put("context", "value")
-                                    .put("groupby", groupBy);
-                            result.put(valueObj);
-                        }
-                    }
-                    else {
-                        while (rs.next()) {
-                            String value = rs.getString(1);
-                            String targetName = rs.getString(2);
-                            JSONObject valueObj = new JSONObject();
-                            // Validate number
-                            try {
-                                value = value.equals("null") ? "0" : value;
-                                value = new BigDecimal(value).toPlainString();
-                            } catch (Exception ignored) {
-
-                            }
+    /**
+     * Execute the queries of all plots in the plan in parallel,
+     * highlighted plots first, and arrange the results by rows
+     * of the plan.
+     *
+     * @param session           session of the user
+     * @param optimalPlan       plots in each row
+     * @param queryFactory      factory that generated the queries
+     * @param query             query template
+     * @param title             title of bars or null
+     * @return                  results of plots in each row or null
+     *                          if the session has been closed
+     * @throws Exception
+     */
+    private static JSONArray planResults(WsContext session,
+                                         List<Map<Plot, List<DataPoint>>> optimalPlan,
+                                         QueryFactory queryFactory,
+                                         String query, String title) throws Exception {
+        List<Plot> plots = new ArrayList<>();
+        List<Integer> pixels = new ArrayList<>();
+        List<Integer> rowSizes = new ArrayList<>();
+        for (Map<Plot, List<DataPoint>> plotListMap: optimalPlan) {
+            int sumPixels = plotListMap.values().stream().mapToInt(points ->
+                    points.size() * PlanConfig.B + PlanConfig.C).sum();
+            for (Plot plot: plotListMap.keySet()) {
+                plots.add(plot);
+                pixels.add((int) Math.round((plot.nrDataPoints * PlanConfig.B + PlanConfig.C + 0.0) / sumPixels * 90));
+            }
+            rowSizes.add(plotListMap.size());
+        }
+        int nrPlots = plots.size();
+        // Start with highlighted plots
+        List<Integer> order = new ArrayList<>(nrPlots);
+        for (int plotCtr = 0; plotCtr < nrPlots; plotCtr++) {
+            if (plots.get(plotCtr).nrHighlighted > 0) {
+                order.add(plotCtr);
+            }
+        }
+        for (int plotCtr = 0; plotCtr < nrPlots; plotCtr++) {
+            if (plots.get(plotCtr).nrHighlighted == 0) {
+                order.add(plotCtr);
+            }
+        }
+        List<String> plotQueries = order.stream().map(plotCtr ->
+                queryFactory.plotQuery(plots.get(plotCtr), query, false)).collect(Collectors.toList());
+        JSONObject[] plotInformation = new JSONObject[nrPlots];
+        PlotExecutor.execute(session, plotQueries, (queryCtr, rows) -> {
+            int plotCtr = order.get(queryCtr);
+            JSONObject information = new JSONObject();
+            information.put("data", plotResult(rows, plots.get(plotCtr), queryFactory, title, false));
+            information.put("width", pixels.get(plotCtr));
+            plotInformation[plotCtr] = information;
+            return userUsernameMap.containsKey(session);
+        });
+        if (!userUsernameMap.containsKey(session)) {
+            return null;
+        }
+        JSONArray resultRows = new JSONArray();
+        int plotCtr = 0;
+        for (int rowSize: rowSizes) {
+            JSONArray resultArray = new JSONArray();
+            for (int rowCtr = 0; rowCtr < rowSize; rowCtr++) {
+                resultArray.put(plotInformation[plotCtr]);
+                plotCtr++;
+            }
+            resultRows.put(resultArray);
+        }
+        return resultRows;
+    }
 
-                            valueObj.put("highlighted", highlightedValues.contains(targetName))
-                                    .put("results", value).put("type", "agg")
-                                    .put("label", targetName)
-                                    .put("context", "column")
-                                    .put("groupby", groupBy);
-                            result.put(valueObj);
-                        }
-                    }
-                    JSONObject plotInformation = new JSONObject();
-                    plotInformation.put("data", result);
-                    plotInformation.put("width", pixels);
+    /**
+     * Convert result rows of the plot query into bars.
+     *
+     * @param rows              result rows of the plot query
+     * @param plot              plot to present
+     * @param queryFactory      factory that generated the queries
+     * @param title             title of bars or null
+     * @param fillMissing       add empty bars for labels without results
+     * @return                  JSON array of bars
+     */
+    private static JSONArray plotResult(List<String[]> rows, Plot plot,
+                                        QueryFactory queryFactory,
+                                        String title, boolean fillMissing) {
+        JSONArray result = new JSONArray();
+        int freeIndex = plot.freeIndex;
+        boolean isLiteral = !queryFactory.valueIndex.contains(freeIndex) && plot.nrDataPoints > 1;
+        int indexPos = Math.max(queryFactory.columnIndex.indexOf(freeIndex),
+                queryFactory.valueIndex.indexOf(freeIndex));
+        int columnIndex = queryFactory.columnIndex.get(indexPos);
+        int valueIndex = queryFactory.valueIndex.get(indexPos);
+        int[] vector = plot.dataPoints.get(0).vector;
+
+        String groupBy = isLiteral ? queryFactory.keyToTerms[valueIndex][vector[valueIndex]]
+                : queryFactory.keyToTerms[columnIndex][vector[columnIndex]];
+        // A list of highlighted labels
+        List<String> highlightedValues = plot.dataPoints.stream()
+                .filter(x -> x.highlighted)
+                .map(x -> isLiteral ? queryFactory.keyToTerms[columnIndex][x.vector[columnIndex]]
+                        : queryFactory.keyToTerms[valueIndex][x.vector[valueIndex]]).collect(Collectors.toList());
+        if (isLiteral) {
+            String[] row = rows.isEmpty() ? new String[plot.nrDataPoints] : rows.get(0);
+            for (int columnCtr = 1; columnCtr <= plot.nrDataPoints; columnCtr++) {
+                String value = row[columnCtr - 1];
+                String targetName = queryFactory.keyToTerms[columnIndex]
+                        [plot.dataPoints.get(columnCtr - 1).vector[columnIndex]];
+                JSONObject valueObj = new JSONObject();
+                valueObj.put("highlighted", highlightedValues.contains(targetName))
+                        .put("results", value).put("type", "agg")
+                        .put("label", targetName)
+                        .put("context", "value")
+                        .put("groupby", groupBy);
+                if (title != null) {
+                    valueObj.put("title", title);
+                }
+                result.put(valueObj);
+            }
+        }
+        else {
+            Set<String> containKeys = new HashSet<>();
+            for (String[] row: rows) {
+                String value = row[0];
+                String targetName = row[1];
+                JSONObject valueObj = new JSONObject();
+                // Validate number
+                try {
+                    value = value.equals("null") ? "0" : value;
+                    value = new BigDecimal(value).toPlainString();
+                } catch (Exception ignored) {
 
-                    resultArray.put(plotInformation);
-                    if (!userUsernameMap.containsKey(session)) {
-                        return;
-                    }
                 }
-                resultRows.put(resultArray);
+                valueObj.put("highlighted", highlightedValues.contains(targetName))
+                        .put("results", value).put("type", "agg")
+                        .put("label", targetName)
+                        .put("context", "column")
+                        .put("groupby", groupBy);
+                if (title != null) {
+                    valueObj.put("title", title);
+                }
+                containKeys.add(targetName);
+                result.put(valueObj);
+            }
+            if (fillMissing) {
+                plot.dataPoints.stream().map(x -> queryFactory.keyToTerms[valueIndex]
+                        [x.vector[valueIndex]])
+                        .filter(x -> !containKeys.contains(x))
+                        .forEach(x -> result.put(new JSONObject().put("highlighted", highlightedValues.contains(x))
+                                .put("results", 0).put("type", "agg")
+                                .put("label", x)
+                                .put("context", "column")
+                                .put("groupby", groupBy)));
             }
-            resultObj.put("data", resultRows);
-            session.send(resultObj.toString());
         }
+        return result;
     }
 
-
-
-    // Sends a message from one user to all users, along with a list of current usernames
     private static void searchResults(WsContext session,
+                                      Connection connection,
                                       JSONObject queryTemplate,
                                       String dataset,
                                       int width,
-                                      String planner) throws IOException,
+                                      String planner,
+                                      PlanContext context) throws IOException,
             ParseException, JSQLParserException, SQLException {
         JSONArray params = queryTemplate.getJSONArray("params");
         List<String> listParams = new ArrayList<>();
@@ -963,27 +1055,29 @@ public class LuceneServlet {
             JSONObject resultObj = new JSONObject();
             JSONArray resultRows = new JSONArray();
             // Matching all parameters in Lucene. TODO: support more parameters
-            int R = Math.min(PlanConfig.R, width);
+            int R = Math.min(context.R, width);
             JSONObject debugObj = new JSONObject();
+            // All literals are matched in one batch before planning
+            long searchStart = System.currentTimeMillis();
+            BatchLookup lookup = BatchLookup.search(dataset, listParams, context.topK);
+            long searchEnd = System.currentTimeMillis();
 
 
             for (int paramCtr = 0; paramCtr < listParams.size(); paramCtr++) {
-                String param = listParams.get(paramCtr);
                 Column column = columns.get(paramCtr);
 
-                ScoreDoc[] docs = FuzzySearch.search(param, dataset);
-                long searchStart = System.currentTimeMillis();
-                IndexSearcher searcher = FuzzySearch.searchers.get(dataset);
-                long searchEnd = System.currentTimeMillis();
+                ScoreDoc[] docs = lookup.hits[paramCtr];
+                HitMetadata metadata = lookup.metadata(dataset);
                 if (docs.length == 0) {
                     continue;
                 }
+                long planStart = System.currentTimeMillis();
                 List<Map<String, List<ScoreDoc>>> planResults;
                 if (planner.equals("ilp")) {
-                    planResults = SimpleVizPlanner.plan(docs, PlanConfig.NR_ROWS, R, searcher);
+                    planResults = SimpleVizPlanner.plan(docs, context.nrRows, R, metadata);
                 }
                 else {
-                    planResults = GreedyPlanner.plan(docs, PlanConfig.NR_ROWS, R, searcher);
+                    planResults = GreedyPlanner.plan(docs, context.nrRows, R, metadata);
                 }
                 long planEnd = System.currentTimeMillis();
                 Set<Float> scoreSet = new LinkedHashSet<>();
@@ -1023,11 +1117,10 @@ public class LuceneServlet {
                         JSONArray resultArray = new JSONArray();
                         List<ScoreDoc> groupDocs = resultPerRow.get(groupVal);
 
-                        boolean isLiteral = groupVal.equals(searcher.doc(groupDocs.get(0).doc).get("text"));
+                        boolean isLiteral = groupVal.equals(metadata.text(groupDocs.get(0).doc));
                         for (ScoreDoc scoreDoc : groupDocs) {
-                            Document hitDoc = searcher.doc(scoreDoc.doc);
-                            String columnName = hitDoc.get("column");
-                            String content = hitDoc.get("text");
+                            String columnName = metadata.column(scoreDoc.doc);
+                            String content = metadata.text(scoreDoc.doc);
                             float score = scoreDoc.score;
                             column.setColumnName("\"" + columnName + "\"");
 
@@ -1096,7 +1189,7 @@ public class LuceneServlet {
                     resultRows.put(resultObjet);
                 }
                 long executionEnd = System.currentTimeMillis();
-                debugObj.put("searchMillis", (searchEnd - searchStart)).put("planMillis", (planEnd - searchEnd))
+                debugObj.put("searchMillis", (searchEnd - searchStart)).put("planMillis", (planEnd - planStart))
                         .put("executionMillis", (executionEnd - executionStart)).put("nrQueries", docs.length)
                         .put("query", sql).put("planner", planner.toUpperCase()).put("rows", "2");
             }
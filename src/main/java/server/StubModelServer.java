@@ -0,0 +1,54 @@
+package server;
+
+import io.javalin.Javalin;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Stand-in for the text-to-SQL model used by the
+ * model client benchmark and in local development.
+ * It accepts the same multipart form (t=dataset,
+ * q=sentence) and responds with a canned count query
+ * on the given column whose only parameter is the
+ * sentence itself.
+ *
+ * Usage: StubModelServer [port] [column] [delay ms]
+ *
+ * @author Ziyun Wei
+ */
+public class StubModelServer {
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 5050;
+        String column = args.length > 1 ? args[1] : "city";
+        long delayMillis = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        start(port, column, delayMillis);
+    }
+
+    /**
+     * Start the stand-in model on the given port.
+     *
+     * @param port          port to listen on
+     * @param column        column of the canned query
+     * @param delayMillis   delay of each response (ms)
+     * @return              started server, stop it when done
+     */
+    public static Javalin start(int port, String column, long delayMillis) {
+        Javalin app = Javalin.create().start(port);
+        app.post("/", ctx -> {
+            String dataset = ctx.formParam("t");
+            String sentence = ctx.formParam("q");
+            if (dataset == null || sentence == null) {
+                ctx.status(400).result("Missing form field t or q.");
+                return;
+            }
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+            JSONObject result = new JSONObject();
+            result.put("sql", "SELECT count(*) FROM " + dataset + " WHERE " + column + " = ?");
+            result.put("params", new JSONArray().put(sentence));
+            ctx.contentType("application/json").result(result.toString());
+        });
+        return app;
+    }
+}
@@ -0,0 +1,49 @@
+package stats;
+
+/**
+ * The statistics of building the similarity
+ * index of one dataset.
+ */
+public class IndexStats {
+    /**
+     * Number of rows read from the input.
+     */
+    public long nrRows = 0;
+    /**
+     * Number of documents added to the index.
+     */
+    public long nrDocs = 0;
+    /**
+     * Number of documents deleted from the index.
+     */
+    public long nrDeleted = 0;
+    /**
+     * Number of threads adding documents.
+     */
+    public int nrThreads = 0;
+    /**
+     * Duration of reading the input.
+     */
+    public long readMillis = 0;
+    /**
+     * Duration of building the index, including the final commit.
+     */
+    public long totalMillis = 0;
+
+    public double rowsPerSecond() {
+        return totalMillis == 0 ? 0 : nrRows * 1000.0 / totalMillis;
+    }
+
+    public double docsPerSecond() {
+        return totalMillis == 0 ? 0 : nrDocs * 1000.0 / totalMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "Rows: " + nrRows + ", documents: " + nrDocs + ", deleted: " + nrDeleted
+                + ", threads: " + nrThreads
+                + ", read " + readMillis + " ms, total " + totalMillis + " ms, "
+                + String.format("%.0f", rowsPerSecond()) + " rows/s, "
+                + String.format("%.0f", docsPerSecond()) + " docs/s";
+    }
+}
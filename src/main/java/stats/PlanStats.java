@@ -3,39 +3,53 @@ package stats;
 /**
  * The statistics of a plan when the optimal
  * multiplots is generated by greedy planner
- * or ILP planner
+ * or ILP planner. Each request collects its
+ * statistics in its own instance.
  */
 public class PlanStats {
     /**
      * Number of queries input to the planner.
      */
-    public static int nrQueries = 0;
+    public int nrQueries = 0;
     /**
      * Number of plots input to the planner.
      */
-    public static int nrPlots = 0;
+    public int nrPlots = 0;
     /**
      * Number of predicates in the query.
      */
-    public static int nrPredicates = 0;
+    public int nrPredicates = 0;
     /**
      * The expected wait time of optimal plan.
      */
-    public static double waitTime = 0;
+    public double waitTime = 0;
+    /**
+     * Duration of estimating processing costs.
+     */
+    public long costMillis = 0;
     /**
      * Duration of initializing the optimization problem.
      */
-    public static long initMillis = 0;
+    public long initMillis = 0;
     /**
      * Duration of building the optimization problem.
      */
-    public static long buildMillis = 0;
+    public long buildMillis = 0;
     /**
      * Duration of optimizing the problem.
      */
-    public static long optimizeMillis = 0;
+    public long optimizeMillis = 0;
     /**
      * Whether to generate optimal plan within timeout.
      */
-    public static boolean isTimeout = false;
+    public boolean isTimeout = false;
+    /**
+     * Number of nodes searched by the branch-and-bound planner.
+     */
+    public long nrNodes = 0;
+    /**
+     * Relative gap between the wait time of the plan and the
+     * lower bound on the optimal wait time.
+     */
+    public double gap = 0;
 }